@@ -0,0 +1,418 @@
+/*
+ * Copyright (C) 2013  WhiteCat 白猫 (www.thinkandroid.cn)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ta.util.db.util;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ta.util.db.entity.TAArrayList;
+
+import android.database.Cursor;
+
+/**
+ * @Title TAEntityMapper
+ * @Package com.ta.util.db.util
+ * @Description 实体与数据库行之间的映射器。每个实体类只解析一次字段和注解，之后的插入、更新、删除与查询都直接使用缓存的映射；
+ *              查询时列下标按 Cursor 只解析一次，而不是每行每个字段都调用 getColumnIndex
+ * @author 白猫
+ * @date 2013-1-20
+ * @version V1.0
+ */
+public class TAEntityMapper
+{
+	private static final int TYPE_STRING = 0;
+	private static final int TYPE_INT = 1;
+	private static final int TYPE_INTEGER = 2;
+	private static final int TYPE_LONG = 3;
+	private static final int TYPE_LONG_OBJECT = 4;
+	private static final int TYPE_FLOAT = 5;
+	private static final int TYPE_FLOAT_OBJECT = 6;
+	private static final int TYPE_DOUBLE = 7;
+	private static final int TYPE_DOUBLE_OBJECT = 8;
+	private static final int TYPE_SHORT = 9;
+	private static final int TYPE_SHORT_OBJECT = 10;
+	private static final int TYPE_BYTE = 11;
+	private static final int TYPE_BYTE_OBJECT = 12;
+	private static final int TYPE_BOOLEAN = 13;
+	private static final int TYPE_BOOLEAN_OBJECT = 14;
+	private static final int TYPE_CHAR = 15;
+	private static final int TYPE_CHARACTER = 16;
+	private static final int TYPE_DATE = 17;
+	private static final int TYPE_UNSUPPORTED = -1;
+
+	/**
+	 * 实体类为键，映射器为值
+	 */
+	private static final ConcurrentHashMap<Class<?>, TAEntityMapper> mapperMap = new ConcurrentHashMap<Class<?>, TAEntityMapper>();
+
+	private final Class<?> clazz;
+	private final ColumnBinding[] bindings;
+
+	private TAEntityMapper(Class<?> clazz)
+	{
+		this.clazz = clazz;
+		List<ColumnBinding> list = new ArrayList<ColumnBinding>();
+		for (Field field : clazz.getDeclaredFields())
+		{
+			if (TADBUtils.isTransient(field) || !TADBUtils.isBaseDateType(field))
+			{
+				continue;
+			}
+			field.setAccessible(true);
+			String columnName = TADBUtils.getColumnByField(field);
+			list.add(new ColumnBinding(field,
+					(columnName != null && !columnName.equals("")) ? columnName
+							: field.getName(), typeOf(field.getType()),
+					TADBUtils.isPrimaryKey(field), TADBUtils
+							.isAutoIncrement(field)));
+		}
+		this.bindings = list.toArray(new ColumnBinding[list.size()]);
+	}
+
+	/**
+	 * 获得实体类的映射器，第一次使用时创建并缓存
+	 *
+	 * @param clazz
+	 *            实体类型
+	 * @return 映射器
+	 */
+	public static TAEntityMapper getInstance(Class<?> clazz)
+	{
+		TAEntityMapper mapper = mapperMap.get(clazz);
+		if (mapper == null)
+		{
+			mapper = new TAEntityMapper(clazz);
+			TAEntityMapper existing = mapperMap.putIfAbsent(clazz, mapper);
+			if (existing != null)
+			{
+				mapper = existing;
+			}
+		}
+		return mapper;
+	}
+
+	/**
+	 * 通过Cursor获取一个实体数组，列下标只解析一次
+	 *
+	 * @param cursor
+	 *            数据集合
+	 * @return 相应实体List数组
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> List<T> mapList(Cursor cursor)
+	{
+		List<T> queryList = new ArrayList<T>(Math.max(cursor.getCount(), 0));
+		if (cursor.moveToFirst())
+		{
+			int[] columnIndexes = resolveColumnIndexes(cursor);
+			do
+			{
+				queryList.add((T) mapRow(cursor, columnIndexes));
+			} while (cursor.moveToNext());
+		}
+		return queryList;
+	}
+
+	/**
+	 * 把Cursor当前行转换为实体
+	 *
+	 * @param cursor
+	 *            数据集合
+	 * @return 相应实体
+	 */
+	public <T> T mapOne(Cursor cursor)
+	{
+		return mapRow(cursor, resolveColumnIndexes(cursor));
+	}
+
+	/**
+	 * 获得各个字段在Cursor中的列下标，没有对应列的字段为 -1
+	 *
+	 * @param cursor
+	 *            数据集合
+	 * @return 与字段一一对应的列下标
+	 */
+	public int[] resolveColumnIndexes(Cursor cursor)
+	{
+		int[] columnIndexes = new int[bindings.length];
+		for (int i = 0; i < bindings.length; i++)
+		{
+			columnIndexes[i] = cursor.getColumnIndex(bindings[i].columnName);
+		}
+		return columnIndexes;
+	}
+
+	/**
+	 * 使用已解析的列下标把Cursor当前行转换为实体
+	 *
+	 * @param cursor
+	 *            数据集合
+	 * @param columnIndexes
+	 *            {@link #resolveColumnIndexes(Cursor)} 的返回值
+	 * @return 相应实体，实例化失败时返回 null
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T mapRow(Cursor cursor, int[] columnIndexes)
+	{
+		T entityT = null;
+		try
+		{
+			entityT = (T) clazz.newInstance();
+		} catch (InstantiationException e)
+		{
+			e.printStackTrace();
+			return null;
+		} catch (IllegalAccessException e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+		for (int i = 0; i < bindings.length; i++)
+		{
+			if (columnIndexes[i] >= 0)
+			{
+				try
+				{
+					bindings[i].read(entityT, cursor, columnIndexes[i]);
+				} catch (IllegalArgumentException e)
+				{
+					e.printStackTrace();
+				} catch (IllegalAccessException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+		return entityT;
+	}
+
+	/**
+	 * 从实体加载插入、更新的数据，不包括自增主键，空字段的值为null
+	 *
+	 * @param entity
+	 *            实体
+	 * @return 列名与值的数组
+	 * @throws IllegalAccessException
+	 */
+	public TAArrayList getFieldsAndValue(Object entity)
+			throws IllegalAccessException
+	{
+		TAArrayList arrayList = new TAArrayList();
+		for (ColumnBinding binding : bindings)
+		{
+			if (!binding.autoIncrement)
+			{
+				Object value = binding.field.get(entity);
+				arrayList.add(binding.columnName,
+						value == null ? null : value.toString());
+			}
+		}
+		return arrayList;
+	}
+
+	/**
+	 * 从实体加载删除条件的数据，不包括自增主键和值为null或空字符串的字段
+	 *
+	 * @param entity
+	 *            实体
+	 * @return 列名与值的数组
+	 * @throws IllegalAccessException
+	 */
+	public TAArrayList getConditionFieldsAndValue(Object entity)
+			throws IllegalAccessException
+	{
+		TAArrayList arrayList = new TAArrayList();
+		for (ColumnBinding binding : bindings)
+		{
+			if (!binding.autoIncrement)
+			{
+				Object value = binding.field.get(entity);
+				if (value != null && value.toString().length() > 0)
+				{
+					arrayList.add(binding.columnName, value.toString());
+				}
+			}
+		}
+		return arrayList;
+	}
+
+	/**
+	 * 从实体加载主键的数据，用于构建Where条件
+	 *
+	 * @param entity
+	 *            实体
+	 * @return 主键列名与值的数组
+	 * @throws IllegalAccessException
+	 */
+	public TAArrayList getPrimaryKeysAndValue(Object entity)
+			throws IllegalAccessException
+	{
+		TAArrayList arrayList = new TAArrayList();
+		for (ColumnBinding binding : bindings)
+		{
+			if (binding.primaryKey)
+			{
+				Object value = binding.field.get(entity);
+				if (value != null)
+				{
+					arrayList.add(binding.columnName, value.toString());
+				}
+			}
+		}
+		return arrayList;
+	}
+
+	private static int typeOf(Class<?> type)
+	{
+		if (type == String.class)
+			return TYPE_STRING;
+		if (type == int.class)
+			return TYPE_INT;
+		if (type == Integer.class)
+			return TYPE_INTEGER;
+		if (type == long.class)
+			return TYPE_LONG;
+		if (type == Long.class)
+			return TYPE_LONG_OBJECT;
+		if (type == float.class)
+			return TYPE_FLOAT;
+		if (type == Float.class)
+			return TYPE_FLOAT_OBJECT;
+		if (type == double.class)
+			return TYPE_DOUBLE;
+		if (type == Double.class)
+			return TYPE_DOUBLE_OBJECT;
+		if (type == short.class)
+			return TYPE_SHORT;
+		if (type == Short.class)
+			return TYPE_SHORT_OBJECT;
+		if (type == byte.class)
+			return TYPE_BYTE;
+		if (type == Byte.class)
+			return TYPE_BYTE_OBJECT;
+		if (type == boolean.class)
+			return TYPE_BOOLEAN;
+		if (type == Boolean.class)
+			return TYPE_BOOLEAN_OBJECT;
+		if (type == char.class)
+			return TYPE_CHAR;
+		if (type == Character.class)
+			return TYPE_CHARACTER;
+		if (type == Date.class)
+			return TYPE_DATE;
+		return TYPE_UNSUPPORTED;
+	}
+
+	/**
+	 * 一个字段与数据库列的绑定，类型在创建时就确定，读取时不再逐个比较类型
+	 */
+	private static final class ColumnBinding
+	{
+		final Field field;
+		final String columnName;
+		final int type;
+		final boolean primaryKey;
+		final boolean autoIncrement;
+
+		ColumnBinding(Field field, String columnName, int type,
+				boolean primaryKey, boolean autoIncrement)
+		{
+			this.field = field;
+			this.columnName = columnName;
+			this.type = type;
+			this.primaryKey = primaryKey;
+			this.autoIncrement = autoIncrement;
+		}
+
+		@SuppressWarnings("deprecation")
+		void read(Object entity, Cursor cursor, int index)
+				throws IllegalAccessException
+		{
+			switch (type)
+			{
+			case TYPE_STRING:
+				field.set(entity, cursor.getString(index));
+				break;
+			case TYPE_INT:
+				field.setInt(entity, cursor.getInt(index));
+				break;
+			case TYPE_INTEGER:
+				field.set(entity, Integer.valueOf(cursor.getInt(index)));
+				break;
+			case TYPE_LONG:
+				field.setLong(entity, cursor.getLong(index));
+				break;
+			case TYPE_LONG_OBJECT:
+				field.set(entity, Long.valueOf(cursor.getLong(index)));
+				break;
+			case TYPE_FLOAT:
+				field.setFloat(entity, cursor.getFloat(index));
+				break;
+			case TYPE_FLOAT_OBJECT:
+				field.set(entity, Float.valueOf(cursor.getFloat(index)));
+				break;
+			case TYPE_DOUBLE:
+				field.setDouble(entity, cursor.getDouble(index));
+				break;
+			case TYPE_DOUBLE_OBJECT:
+				field.set(entity, Double.valueOf(cursor.getDouble(index)));
+				break;
+			case TYPE_SHORT:
+				field.setShort(entity, cursor.getShort(index));
+				break;
+			case TYPE_SHORT_OBJECT:
+				field.set(entity, Short.valueOf(cursor.getShort(index)));
+				break;
+			case TYPE_BYTE:
+				field.setByte(entity, (byte) cursor.getShort(index));
+				break;
+			case TYPE_BYTE_OBJECT:
+				field.set(entity, Byte.valueOf((byte) cursor.getShort(index)));
+				break;
+			case TYPE_BOOLEAN:
+				field.setBoolean(entity,
+						Boolean.parseBoolean(cursor.getString(index)));
+				break;
+			case TYPE_BOOLEAN_OBJECT:
+				field.set(entity,
+						Boolean.valueOf(cursor.getString(index)));
+				break;
+			case TYPE_CHAR:
+			case TYPE_CHARACTER:
+				if (!cursor.isNull(index))
+				{
+					String value = cursor.getString(index).trim();
+					if (value.length() > 0)
+					{
+						field.set(entity, Character.valueOf(value.charAt(0)));
+					}
+				}
+				break;
+			case TYPE_DATE:
+				if (!cursor.isNull(index))
+				{
+					field.set(entity, new Date(cursor.getString(index)));
+				}
+				break;
+			default:
+				break;
+			}
+		}
+	}
+}
@@ -0,0 +1,83 @@
+package com.ta.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.http.Header;
+
+import com.ta.util.cache.DiskLruCache;
+
+/**
+ * Streams the response body straight into a {@link DiskLruCache} entry, so
+ * large images and packages never have to be held in memory. The edit is
+ * committed once the whole body has been written and aborted otherwise. The
+ * result is the number of bytes stored.
+ */
+public class DiskCacheHttpResponseHandler extends
+		StreamingHttpResponseHandler<Long>
+{
+	private final DiskLruCache diskCache;
+	private final String key;
+	private final int index;
+
+	/**
+	 * @param diskCache
+	 *            the cache to write into
+	 * @param key
+	 *            the cache key, see {@link DiskLruCache#edit(String)}
+	 * @param index
+	 *            the value index inside the entry
+	 */
+	public DiskCacheHttpResponseHandler(DiskLruCache diskCache, String key,
+			int index)
+	{
+		super();
+		this.diskCache = diskCache;
+		this.key = key;
+		this.index = index;
+	}
+
+	public String getKey()
+	{
+		return key;
+	}
+
+	@Override
+	protected Long onReceiveStream(int statusCode, Header[] headers,
+			InputStream content, long contentLength) throws IOException
+	{
+		DiskLruCache.Editor editor = diskCache.edit(key);
+		if (editor == null)
+		{
+			throw new IOException("Entry " + key + " is being edited");
+		}
+		boolean committed = false;
+		try
+		{
+			OutputStream out = editor.newOutputStream(index);
+			long count;
+			try
+			{
+				count = copy(content, out);
+			} finally
+			{
+				out.close();
+			}
+			if (contentLength != -1 && count != contentLength)
+			{
+				throw new IOException("Download incomplete: " + count
+						+ " != " + contentLength);
+			}
+			editor.commit();
+			committed = true;
+			return count;
+		} finally
+		{
+			if (!committed)
+			{
+				editor.abort();
+			}
+		}
+	}
+}
@@ -0,0 +1,379 @@
+package com.ta.util.http;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A minimal pull tokenizer for JSON text. It reads from a {@link Reader}
+ * through a fixed character buffer, so a document of any size can be walked
+ * token by token without first being loaded into a {@code String}.
+ * <p>
+ * {@code android.util.JsonReader} would do the same job but only exists from
+ * API 11, below the minimum SDK of the apps using this library.
+ */
+public class JsonStreamReader
+{
+	public static final int BEGIN_OBJECT = 1;
+	public static final int END_OBJECT = 2;
+	public static final int BEGIN_ARRAY = 3;
+	public static final int END_ARRAY = 4;
+	public static final int NAME = 5;
+	public static final int STRING = 6;
+	public static final int NUMBER = 7;
+	public static final int TRUE = 8;
+	public static final int FALSE = 9;
+	public static final int NULL = 10;
+	public static final int END_DOCUMENT = 11;
+
+	private static final int SCOPE_ARRAY = 0;
+	private static final int SCOPE_OBJECT_NAME = 1;
+	private static final int SCOPE_OBJECT_VALUE = 2;
+
+	private final Reader reader;
+	private final char[] buffer = new char[1024 * 4];
+	private int pos = 0;
+	private int limit = 0;
+
+	private int[] scopes = new int[32];
+	private int depth = 0;
+
+	private final StringBuilder text = new StringBuilder();
+
+	public JsonStreamReader(Reader reader)
+	{
+		this.reader = reader;
+	}
+
+	/**
+	 * @return the text of the last {@link #NAME}, {@link #STRING} or
+	 *         {@link #NUMBER} token
+	 */
+	public String getText()
+	{
+		return text.toString();
+	}
+
+	/**
+	 * @return the nesting depth after the last token; 0 at the top level
+	 */
+	public int getDepth()
+	{
+		return depth;
+	}
+
+	/**
+	 * Reads the next token.
+	 */
+	public int next() throws IOException
+	{
+		int c = nextNonSeparator();
+		switch (c)
+		{
+		case -1:
+			if (depth != 0)
+			{
+				throw syntaxError("Unexpected end of input");
+			}
+			return END_DOCUMENT;
+		case '{':
+			push(SCOPE_OBJECT_NAME);
+			return BEGIN_OBJECT;
+		case '}':
+			pop(SCOPE_OBJECT_NAME);
+			return END_OBJECT;
+		case '[':
+			push(SCOPE_ARRAY);
+			return BEGIN_ARRAY;
+		case ']':
+			pop(SCOPE_ARRAY);
+			return END_ARRAY;
+		case '"':
+		case '\'':
+			readString((char) c);
+			if (depth > 0 && scopes[depth - 1] == SCOPE_OBJECT_NAME)
+			{
+				scopes[depth - 1] = SCOPE_OBJECT_VALUE;
+				return NAME;
+			}
+			afterValue();
+			return STRING;
+		default:
+			pos--;
+			readLiteral();
+			afterValue();
+			String literal = text.toString();
+			if ("true".equals(literal))
+			{
+				return TRUE;
+			} else if ("false".equals(literal))
+			{
+				return FALSE;
+			} else if ("null".equals(literal))
+			{
+				return NULL;
+			}
+			return NUMBER;
+		}
+	}
+
+	/**
+	 * Reads the value starting with {@code token} into the {@code org.json}
+	 * model: a {@link JSONObject}, {@link JSONArray}, {@code String},
+	 * {@code Long}, {@code Double}, {@code Boolean} or {@link JSONObject#NULL}.
+	 */
+	public Object readValue(int token) throws IOException
+	{
+		try
+		{
+			switch (token)
+			{
+			case BEGIN_OBJECT:
+				JSONObject object = new JSONObject();
+				for (int t = next(); t != END_OBJECT; t = next())
+				{
+					if (t != NAME)
+					{
+						throw syntaxError("Expected name");
+					}
+					String name = getText();
+					object.put(name, readValue(next()));
+				}
+				return object;
+			case BEGIN_ARRAY:
+				JSONArray array = new JSONArray();
+				for (int t = next(); t != END_ARRAY; t = next())
+				{
+					array.put(readValue(t));
+				}
+				return array;
+			case STRING:
+				return getText();
+			case NUMBER:
+				return parseNumber(getText());
+			case TRUE:
+				return Boolean.TRUE;
+			case FALSE:
+				return Boolean.FALSE;
+			case NULL:
+				return JSONObject.NULL;
+			default:
+				throw syntaxError("Unexpected token " + token);
+			}
+		} catch (JSONException e)
+		{
+			throw syntaxError(e.getMessage());
+		}
+	}
+
+	/**
+	 * Skips the value starting with {@code token}, including nested values.
+	 */
+	public void skipValue(int token) throws IOException
+	{
+		if (token != BEGIN_OBJECT && token != BEGIN_ARRAY)
+		{
+			return;
+		}
+		int target = depth - 1;
+		while (depth > target)
+		{
+			if (next() == END_DOCUMENT)
+			{
+				throw syntaxError("Unexpected end of input");
+			}
+		}
+	}
+
+	private Object parseNumber(String literal) throws IOException
+	{
+		try
+		{
+			if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0
+					&& literal.indexOf('E') < 0)
+			{
+				return Long.valueOf(literal);
+			}
+			return Double.valueOf(literal);
+		} catch (NumberFormatException e)
+		{
+			throw syntaxError("Invalid literal " + literal);
+		}
+	}
+
+	private void push(int scope)
+	{
+		if (depth == scopes.length)
+		{
+			int[] grown = new int[depth * 2];
+			System.arraycopy(scopes, 0, grown, 0, depth);
+			scopes = grown;
+		}
+		scopes[depth++] = scope;
+	}
+
+	private void pop(int openScope) throws IOException
+	{
+		if (depth == 0)
+		{
+			throw syntaxError("Unbalanced close");
+		}
+		int scope = scopes[depth - 1];
+		boolean matches = openScope == SCOPE_ARRAY ? scope == SCOPE_ARRAY
+				: scope != SCOPE_ARRAY;
+		if (!matches)
+		{
+			throw syntaxError("Mismatched close");
+		}
+		depth--;
+		afterValue();
+	}
+
+	private void afterValue()
+	{
+		if (depth > 0 && scopes[depth - 1] == SCOPE_OBJECT_VALUE)
+		{
+			scopes[depth - 1] = SCOPE_OBJECT_NAME;
+		}
+	}
+
+	private boolean fill() throws IOException
+	{
+		int n = reader.read(buffer, 0, buffer.length);
+		if (n <= 0)
+		{
+			return false;
+		}
+		pos = 0;
+		limit = n;
+		return true;
+	}
+
+	private int read() throws IOException
+	{
+		if (pos == limit && !fill())
+		{
+			return -1;
+		}
+		return buffer[pos++];
+	}
+
+	private int nextNonSeparator() throws IOException
+	{
+		while (true)
+		{
+			int c = read();
+			switch (c)
+			{
+			case ' ':
+			case '\t':
+			case '\r':
+			case '\n':
+			case ',':
+			case ':':
+				continue;
+			default:
+				return c;
+			}
+		}
+	}
+
+	private void readString(char quote) throws IOException
+	{
+		text.setLength(0);
+		while (true)
+		{
+			int c = read();
+			if (c == -1)
+			{
+				throw syntaxError("Unterminated string");
+			} else if (c == quote)
+			{
+				return;
+			} else if (c == '\\')
+			{
+				int escaped = read();
+				switch (escaped)
+				{
+				case 'b':
+					text.append('\b');
+					break;
+				case 'f':
+					text.append('\f');
+					break;
+				case 'n':
+					text.append('\n');
+					break;
+				case 'r':
+					text.append('\r');
+					break;
+				case 't':
+					text.append('\t');
+					break;
+				case 'u':
+					int value = 0;
+					for (int i = 0; i < 4; i++)
+					{
+						int digit = Character.digit(read(), 16);
+						if (digit < 0)
+						{
+							throw syntaxError("Invalid escape sequence");
+						}
+						value = (value << 4) | digit;
+					}
+					text.append((char) value);
+					break;
+				case -1:
+					throw syntaxError("Unterminated escape sequence");
+				default:
+					text.append((char) escaped);
+					break;
+				}
+			} else
+			{
+				text.append((char) c);
+			}
+		}
+	}
+
+	private void readLiteral() throws IOException
+	{
+		text.setLength(0);
+		while (true)
+		{
+			int c = read();
+			switch (c)
+			{
+			case -1:
+				return;
+			case ' ':
+			case '\t':
+			case '\r':
+			case '\n':
+			case ',':
+			case ':':
+			case '}':
+			case ']':
+			case '{':
+			case '[':
+				pos--;
+				if (text.length() == 0)
+				{
+					throw syntaxError("Expected value");
+				}
+				return;
+			default:
+				text.append((char) c);
+				break;
+			}
+		}
+	}
+
+	private IOException syntaxError(String message)
+	{
+		return new IOException(message + " at depth " + depth);
+	}
+}
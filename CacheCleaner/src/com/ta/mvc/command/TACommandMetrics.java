@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2013  WhiteCat 白猫 (www.thinkandroid.cn)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ta.mvc.command;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Title TACommandMetrics
+ * @package com.ta.mvc.command
+ * @Description 命令队列的统计信息，按优先级分别记录入列、合并、取消、执行次数，以及排队时间和执行时间
+ * @author 白猫
+ * @date 2013-1-16 下午 16:51
+ * @version V1.0
+ */
+public class TACommandMetrics
+{
+	private final Lane[] lanes = new Lane[TACommandQueue.PRIORITY_COUNT];
+
+	TACommandMetrics()
+	{
+		for (int i = 0; i < lanes.length; i++)
+		{
+			lanes[i] = new Lane();
+		}
+	}
+
+	/**
+	 * 获得某个优先级的统计
+	 * 
+	 * @param priority
+	 *            优先级
+	 * @return 统计信息
+	 */
+	public Lane getLane(int priority)
+	{
+		return lanes[priority];
+	}
+
+	void recordEnqueued(int priority)
+	{
+		lanes[priority].enqueued.incrementAndGet();
+	}
+
+	void recordCoalesced(int priority)
+	{
+		lanes[priority].coalesced.incrementAndGet();
+	}
+
+	void recordCancelled(int priority)
+	{
+		lanes[priority].cancelled.incrementAndGet();
+	}
+
+	void recordExecuted(int priority, long queueNanos, long executeNanos)
+	{
+		Lane lane = lanes[priority];
+		lane.executed.incrementAndGet();
+		lane.queueNanos.addAndGet(queueNanos);
+		lane.executeNanos.addAndGet(executeNanos);
+		updateMax(lane.maxQueueNanos, queueNanos);
+		updateMax(lane.maxExecuteNanos, executeNanos);
+	}
+
+	private static void updateMax(AtomicLong max, long value)
+	{
+		long current;
+		while ((current = max.get()) < value
+				&& !max.compareAndSet(current, value))
+		{
+		}
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder builder = new StringBuilder("TACommandMetrics[");
+		for (int i = 0; i < lanes.length; i++)
+		{
+			if (i > 0)
+			{
+				builder.append(", ");
+			}
+			builder.append(i).append('=').append(lanes[i]);
+		}
+		return builder.append(']').toString();
+	}
+
+	/**
+	 * 一个优先级的统计
+	 */
+	public static class Lane
+	{
+		private final AtomicLong enqueued = new AtomicLong();
+		private final AtomicLong coalesced = new AtomicLong();
+		private final AtomicLong cancelled = new AtomicLong();
+		private final AtomicLong executed = new AtomicLong();
+		private final AtomicLong queueNanos = new AtomicLong();
+		private final AtomicLong executeNanos = new AtomicLong();
+		private final AtomicLong maxQueueNanos = new AtomicLong();
+		private final AtomicLong maxExecuteNanos = new AtomicLong();
+
+		public long getEnqueuedCount()
+		{
+			return enqueued.get();
+		}
+
+		public long getCoalescedCount()
+		{
+			return coalesced.get();
+		}
+
+		public long getCancelledCount()
+		{
+			return cancelled.get();
+		}
+
+		public long getExecutedCount()
+		{
+			return executed.get();
+		}
+
+		/**
+		 * @return 平均排队时间（纳秒）
+		 */
+		public long getAverageQueueNanos()
+		{
+			long count = executed.get();
+			return count == 0 ? 0 : queueNanos.get() / count;
+		}
+
+		/**
+		 * @return 平均执行时间（纳秒）
+		 */
+		public long getAverageExecuteNanos()
+		{
+			long count = executed.get();
+			return count == 0 ? 0 : executeNanos.get() / count;
+		}
+
+		public long getMaxQueueNanos()
+		{
+			return maxQueueNanos.get();
+		}
+
+		public long getMaxExecuteNanos()
+		{
+			return maxExecuteNanos.get();
+		}
+
+		@Override
+		public String toString()
+		{
+			return "{enqueued=" + enqueued.get() + ",coalesced="
+					+ coalesced.get() + ",cancelled=" + cancelled.get()
+					+ ",executed=" + executed.get() + ",avgQueueUs="
+					+ getAverageQueueNanos() / 1000 + ",avgExecuteUs="
+					+ getAverageExecuteNanos() / 1000 + "}";
+		}
+	}
+}
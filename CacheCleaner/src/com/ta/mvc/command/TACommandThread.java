@@ -44,12 +44,11 @@ public class TACommandThread implements Runnable
 		TALogger.i(TACommandThread.this, "CommandThread::run-enter");
 		while (!stop)
 		{
-			TALogger.i(TACommandThread.this, "CommandThread::get-next-command");
-			TAICommand cmd = TACommandQueueManager.getInstance()
-					.getNextCommand();
-			TALogger.i(TACommandThread.this, "CommandThread::to-execute");
-			cmd.execute();
-			TALogger.i(TACommandThread.this, "CommandThread::executed");
+			if (!TACommandQueueManager.getInstance().executeNextCommand())
+			{
+				// 被中断，中断标志仍然设置着，再取命令只会立即失败
+				break;
+			}
 		}
 		TALogger.i(TACommandThread.this, "CommandThread::run-exit");
 	}
@@ -53,20 +53,63 @@ public final class TACommandQueueManager
 	 */
 	public TAICommand getNextCommand()
 	{
-		TALogger.i(TACommandQueueManager.this, "获取Command！");
-		TAICommand cmd = queue.getNextCommand();
-		TALogger.i(TACommandQueueManager.this, "获取Command" + cmd + "完成！");
-		return cmd;
+		return queue.getNextCommand();
 	}
 
 	/**
-	 * 添加Command到队列中
+	 * 从队列中取出下一个Command并在当前线程执行，同时记录排队时间和执行时间
+	 * 
+	 * @return 等待命令时线程被中断返回 false，调用者应退出循环而不是继续取命令
+	 */
+	public boolean executeNextCommand()
+	{
+		TACommandQueue.Entry entry = queue.takeEntry();
+		if (entry == null)
+		{
+			return false;
+		}
+		long start = System.nanoTime();
+		try
+		{
+			entry.command.execute();
+		} finally
+		{
+			queue.getMetrics().recordExecuted(entry.priority,
+					start - entry.enqueueTime, System.nanoTime() - start);
+		}
+		return true;
+	}
+
+	/**
+	 * 添加Command到队列中，优先级由命令自身决定
+	 * 
+	 * @return 取消令牌
+	 */
+	public TACommandToken enqueue(TAICommand cmd)
+	{
+		return queue.enqueue(cmd);
+	}
+
+	/**
+	 * 按指定优先级添加Command到队列中
+	 * 
+	 * @param priority
+	 *            {@link TACommandQueue#PRIORITY_UI_CRITICAL}、
+	 *            {@link TACommandQueue#PRIORITY_NORMAL} 或
+	 *            {@link TACommandQueue#PRIORITY_BULK}
+	 * @return 取消令牌
+	 */
+	public TACommandToken enqueue(TAICommand cmd, int priority)
+	{
+		return queue.enqueue(cmd, priority);
+	}
+
+	/**
+	 * 获取队列统计信息
 	 */
-	public void enqueue(TAICommand cmd)
+	public TACommandMetrics getMetrics()
 	{
-		TALogger.i(TACommandQueueManager.this, "添加" + cmd + "开始");
-		queue.enqueue(cmd);
-		TALogger.i(TACommandQueueManager.this, "添加" + cmd + "完成");
+		return queue.getMetrics();
 	}
 
 	/**
@@ -0,0 +1,617 @@
+package com.ta.util.cache;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A drop-in alternative to {@link LruCache} for caches that are hit from many
+ * threads at once (image loaders plus the UI thread).
+ *
+ * <p>
+ * Keys are spread over a power-of-two number of segments, each guarded by its
+ * own lock, so threads working on different keys rarely contend. Every
+ * segment runs a segmented LRU (SLRU) policy: new entries land in a
+ * probationary region and are only promoted to the protected region on a
+ * second hit. A burst of one-off entries (a fast fling through a list)
+ * therefore evicts other one-off entries first instead of flushing the
+ * working set, which is what plain LRU does.
+ *
+ * <p>
+ * The {@link #sizeOf}, {@link #entryRemoved} and {@link #create} contract is
+ * the same as {@link LruCache}. The size budget is shared by all segments:
+ * when it is exceeded, probationary entries are evicted round-robin across
+ * the segments before any protected entry, so one large entry only pushes
+ * out others when the cache as a whole is full.
+ */
+public class SegmentedLruCache<K, V>
+{
+	/** Upper bound for the number of segments. */
+	private static final int MAX_SEGMENTS = 16;
+	/** Share of the cache reserved for entries that were hit twice. */
+	private static final float PROTECTED_RATIO = 0.8f;
+
+	private final Segment[] segments;
+	private final int segmentMask;
+	private final int maxSize;
+	private final int maxProtectedSize;
+
+	/** Sums over all segments, only changed while holding a segment lock. */
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicInteger protectedSize = new AtomicInteger();
+	/** Next segment to evict from, so eviction is spread over all of them. */
+	private final AtomicInteger evictCursor = new AtomicInteger();
+
+	private final AtomicInteger putCount = new AtomicInteger();
+	private final AtomicInteger createCount = new AtomicInteger();
+	private final AtomicInteger evictionCount = new AtomicInteger();
+	private final AtomicInteger hitCount = new AtomicInteger();
+	private final AtomicInteger missCount = new AtomicInteger();
+
+	/**
+	 * @param maxSize
+	 *            for caches that do not override {@link #sizeOf}, this is the
+	 *            maximum number of entries in the cache. For all other caches,
+	 *            this is the maximum sum of the sizes of the entries in this
+	 *            cache.
+	 */
+	public SegmentedLruCache(int maxSize)
+	{
+		this(maxSize, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * @param maxSize
+	 *            see {@link #SegmentedLruCache(int)}.
+	 * @param concurrencyLevel
+	 *            the estimated number of threads using the cache at the same
+	 *            time. It is rounded up to a power of two and capped at
+	 *            16 segments.
+	 */
+	@SuppressWarnings("unchecked")
+	public SegmentedLruCache(int maxSize, int concurrencyLevel)
+	{
+		if (maxSize <= 0)
+		{
+			throw new IllegalArgumentException("maxSize <= 0");
+		}
+		if (concurrencyLevel <= 0)
+		{
+			throw new IllegalArgumentException("concurrencyLevel <= 0");
+		}
+		int count = 1;
+		while (count < concurrencyLevel && count < MAX_SEGMENTS)
+		{
+			count <<= 1;
+		}
+		this.maxSize = maxSize;
+		this.maxProtectedSize = (int) (maxSize * PROTECTED_RATIO);
+		this.segmentMask = count - 1;
+		this.segments = new SegmentedLruCache.Segment[count];
+		for (int i = 0; i < count; i++)
+		{
+			segments[i] = new Segment();
+		}
+	}
+
+	/**
+	 * Returns the value for {@code key} if it exists in the cache or can be
+	 * created by {@code #create}. A value that is hit for the second time is
+	 * promoted to the protected region of its segment. This returns null if a
+	 * value is not cached and cannot be created.
+	 */
+	public final V get(K key)
+	{
+		if (key == null)
+		{
+			throw new NullPointerException("key == null");
+		}
+
+		Segment segment = segmentFor(key);
+		V mapValue = segment.get(key);
+		if (mapValue != null)
+		{
+			hitCount.incrementAndGet();
+			return mapValue;
+		}
+		missCount.incrementAndGet();
+
+		/*
+		 * Attempt to create a value. This may take a long time, and the
+		 * segment may be different when create() returns. If a conflicting
+		 * value was added while create() was working, we leave that value in
+		 * the cache and release the created value.
+		 */
+
+		V createdValue = create(key);
+		if (createdValue == null)
+		{
+			return null;
+		}
+
+		createCount.incrementAndGet();
+		List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>(0);
+		mapValue = segment.putIfAbsent(key, createdValue);
+		if (mapValue != null)
+		{
+			entryRemoved(false, key, createdValue, mapValue);
+			return mapValue;
+		}
+		trimToSize(evicted);
+		dispatchEvicted(evicted);
+		return createdValue;
+	}
+
+	/**
+	 * Caches {@code value} for {@code key}. A new key enters the probationary
+	 * region; replacing an existing key keeps it in its current region.
+	 *
+	 * @return the previous value mapped by {@code key}.
+	 */
+	public final V put(K key, V value)
+	{
+		if (key == null || value == null)
+		{
+			throw new NullPointerException("key == null || value == null");
+		}
+
+		putCount.incrementAndGet();
+		List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>(0);
+		V previous = segmentFor(key).put(key, value);
+		if (previous != null)
+		{
+			entryRemoved(false, key, previous, value);
+		}
+		trimToSize(evicted);
+		dispatchEvicted(evicted);
+		return previous;
+	}
+
+	/**
+	 * Removes the entry for {@code key} if it exists.
+	 *
+	 * @return the previous value mapped by {@code key}.
+	 */
+	public final V remove(K key)
+	{
+		if (key == null)
+		{
+			throw new NullPointerException("key == null");
+		}
+
+		V previous = segmentFor(key).remove(key);
+		if (previous != null)
+		{
+			entryRemoved(false, key, previous, null);
+		}
+		return previous;
+	}
+
+	/**
+	 * Called for entries that have been evicted or removed. This method is
+	 * invoked when a value is evicted to make space, removed by a call to
+	 * {@link #remove}, or replaced by a call to {@link #put}. The default
+	 * implementation does nothing.
+	 *
+	 * <p>
+	 * The method is called without holding any segment lock: other threads
+	 * may access the cache while this method is executing.
+	 *
+	 * @param evicted
+	 *            true if the entry is being removed to make space, false if the
+	 *            removal was caused by a {@link #put} or {@link #remove}.
+	 * @param newValue
+	 *            the new value for {@code key}, if it exists. If non-null, this
+	 *            removal was caused by a {@link #put}. Otherwise it was caused
+	 *            by an eviction or a {@link #remove}.
+	 */
+	protected void entryRemoved(boolean evicted, K key, V oldValue, V newValue)
+	{
+	}
+
+	/**
+	 * Called after a cache miss to compute a value for the corresponding key.
+	 * Returns the computed value or null if no value can be computed. The
+	 * default implementation returns null.
+	 *
+	 * <p>
+	 * The method is called without holding any segment lock. If a value for
+	 * {@code key} exists in the cache when this method returns, the created
+	 * value will be released with {@link #entryRemoved} and discarded.
+	 */
+	protected V create(K key)
+	{
+		return null;
+	}
+
+	/**
+	 * Returns the size of the entry for {@code key} and {@code value} in
+	 * user-defined units. The default implementation returns 1 so that size is
+	 * the number of entries and max size is the maximum number of entries.
+	 *
+	 * <p>
+	 * An entry's size must not change while it is in the cache.
+	 */
+	protected int sizeOf(K key, V value)
+	{
+		return 1;
+	}
+
+	private int safeSizeOf(K key, V value)
+	{
+		int result = sizeOf(key, value);
+		if (result < 0)
+		{
+			throw new IllegalStateException("Negative size: " + key + "="
+					+ value);
+		}
+		return result;
+	}
+
+	/**
+	 * Clear the cache, calling {@link #entryRemoved} on each removed entry.
+	 */
+	public final void evictAll()
+	{
+		for (Segment segment : segments)
+		{
+			List<Map.Entry<K, V>> evicted = new ArrayList<Map.Entry<K, V>>();
+			segment.clear(evicted);
+			dispatchEvicted(evicted);
+		}
+	}
+
+	/**
+	 * For caches that do not override {@link #sizeOf}, this returns the number
+	 * of entries in the cache. For all other caches, this returns the sum of
+	 * the sizes of the entries in this cache.
+	 */
+	public final int size()
+	{
+		return size.get();
+	}
+
+	/**
+	 * For caches that do not override {@link #sizeOf}, this returns the maximum
+	 * number of entries in the cache. For all other caches, this returns the
+	 * maximum sum of the sizes of the entries in this cache.
+	 */
+	public final int maxSize()
+	{
+		return maxSize;
+	}
+
+	/**
+	 * Returns the number of lock stripes this cache was created with.
+	 */
+	public final int segmentCount()
+	{
+		return segments.length;
+	}
+
+	/**
+	 * Returns the number of times {@link #get} returned a value.
+	 */
+	public final int hitCount()
+	{
+		return hitCount.get();
+	}
+
+	/**
+	 * Returns the number of times {@link #get} returned null or required a new
+	 * value to be created.
+	 */
+	public final int missCount()
+	{
+		return missCount.get();
+	}
+
+	/**
+	 * Returns the number of times {@link #create(Object)} returned a value.
+	 */
+	public final int createCount()
+	{
+		return createCount.get();
+	}
+
+	/**
+	 * Returns the number of times {@link #put} was called.
+	 */
+	public final int putCount()
+	{
+		return putCount.get();
+	}
+
+	/**
+	 * Returns the number of values that have been evicted.
+	 */
+	public final int evictionCount()
+	{
+		return evictionCount.get();
+	}
+
+	/**
+	 * Returns a copy of the current contents of the cache. Within a segment,
+	 * probationary entries come before protected ones and each region is
+	 * ordered from least to most recently accessed; segments are not ordered
+	 * relative to each other.
+	 */
+	public final Map<K, V> snapshot()
+	{
+		Map<K, V> copy = new LinkedHashMap<K, V>();
+		for (Segment segment : segments)
+		{
+			segment.copyTo(copy);
+		}
+		return copy;
+	}
+
+	@Override
+	public final String toString()
+	{
+		int hits = hitCount.get();
+		int accesses = hits + missCount.get();
+		int hitPercent = accesses != 0 ? (100 * hits / accesses) : 0;
+		return String.format(
+				"SegmentedLruCache[maxSize=%d,segments=%d,hits=%d,misses=%d,hitRate=%d%%]",
+				maxSize, segments.length, hits, accesses - hits, hitPercent);
+	}
+
+	private Segment segmentFor(K key)
+	{
+		// Spread the hash so keys with similar low bits still land apart.
+		int h = key.hashCode();
+		h ^= (h >>> 20) ^ (h >>> 12);
+		h ^= (h >>> 7) ^ (h >>> 4);
+		return segments[h & segmentMask];
+	}
+
+	/**
+	 * Evicts until the whole cache fits in {@code maxSize}. Probationary
+	 * entries are taken round-robin from all segments; protected entries only
+	 * go once a full round found no probationary entry. Concurrent callers may
+	 * evict a little more than needed, never less.
+	 */
+	private void trimToSize(List<Map.Entry<K, V>> evicted)
+	{
+		int misses = 0;
+		while (size.get() > maxSize && misses < 2 * segments.length)
+		{
+			Segment segment = segments[evictCursor.getAndIncrement()
+					& segmentMask];
+			if (segment.evictEldest(misses < segments.length, evicted))
+			{
+				misses = 0;
+			} else
+			{
+				misses++;
+			}
+		}
+	}
+
+	private void dispatchEvicted(List<Map.Entry<K, V>> evicted)
+	{
+		for (int i = 0, n = evicted.size(); i < n; i++)
+		{
+			Map.Entry<K, V> entry = evicted.get(i);
+			entryRemoved(true, entry.getKey(), entry.getValue(), null);
+		}
+	}
+
+	/**
+	 * One lock stripe. Both regions are access-ordered, so the eldest entry
+	 * of each map is its least recently used one. The segment sizes are
+	 * mirrored into the cache-wide counters under the segment lock.
+	 */
+	private final class Segment
+	{
+		private final LinkedHashMap<K, V> probation = new LinkedHashMap<K, V>(
+				0, 0.75f, true);
+		private final LinkedHashMap<K, V> protectedRegion = new LinkedHashMap<K, V>(
+				0, 0.75f, true);
+		private int probationSize;
+		private int protectedSize;
+
+		synchronized V get(K key)
+		{
+			V value = protectedRegion.get(key);
+			if (value != null)
+			{
+				return value;
+			}
+			value = probation.remove(key);
+			if (value == null)
+			{
+				return null;
+			}
+			// Second hit: promote, and demote protected overflow back to the
+			// most recently used end of the probationary region.
+			int entrySize = safeSizeOf(key, value);
+			probationSize -= entrySize;
+			protectedRegion.put(key, value);
+			addProtected(entrySize);
+			Iterator<Map.Entry<K, V>> it = protectedRegion.entrySet()
+					.iterator();
+			while (SegmentedLruCache.this.protectedSize.get() > maxProtectedSize
+					&& protectedRegion.size() > 1)
+			{
+				Map.Entry<K, V> eldest = it.next();
+				int eldestSize = safeSizeOf(eldest.getKey(), eldest.getValue());
+				it.remove();
+				addProtected(-eldestSize);
+				probation.put(eldest.getKey(), eldest.getValue());
+				probationSize += eldestSize;
+			}
+			return value;
+		}
+
+		synchronized V put(K key, V value)
+		{
+			int entrySize = safeSizeOf(key, value);
+			V previous;
+			if (protectedRegion.containsKey(key))
+			{
+				previous = protectedRegion.put(key, value);
+				int delta = entrySize - safeSizeOf(key, previous);
+				addProtected(delta);
+				size.addAndGet(delta);
+			} else
+			{
+				previous = probation.put(key, value);
+				int delta = entrySize;
+				if (previous != null)
+				{
+					delta -= safeSizeOf(key, previous);
+				}
+				probationSize += delta;
+				size.addAndGet(delta);
+			}
+			return previous;
+		}
+
+		synchronized V putIfAbsent(K key, V value)
+		{
+			V existing = protectedRegion.get(key);
+			if (existing == null)
+			{
+				existing = probation.get(key);
+			}
+			if (existing != null)
+			{
+				return existing;
+			}
+			probation.put(key, value);
+			int entrySize = safeSizeOf(key, value);
+			probationSize += entrySize;
+			size.addAndGet(entrySize);
+			return null;
+		}
+
+		synchronized V remove(K key)
+		{
+			V previous = protectedRegion.remove(key);
+			if (previous != null)
+			{
+				int entrySize = safeSizeOf(key, previous);
+				addProtected(-entrySize);
+				size.addAndGet(-entrySize);
+				return previous;
+			}
+			previous = probation.remove(key);
+			if (previous != null)
+			{
+				int entrySize = safeSizeOf(key, previous);
+				probationSize -= entrySize;
+				size.addAndGet(-entrySize);
+			}
+			return previous;
+		}
+
+		/**
+		 * Evicts the least recently used probationary entry, or the least
+		 * recently used protected one if allowed and probation is empty.
+		 * Evicted entries are collected so the caller can report them after
+		 * the lock is released.
+		 *
+		 * @return false if there was nothing to evict.
+		 */
+		synchronized boolean evictEldest(boolean probationOnly,
+				List<Map.Entry<K, V>> evicted)
+		{
+			checkSizes();
+			LinkedHashMap<K, V> region;
+			if (!probation.isEmpty())
+			{
+				region = probation;
+			} else if (!probationOnly && !protectedRegion.isEmpty())
+			{
+				region = protectedRegion;
+			} else
+			{
+				return false;
+			}
+			Map.Entry<K, V> toEvict = region.entrySet().iterator().next();
+			K key = toEvict.getKey();
+			V value = toEvict.getValue();
+			region.remove(key);
+			int entrySize = safeSizeOf(key, value);
+			if (region == probation)
+			{
+				probationSize -= entrySize;
+			} else
+			{
+				addProtected(-entrySize);
+			}
+			size.addAndGet(-entrySize);
+			evictionCount.incrementAndGet();
+			evicted.add(new EvictedEntry<K, V>(key, value));
+			return true;
+		}
+
+		synchronized void clear(List<Map.Entry<K, V>> evicted)
+		{
+			while (evictEldest(false, evicted))
+			{
+				// keep going until both regions are empty
+			}
+			checkSizes();
+		}
+
+		private void addProtected(int delta)
+		{
+			protectedSize += delta;
+			SegmentedLruCache.this.protectedSize.addAndGet(delta);
+		}
+
+		private void checkSizes()
+		{
+			if (probationSize < 0 || protectedSize < 0
+					|| (probation.isEmpty() && probationSize != 0)
+					|| (protectedRegion.isEmpty() && protectedSize != 0))
+			{
+				throw new IllegalStateException(SegmentedLruCache.this
+						.getClass().getName()
+						+ ".sizeOf() is reporting inconsistent results!");
+			}
+		}
+
+		synchronized void copyTo(Map<K, V> copy)
+		{
+			copy.putAll(probation);
+			copy.putAll(protectedRegion);
+		}
+	}
+
+	private static final class EvictedEntry<K, V> implements Map.Entry<K, V>
+	{
+		private final K key;
+		private final V value;
+
+		EvictedEntry(K key, V value)
+		{
+			this.key = key;
+			this.value = value;
+		}
+
+		@Override
+		public K getKey()
+		{
+			return key;
+		}
+
+		@Override
+		public V getValue()
+		{
+			return value;
+		}
+
+		@Override
+		public V setValue(V value)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+}
@@ -15,11 +15,9 @@
  */
 package com.ta.util.db.util.sql;
 
-import java.lang.reflect.Field;
-
 import com.ta.exception.TADBException;
 import com.ta.util.db.entity.TAArrayList;
-import com.ta.util.db.util.TADBUtils;
+import com.ta.util.db.util.TAEntityMapper;
 
 /**
  * @Title TASqlBuilder
@@ -63,33 +61,9 @@ public class TADeleteSqlBuilder extends TASqlBuilder
 			throws IllegalArgumentException, IllegalAccessException,
 			TADBException
 	{
-		Class<?> clazz = entity.getClass();
-		TAArrayList whereArrayList = new TAArrayList();
-		Field[] fields = clazz.getDeclaredFields();
-		for (Field field : fields)
-		{
-			field.setAccessible(true);
-			if (!TADBUtils.isTransient(field))
-			{
-				if (TADBUtils.isBaseDateType(field))
-				{
-					// 如果ID不是自动增加的
-					if (!TADBUtils.isAutoIncrement(field))
-					{
-						String columnName = TADBUtils.getColumnByField(field);
-						if (null != field.get(entity)
-								&& field.get(entity).toString().length() > 0)
-						{
-							whereArrayList.add(
-									(columnName != null && !columnName
-											.equals("")) ? columnName : field
-											.getName(), field.get(entity)
-											.toString());
-						}
-					}
-				}
-			}
-		}
+		// 非自增字段中不为null也不为空字符串的都作为条件
+		TAArrayList whereArrayList = TAEntityMapper.getInstance(
+				entity.getClass()).getConditionFieldsAndValue(entity);
 		if (whereArrayList.isEmpty())
 		{
 			throw new TADBException("不能创建Where条件，语句");
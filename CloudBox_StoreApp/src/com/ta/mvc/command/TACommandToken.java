@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2013  WhiteCat 白猫 (www.thinkandroid.cn)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ta.mvc.command;
+
+/**
+ * @Title TACommandToken
+ * @package com.ta.mvc.command
+ * @Description 命令入列后返回的取消令牌。还在队列中的命令取消后不会再执行；正在执行的命令会被标记为
+ *              terminated，由命令自己通过 {@link TAICommand#isTerminated()} 决定何时退出
+ * @author 白猫
+ * @date 2013-1-16 下午 16:51
+ * @version V1.0
+ */
+public class TACommandToken
+{
+	private final TAICommand command;
+	private volatile boolean cancelled = false;
+
+	TACommandToken(TAICommand command)
+	{
+		this.command = command;
+	}
+
+	/**
+	 * 取消命令
+	 */
+	public void cancel()
+	{
+		cancelled = true;
+		command.setTerminated(true);
+	}
+
+	public boolean isCancelled()
+	{
+		return cancelled;
+	}
+
+	public TAICommand getCommand()
+	{
+		return command;
+	}
+}
@@ -15,15 +15,12 @@
  */
 package com.ta.util.db.util.sql;
 
-import java.lang.reflect.Field;
-
 import org.apache.http.NameValuePair;
 
 import com.ta.common.TAStringUtils;
 import com.ta.exception.TADBException;
-import com.ta.util.db.annotation.TAPrimaryKey;
 import com.ta.util.db.entity.TAArrayList;
-import com.ta.util.db.util.TADBUtils;
+import com.ta.util.db.util.TAEntityMapper;
 
 /**
  * @Title TASqlBuilder
@@ -96,41 +93,11 @@ public class TAInsertSqlBuilder extends TASqlBuilder
 			throws TADBException, IllegalArgumentException,
 			IllegalAccessException
 	{
-		// TODO Auto-generated method stub
-		TAArrayList arrayList = new TAArrayList();
 		if (entity == null)
 		{
 			throw new TADBException("没有加载实体类！");
 		}
-		Class<?> clazz = entity.getClass();
-		Field[] fields = clazz.getDeclaredFields();
-		for (Field field : fields)
-		{
-
-			if (!TADBUtils.isTransient(field))
-			{
-				if (TADBUtils.isBaseDateType(field))
-				{
-					TAPrimaryKey annotation = field
-							.getAnnotation(TAPrimaryKey.class);
-					if (annotation != null && annotation.autoIncrement())
-					{
-
-					} else
-					{
-						String columnName = TADBUtils.getColumnByField(field);
-						field.setAccessible(true);
-						arrayList
-								.add((columnName != null && !columnName
-										.equals("")) ? columnName : field
-										.getName(),
-										field.get(entity) == null ? null
-												: field.get(entity).toString());
-					}
-
-				}
-			}
-		}
-		return arrayList;
+		return TAEntityMapper.getInstance(entity.getClass())
+				.getFieldsAndValue(entity);
 	}
 }
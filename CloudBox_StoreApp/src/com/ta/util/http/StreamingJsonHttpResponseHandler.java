@@ -0,0 +1,116 @@
+package com.ta.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+
+import org.apache.http.Header;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Parses a JSON response incrementally instead of building the whole tree.
+ * Each element of the streamed array is handed to {@link #onJsonElement}
+ * on the request thread as soon as it has been read, so a long list costs
+ * one element of memory rather than the full document.
+ * <p>
+ * The streamed array is either the top-level value or, with
+ * {@link #StreamingJsonHttpResponseHandler(String)}, the value of a field of
+ * the top-level object. Any other top-level fields are collected into the
+ * envelope passed to {@link #onStreamSuccess}.
+ */
+public abstract class StreamingJsonHttpResponseHandler extends
+		StreamingHttpResponseHandler<JSONObject>
+{
+	private final String arrayField;
+
+	/**
+	 * Streams the elements of a top-level JSON array.
+	 */
+	public StreamingJsonHttpResponseHandler()
+	{
+		this(null);
+	}
+
+	/**
+	 * Streams the elements of the array stored under {@code arrayField} in
+	 * the top-level object.
+	 */
+	public StreamingJsonHttpResponseHandler(String arrayField)
+	{
+		super();
+		this.arrayField = arrayField;
+	}
+
+	/**
+	 * Called on the request thread for each element of the streamed array.
+	 *
+	 * @param element
+	 *            a {@link JSONObject}, {@link org.json.JSONArray},
+	 *            {@code String}, {@code Long}, {@code Double},
+	 *            {@code Boolean} or {@link JSONObject#NULL}
+	 */
+	protected abstract void onJsonElement(Object element) throws IOException;
+
+	@Override
+	protected JSONObject onReceiveStream(int statusCode, Header[] headers,
+			InputStream content, long contentLength) throws IOException
+	{
+		JsonStreamReader reader = new JsonStreamReader(new InputStreamReader(
+				content, "UTF-8"));
+		JSONObject envelope = new JSONObject();
+		int token = reader.next();
+		if (arrayField == null)
+		{
+			streamArray(reader, token);
+			return envelope;
+		}
+		if (token != JsonStreamReader.BEGIN_OBJECT)
+		{
+			throw new IOException("Expected a JSON object");
+		}
+		try
+		{
+			for (token = reader.next(); token != JsonStreamReader.END_OBJECT; token = reader
+					.next())
+			{
+				String name = reader.getText();
+				int valueToken = reader.next();
+				if (arrayField.equals(name))
+				{
+					streamArray(reader, valueToken);
+				} else
+				{
+					envelope.put(name, reader.readValue(valueToken));
+				}
+			}
+		} catch (JSONException e)
+		{
+			throw new IOException(e.getMessage());
+		}
+		return envelope;
+	}
+
+	private void streamArray(JsonStreamReader reader, int token)
+			throws IOException
+	{
+		if (token == JsonStreamReader.NULL)
+		{
+			return;
+		}
+		if (token != JsonStreamReader.BEGIN_ARRAY)
+		{
+			throw new IOException("Expected a JSON array");
+		}
+		for (token = reader.next(); token != JsonStreamReader.END_ARRAY; token = reader
+				.next())
+		{
+			if (Thread.currentThread().isInterrupted())
+			{
+				throw new InterruptedIOException("request cancelled");
+			}
+			onJsonElement(reader.readValue(token));
+		}
+	}
+}
@@ -12,18 +12,34 @@ import fq.router2.life_cycle.ExitService;
 import fq.router2.utils.LogUtils;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.SocketChannel;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 @SuppressLint("NewApi")
 public class SocksVpnService extends VpnService {
 
+    private final static int FD_THREADS = 16;
+    // requests beyond this are dropped instead of queueing behind each other
+    private final static int FD_QUEUE_SIZE = 256;
+    private final static int MAX_PENDING_CONNECTS = 256;
+    private final static int MAX_CONNECTS_PER_DESTINATION = 8;
+    private final static int UDP_SOCKET_POOL_SIZE = 8;
+
     private static ParcelFileDescriptor tunPFD;
     private Set<String> skippedFds = new HashSet<String>();
     private Set<Integer> stagingFds = new HashSet<Integer>();
+    private final BlockingQueue<DatagramSocket> udpSocketPool =
+            new ArrayBlockingQueue<DatagramSocket>(UDP_SOCKET_POOL_SIZE);
+    // a socket created while the fd gc lists /proc/self/fd would be staged and closed in the pool
+    private final Object udpSocketPoolLock = new Object();
+    private TcpConnector tcpConnector;
 
     @Override
     public void onStart(Intent intent, int startId) {
@@ -123,38 +139,107 @@ public class SocksVpnService extends VpnService {
         }
     }
 
+    private boolean protectSocket(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true); // force file descriptor being created
+        } catch (SocketException e) {
+            return false;
+        }
+        return protect(socket);
+    }
+
     private void listenFdServerSocket(final FileDescriptor tunFD) throws Exception {
         final LocalServerSocket fdServerSocket = new LocalServerSocket("fdsock2");
+        ThreadPoolExecutor executorService = new ThreadPoolExecutor(FD_THREADS, FD_THREADS,
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(FD_QUEUE_SIZE));
+        // connects wait on the selector, pool threads only parse requests and pass fds
+        tcpConnector = new TcpConnector(new TcpConnector.Protector() {
+            @Override
+            public boolean protect(Socket socket) {
+                return protectSocket(socket);
+            }
+        }, executorService, MAX_PENDING_CONNECTS, MAX_CONNECTS_PER_DESTINATION);
         try {
-            ExecutorService executorService = Executors.newFixedThreadPool(16);
+            tcpConnector.start();
+            refillUdpSocketPool();
             int count = 0;
             while (isRunning()) {
                 try {
                     final LocalSocket fdSocket = fdServerSocket.accept();
-                    executorService.submit(new Runnable() {
-                        @Override
-                        public void run() {
-                            try {
-                                passFileDescriptor(fdSocket, tunFD);
-                            } catch (Exception e) {
-                                LogUtils.e("failed to handle fdsock", e);
+                    try {
+                        executorService.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    passFileDescriptor(fdSocket, tunFD);
+                                } catch (Exception e) {
+                                    LogUtils.e("failed to handle fdsock", e);
+                                }
                             }
-                        }
-                    });
+                        });
+                    } catch (RejectedExecutionException e) {
+                        LogUtils.e("fdsock queue is full, queued: " + executorService.getQueue().size());
+                        fdSocket.close();
+                    }
                     count += 1;
                     if (count % 200 == 0) {
-                        garbageCollectFds();
+                        LogUtils.i("fdsock queued: " + executorService.getQueue().size()
+                                + ", tcp connector: " + tcpConnector.getStats());
+                        // pooled sockets are not leaked, keep them out of the fd gc
+                        synchronized (udpSocketPoolLock) {
+                            clearUdpSocketPool();
+                            garbageCollectFds();
+                            refillUdpSocketPool();
+                        }
                     }
                 } catch (Exception e) {
                     LogUtils.e("failed to handle fdsock", e);
                 }
             }
-            executorService.shutdown();
         } finally {
+            tcpConnector.stop();
+            executorService.shutdown();
+            clearUdpSocketPool();
             fdServerSocket.close();
         }
     }
 
+    private void refillUdpSocketPool() {
+        synchronized (udpSocketPoolLock) {
+            while (udpSocketPool.remainingCapacity() > 0) {
+                DatagramSocket sock = newProtectedUdpSocket();
+                if (sock == null) {
+                    return;
+                }
+                if (!udpSocketPool.offer(sock)) {
+                    sock.close();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void clearUdpSocketPool() {
+        DatagramSocket sock;
+        while ((sock = udpSocketPool.poll()) != null) {
+            sock.close();
+        }
+    }
+
+    private DatagramSocket newProtectedUdpSocket() {
+        try {
+            DatagramSocket sock = new DatagramSocket();
+            if (protect(sock)) {
+                return sock;
+            }
+            sock.close();
+            LogUtils.e("protect udp socket failed");
+        } catch (SocketException e) {
+            LogUtils.e("failed to create udp socket", e);
+        }
+        return null;
+    }
+
     private void garbageCollectFds() {
         if (listFds() == null) {
             LogUtils.e("can not gc fd as can not list them");
@@ -219,6 +304,7 @@ public class SocksVpnService extends VpnService {
     private void passFileDescriptor(LocalSocket fdSocket, FileDescriptor tunFD) throws Exception {
         OutputStream outputStream = fdSocket.getOutputStream();
         InputStream inputStream = fdSocket.getInputStream();
+        boolean handedOver = false;
         try {
             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream), 1);
             String request = reader.readLine();
@@ -236,79 +322,103 @@ public class SocksVpnService extends VpnService {
                 String dstIp = parts[1];
                 int dstPort = Integer.parseInt(parts[2]);
                 int connectTimeout = Integer.parseInt(parts[3]);
-                passTcpFileDescriptor(fdSocket, outputStream, dstIp, dstPort, connectTimeout);
+                passTcpFileDescriptor(fdSocket, inputStream, outputStream, dstIp, dstPort, connectTimeout);
+                handedOver = true;
             } else {
                 throw new UnsupportedOperationException("fdsock unable to handle: " + request);
             }
         } finally {
-            try {
-                inputStream.close();
-            } catch (Exception e) {
-                LogUtils.e("failed to close input stream", e);
-            }
-            try {
-                outputStream.close();
-            } catch (Exception e) {
-                LogUtils.e("failed to close output stream", e);
+            if (!handedOver) {
+                closeFdSocket(fdSocket, inputStream, outputStream);
             }
+        }
+    }
+
+    private void closeFdSocket(LocalSocket fdSocket, InputStream inputStream, OutputStream outputStream) {
+        try {
+            inputStream.close();
+        } catch (Exception e) {
+            LogUtils.e("failed to close input stream", e);
+        }
+        try {
+            outputStream.close();
+        } catch (Exception e) {
+            LogUtils.e("failed to close output stream", e);
+        }
+        try {
             fdSocket.close();
+        } catch (Exception e) {
+            LogUtils.e("failed to close fdsock", e);
         }
     }
 
+    /**
+     * Returns at once, the reply is written and the fdsock closed when the connect completes.
+     */
     private void passTcpFileDescriptor(
-            LocalSocket fdSocket, OutputStream outputStream,
-            String dstIp, int dstPort, int connectTimeout) throws Exception {
-        Socket sock = new Socket();
-        sock.setTcpNoDelay(true); // force file descriptor being created
-        try {
-            ParcelFileDescriptor fd = ParcelFileDescriptor.fromSocket(sock);
-            if (protect(fd.getFd())) {
+            final LocalSocket fdSocket, final InputStream inputStream, final OutputStream outputStream,
+            String dstIp, int dstPort, int connectTimeout) {
+        tcpConnector.connect(dstIp, dstPort, connectTimeout, new TcpConnector.Callback() {
+            @Override
+            public void onConnected(SocketChannel channel) {
                 try {
-                    sock.connect(new InetSocketAddress(dstIp, dstPort), connectTimeout);
+                    ParcelFileDescriptor fd = ParcelFileDescriptor.fromSocket(channel.socket());
                     try {
                         fdSocket.setFileDescriptorsForSend(new FileDescriptor[]{fd.getFileDescriptor()});
                         outputStream.write('*');
                         outputStream.flush();
                     } finally {
-                        sock.close();
                         fd.close();
                     }
-                } catch (ConnectException e) {
-                    LogUtils.e("connect " + dstIp + ":" + dstPort + " failed");
-                    outputStream.write('!');
-                } catch (SocketTimeoutException e) {
-                    LogUtils.e("connect " + dstIp + ":" + dstPort + " failed");
-                    outputStream.write('!');
+                } catch (Exception e) {
+                    LogUtils.e("failed to pass tcp fd", e);
                 } finally {
+                    try {
+                        channel.close();
+                    } catch (IOException e) {
+                        // ignore
+                    }
+                    closeFdSocket(fdSocket, inputStream, outputStream);
+                }
+            }
+
+            @Override
+            public void onFailed(String reason) {
+                LogUtils.e(reason);
+                try {
+                    outputStream.write('!');
                     outputStream.flush();
+                } catch (Exception e) {
+                    LogUtils.e("failed to reply fdsock", e);
+                } finally {
+                    closeFdSocket(fdSocket, inputStream, outputStream);
                 }
-            } else {
-                LogUtils.e("protect tcp socket failed");
             }
-        } finally {
-            sock.close();
-        }
+        });
     }
 
     private void passUdpFileDescriptor(LocalSocket fdSocket, OutputStream outputStream) throws Exception {
-        DatagramSocket sock = new DatagramSocket();
+        DatagramSocket sock = udpSocketPool.poll();
+        if (sock == null) {
+            sock = newProtectedUdpSocket();
+            if (sock == null) {
+                return;
+            }
+        }
         try {
             ParcelFileDescriptor fd = ParcelFileDescriptor.fromDatagramSocket(sock);
-            if (protect(fd.getFd())) {
-                try {
-                    fdSocket.setFileDescriptorsForSend(new FileDescriptor[]{fd.getFileDescriptor()});
-                    outputStream.write('*');
-                    outputStream.flush();
-                } finally {
-                    sock.close();
-                    fd.close();
-                }
-            } else {
-                LogUtils.e("protect udp socket failed");
+            try {
+                fdSocket.setFileDescriptorsForSend(new FileDescriptor[]{fd.getFileDescriptor()});
+                outputStream.write('*');
+                outputStream.flush();
+            } finally {
+                fd.close();
             }
         } finally {
             sock.close();
         }
+        // replied already, the next request finds a warm socket
+        refillUdpSocketPool();
     }
 
 
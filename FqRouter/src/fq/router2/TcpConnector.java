@@ -0,0 +1,421 @@
+package fq.router2;
+
+import fq.router2.utils.LogUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Opens protected TCP connections for the fd broker without tying up a thread per connect.
+ * <p/>
+ * All connects run non-blocking on one selector thread. Each destination gets at most a few
+ * connects in flight, the rest wait in line with their own deadline, and the total number of
+ * outstanding requests is bounded so a burst to slow hosts fails fast instead of piling up.
+ * Callbacks run on the given executor, with the channel back in blocking mode.
+ */
+class TcpConnector {
+
+    private final static int LATENCY_BUCKETS = 16; // 1ms .. 32s, powers of two
+
+    interface Protector {
+        boolean protect(Socket socket);
+    }
+
+    interface Callback {
+        /**
+         * The callback owns the channel and must close it.
+         */
+        void onConnected(SocketChannel channel);
+
+        void onFailed(String reason);
+    }
+
+    private static class Request {
+        final InetSocketAddress address;
+        final String destination;
+        final long startedAt;
+        final long deadline;
+        final Callback callback;
+        SocketChannel channel;
+        SelectionKey key;
+        boolean connected;
+        boolean timedOut;
+        String failure;
+
+        Request(InetSocketAddress address, int timeout, Callback callback) {
+            this.address = address;
+            this.destination = address.getAddress().getHostAddress() + ":" + address.getPort();
+            this.startedAt = System.currentTimeMillis();
+            // like Socket.connect, no timeout means wait as long as it takes
+            this.deadline = timeout > 0 ? startedAt + timeout : Long.MAX_VALUE;
+            this.callback = callback;
+        }
+    }
+
+    private static class Destination {
+        int active;
+        final LinkedList<Request> waiting = new LinkedList<Request>();
+    }
+
+    private final Protector protector;
+    private final Executor callbackExecutor;
+    private final int maxOutstanding;
+    private final int maxPerDestination;
+    private final ConcurrentLinkedQueue<Request> incoming = new ConcurrentLinkedQueue<Request>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    // owned by the selector thread
+    private final Map<String, Destination> destinations = new HashMap<String, Destination>();
+    private final List<Request> connecting = new LinkedList<Request>();
+    private Selector selector;
+    private volatile boolean running;
+
+    // metrics
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS);
+    private final AtomicInteger connectedCount = new AtomicInteger();
+    private final AtomicInteger failedCount = new AtomicInteger();
+    private final AtomicInteger timedOutCount = new AtomicInteger();
+    private final AtomicInteger rejectedCount = new AtomicInteger();
+    private final AtomicInteger maxWaitingSeen = new AtomicInteger();
+    private volatile int waitingCount;
+
+    TcpConnector(Protector protector, Executor callbackExecutor, int maxOutstanding, int maxPerDestination) {
+        this.protector = protector;
+        this.callbackExecutor = callbackExecutor;
+        this.maxOutstanding = maxOutstanding;
+        this.maxPerDestination = maxPerDestination;
+    }
+
+    synchronized void start() throws IOException {
+        if (running) {
+            return;
+        }
+        selector = Selector.open();
+        running = true;
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    loop();
+                } catch (Exception e) {
+                    LogUtils.e("tcp connector failed", e);
+                } finally {
+                    shutdown();
+                }
+            }
+        }, "tcp-connector").start();
+    }
+
+    void stop() {
+        running = false;
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Never blocks, the callback is always called exactly once.
+     */
+    void connect(String ip, int port, int timeout, Callback callback) {
+        Request request = new Request(new InetSocketAddress(ip, port), timeout, callback);
+        if (!running) {
+            complete(request, "connector stopped");
+            return;
+        }
+        if (outstanding.incrementAndGet() > maxOutstanding) {
+            outstanding.decrementAndGet();
+            rejectedCount.incrementAndGet();
+            complete(request, "too many pending connects");
+            return;
+        }
+        incoming.add(request);
+        selector.wakeup();
+        if (!running) {
+            // stopped meanwhile, the selector thread may have drained the queue already
+            Request left;
+            while ((left = incoming.poll()) != null) {
+                complete(left, "connector stopped");
+            }
+        }
+    }
+
+    /**
+     * @return connect latency percentiles, outcome counts and queue depth
+     */
+    String getStats() {
+        long[] counts = new long[LATENCY_BUCKETS];
+        long total = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            counts[i] = latencyBuckets.get(i);
+            total += counts[i];
+        }
+        return "connected=" + connectedCount.get() + " failed=" + failedCount.get()
+                + " timed_out=" + timedOutCount.get() + " rejected=" + rejectedCount.get()
+                + " outstanding=" + outstanding.get() + " waiting=" + waitingCount
+                + " max_waiting=" + maxWaitingSeen.get()
+                + " p50<=" + percentile(counts, total, 50) + "ms"
+                + " p90<=" + percentile(counts, total, 90) + "ms"
+                + " p99<=" + percentile(counts, total, 99) + "ms";
+    }
+
+    private static long percentile(long[] counts, long total, int percentile) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = (total * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < LATENCY_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return 1L << i;
+            }
+        }
+        return 1L << (LATENCY_BUCKETS - 1);
+    }
+
+    private void loop() throws IOException {
+        List<Request> finished = new ArrayList<Request>();
+        while (running) {
+            Request request;
+            while ((request = incoming.poll()) != null) {
+                enqueue(request, finished);
+            }
+            long timeout = getSelectTimeout();
+            if (!finished.isEmpty() || !selector.selectedKeys().isEmpty()) {
+                selector.selectNow();
+            } else {
+                selector.select(timeout);
+            }
+            Iterator<SelectionKey> iterator = selector.selectedKeys().iterator();
+            while (iterator.hasNext()) {
+                SelectionKey key = iterator.next();
+                iterator.remove();
+                Request pending = (Request) key.attachment();
+                try {
+                    if (key.isValid() && key.isConnectable() && pending.channel.finishConnect()) {
+                        pending.connected = true;
+                        finish(pending, finished);
+                    }
+                } catch (IOException e) {
+                    pending.failure = "connect " + pending.destination + " failed: " + e;
+                    finish(pending, finished);
+                }
+            }
+            expire(finished);
+            if (!finished.isEmpty()) {
+                // cancelled keys are only released by the next select, blocking mode needs that
+                selector.selectNow();
+                for (Request done : finished) {
+                    dispatch(done);
+                }
+                finished.clear();
+            }
+        }
+    }
+
+    /**
+     * @return millis until the nearest deadline, 0 to wait for a wakeup
+     */
+    private long getSelectTimeout() {
+        long now = System.currentTimeMillis();
+        long nearest = Long.MAX_VALUE;
+        for (Request pending : connecting) {
+            nearest = Math.min(nearest, pending.deadline);
+        }
+        for (Destination destination : destinations.values()) {
+            for (Request waiting : destination.waiting) {
+                nearest = Math.min(nearest, waiting.deadline);
+            }
+        }
+        return nearest == Long.MAX_VALUE ? 0 : Math.max(1, nearest - now);
+    }
+
+    private void enqueue(Request request, List<Request> finished) {
+        Destination destination = destinations.get(request.destination);
+        if (destination == null) {
+            destination = new Destination();
+            destinations.put(request.destination, destination);
+        }
+        if (destination.active < maxPerDestination) {
+            begin(request, destination, finished);
+        } else {
+            destination.waiting.add(request);
+            waitingCount++;
+            int max;
+            do {
+                max = maxWaitingSeen.get();
+            } while (waitingCount > max && !maxWaitingSeen.compareAndSet(max, waitingCount));
+        }
+    }
+
+    private void begin(Request request, Destination destination, List<Request> finished) {
+        destination.active++;
+        connecting.add(request);
+        try {
+            SocketChannel channel = SocketChannel.open();
+            request.channel = channel;
+            channel.configureBlocking(false);
+            if (!protector.protect(channel.socket())) {
+                request.failure = "protect tcp socket failed";
+                finish(request, finished);
+                return;
+            }
+            if (channel.connect(request.address)) {
+                request.connected = true;
+                finish(request, finished);
+                return;
+            }
+            request.key = channel.register(selector, SelectionKey.OP_CONNECT, request);
+        } catch (IOException e) {
+            request.failure = "connect " + request.destination + " failed: " + e;
+            finish(request, finished);
+        }
+    }
+
+    private void expire(List<Request> finished) {
+        long now = System.currentTimeMillis();
+        for (Request pending : new ArrayList<Request>(connecting)) {
+            if (now >= pending.deadline) {
+                pending.failure = "connect " + pending.destination + " timed out";
+                pending.timedOut = true;
+                finish(pending, finished);
+            }
+        }
+        Iterator<Destination> destinationIterator = destinations.values().iterator();
+        while (destinationIterator.hasNext()) {
+            Destination destination = destinationIterator.next();
+            Iterator<Request> iterator = destination.waiting.iterator();
+            while (iterator.hasNext()) {
+                Request waiting = iterator.next();
+                if (now >= waiting.deadline) {
+                    iterator.remove();
+                    waitingCount--;
+                    waiting.failure = "connect " + waiting.destination + " timed out waiting";
+                    waiting.timedOut = true;
+                    finished.add(waiting);
+                }
+            }
+            if (destination.active == 0 && destination.waiting.isEmpty()) {
+                destinationIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Frees the destination slot and lets the next waiting request start.
+     */
+    private void finish(Request request, List<Request> finished) {
+        if (!connecting.remove(request)) {
+            return;
+        }
+        if (request.key != null) {
+            request.key.cancel();
+        }
+        finished.add(request);
+        Destination destination = destinations.get(request.destination);
+        destination.active--;
+        Request next = destination.waiting.poll();
+        if (next != null) {
+            waitingCount--;
+            begin(next, destination, finished);
+        }
+    }
+
+    private void dispatch(final Request request) {
+        if (request.connected) {
+            try {
+                request.channel.configureBlocking(true);
+            } catch (IOException e) {
+                request.connected = false;
+                request.failure = "connect " + request.destination + " failed: " + e;
+            }
+        }
+        if (request.connected) {
+            long latency = System.currentTimeMillis() - request.startedAt;
+            latencyBuckets.incrementAndGet(Math.min(LATENCY_BUCKETS - 1,
+                    64 - Long.numberOfLeadingZeros(Math.max(0, latency - 1))));
+            connectedCount.incrementAndGet();
+        } else {
+            closeQuietly(request.channel);
+            if (request.timedOut) {
+                timedOutCount.incrementAndGet();
+            } else {
+                failedCount.incrementAndGet();
+            }
+        }
+        outstanding.decrementAndGet();
+        try {
+            callbackExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (request.connected) {
+                        request.callback.onConnected(request.channel);
+                    } else {
+                        request.callback.onFailed(request.failure);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the pool is saturated or shut down, still answer the fdsock so it gets closed
+            closeQuietly(request.channel);
+            complete(request, "connect " + request.destination + " dropped: callback rejected");
+        }
+    }
+
+    private void complete(Request request, String failure) {
+        try {
+            request.callback.onFailed(failure);
+        } catch (Exception e) {
+            LogUtils.e("tcp connector callback failed", e);
+        }
+    }
+
+    private void shutdown() {
+        running = false;
+        for (Request pending : connecting) {
+            closeQuietly(pending.channel);
+            complete(pending, "connector stopped");
+        }
+        connecting.clear();
+        for (Destination destination : destinations.values()) {
+            for (Request waiting : destination.waiting) {
+                complete(waiting, "connector stopped");
+            }
+        }
+        destinations.clear();
+        Request request;
+        while ((request = incoming.poll()) != null) {
+            complete(request, "connector stopped");
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
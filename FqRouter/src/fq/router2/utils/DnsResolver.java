@@ -0,0 +1,445 @@
+package fq.router2.utils;
+
+import net.sf.ivmaidns.dns.DNSConnection;
+import net.sf.ivmaidns.dns.DNSMsgHeader;
+import net.sf.ivmaidns.dns.DNSName;
+import net.sf.ivmaidns.dns.DNSRecord;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Resolves names against a list of upstream servers.
+ * <p/>
+ * Each round sends the same UDP query to the few healthiest servers at once from one socket
+ * and takes the first clean answer; answers that fail the filter (e.g. injected or empty
+ * addresses) are skipped while the round keeps waiting. Truncated answers fall back to TCP on the same
+ * server, and when no server answers over UDP at all every server is tried over TCP.
+ * Answers are cached for their TTL, negative answers for the SOA minimum, and concurrent
+ * lookups of the same name share one query.
+ */
+public class DnsResolver {
+
+    private final static int MIN_TTL = 60;
+    private final static int MAX_TTL = 3600;
+    private final static int DEFAULT_NEGATIVE_TTL = 60;
+    private final static int MAX_NEGATIVE_TTL = 300;
+    private final static int MAX_CACHE_SIZE = 512;
+    private final static int UDP_PACKET_LEN = 2048;
+    // a server that timed out is ranked last for this long, then gets another chance
+    private final static long FAILURE_PENALTY_MILLIS = 60 * 1000;
+
+    public interface AnswerFilter {
+        /**
+         * Called for every NOERROR or NXDOMAIN answer, values is empty for a negative one.
+         *
+         * @return false if the answer looks forged and the round should keep waiting
+         */
+        boolean isClean(int type, List<Object> values);
+    }
+
+    private static class ServerState {
+        final InetSocketAddress address;
+        final int index;
+        // smoothed round trip time, starts optimistic so untried servers get used
+        volatile long rttMillis = 100;
+        volatile int failures;
+        volatile long lastFailureAt;
+
+        ServerState(InetSocketAddress address, int index) {
+            this.address = address;
+            this.index = index;
+        }
+
+        long score(long now) {
+            if (failures > 0 && now - lastFailureAt < FAILURE_PENALTY_MILLIS) {
+                return rttMillis + failures * 1000L;
+            }
+            return rttMillis;
+        }
+
+        synchronized void onSuccess(long rtt) {
+            rttMillis = (rttMillis * 7 + rtt * 3) / 10;
+            failures = 0;
+        }
+
+        synchronized void onFailure() {
+            failures = Math.min(failures + 1, 10);
+            lastFailureAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * Result of one lookup, also what the cache keeps.
+     */
+    public static class Answer {
+        private final List<Object> values;
+        private final long expiresAt;
+
+        Answer(List<Object> values, int ttl) {
+            this.values = values;
+            this.expiresAt = System.currentTimeMillis() + ttl * 1000L;
+        }
+
+        /**
+         * @return decoded rdata of the matching records, empty for a negative answer
+         */
+        public List<Object> getValues() {
+            return values;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+    }
+
+    private final ServerState[] servers;
+    private final AnswerFilter filter;
+    private final int raceWidth;
+    private final int attemptTimeout;
+    private final int totalTimeout;
+    private final Map<String, Answer> cache = new LinkedHashMap<String, Answer>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest) {
+            return size() > MAX_CACHE_SIZE;
+        }
+    };
+    private final ConcurrentHashMap<String, FutureTask<Answer>> inFlight =
+            new ConcurrentHashMap<String, FutureTask<Answer>>();
+
+    /**
+     * @param servers        upstream servers, in order of preference
+     * @param filter         rejects forged answers, may be null
+     * @param raceWidth      how many servers are queried at once
+     * @param attemptTimeout how long one round waits, in milliseconds
+     * @param totalTimeout   upper bound for one lookup, in milliseconds
+     */
+    public DnsResolver(InetSocketAddress[] servers, AnswerFilter filter,
+                       int raceWidth, int attemptTimeout, int totalTimeout) {
+        this.servers = new ServerState[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            this.servers[i] = new ServerState(servers[i], i);
+        }
+        this.filter = filter;
+        this.raceWidth = Math.max(1, raceWidth);
+        this.attemptTimeout = attemptTimeout;
+        this.totalTimeout = totalTimeout;
+    }
+
+    /**
+     * @param type DNSRecord.A, DNSRecord.TXT, ...
+     * @return never null; negative answers have no values
+     * @throws IOException if no server gave a usable answer in time
+     */
+    public Answer resolve(String domain, final int type) throws IOException {
+        final String name = domain.toLowerCase();
+        final String key = type + ":" + name;
+        Answer answer = getCached(key);
+        if (answer != null) {
+            return answer;
+        }
+        FutureTask<Answer> task = new FutureTask<Answer>(new Callable<Answer>() {
+            @Override
+            public Answer call() throws Exception {
+                // another lookup may have finished between the cache check and here
+                Answer answer = getCached(key);
+                if (answer != null) {
+                    return answer;
+                }
+                answer = query(name, type);
+                putCached(key, answer);
+                return answer;
+            }
+        });
+        FutureTask<Answer> existing = inFlight.putIfAbsent(key, task);
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inFlight.remove(key, task);
+            }
+        } else {
+            task = existing;
+        }
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while resolving " + domain);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("failed to resolve " + domain + ": " + cause);
+        }
+    }
+
+    private Answer getCached(String key) {
+        synchronized (cache) {
+            Answer answer = cache.get(key);
+            if (answer != null && answer.isExpired(System.currentTimeMillis())) {
+                cache.remove(key);
+                return null;
+            }
+            return answer;
+        }
+    }
+
+    private void putCached(String key, Answer answer) {
+        synchronized (cache) {
+            cache.put(key, answer);
+        }
+    }
+
+    private Answer query(String name, int type) throws IOException {
+        DNSMsgHeader qHeader = DNSMsgHeader.construct(
+                DNSMsgHeader.QUERY, true, 1, 0, 0, 0, false);
+        DNSRecord[] records = new DNSRecord[1];
+        records[0] = new DNSRecord(new DNSName(name, null), type, DNSRecord.IN);
+        byte[] query = DNSConnection.encode(qHeader, records);
+        long deadline = System.currentTimeMillis() + totalTimeout;
+        List<ServerState> ranked = rankServers();
+        for (int from = 0; from < ranked.size() && System.currentTimeMillis() < deadline; from += raceWidth) {
+            List<ServerState> round = ranked.subList(from, Math.min(from + raceWidth, ranked.size()));
+            Result result = raceOverUdp(round, query, qHeader.getId(), type,
+                    Math.min(deadline, System.currentTimeMillis() + attemptTimeout));
+            if (result.answer != null) {
+                return result.answer;
+            }
+            for (ServerState server : result.truncated) {
+                Answer answer = queryOverTcp(server, query, type, deadline);
+                if (answer != null) {
+                    return answer;
+                }
+            }
+        }
+        // nothing answered over udp, some networks only let tcp through
+        for (ServerState server : ranked) {
+            if (System.currentTimeMillis() >= deadline) {
+                break;
+            }
+            Answer answer = queryOverTcp(server, query, type, deadline);
+            if (answer != null) {
+                return answer;
+            }
+        }
+        throw new IOException("no answer for " + name);
+    }
+
+    private List<ServerState> rankServers() {
+        long now = System.currentTimeMillis();
+        // scores change while other lookups run, sort on a snapshot
+        final long[] scores = new long[servers.length];
+        for (int i = 0; i < servers.length; i++) {
+            scores[i] = servers[i].score(now);
+        }
+        List<ServerState> ranked = new ArrayList<ServerState>(Arrays.asList(servers));
+        Collections.sort(ranked, new Comparator<ServerState>() {
+            @Override
+            public int compare(ServerState lhs, ServerState rhs) {
+                long lhsScore = scores[lhs.index];
+                long rhsScore = scores[rhs.index];
+                if (lhsScore != rhsScore) {
+                    return lhsScore < rhsScore ? -1 : 1;
+                }
+                return lhs.index - rhs.index;
+            }
+        });
+        return ranked;
+    }
+
+    private static class Result {
+        Answer answer;
+        List<ServerState> truncated = new ArrayList<ServerState>();
+    }
+
+    private Result raceOverUdp(List<ServerState> round, byte[] query, int id, int type, long deadline) {
+        Result result = new Result();
+        Set<ServerState> pending = new HashSet<ServerState>(round);
+        long startedAt = System.currentTimeMillis();
+        DatagramSocket datagramSocket = null;
+        try {
+            datagramSocket = new DatagramSocket();
+            for (ServerState server : round) {
+                try {
+                    datagramSocket.send(new DatagramPacket(query, query.length, server.address));
+                } catch (IOException e) {
+                    LogUtils.e("failed to send dns query to " + server.address, e);
+                    server.onFailure();
+                    pending.remove(server);
+                }
+            }
+            DatagramPacket packet = new DatagramPacket(new byte[UDP_PACKET_LEN], UDP_PACKET_LEN);
+            while (!pending.isEmpty()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                datagramSocket.setSoTimeout((int) remaining);
+                packet.setLength(UDP_PACKET_LEN);
+                try {
+                    datagramSocket.receive(packet);
+                } catch (SocketTimeoutException e) {
+                    break;
+                }
+                ServerState server = findServer(pending, packet.getSocketAddress());
+                if (server == null) {
+                    continue;
+                }
+                byte[] response = Arrays.copyOf(packet.getData(), packet.getLength());
+                if (response.length < DNSMsgHeader.HEADER_LEN) {
+                    continue;
+                }
+                DNSMsgHeader header = new DNSMsgHeader(response);
+                if (!header.isResponse() || header.getId() != id) {
+                    continue;
+                }
+                if (header.isTruncated()) {
+                    server.onSuccess(System.currentTimeMillis() - startedAt);
+                    pending.remove(server);
+                    result.truncated.add(server);
+                    continue;
+                }
+                Answer answer = toAnswer(header, response, type);
+                if (answer == null) {
+                    // forged or unusable, the real answer may still be on its way
+                    continue;
+                }
+                server.onSuccess(System.currentTimeMillis() - startedAt);
+                result.answer = answer;
+                return result;
+            }
+        } catch (IOException e) {
+            LogUtils.e("failed to resolve over udp", e);
+        } finally {
+            if (datagramSocket != null) {
+                datagramSocket.close();
+            }
+        }
+        for (ServerState server : pending) {
+            server.onFailure();
+        }
+        return result;
+    }
+
+    private static ServerState findServer(Set<ServerState> pending, SocketAddress from) {
+        for (ServerState server : pending) {
+            if (server.address.equals(from)) {
+                return server;
+            }
+        }
+        return null;
+    }
+
+    private Answer queryOverTcp(ServerState server, byte[] query, int type, long deadline) {
+        int timeout = (int) Math.min(attemptTimeout, deadline - System.currentTimeMillis());
+        if (timeout <= 0) {
+            return null;
+        }
+        long startedAt = System.currentTimeMillis();
+        Socket socket = new Socket();
+        try {
+            // DNSConnection can only connect to port 53 and without timeout, frame the query here
+            socket.setSoTimeout(timeout);
+            socket.connect(server.address, timeout);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeShort(query.length);
+            out.write(query);
+            out.flush();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            byte[] response = new byte[in.readUnsignedShort()];
+            in.readFully(response);
+            if (response.length < DNSMsgHeader.HEADER_LEN) {
+                server.onFailure();
+                return null;
+            }
+            Answer answer = toAnswer(new DNSMsgHeader(response), response, type);
+            if (answer != null) {
+                server.onSuccess(System.currentTimeMillis() - startedAt);
+            }
+            return answer;
+        } catch (IOException e) {
+            LogUtils.e("failed to resolve over tcp at " + server.address, e);
+            server.onFailure();
+            return null;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+
+    /**
+     * @return null if the response is an error or does not pass the filter
+     */
+    private Answer toAnswer(DNSMsgHeader header, byte[] response, int type) {
+        int rCode = header.getRCode();
+        if (rCode != DNSMsgHeader.NOERROR && rCode != DNSMsgHeader.NXDOMAIN) {
+            return null;
+        }
+        DNSRecord[] records = DNSConnection.decode(response);
+        if (records == null) {
+            return null;
+        }
+        int answerEnd = Math.min(records.length, header.getQdCount() + header.getAnCount());
+        List<Object> values = new ArrayList<Object>();
+        int ttl = Integer.MAX_VALUE;
+        for (int i = header.getQdCount(); i < answerEnd; i++) {
+            DNSRecord record = records[i];
+            if (record.getRType() == type && record.getRData().length > 0) {
+                values.add(record.getRData()[0]);
+                ttl = Math.min(ttl, record.getTTL());
+            }
+        }
+        if (values.isEmpty() && rCode == DNSMsgHeader.NOERROR && header.getAnCount() > 0) {
+            // answered with something else only, not a usable negative answer
+            return null;
+        }
+        if (filter != null && !filter.isClean(type, values)) {
+            return null;
+        }
+        if (values.isEmpty()) {
+            return new Answer(values, negativeTtl(records, answerEnd));
+        }
+        return new Answer(values, Math.max(MIN_TTL, Math.min(MAX_TTL, ttl)));
+    }
+
+    private static int negativeTtl(DNSRecord[] records, int from) {
+        for (int i = from; i < records.length; i++) {
+            DNSRecord record = records[i];
+            if (record.getRType() == DNSRecord.SOA) {
+                Object[] rData = record.getRData();
+                long ttl = record.getTTL();
+                if (rData.length > DNSRecord.SOA_MINTTL_INDEX
+                        && rData[DNSRecord.SOA_MINTTL_INDEX] instanceof Number) {
+                    ttl = Math.min(ttl, ((Number) rData[DNSRecord.SOA_MINTTL_INDEX]).longValue());
+                }
+                return (int) Math.max(0, Math.min(MAX_NEGATIVE_TTL, ttl));
+            }
+        }
+        return DEFAULT_NEGATIVE_TTL;
+    }
+}
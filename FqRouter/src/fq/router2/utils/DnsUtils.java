@@ -1,14 +1,9 @@
 package fq.router2.utils;
 
-import net.sf.ivmaidns.dns.DNSConnection;
-import net.sf.ivmaidns.dns.DNSMsgHeader;
-import net.sf.ivmaidns.dns.DNSName;
 import net.sf.ivmaidns.dns.DNSRecord;
 
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.Inet4Address;
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -70,148 +65,76 @@ public class DnsUtils {
         }
     }};
 
-    public static List<Inet4Address> resolveA(String domain) throws Exception {
-        for (InetSocketAddress dnsServer : DNS_SERVERS) {
-            try {
-                return resolveA(domain, dnsServer);
-            } catch (Exception e) {
-                LogUtils.e("failed to resolve: " + domain, e);
+    // race this many servers at a time, the list has dead ones depending on the network
+    private final static int RACE_WIDTH = 3;
+    private final static int ATTEMPT_TIMEOUT = 1000;
+    private final static int TXT_ATTEMPT_TIMEOUT = 2000;
+    private final static int TOTAL_TIMEOUT = 5000;
+    private final static DnsResolver.AnswerFilter FILTER = new DnsResolver.AnswerFilter() {
+        @Override
+        public boolean isClean(int type, List<Object> values) {
+            if (DNSRecord.A != type) {
+                return true;
             }
-        }
-        return new ArrayList<Inet4Address>();
-    }
-
-    public static List<Inet4Address> resolveA(String domain, InetSocketAddress dnsServer) throws Exception {
-        DNSMsgHeader qHeader = DNSMsgHeader.construct(
-                DNSMsgHeader.QUERY, true, 1, 0, 0, 0, false);
-        DNSRecord[] records = new DNSRecord[1];
-        records[0] = new DNSRecord(new DNSName(domain, null), DNSRecord.A, DNSRecord.IN);
-        byte[] query = DNSConnection.encode(qHeader, records);
-        try {
-            return resolveAOverUdp(dnsServer, query);
-        } catch (Exception e) {
-            LogUtils.e("failed to resolve over udp", e);
-            return resolveAOverTcp(dnsServer, query);
-        }
-    }
-
-    private static List<Inet4Address> resolveAOverTcp(InetSocketAddress dnsServer, byte[] query) throws Exception {
-        DNSConnection dnsConnection = new DNSConnection();
-        try {
-            dnsConnection.open(dnsServer.getAddress());
-            dnsConnection.send(query);
-            return toIps(dnsConnection.receive(true));
-        } finally {
-            dnsConnection.close();
-        }
-    }
-
-    private static List<Inet4Address> resolveAOverUdp(InetSocketAddress dnsServer, byte[] query) throws Exception {
-        DatagramSocket datagramSocket = new DatagramSocket();
-        datagramSocket.setSoTimeout(1000);
-        try {
-            datagramSocket.connect(dnsServer.getAddress(), dnsServer.getPort());
-            datagramSocket.send(new DatagramPacket(query, query.length));
-            while (true) {
-                List<Inet4Address> ips = readIps(datagramSocket);
-                if (!isWrong(ips)) {
-                    return ips;
+            if (values.isEmpty()) {
+                // forged answers can come without any address, a real one comes later
+                return false;
+            }
+            for (Object value : values) {
+                if (WRONG_ANSWERS.contains(((InetAddress) value).getHostAddress())) {
+                    return false;
                 }
             }
-        } finally {
-            datagramSocket.close();
+            return true;
         }
+    };
+    private final static DnsResolver RESOLVER = new DnsResolver(
+            DNS_SERVERS, FILTER, RACE_WIDTH, ATTEMPT_TIMEOUT, TOTAL_TIMEOUT);
+    private final static DnsResolver TXT_RESOLVER = new DnsResolver(
+            DNS_SERVERS, FILTER, RACE_WIDTH, TXT_ATTEMPT_TIMEOUT, TOTAL_TIMEOUT);
+
+    public static List<Inet4Address> resolveA(String domain) throws Exception {
+        return resolveA(RESOLVER, domain);
     }
 
-    private static List<Inet4Address> readIps(DatagramSocket datagramSocket) throws Exception {
-        DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
-        datagramSocket.receive(packet);
-        return toIps(packet.getData());
+    public static List<Inet4Address> resolveA(String domain, InetSocketAddress dnsServer) throws Exception {
+        return resolveA(newResolver(dnsServer, ATTEMPT_TIMEOUT), domain);
     }
 
-    private static List<Inet4Address> toIps(byte[] buffer) {
-        DNSRecord[] records = DNSConnection.decode(buffer);
+    private static List<Inet4Address> resolveA(DnsResolver resolver, String domain) {
         List<Inet4Address> ips = new ArrayList<Inet4Address>();
-        for (DNSRecord record : records) {
-            if (DNSRecord.A == record.getRType()) {
-                if (record.getRData().length > 0) {
-                    ips.add((Inet4Address) record.getRData()[0]);
-                }
+        try {
+            for (Object value : resolver.resolve(domain, DNSRecord.A).getValues()) {
+                ips.add((Inet4Address) value);
             }
+        } catch (Exception e) {
+            LogUtils.e("failed to resolve: " + domain, e);
         }
         return ips;
     }
 
-    private static boolean isWrong(List<Inet4Address> ips) {
-        if (ips.isEmpty()) {
-            return true;
-        }
-        for (Inet4Address ip : ips) {
-            if (WRONG_ANSWERS.contains(ip.getHostAddress())) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     public static String resolveTXT(String domain) throws Exception {
-        for (InetSocketAddress dnsServer : DNS_SERVERS) {
-            try {
-                return resolveTXT(domain, dnsServer);
-            } catch (Exception e) {
-                LogUtils.e("failed to resolve: " + domain, e);
-            }
-        }
-        return "";
-    }
-
-    public static String resolveTXT(String domain, InetSocketAddress dnsServer) throws Exception {
-        DNSMsgHeader qHeader = DNSMsgHeader.construct(
-                DNSMsgHeader.QUERY, true, 1, 0, 0, 0, false);
-        DNSRecord[] records = new DNSRecord[1];
-        records[0] = new DNSRecord(new DNSName(domain, null), DNSRecord.TXT, DNSRecord.IN);
-        byte[] request = DNSConnection.encode(qHeader, records);
-
         try {
-            return resolveTXTOverUdp(dnsServer, request);
+            return resolveTXT(TXT_RESOLVER, domain);
         } catch (Exception e) {
-            LogUtils.e("failed to resolve txt over udp at " + dnsServer, e);
-            return resolveTXTOverTcp(dnsServer, request);
+            LogUtils.e("failed to resolve: " + domain, e);
+            return "";
         }
     }
 
-    private static String resolveTXTOverUdp(InetSocketAddress dnsServer, byte[] query) throws Exception {
-        DatagramSocket datagramSocket = new DatagramSocket();
-        datagramSocket.setSoTimeout(2000);
-        try {
-            datagramSocket.connect(dnsServer.getAddress(), dnsServer.getPort());
-            datagramSocket.send(new DatagramPacket(query, query.length));
-            DatagramPacket packet = new DatagramPacket(new byte[2048], 2048);
-            datagramSocket.receive(packet);
-            return toTXT(packet.getData());
-        } finally {
-            datagramSocket.close();
-        }
+    public static String resolveTXT(String domain, InetSocketAddress dnsServer) throws Exception {
+        return resolveTXT(newResolver(dnsServer, TXT_ATTEMPT_TIMEOUT), domain);
     }
 
-    private static String resolveTXTOverTcp(InetSocketAddress dnsServer, byte[] request) throws IOException {
-        DNSConnection connection = new DNSConnection();
-        try {
-            connection.open(dnsServer.getAddress());
-            connection.send(request);
-            return toTXT(connection.receive(true));
-        } finally {
-            connection.close();
+    private static String resolveTXT(DnsResolver resolver, String domain) throws Exception {
+        List<Object> values = resolver.resolve(domain, DNSRecord.TXT).getValues();
+        if (values.isEmpty()) {
+            throw new RuntimeException("not found");
         }
+        return (String) values.get(0);
     }
 
-    private static String toTXT(byte[] buffer) {
-        DNSRecord[] records = DNSConnection.decode(buffer);
-        for (DNSRecord record : records) {
-            if (DNSRecord.TXT == record.getRType() && record.getRData().length > 0) {
-                return (String) record.getRData()[0];
-            }
-        }
-        throw new RuntimeException("not found");
+    private static DnsResolver newResolver(InetSocketAddress dnsServer, int attemptTimeout) {
+        return new DnsResolver(new InetSocketAddress[]{dnsServer}, FILTER, 1, attemptTimeout, TOTAL_TIMEOUT);
     }
 }
@@ -1,37 +1,38 @@
 package com.jiubang.go.backup.pro.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
-import java.security.SecureRandom;
 import java.security.spec.InvalidKeySpecException;
 
 import javax.crypto.Cipher;
-import javax.crypto.CipherInputStream;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.spec.DESKeySpec;
 
 /**
+ * 文件加解密
+ * <p>
+ * 数据按BUFFER_SIZE大小的块直接交给Cipher.update处理，不再经过CipherInputStream逐字节读写。
+ * 输出格式和以前完全一样（DES/ECB/PKCS5Padding），旧的备份文件可以直接解密。
+ *
  * @author GoBackup Dev Team
  */
 public class EncryptDecrypt {
-	// 密钥
-	// private SecretKey key = null;
-	// 用key产生Cipher
-	// private Cipher cipher = null;
 	// Cipher实例名称
 	private final String mINSTANCENAME = "DES";
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
 	private SecretKey genKey(String password) {
 		SecretKey key = null;
 		try {
-			// DES算法要求有一个可信任的随机数源
-			SecureRandom sr = new SecureRandom();
 			// 从原始密匙数据创建DESKeySpec对象
 			DESKeySpec dks = new DESKeySpec(password.getBytes());
 			// 创建一个密匙工厂，然后用它把DESKeySpec转换成
@@ -74,149 +75,41 @@ public class EncryptDecrypt {
 		if (sourceFileName == null || targetFileName == null || password == null) {
 			return false;
 		}
-
-		Cipher cipher = createCipher(true, password);
-		if (cipher == null) {
-			return false;
-		}
-
-		boolean ret = true;
-		File file = new File(sourceFileName);
-		BufferedOutputStream out = null;
-		CipherInputStream in = null;
-		try {
-			// 输出流,请注意文件名称的获取
-			out = new BufferedOutputStream(new FileOutputStream(targetFileName));
-			// 输入流
-			in = new CipherInputStream(new BufferedInputStream(new FileInputStream(file)), cipher);
-			int thebyte = 0;
-			while ((thebyte = in.read()) != -1) {
-				out.write(thebyte);
-			}
-			out.flush();
-		} catch (Exception e) {
-			e.printStackTrace();
-			ret = false;
-		} finally {
-			try {
-				if (in != null) {
-					in.close();
-				}
-				if (out != null) {
-					out.close();
-				}
-			} catch (Exception e) {
-			}
-		}
-		return ret;
+		return encrypt(new File(sourceFileName), new File(targetFileName), password);
 	}
 
 	public boolean encrypt(File sourceFile, File targetFile, String password) {
-		if (sourceFile == null || targetFile == null || password == null) {
-			return false;
-		}
-
-		Cipher cipher = createCipher(true, password);
-		if (cipher == null) {
-			return false;
-		}
-
-		boolean ret = true;
-		BufferedOutputStream out = null;
-		CipherInputStream in = null;
-		try {
-			// 输出流,请注意文件名称的获取
-			out = new BufferedOutputStream(new FileOutputStream(targetFile));
-			// 输入流
-			in = new CipherInputStream(new BufferedInputStream(new FileInputStream(sourceFile)),
-					cipher);
-			int thebyte = 0;
-			while ((thebyte = in.read()) != -1) {
-				out.write(thebyte);
-			}
-			out.flush();
-		} catch (Exception e) {
-			e.printStackTrace();
-			ret = false;
-		} finally {
-			try {
-				if (in != null) {
-					in.close();
-				}
-				if (out != null) {
-					out.close();
-				}
-			} catch (Exception e) {
-			}
-		}
-		return ret;
+		return process(sourceFile, targetFile, password, true);
 	}
 
 	public boolean decrypt(String sourceFileName, String targetFileName, String password) {
 		if (sourceFileName == null || targetFileName == null || password == null) {
 			return false;
 		}
-
-		Cipher cipher = createCipher(false, password);
-		if (cipher == null) {
-			return false;
-		}
-
-		boolean ret = true;
-		File file = new File(sourceFileName);
-		BufferedOutputStream out = null;
-		CipherInputStream in = null;
-		try {
-			// 输出流,请注意文件名称的获取
-			out = new BufferedOutputStream(new FileOutputStream(targetFileName));
-			// 输入流
-			in = new CipherInputStream(new BufferedInputStream(new FileInputStream(file)), cipher);
-			int thebyte = 0;
-			while ((thebyte = in.read()) != -1) {
-				out.write(thebyte);
-			}
-			out.flush();
-		} catch (Exception e) {
-			e.printStackTrace();
-			ret = false;
-		} finally {
-			try {
-				if (in != null) {
-					in.close();
-				}
-				if (out != null) {
-					out.close();
-				}
-			} catch (Exception e) {
-			}
-		}
-		return ret;
+		return decrypt(new File(sourceFileName), new File(targetFileName), password);
 	}
 
 	public boolean decrypt(File sourceFile, File targetFile, String password) {
+		return process(sourceFile, targetFile, password, false);
+	}
+
+	private boolean process(File sourceFile, File targetFile, String password, boolean encrypt) {
 		if (sourceFile == null || targetFile == null || password == null) {
 			return false;
 		}
 
-		Cipher cipher = createCipher(false, password);
+		Cipher cipher = createCipher(encrypt, password);
 		if (cipher == null) {
 			return false;
 		}
 
 		boolean ret = true;
-		BufferedOutputStream out = null;
-		CipherInputStream in = null;
+		InputStream in = null;
+		OutputStream out = null;
 		try {
-			// 输出流,请注意文件名称的获取
-			out = new BufferedOutputStream(new FileOutputStream(targetFile));
-			// 输入流
-			in = new CipherInputStream(new BufferedInputStream(new FileInputStream(sourceFile)),
-					cipher);
-			int thebyte = 0;
-			while ((thebyte = in.read()) != -1) {
-				out.write(thebyte);
-			}
-			out.flush();
+			in = new FileInputStream(sourceFile);
+			out = new FileOutputStream(targetFile);
+			transform(cipher, in, out);
 		} catch (Exception e) {
 			e.printStackTrace();
 			ret = false;
@@ -233,4 +126,22 @@ public class EncryptDecrypt {
 		}
 		return ret;
 	}
+
+	/**
+	 * 把in的全部内容经过cipher写到out，每次处理BUFFER_SIZE字节
+	 */
+	private static void transform(Cipher cipher, InputStream in, OutputStream out) throws IOException,
+			GeneralSecurityException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		// update的输出最多比输入多一个分组
+		byte[] output = new byte[BUFFER_SIZE + cipher.getBlockSize()];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			int length = cipher.update(buffer, 0, count, output);
+			out.write(output, 0, length);
+		}
+		int length = cipher.doFinal(output, 0);
+		out.write(output, 0, length);
+		out.flush();
+	}
 }
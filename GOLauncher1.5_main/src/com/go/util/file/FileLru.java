@@ -0,0 +1,49 @@
+package com.go.util.file;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * <br>类描述:按最近使用时间淘汰的磁盘缓存的辅助方法
+ * <br>功能详细描述:用文件的修改时间记录最近使用的时间，读到缓存时调用{@link #touch(File)}，
+ * 清理时用{@link #sortOldestFirst(File[])}排序后从头删除。
+ */
+public final class FileLru {
+
+	private FileLru() {
+	}
+
+	/**
+	 * 记录文件刚被使用过
+	 */
+	public static void touch(File file) {
+		file.setLastModified(System.currentTimeMillis());
+	}
+
+	/**
+	 * 按最近使用时间从旧到新排序，原地修改files
+	 */
+	public static void sortOldestFirst(File[] files) {
+		// 先取出所有时间，排序过程中不用反复读文件属性
+		final long[] modified = new long[files.length];
+		Integer[] order = new Integer[files.length];
+		for (int i = 0; i < files.length; i++) {
+			modified[i] = files[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer lhs, Integer rhs) {
+				long l = modified[lhs];
+				long r = modified[rhs];
+				return l < r ? -1 : (l == r ? 0 : 1);
+			}
+		});
+		File[] sorted = new File[files.length];
+		for (int i = 0; i < files.length; i++) {
+			sorted[i] = files[order[i]];
+		}
+		System.arraycopy(sorted, 0, files, 0, files.length);
+	}
+}
@@ -0,0 +1,197 @@
+package com.go.util.graphics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 基于int[]像素（ARGB）的快速模糊
+ *
+ * <pre>
+ * 水平、竖直分开做盒式模糊，每一行用滑动窗口累加，每个像素的计算量与半径无关。
+ * 迭代2~3次就很接近高斯模糊。
+ * 每一遍把结果转置写到另一个缓冲区，这样竖直方向也可以按行处理，对缓存友好。
+ * 图片较大并且是多核时，按行分段交给多个线程同时处理。
+ * 临时缓冲区会被保留下次使用（不超过{@link #MAX_CACHED_PIXELS}），反复模糊同样大小的图片不会再分配内存。
+ * </pre>
+ *
+ * 不是线程安全的，多个线程使用时需要各自创建或者自己同步。
+ */
+public class BoxBlur {
+	/**
+	 * 保留的临时缓冲区的最大像素数，更大的图片每次临时分配，避免长期占用内存
+	 */
+	public static final int MAX_CACHED_PIXELS = 512 * 1024;
+	/**
+	 * 最大模糊半径，窗口不超过255个像素时定点数除法没有误差累积
+	 */
+	public static final int MAX_RADIUS = 127;
+	/**
+	 * 像素数少于这个值时只用当前线程，分段的开销比计算本身还大
+	 */
+	private static final int MIN_PARALLEL_PIXELS = 128 * 1024;
+
+	private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+	private static ExecutorService sExecutor;
+
+	private int[] mPixels;
+	private int[] mTemp;
+
+	/**
+	 * 取至少能放下size个像素的缓冲区
+	 */
+	public int[] obtainPixels(int size) {
+		if (mPixels != null && mPixels.length >= size) {
+			return mPixels;
+		}
+		int[] pixels = new int[size];
+		if (size <= MAX_CACHED_PIXELS) {
+			mPixels = pixels;
+		}
+		return pixels;
+	}
+
+	private int[] obtainTemp(int size) {
+		if (mTemp != null && mTemp.length >= size) {
+			return mTemp;
+		}
+		int[] temp = new int[size];
+		if (size <= MAX_CACHED_PIXELS) {
+			mTemp = temp;
+		}
+		return temp;
+	}
+
+	/**
+	 * 释放保留的临时缓冲区
+	 */
+	public void release() {
+		mPixels = null;
+		mTemp = null;
+	}
+
+	/**
+	 * 模糊像素，结果写回pixels
+	 *
+	 * @param pixels
+	 *            ARGB像素，按行存放，每行width个
+	 * @param radius
+	 *            模糊半径，小于1时不处理，最大为{@link #MAX_RADIUS}
+	 * @param passes
+	 *            迭代次数，1为盒式模糊，3基本就是高斯模糊
+	 */
+	public void blur(int[] pixels, int width, int height, int radius, int passes) {
+		if (radius < 1 || passes < 1 || width <= 0 || height <= 0) {
+			return;
+		}
+		radius = Math.min(radius, MAX_RADIUS);
+		final int size = width * height;
+		final int[] temp = obtainTemp(size);
+		final boolean parallel = CPU_COUNT > 1 && size >= MIN_PARALLEL_PIXELS;
+		for (int i = 0; i < passes; ++i) {
+			// 水平模糊后转置，再对转置后的图做一次就是竖直模糊，并且转置回来
+			blurRows(pixels, temp, width, height, radius, parallel);
+			blurRows(temp, pixels, height, width, radius, parallel);
+		}
+	}
+
+	private static void blurRows(final int[] src, final int[] dst, final int width,
+			final int height, final int radius, boolean parallel) {
+		if (!parallel) {
+			blurRows(src, dst, width, height, radius, 0, height);
+			return;
+		}
+		final int bands = Math.min(CPU_COUNT, height);
+		final CountDownLatch latch = new CountDownLatch(bands - 1);
+		ExecutorService executor = getExecutor();
+		for (int i = 1; i < bands; ++i) {
+			final int from = height * i / bands;
+			final int to = height * (i + 1) / bands;
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						blurRows(src, dst, width, height, radius, from, to);
+					} finally {
+						latch.countDown();
+					}
+				}
+			});
+		}
+		// 第一段在当前线程做
+		blurRows(src, dst, width, height, radius, 0, height / bands);
+		boolean interrupted = false;
+		while (true) {
+			try {
+				latch.await();
+				break;
+			} catch (InterruptedException e) {
+				// 其它线程还在写dst，必须等它们结束
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * 对[from, to)行做水平盒式模糊，结果转置写入dst（dst每行height个像素）
+	 */
+	private static void blurRows(int[] src, int[] dst, int width, int height, int radius,
+			int from, int to) {
+		final int window = radius * 2 + 1;
+		// 定点数除法，避免每个通道都做一次除法
+		final int scale = 65536 / window;
+		final int last = width - 1;
+		for (int y = from; y < to; ++y) {
+			final int row = y * width;
+			int sumA = 0;
+			int sumR = 0;
+			int sumG = 0;
+			int sumB = 0;
+			// 初始窗口[-radius, radius]，超出边界的部分取边缘像素
+			for (int i = -radius; i <= radius; ++i) {
+				int color = src[row + (i < 0 ? 0 : (i > last ? last : i))];
+				sumA += color >>> 24;
+				sumR += (color >> 16) & 0xff;
+				sumG += (color >> 8) & 0xff;
+				sumB += color & 0xff;
+			}
+			int out = y;
+			for (int x = 0; x < width; ++x) {
+				dst[out] = ((sumA * scale + 32768) >>> 16) << 24
+						| ((sumR * scale + 32768) >>> 16) << 16
+						| ((sumG * scale + 32768) >>> 16) << 8
+						| ((sumB * scale + 32768) >>> 16);
+				out += height;
+				// 窗口右移一个像素
+				int add = x + radius + 1;
+				int remove = x - radius;
+				int addColor = src[row + (add > last ? last : add)];
+				int removeColor = src[row + (remove < 0 ? 0 : remove)];
+				sumA += (addColor >>> 24) - (removeColor >>> 24);
+				sumR += ((addColor >> 16) & 0xff) - ((removeColor >> 16) & 0xff);
+				sumG += ((addColor >> 8) & 0xff) - ((removeColor >> 8) & 0xff);
+				sumB += (addColor & 0xff) - (removeColor & 0xff);
+			}
+		}
+	}
+
+	private static synchronized ExecutorService getExecutor() {
+		if (sExecutor == null) {
+			sExecutor = Executors.newFixedThreadPool(CPU_COUNT - 1, new ThreadFactory() {
+				private int mCount = 0;
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "box-blur-" + (++mCount));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}
+		return sExecutor;
+	}
+}
@@ -21,6 +21,15 @@ public class ImageFilter {
 	protected static PaintFlagsDrawFilter DRAW_FILTER = new PaintFlagsDrawFilter(0,
 			Paint.FILTER_BITMAP_FLAG);
 
+	/**
+	 * 模糊用的像素缓冲区，多次模糊时重复使用，使用时需要同步
+	 */
+	private static final BoxBlur BOX_BLUR = new BoxBlur();
+	/**
+	 * fastBlur缩小后的图片，大小不变时重复使用，和BOX_BLUR一起同步
+	 */
+	private static Bitmap sSampleBuffer;
+
 	/**
 	 * 将位图转成ARGB8888格式
 	 * 
@@ -113,6 +122,93 @@ public class ImageFilter {
 		return true;
 	}
 
+	/**
+	 * 图片模糊效果，直接在像素上做盒式模糊
+	 * 
+	 * @param bitmap
+	 *            必须是可修改的图片，注意原图会被修改
+	 * @param radius
+	 *            模糊半径，耗时与半径无关
+	 * @param passes
+	 *            迭代次数，1为盒式模糊，推荐值3（基本就是高斯模糊）
+	 * @return 是否处理成功
+	 */
+	public static boolean boxBlur(Bitmap bitmap, int radius, int passes) {
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		synchronized (BOX_BLUR) {
+			int[] pixels = null;
+			try {
+				pixels = BOX_BLUR.obtainPixels(width * height);
+				bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+				BOX_BLUR.blur(pixels, width, height, radius, passes);
+			} catch (OutOfMemoryError e) {
+				return false;
+			}
+			bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+		}
+		return true;
+	}
+
+	/**
+	 * 图片模糊效果，先缩小再做盒式模糊，最后放大回原图。比{@link #trickyBlur(Bitmap, int, float)}
+	 * 少了多次整图的缩放绘制，并且透明的图片不会和原图叠加
+	 * 
+	 * @param bitmap
+	 *            注意原图会被修改
+	 * @param sampleSize
+	 *            采样比例（不小于1），越大越模糊，也就越节约时间，推荐值4
+	 * @param radius
+	 *            缩小后的模糊半径，推荐值1~2
+	 * @param passes
+	 *            迭代次数，推荐值3
+	 * @return 是否处理成功
+	 */
+	public static boolean fastBlur(Bitmap bitmap, float sampleSize, int radius, int passes) {
+		sampleSize = Math.max(1, sampleSize);
+		final int width = bitmap.getWidth();
+		final int height = bitmap.getHeight();
+		final int smallWidth = Math.max(1, Math.round(width / sampleSize));
+		final int smallHeight = Math.max(1, Math.round(height / sampleSize));
+		synchronized (BOX_BLUR) {
+			Bitmap buffer = sSampleBuffer;
+			if (buffer == null || buffer.isRecycled() || buffer.getWidth() != smallWidth
+					|| buffer.getHeight() != smallHeight) {
+				try {
+					buffer = Bitmap.createBitmap(smallWidth, smallHeight, Config.ARGB_8888);
+				} catch (OutOfMemoryError e) {
+					return false;
+				}
+				sSampleBuffer = buffer;
+			}
+			Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+			paint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC));
+			Canvas canvas = new Canvas(buffer);
+			canvas.scale(smallWidth / (float) width, smallHeight / (float) height);
+			canvas.drawBitmap(bitmap, 0, 0, paint);
+			if (!boxBlur(buffer, radius, passes)) {
+				return false;
+			}
+			canvas = new Canvas(bitmap);
+			canvas.scale(width / (float) smallWidth, height / (float) smallHeight);
+			canvas.drawBitmap(buffer, 0, 0, paint);
+		}
+		return true;
+	}
+
+	/**
+	 * 释放模糊用的缓冲区，不再需要模糊时调用
+	 */
+	public static void releaseBlurBuffers() {
+		synchronized (BOX_BLUR) {
+			BOX_BLUR.release();
+			if (sSampleBuffer != null) {
+				sSampleBuffer.recycle();
+				sSampleBuffer = null;
+			}
+		}
+	}
+
 	/**
 	 * 图片辉光效果
 	 * 
@@ -1,56 +1,71 @@
 package com.go.util.log;
 
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * ڼʱ
+ * 用于检测程序运行所需时间
+ * <p>
+ * 可以在多个线程中使用，同一个tag同时只能有一次计时。
+ * 需要重复统计或者统计分布时用{@link Trace}，{@link Trace#ENABLED}打开时这里的每次计时也会记录到Trace中，
+ * tag为"duration."加上这里的tag。
  * @author yangguanxiang
  *
  */
 public class Duration {
-	public static HashMap<String, Duration> sMap = new HashMap<String, Duration>();
-	public long start;
-	public long end;
+	public static final ConcurrentHashMap<String, Duration> sMap = new ConcurrentHashMap<String, Duration>();
+	/**
+	 * 纳秒
+	 */
+	public volatile long start;
+	/**
+	 * 纳秒
+	 */
+	public volatile long end;
 
 	private Duration() {
 	};
 
 	public static void reset(String tag) {
-		if (sMap.containsKey(tag)) {
-			Duration duration = sMap.get(tag);
+		Duration duration = sMap.get(tag);
+		if (duration != null) {
 			duration.start = 0;
 			duration.end = 0;
 		}
 	}
 
 	public static void clear(String tag) {
-		if (sMap.containsKey(tag)) {
-			sMap.remove(tag);
-		}
+		sMap.remove(tag);
 	}
 
 	public static void setStart(String tag) {
 		Duration duration = getDurationInstance(tag);
-		duration.start = System.currentTimeMillis();
+		duration.start = System.nanoTime();
 	}
 
 	public static void setEnd(String tag) {
 		Duration duration = getDurationInstance(tag);
-		duration.end = System.currentTimeMillis();
+		duration.end = System.nanoTime();
+		if (Trace.ENABLED && duration.start != 0) {
+			Trace.record("duration." + tag, duration.end - duration.start);
+		}
 	}
 
+	/**
+	 * @return 毫秒
+	 */
 	public static long getDuration(String tag) {
 		Duration duration = getDurationInstance(tag);
-		return duration.end - duration.start;
+		return (duration.end - duration.start) / 1000000;
 	}
 
 	private static Duration getDurationInstance(String tag) {
-		Duration duration;
-		if (sMap.containsKey(tag)) {
-			duration = sMap.get(tag);
-		} else {
+		Duration duration = sMap.get(tag);
+		if (duration == null) {
 			duration = new Duration();
-			sMap.put(tag, duration);
+			Duration exist = sMap.putIfAbsent(tag, duration);
+			if (exist != null) {
+				duration = exist;
+			}
 		}
 		return duration;
 	}
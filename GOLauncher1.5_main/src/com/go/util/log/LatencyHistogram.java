@@ -0,0 +1,150 @@
+package com.go.util.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 耗时分布统计（纳秒）
+ *
+ * <pre>
+ * 对数-线性分桶：每个2的幂区间再均分为32个桶，相对误差不超过1/32，
+ * 从1ns到约18分钟只需要1152个桶，内存固定，不保存原始数据。
+ * 记录只有几次原子操作，没有锁，可以在任意线程调用。
+ * 读取时各个桶不是同一时刻的值，统计结果只用于观察，不要求严格一致。
+ * </pre>
+ */
+public class LatencyHistogram {
+	/**
+	 * 每个2的幂区间分的桶数为2^SUB_BUCKET_BITS
+	 */
+	private static final int SUB_BUCKET_BITS = 5;
+	private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	/**
+	 * 能区分的最大值，更大的值都记在最后一个桶里
+	 */
+	private static final int MAX_VALUE_BITS = 40;
+	private static final long MAX_VALUE = (1L << MAX_VALUE_BITS) - 1;
+	private static final int BUCKET_COUNT = (MAX_VALUE_BITS - SUB_BUCKET_BITS + 1)
+			* SUB_BUCKET_COUNT;
+
+	private final AtomicLongArray mBuckets = new AtomicLongArray(BUCKET_COUNT);
+	private final AtomicLong mCount = new AtomicLong();
+	private final AtomicLong mSum = new AtomicLong();
+	private final AtomicLong mMax = new AtomicLong();
+
+	/**
+	 * 记录一次耗时
+	 *
+	 * @param value
+	 *            纳秒，负数按0处理
+	 */
+	public void record(long value) {
+		if (value < 0) {
+			value = 0;
+		}
+		mBuckets.incrementAndGet(bucketIndex(value > MAX_VALUE ? MAX_VALUE : value));
+		mCount.incrementAndGet();
+		mSum.addAndGet(value);
+		long max;
+		do {
+			max = mMax.get();
+		} while (value > max && !mMax.compareAndSet(max, value));
+	}
+
+	public long getCount() {
+		return mCount.get();
+	}
+
+	public long getMax() {
+		return mMax.get();
+	}
+
+	public long getMean() {
+		long count = mCount.get();
+		return count > 0 ? mSum.get() / count : 0;
+	}
+
+	/**
+	 * 取百分位数
+	 *
+	 * @param percentile
+	 *            0~100
+	 * @return 百分位数所在桶的上限（不超过最大值），没有数据时返回0
+	 */
+	public long getPercentile(double percentile) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			counts[i] = mBuckets.get(i);
+			total += counts[i];
+		}
+		return percentile(counts, total, percentile);
+	}
+
+	/**
+	 * 一次读取所有桶，计算多个百分位数
+	 */
+	public long[] getPercentiles(double... percentiles) {
+		long[] counts = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			counts[i] = mBuckets.get(i);
+			total += counts[i];
+		}
+		long[] result = new long[percentiles.length];
+		for (int i = 0; i < percentiles.length; ++i) {
+			result[i] = percentile(counts, total, percentiles[i]);
+		}
+		return result;
+	}
+
+	private long percentile(long[] counts, long total, double percentile) {
+		if (total <= 0) {
+			return 0;
+		}
+		long target = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+		if (target < 1) {
+			target = 1;
+		}
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			seen += counts[i];
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), mMax.get());
+			}
+		}
+		return mMax.get();
+	}
+
+	public void reset() {
+		for (int i = 0; i < BUCKET_COUNT; ++i) {
+			mBuckets.set(i, 0);
+		}
+		mCount.set(0);
+		mSum.set(0);
+		mMax.set(0);
+	}
+
+	static int bucketIndex(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		// value的最高位为2^exponent，取紧接着的SUB_BUCKET_BITS位作为区间内的序号
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return ((shift + 1) << SUB_BUCKET_BITS)
+				+ (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+	}
+
+	/**
+	 * 桶内的最大值
+	 */
+	static long highestValueOf(int index) {
+		if (index < SUB_BUCKET_COUNT) {
+			return index;
+		}
+		int shift = (index >> SUB_BUCKET_BITS) - 1;
+		long lowest = (long) (SUB_BUCKET_COUNT + (index & (SUB_BUCKET_COUNT - 1))) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
@@ -0,0 +1,254 @@
+package com.go.util.log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 性能统计：耗时分布、计数和瞬时值
+ *
+ * <pre>
+ * 用法：
+ *     long start = Trace.begin();
+ *     ...
+ *     Trace.end(Trace.APP_SCAN, start);
+ * 每个tag一个{@link LatencyHistogram}，可以在任意线程重复记录，不加锁。
+ * {@link #ENABLED}为false时所有方法都是空的，调用处也不会产生额外的对象，
+ * 需要拼接tag等额外计算的地方用if (Trace.ENABLED)包起来，编译时会被整个去掉。
+ * 统计结果可以用{@link #dump(Writer)}输出，或者{@link #startPeriodicDump}定时追加到文件，
+ * 对比不同版本时看同一个tag的p50/p90/p99即可。
+ * </pre>
+ */
+public final class Trace {
+	/**
+	 * 统计开关，发布版本必须为false
+	 */
+	public static final boolean ENABLED = false;
+
+	// 已经埋点的tag
+	/** 扫描所有应用程序 */
+	public static final String APP_SCAN = "app.scan";
+	/** 加载所有应用程序的图标和名称 */
+	public static final String APP_LOAD_ICONS_TITLES = "app.loadIconsAndTitles";
+	/** 屏幕层从开始加载到所有图标添加完成 */
+	public static final String SCREEN_BIND = "screen.bind";
+	/** 屏幕层每一批添加图标 */
+	public static final String SCREEN_BIND_BATCH = "screen.bindBatch";
+	/** 屏幕层添加的图标个数 */
+	public static final String SCREEN_BIND_ITEMS = "screen.bindItems";
+	/** 解析并应用主题 */
+	public static final String THEME_APPLY = "theme.apply";
+
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+
+	private static final ConcurrentHashMap<String, LatencyHistogram> sHistograms =
+			new ConcurrentHashMap<String, LatencyHistogram>();
+	private static final ConcurrentHashMap<String, AtomicLong> sCounters =
+			new ConcurrentHashMap<String, AtomicLong>();
+	private static final ConcurrentHashMap<String, AtomicLong> sGauges =
+			new ConcurrentHashMap<String, AtomicLong>();
+
+	private static Timer sDumpTimer;
+
+	private Trace() {
+	}
+
+	/**
+	 * 开始计时
+	 *
+	 * @return 开始时间（纳秒），传给{@link #end(String, long)}
+	 */
+	public static long begin() {
+		if (!ENABLED) {
+			return 0;
+		}
+		return System.nanoTime();
+	}
+
+	/**
+	 * 结束计时，把从start到现在的耗时记录到tag中
+	 *
+	 * @return 耗时（纳秒）
+	 */
+	public static long end(String tag, long start) {
+		if (!ENABLED) {
+			return 0;
+		}
+		long duration = System.nanoTime() - start;
+		record(tag, duration);
+		return duration;
+	}
+
+	/**
+	 * 直接记录一次耗时
+	 *
+	 * @param nanos
+	 *            纳秒
+	 */
+	public static void record(String tag, long nanos) {
+		if (!ENABLED) {
+			return;
+		}
+		getHistogram(tag).record(nanos);
+	}
+
+	/**
+	 * 计数
+	 */
+	public static void count(String tag, long delta) {
+		if (!ENABLED) {
+			return;
+		}
+		getValue(sCounters, tag).addAndGet(delta);
+	}
+
+	/**
+	 * 记录瞬时值，只保留最后一次
+	 */
+	public static void gauge(String tag, long value) {
+		if (!ENABLED) {
+			return;
+		}
+		getValue(sGauges, tag).set(value);
+	}
+
+	/**
+	 * 取tag对应的统计，不存在时创建
+	 */
+	public static LatencyHistogram getHistogram(String tag) {
+		LatencyHistogram histogram = sHistograms.get(tag);
+		if (histogram == null) {
+			histogram = new LatencyHistogram();
+			LatencyHistogram exist = sHistograms.putIfAbsent(tag, histogram);
+			if (exist != null) {
+				histogram = exist;
+			}
+		}
+		return histogram;
+	}
+
+	private static AtomicLong getValue(ConcurrentHashMap<String, AtomicLong> map, String tag) {
+		AtomicLong value = map.get(tag);
+		if (value == null) {
+			value = new AtomicLong();
+			AtomicLong exist = map.putIfAbsent(tag, value);
+			if (exist != null) {
+				value = exist;
+			}
+		}
+		return value;
+	}
+
+	/**
+	 * 清除所有统计数据
+	 */
+	public static void reset() {
+		sHistograms.clear();
+		sCounters.clear();
+		sGauges.clear();
+	}
+
+	/**
+	 * 输出当前的统计数据，耗时单位为微秒
+	 */
+	public static void dump(Writer writer) throws IOException {
+		ArrayList<String> tags = new ArrayList<String>(sHistograms.keySet());
+		Collections.sort(tags);
+		for (String tag : tags) {
+			LatencyHistogram histogram = sHistograms.get(tag);
+			long[] values = histogram.getPercentiles(PERCENTILES);
+			writer.write(tag + " count=" + histogram.getCount() + " mean="
+					+ toMicros(histogram.getMean()) + " p50=" + toMicros(values[0]) + " p90="
+					+ toMicros(values[1]) + " p99=" + toMicros(values[2]) + " max="
+					+ toMicros(histogram.getMax()) + "\n");
+		}
+		dumpValues(writer, sCounters, "count");
+		dumpValues(writer, sGauges, "value");
+	}
+
+	private static void dumpValues(Writer writer, Map<String, AtomicLong> map, String name)
+			throws IOException {
+		ArrayList<String> tags = new ArrayList<String>(map.keySet());
+		Collections.sort(tags);
+		for (String tag : tags) {
+			writer.write(tag + " " + name + "=" + map.get(tag).get() + "\n");
+		}
+	}
+
+	private static String toMicros(long nanos) {
+		return (nanos / 1000) + "." + (nanos % 1000 / 100) + "us";
+	}
+
+	/**
+	 * 把当前的统计数据追加到文件
+	 *
+	 * @param label
+	 *            写在每次输出开头，用来区分版本，可以为null
+	 */
+	public static void dumpToFile(String path, String label) {
+		if (!ENABLED) {
+			return;
+		}
+		Writer writer = null;
+		try {
+			File file = new File(path);
+			File parent = file.getParentFile();
+			if (parent != null && !parent.exists()) {
+				parent.mkdirs();
+			}
+			writer = new BufferedWriter(new FileWriter(file, true));
+			writer.write("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date())
+					+ (label != null ? " " + label : "") + "\n");
+			dump(writer);
+			writer.write("\n");
+		} catch (IOException e) {
+			e.printStackTrace();
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 定时把统计数据追加到文件，重复调用时以最后一次为准
+	 *
+	 * @param period
+	 *            间隔，毫秒
+	 */
+	public static synchronized void startPeriodicDump(final String path, final String label,
+			long period) {
+		if (!ENABLED) {
+			return;
+		}
+		stopPeriodicDump();
+		sDumpTimer = new Timer("trace-dump", true);
+		sDumpTimer.schedule(new TimerTask() {
+			@Override
+			public void run() {
+				dumpToFile(path, label);
+			}
+		}, period, period);
+	}
+
+	public static synchronized void stopPeriodicDump() {
+		if (sDumpTimer != null) {
+			sDumpTimer.cancel();
+			sDumpTimer = null;
+		}
+	}
+}
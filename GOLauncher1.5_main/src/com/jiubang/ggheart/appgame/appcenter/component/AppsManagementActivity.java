@@ -4,7 +4,6 @@ import java.util.ArrayList;
 import java.util.List;
 
 import android.app.Activity;
-import android.app.ActivityManager;
 import android.app.NotificationManager;
 import android.content.Context;
 import android.content.Intent;
@@ -243,12 +242,9 @@ public class AppsManagementActivity extends Activity {
 		// 初始化公共类，保存公共Activity
 //		GoMarketPublicUtil.getInstance(sContext);
 
-		// 初始化图片管理器
-		final int memClass = ((ActivityManager) getSystemService(Context.ACTIVITY_SERVICE))
-				.getMemoryClass();
-		// Use 1/8th of the available memory for this memory cache. 
-		final int cacheSize = 1024 * 1024 * memClass / 8;
-		AsyncImageManager.buildInstance(new LruImageCache(cacheSize));
+		// 初始化图片管理器，使用1/8的可用内存
+		AsyncImageManager.buildInstance(new LruImageCache(LruImageCache
+				.getDefaultMaxMemorySize(this)));
 		
 		Intent intent = getIntent();
 		int entranceId = intent.getIntExtra(
@@ -1,10 +1,14 @@
 package com.jiubang.ggheart.appgame.base.manage;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.concurrent.TimeUnit;
 
 import android.content.Context;
@@ -18,6 +22,7 @@ import android.os.Handler;
 import android.text.TextUtils;
 import android.util.Log;
 
+import com.go.util.device.Machine;
 import com.go.util.file.FileUtil;
 import com.jiubang.ggheart.appgame.appcenter.help.RecommAppsUtils;
 import com.jiubang.ggheart.appgame.base.setting.AppGameSettingData;
@@ -42,6 +47,10 @@ public class AsyncImageManager {
 	private static final long THREAD_POOL_KEEPALIVE_TIME = 20;
 	private static final int CONNECT_TIME_OUT = 10000;
 	private static final int READ_TIME_OUT = 30000;
+	/**
+	 * 磁盘缓存的大小上限
+	 */
+	private static final long DISK_CACHE_SIZE = 8 * 1024 * 1024;
 	private ThreadPoolManager mThreadPoolManager = null;
 	/**
 	 * 单例
@@ -69,6 +78,19 @@ public class AsyncImageManager {
 	 * 图片缓存池
 	 */
 	private IImageCache mImageCache = null;
+	/**
+	 * 不再使用的图片，解码新图片时复用
+	 */
+	private BitmapPool mBitmapPool = null;
+	/**
+	 * 处理后的小图的磁盘缓存
+	 */
+	private ImageDiskCache mDiskCache = null;
+	/**
+	 * 正在加载的图片和等待它的回调，同一张图片只加载一次
+	 */
+	private final HashMap<String, ArrayList<AsyncImageLoadedCallBack>> mLoadingCallBacks = new HashMap<String, ArrayList<AsyncImageLoadedCallBack>>();
+	private int mMergedCount = 0;
 
 	/**
 	 * 控制列表滑动停止后才加载图片的变量
@@ -88,10 +110,14 @@ public class AsyncImageManager {
 	}
 
 	private AsyncImageManager(IImageCache imageCache) {
+		Context context = GOLauncherApp.getContext();
+		int defaultSize = LruImageCache.getDefaultMaxMemorySize(context);
 		mImageCache = imageCache;
 		if (mImageCache == null) {
-			mImageCache = new DefaultImageCache();
+			mImageCache = new LruImageCache(defaultSize);
 		}
+		mBitmapPool = new BitmapPool(defaultSize / 4);
+		mDiskCache = new ImageDiskCache(context, DISK_CACHE_SIZE);
 		ThreadPoolManager.buildInstance(THREAD_POOL_MANAGER_NAME, THREAD_POOL_COREPOOL_SIZE,
 				THREAD_POOL_MAXIMUMPOOL_SIZE, THREAD_POOL_KEEPALIVE_TIME, TimeUnit.SECONDS, false);
 		mThreadPoolManager = ThreadPoolManager.getInstance(THREAD_POOL_MANAGER_NAME);
@@ -144,11 +170,14 @@ public class AsyncImageManager {
 			if (FileUtil.isSDCardAvaiable()) {
 				File file = new File(imgPath + imgName);
 				if (file.exists()) {
-					result = BitmapFactory.decodeFile(imgPath + imgName);
-					if (result != null && isCache) {
-						mImageCache.set(imgUrl, result);
-					}
+					result = decodeBitmap(imgPath + imgName, null);
 				}
+			} else {
+				// SD卡不可用时，从程序自己的磁盘缓存里找
+				result = mDiskCache.get(imgUrl, createDecodeOptions());
+			}
+			if (result != null && isCache) {
+				mImageCache.set(imgUrl, result);
 			}
 		} catch (OutOfMemoryError ex) {
 			ex.printStackTrace();
@@ -173,7 +202,8 @@ public class AsyncImageManager {
 			urlCon = createURLConnection(imgUrl);
 			inputStream = (InputStream) urlCon.getContent();
 			if (inputStream != null) {
-				result = BitmapFactory.decodeStream(inputStream);
+				// 先读到内存里，以便先取得图片大小，找可复用的图片
+				result = decodeBitmap(null, readFully(inputStream));
 			}
 		} catch (OutOfMemoryError e) {
 			e.printStackTrace();
@@ -231,40 +261,20 @@ public class AsyncImageManager {
 				Log.e("AsyncImageManager", "threadPoll == null || threadPoll.isShutdown()");
 				return null;
 			}
+			// 同一张图片已经在加载，等它加载完一起回调
+			if (!startLoading(imgUrl, callBack)) {
+				return null;
+			}
 			
 			Thread loadimg = new Thread() {
 				@Override
 				public void run() {
 					Bitmap b = null;
 					try {
-						b = loadImgFromSD(imgPath, imgName, imgUrl, isCache);
-						if (b == null) {
-							b = loadImgFromNetwork(imgUrl);
-							if (operator != null) {
-								b = operator.operateBitmap(
-										GOLauncherApp.getContext(), b);
-							}
-							if (b != null) {
-								if (FileUtil.isSDCardAvaiable()) {
-									FileUtil.saveBitmapToSDFile(b, imgPath + imgName,
-											Bitmap.CompressFormat.PNG);
-								}
-							}
-						}
-					} catch (OutOfMemoryError error) {
-						//爆内存
-						error.printStackTrace();
-					}
-					if (b != null) {
-						if (isCache) {
-							mImageCache.set(imgUrl, b);
-						}
+						b = loadImgFromSDOrNetwork(imgPath, imgName, imgUrl, isCache, operator);
+					} finally {
 						// 主线程显示图片
-						CallBackRunnable cbRunnable = new CallBackRunnable(b, callBack, imgUrl);
-//						Message message = new Message();
-//						message.obj = cbRunnable;
-//						mDeferredHandler.sendMessage(message);
-						mHandler.post(cbRunnable);
+						finishLoading(imgUrl, b);
 					}
 				}
 			};
@@ -323,38 +333,20 @@ public class AsyncImageManager {
 					if (!isLoad) {
 						return;
 					}
-					Bitmap b = null;
-					try {
-						b = loadImgFromSD(imgPath, imgName, imgUrl, isCache);
-						if (b == null) {
-							b = loadImgFromNetwork(imgUrl);
-							if (operator != null) {
-								b = operator.operateBitmap(
-										GOLauncherApp.getContext(), b);
-							}
-							if (b != null) {
-								if (FileUtil.isSDCardAvaiable()) {
-									FileUtil.saveBitmapToSDFile(b, imgPath + imgName,
-											Bitmap.CompressFormat.PNG);
-								}
-							}
-						}
-					} catch (OutOfMemoryError error) {
-						//爆内存
-						error.printStackTrace();
-					}
+					// 可能在等待的时候已经被别的请求加载好了
+					Bitmap b = loadImgFromMemery(imgUrl);
 					if (b != null) {
-						if (isCache) {
-							mImageCache.set(imgUrl, b);
-						}
+						mHandler.post(new CallBackRunnable(b, callBack, imgUrl));
+						return;
+					}
+					if (!startLoading(imgUrl, callBack)) {
+						return;
+					}
+					try {
+						b = loadImgFromSDOrNetwork(imgPath, imgName, imgUrl, isCache, operator);
+					} finally {
 						// 主线程显示图片
-						final Bitmap finalbitmap = b;
-						mHandler.post(new Runnable() {
-							@Override
-							public void run() {
-								callBack.imageLoaded(finalbitmap, imgUrl);
-							}
-						});
+						finishLoading(imgUrl, b);
 					}
 				}
 			};
@@ -386,35 +378,21 @@ public class AsyncImageManager {
 				Log.e("AsyncImageManager", "threadPoll == null || threadPoll.isShutdown()");
 				return null;
 			}
+			if (!startLoading(packageName, callBack)) {
+				return null;
+			}
 			Thread loadimg = new Thread() {
 				@Override
 				public void run() {
+					Bitmap bitmap = null;
 					try {
-						Drawable drawable = loadIcon(context, packageName);
-						Bitmap bitmap = null;
-						if (drawable != null) {
-							bitmap = RecommAppsUtils.drawableToBitmap(context, drawable);
-						}
-						if (bitmap != null) {
-							//TODO：加遮罩，跟业务有关，后续考虑移走
-							bitmap = AppGameDrawUtils.getInstance().createMaskBitmap(context,
-									bitmap);
-							if (bitmap != null) {
-								if (isCache) {
-									mImageCache.set(packageName, bitmap);
-								}
-								// 主线程显示图片
-								CallBackRunnable cbRunnable = new CallBackRunnable(bitmap,
-										callBack, packageName);
-//								Message message = new Message();
-//								message.obj = cbRunnable;
-//								mDeferredHandler.sendMessage(message);
-								mHandler.post(cbRunnable);
-							}
+						bitmap = loadMaskedIcon(context, packageName);
+						if (bitmap != null && isCache) {
+							mImageCache.set(packageName, bitmap);
 						}
-					} catch (OutOfMemoryError error) {
-						//爆内存
-						error.printStackTrace();
+					} finally {
+						// 主线程显示图片
+						finishLoading(packageName, bitmap);
 					}
 				}
 			};
@@ -458,33 +436,22 @@ public class AsyncImageManager {
 					if (!isLoad) {
 						return;
 					}
+					Bitmap bitmap = loadImgFromMemery(packageName);
+					if (bitmap != null) {
+						mHandler.post(new CallBackRunnable(bitmap, callBack, packageName));
+						return;
+					}
+					if (!startLoading(packageName, callBack)) {
+						return;
+					}
 					try {
-						Drawable drawable = loadIcon(context, packageName);
-						Bitmap bitmap = null;
-						if (drawable != null) {
-							bitmap = RecommAppsUtils.drawableToBitmap(context, drawable);
+						bitmap = loadMaskedIcon(context, packageName);
+						if (bitmap != null && isCache) {
+							mImageCache.set(packageName, bitmap);
 						}
-						if (bitmap != null) {
-							//TODO：加遮罩，跟业务有关，后续考虑移走
-							bitmap = AppGameDrawUtils.getInstance().createMaskBitmap(context,
-									bitmap);
-							if (bitmap != null) {
-								if (isCache) {
-									mImageCache.set(packageName, bitmap);
-								}
-								// 主线程显示图片
-								final Bitmap finalBitmap = bitmap;
-								mHandler.post(new Runnable() {
-									@Override
-									public void run() {
-										callBack.imageLoaded(finalBitmap, packageName);
-									}
-								});
-							}
-						}
-					} catch (OutOfMemoryError error) {
-						//爆内存
-						error.printStackTrace();
+					} finally {
+						// 主线程显示图片
+						finishLoading(packageName, bitmap);
 					}
 				}
 			};
@@ -495,6 +462,181 @@ public class AsyncImageManager {
 		return result;
 	}
 	
+	/**
+	 * 加载应用程序图标并加上遮罩，先从磁盘缓存里找，程序升级后缓存自动失效
+	 * 
+	 * @param context
+	 * @param packageName
+	 * @return 加载失败时返回null
+	 */
+	private Bitmap loadMaskedIcon(Context context, String packageName) {
+		String diskKey = null;
+		try {
+			ApplicationInfo appInfo = context.getPackageManager().getApplicationInfo(packageName,
+					0);
+			if (appInfo.sourceDir != null) {
+				diskKey = packageName + "|" + new File(appInfo.sourceDir).lastModified();
+			}
+		} catch (NameNotFoundException e) {
+			return null;
+		}
+		try {
+			Bitmap bitmap = mDiskCache.get(diskKey, createDecodeOptions());
+			if (bitmap != null) {
+				return bitmap;
+			}
+			Drawable drawable = loadIcon(context, packageName);
+			if (drawable != null) {
+				bitmap = RecommAppsUtils.drawableToBitmap(context, drawable);
+			}
+			if (bitmap != null) {
+				//TODO：加遮罩，跟业务有关，后续考虑移走
+				bitmap = AppGameDrawUtils.getInstance().createMaskBitmap(context, bitmap);
+			}
+			if (bitmap != null) {
+				mDiskCache.put(diskKey, bitmap);
+			}
+			return bitmap;
+		} catch (OutOfMemoryError error) {
+			//爆内存
+			error.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * 先从SD卡加载，没有则从网络加载并保存
+	 */
+	private Bitmap loadImgFromSDOrNetwork(String imgPath, String imgName, String imgUrl,
+			boolean isCache, AsyncNetBitmapOperator operator) {
+		Bitmap b = null;
+		try {
+			b = loadImgFromSD(imgPath, imgName, imgUrl, isCache);
+			if (b == null) {
+				b = loadImgFromNetwork(imgUrl);
+				if (operator != null) {
+					b = operator.operateBitmap(GOLauncherApp.getContext(), b);
+				}
+				saveNetworkBitmap(b, imgPath, imgName, imgUrl);
+				if (b != null && isCache) {
+					mImageCache.set(imgUrl, b);
+				}
+			}
+		} catch (OutOfMemoryError error) {
+			//爆内存
+			error.printStackTrace();
+		}
+		return b;
+	}
+
+	/**
+	 * 从网络加载的图片保存到SD卡，SD卡不可用时保存到程序自己的磁盘缓存
+	 */
+	private void saveNetworkBitmap(Bitmap bitmap, String imgPath, String imgName, String imgUrl) {
+		if (bitmap == null) {
+			return;
+		}
+		if (FileUtil.isSDCardAvaiable()) {
+			FileUtil.saveBitmapToSDFile(bitmap, imgPath + imgName, Bitmap.CompressFormat.PNG);
+		} else {
+			mDiskCache.put(imgUrl, bitmap);
+		}
+	}
+
+	/**
+	 * 开始加载一张图片
+	 * 
+	 * @return true表示由调用方负责加载，false表示这张图片已经在加载，回调会在加载完成后一起调用
+	 */
+	private boolean startLoading(String key, AsyncImageLoadedCallBack callBack) {
+		synchronized (mLoadingCallBacks) {
+			ArrayList<AsyncImageLoadedCallBack> callBacks = mLoadingCallBacks.get(key);
+			if (callBacks != null) {
+				callBacks.add(callBack);
+				mMergedCount++;
+				return false;
+			}
+			callBacks = new ArrayList<AsyncImageLoadedCallBack>(1);
+			callBacks.add(callBack);
+			mLoadingCallBacks.put(key, callBacks);
+			return true;
+		}
+	}
+
+	/**
+	 * 图片加载结束，在主线程回调所有等待这张图片的回调，加载失败时不回调
+	 */
+	private void finishLoading(String key, Bitmap bitmap) {
+		ArrayList<AsyncImageLoadedCallBack> callBacks;
+		synchronized (mLoadingCallBacks) {
+			callBacks = mLoadingCallBacks.remove(key);
+		}
+		if (bitmap == null || callBacks == null) {
+			return;
+		}
+		for (AsyncImageLoadedCallBack callBack : callBacks) {
+			mHandler.post(new CallBackRunnable(bitmap, callBack, key));
+		}
+	}
+
+	/**
+	 * 解码参数，3.0以上解码出可修改的图片，不用时可以放进复用池
+	 */
+	private BitmapFactory.Options createDecodeOptions() {
+		BitmapFactory.Options options = new BitmapFactory.Options();
+		if (Machine.IS_HONEYCOMB) {
+			options.inMutable = true;
+		}
+		return options;
+	}
+
+	/**
+	 * 解码文件或者内存中的图片，3.0以上尽量复用池中同样大小的图片
+	 * 
+	 * @param path 图片文件，为null时解码data
+	 * @param data 图片数据
+	 */
+	private Bitmap decodeBitmap(String path, byte[] data) {
+		if (path == null && data == null) {
+			return null;
+		}
+		BitmapFactory.Options options = createDecodeOptions();
+		if (Machine.IS_HONEYCOMB) {
+			options.inJustDecodeBounds = true;
+			decode(path, data, options);
+			options.inJustDecodeBounds = false;
+			if (options.outWidth > 0 && options.outHeight > 0) {
+				options.inBitmap = mBitmapPool.get(options.outWidth, options.outHeight,
+						options.inPreferredConfig);
+			}
+		}
+		try {
+			return decode(path, data, options);
+		} catch (IllegalArgumentException e) {
+			// 复用的图片不符合要求，放回池中，重新解码
+			mBitmapPool.put(options.inBitmap);
+			options.inBitmap = null;
+			return decode(path, data, options);
+		}
+	}
+
+	private static Bitmap decode(String path, byte[] data, BitmapFactory.Options options) {
+		if (path != null) {
+			return BitmapFactory.decodeFile(path, options);
+		}
+		return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+	}
+
+	private static byte[] readFully(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+		byte[] buffer = new byte[8 * 1024];
+		int count;
+		while ((count = in.read(buffer)) != -1) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
 	/**
 	 * 根据包名加载应用程序图标
 	 * 
@@ -583,9 +725,24 @@ public class AsyncImageManager {
 	}
 
 	public void clear() {
+		Log.i("AsyncImageManager", getStatistics());
 		if (mImageCache != null) {
 			mImageCache.clear();
 		}
+		if (mBitmapPool != null) {
+			mBitmapPool.clear();
+		}
+	}
+
+	/**
+	 * 内存缓存、复用池和磁盘缓存的命中、未命中、淘汰次数，以及合并的重复请求次数
+	 */
+	public String getStatistics() {
+		int merged;
+		synchronized (mLoadingCallBacks) {
+			merged = mMergedCount;
+		}
+		return mImageCache + " " + mBitmapPool + " " + mDiskCache + " merged=" + merged;
 	}
 
 	/**
@@ -593,6 +750,10 @@ public class AsyncImageManager {
 	 */
 	public void removeAllTask() {
 		mThreadPoolManager.removeAllTask();
+		// 被取消的任务不会再回调，之后同样的请求需要重新加载
+		synchronized (mLoadingCallBacks) {
+			mLoadingCallBacks.clear();
+		}
 	}
 	
 	/**
@@ -649,9 +810,14 @@ public class AsyncImageManager {
 		mLimitEnd = end;
 	}
 
+	/**
+	 * 调用方确定图片不再显示时调用，图片从缓存中移除并放进复用池，不能复用的直接回收
+	 */
 	public void recycle(String key) {
-		if (mImageCache != null) {
-			mImageCache.recycle(key);
+		if (mImageCache != null && !TextUtils.isEmpty(key)) {
+			Bitmap bitmap = mImageCache.get(key);
+			mImageCache.remove(key);
+			mBitmapPool.put(bitmap);
 		}
 	}
 	
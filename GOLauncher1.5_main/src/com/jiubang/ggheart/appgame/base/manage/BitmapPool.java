@@ -0,0 +1,95 @@
+package com.jiubang.ggheart.appgame.base.manage;
+
+import java.util.LinkedList;
+import java.util.ListIterator;
+
+import android.graphics.Bitmap;
+
+import com.go.util.device.Machine;
+
+/**
+ *
+ * <br>类描述:可复用图片池
+ * <br>功能详细描述:调用方确认不再显示的图片不直接recycle，而是放到这里，
+ * 解码同样大小的新图片时通过BitmapFactory.Options.inBitmap复用它的内存，减少分配和GC。
+ * 只在3.0以上并且图片可修改时生效，否则直接recycle。池的总大小有上限，超过时回收最久没用的图片。
+ */
+public class BitmapPool {
+	private final int mMaxSize;
+	private int mSize = 0;
+	/**
+	 * 按放入的先后排列，最新的在最后
+	 */
+	private final LinkedList<Bitmap> mBitmaps = new LinkedList<Bitmap>();
+	private int mReuseCount = 0;
+	private int mMissCount = 0;
+
+	public BitmapPool(int maxSize) {
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * 放入一张不再使用的图片，不能复用的图片会被直接回收
+	 *
+	 * @return 是否放入了池中
+	 */
+	public synchronized boolean put(Bitmap bitmap) {
+		if (bitmap == null || bitmap.isRecycled()) {
+			return false;
+		}
+		if (mBitmaps.contains(bitmap)) {
+			return true;
+		}
+		int size = sizeOf(bitmap);
+		if (!Machine.IS_HONEYCOMB || !bitmap.isMutable() || size > mMaxSize) {
+			bitmap.recycle();
+			return false;
+		}
+		mBitmaps.addLast(bitmap);
+		mSize += size;
+		while (mSize > mMaxSize && !mBitmaps.isEmpty()) {
+			Bitmap eldest = mBitmaps.removeFirst();
+			mSize -= sizeOf(eldest);
+			eldest.recycle();
+		}
+		return true;
+	}
+
+	/**
+	 * 取出一张指定大小和格式的图片用于inBitmap，没有时返回null
+	 */
+	public synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+		// 从最新的开始找
+		ListIterator<Bitmap> it = mBitmaps.listIterator(mBitmaps.size());
+		while (it.hasPrevious()) {
+			Bitmap bitmap = it.previous();
+			if (bitmap.getWidth() == width && bitmap.getHeight() == height
+					&& bitmap.getConfig() == config) {
+				it.remove();
+				mSize -= sizeOf(bitmap);
+				mReuseCount++;
+				return bitmap;
+			}
+		}
+		mMissCount++;
+		return null;
+	}
+
+	public synchronized void clear() {
+		for (Bitmap bitmap : mBitmaps) {
+			bitmap.recycle();
+		}
+		mBitmaps.clear();
+		mSize = 0;
+	}
+
+	private static int sizeOf(Bitmap bitmap) {
+		return bitmap.getRowBytes() * bitmap.getHeight();
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "BitmapPool[size=" + mSize + ",maxSize=" + mMaxSize + ",count=" + mBitmaps.size()
+				+ ",reuse=" + mReuseCount + ",miss=" + mMissCount + "]";
+	}
+}
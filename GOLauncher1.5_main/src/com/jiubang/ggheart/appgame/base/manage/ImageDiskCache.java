@@ -0,0 +1,189 @@
+package com.jiubang.ggheart.appgame.base.manage;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import com.go.util.file.FileLru;
+
+/**
+ *
+ * <br>类描述:处理后的小图的磁盘缓存
+ * <br>功能详细描述:保存在程序自己的cache目录下，不依赖SD卡。主要用于已安装程序加过遮罩的图标，
+ * 以及SD卡不可用时从网络下载的图片，避免内存缓存淘汰后重新从PackageManager或网络加载。
+ * 文件总大小超过上限时删除最久没用的文件。
+ */
+public class ImageDiskCache {
+	private static final String DIR_NAME = "appgame_images";
+	private static final int MAGIC = 0x41474931; // "AGI1"
+
+	private final File mDir;
+	private final long mMaxSize;
+	/**
+	 * 目录当前的总大小，-1表示还没统计
+	 */
+	private long mSize = -1;
+	private int mHitCount = 0;
+	private int mMissCount = 0;
+
+	public ImageDiskCache(Context context, long maxSize) {
+		mDir = new File(context.getCacheDir(), DIR_NAME);
+		mMaxSize = maxSize;
+	}
+
+	/**
+	 * 读取图片，不存在或者文件损坏时返回null
+	 *
+	 * @param options
+	 *            解码参数，可以为null
+	 */
+	public Bitmap get(String key, BitmapFactory.Options options) {
+		if (key == null) {
+			return null;
+		}
+		File file = getFile(key);
+		if (!file.exists()) {
+			countMiss();
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024));
+			if (in.readInt() != MAGIC || !key.equals(in.readUTF())) {
+				countMiss();
+				return null;
+			}
+			Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+			if (bitmap != null) {
+				FileLru.touch(file);
+				synchronized (this) {
+					mHitCount++;
+				}
+			} else {
+				countMiss();
+			}
+			return bitmap;
+		} catch (IOException e) {
+			countMiss();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	public void put(String key, Bitmap bitmap) {
+		if (key == null || bitmap == null || bitmap.isRecycled()) {
+			return;
+		}
+		if (!mDir.exists() && !mDir.mkdirs()) {
+			return;
+		}
+		File file = getFile(key);
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),
+					8 * 1024));
+			out.writeInt(MAGIC);
+			out.writeUTF(key);
+			if (!bitmap.compress(Bitmap.CompressFormat.PNG, 100, out)) {
+				throw new IOException("compress failed");
+			}
+			out.close();
+			out = null;
+			long oldLength = file.length();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				return;
+			}
+			synchronized (this) {
+				if (mSize >= 0) {
+					mSize += file.length() - oldLength;
+				}
+			}
+			trim();
+		} catch (IOException e) {
+			temp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	public void remove(String key) {
+		if (key == null) {
+			return;
+		}
+		File file = getFile(key);
+		long length = file.length();
+		if (file.delete()) {
+			synchronized (this) {
+				if (mSize >= 0) {
+					mSize -= length;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 总大小超过上限时，删除最久没用的文件直到上限的3/4
+	 */
+	private synchronized void trim() {
+		File[] files = mDir.listFiles();
+		if (files == null) {
+			return;
+		}
+		if (mSize < 0) {
+			mSize = 0;
+			for (File file : files) {
+				mSize += file.length();
+			}
+		}
+		if (mSize <= mMaxSize) {
+			return;
+		}
+		FileLru.sortOldestFirst(files);
+		long target = mMaxSize * 3 / 4;
+		for (int i = 0; i < files.length && mSize > target; i++) {
+			File file = files[i];
+			long length = file.length();
+			if (file.delete()) {
+				mSize -= length;
+			}
+		}
+	}
+
+	private synchronized void countMiss() {
+		mMissCount++;
+	}
+
+	private File getFile(String key) {
+		// 文件里还保存了完整的key，hashCode冲突时按没有缓存处理
+		return new File(mDir, Integer.toHexString(key.hashCode()) + "_" + key.length());
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ImageDiskCache[size=" + mSize + ",maxSize=" + mMaxSize + ",hit=" + mHitCount
+				+ ",miss=" + mMissCount + "]";
+	}
+}
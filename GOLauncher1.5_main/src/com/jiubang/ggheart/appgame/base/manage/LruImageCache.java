@@ -1,14 +1,15 @@
 package com.jiubang.ggheart.appgame.base.manage;
 
-import java.lang.ref.SoftReference;
-import java.util.concurrent.ConcurrentHashMap;
-
+import android.app.ActivityManager;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.text.TextUtils;
 /**
  * 
  * <br>类描述:LRU图片缓存器
- * <br>功能详细描述:
+ * <br>功能详细描述:只保存强引用，总字节数严格不超过上限，超过时淘汰最久没有使用的图片。
+ * 被淘汰的图片可能还在界面上显示，所以不回收也不复用，交给GC处理。
+ * 不再使用软引用做二级缓存：软引用在新系统上很快就被清掉，命中率很低，反而让图片的内存占用不可控。
  * 
  * @author  wangzhuobin
  * @date  [2012-11-30]
@@ -25,26 +26,12 @@ public class LruImageCache implements IImageCache {
 	 */
 	private LruCache<String, Bitmap> mLruCache = null;
 
-	/**
-	 * 弱引用缓存
-	 */
-	private ConcurrentHashMap<String, SoftReference<Bitmap>> mSoftCache = new ConcurrentHashMap<String, SoftReference<Bitmap>>();
-
 	public LruImageCache(int maxMemorySize) {
 		if (maxMemorySize > 0) {
 			mMaxMemorySize = maxMemorySize;
 		}
 		mLruCache = new LruCache<String, Bitmap>(mMaxMemorySize) {
 
-			@Override
-			protected void entryRemoved(boolean evicted, String key, Bitmap oldValue,
-					Bitmap newValue) {
-				//如果超过了大小，就把从强引用移除的图片加入到弱引用中
-				if (evicted) {
-					mSoftCache.put(key, new SoftReference<Bitmap>(oldValue));
-				}
-			}
-
 			@Override
 			protected int sizeOf(String key, Bitmap value) {
 				return value.getRowBytes() * value.getHeight();
@@ -53,6 +40,15 @@ public class LruImageCache implements IImageCache {
 		};
 	}
 
+	/**
+	 * 根据机器的内存等级计算默认的缓存大小，取可用内存的1/8
+	 */
+	public static int getDefaultMaxMemorySize(Context context) {
+		final int memClass = ((ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE))
+				.getMemoryClass();
+		return 1024 * 1024 * memClass / 8;
+	}
+
 	/**
 	 * 设置一个键值
 	 * 
@@ -78,20 +74,17 @@ public class LruImageCache implements IImageCache {
 		if (key == null) {
 			return null;
 		}
-		//先从强引用缓存中取，如果取不到的话，再从弱引用缓存里面取
 		Bitmap bitmap = mLruCache.get(key);
-		if (bitmap == null) {
-			SoftReference<Bitmap> softReference = mSoftCache.get(key);
-			if (softReference != null) {
-				bitmap = softReference.get();
-			}
+		if (bitmap != null && bitmap.isRecycled()) {
+			// 已经被外部回收的图片不能再返回
+			mLruCache.remove(key);
+			bitmap = null;
 		}
 		return bitmap;
 	}
 
 	public void clear() {
 		mLruCache.evictAll();
-		mSoftCache.clear();
 	}
 
 	@Override
@@ -100,7 +93,6 @@ public class LruImageCache implements IImageCache {
 			return;
 		}
 		mLruCache.remove(key);
-		mSoftCache.remove(key);
 	}
 
 	public int getMaxMemorySize() {
@@ -113,13 +105,6 @@ public class LruImageCache implements IImageCache {
 			return;
 		}
 		Bitmap bitmap = mLruCache.remove(key);
-		if (bitmap == null) {
-			SoftReference<Bitmap> softReference = mSoftCache.remove(key);
-			if (softReference == null) {
-				return;
-			}
-			bitmap = softReference.get();
-		}
 		if (bitmap == null) {
 			return;
 		}
@@ -128,4 +113,13 @@ public class LruImageCache implements IImageCache {
 		}
 		bitmap = null;
 	}
+
+	/**
+	 * 命中、未命中和淘汰次数等统计信息
+	 */
+	@Override
+	public String toString() {
+		return mLruCache.toString() + "[size=" + mLruCache.size() + ",evictions="
+				+ mLruCache.evictionCount() + "]";
+	}
 }
@@ -21,7 +21,9 @@ import java.net.MalformedURLException;
 import java.net.Proxy;
 import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -42,9 +44,21 @@ import com.jiubang.ggheart.launcher.GOLauncherApp;
 public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer> {
 
 	/**
-	 * 时间步，用于轮询
+	 * 等待下载结果的时间步
 	 */
-	private static final int TIME_STEP = 2000;
+	private static final int WAIT_STEP = 200;
+	/**
+	 * 通知下载进度的间隔
+	 */
+	private static final int PROGRESS_STEP = 1000;
+	/**
+	 * 保存断点记录的间隔
+	 */
+	private static final int CHECKPOINT_STEP = 2000;
+	/**
+	 * 保存下载任务列表的间隔
+	 */
+	private static final int SAVE_STEP = 10000;
 	/**
 	 * 下载任务
 	 */
@@ -69,6 +83,14 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 	 * 下载线程队列
 	 */
 	private ArrayList<DownloadThread> mThreadList = new ArrayList<DownloadThread>();
+	/**
+	 * 分段下载的断点记录，单线程下载时为null
+	 */
+	private SegmentJournal mSegmentJournal = null;
+	/**
+	 * 服务器返回的文件标识（ETag或Last-Modified），用于判断断点记录是否还有效
+	 */
+	private String mValidator = null;
 	
 	public DownloadAsyncTask(DownloadTask task, DownloadManager downloadManager) {
 		super();
@@ -202,6 +224,8 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 							parentFile.mkdirs();
 						}
 						saveFile.createNewFile();
+						// 数据文件没了，断点记录也就没用了
+						new SegmentJournal(tempFilePath).delete();
 						// 如果文件不存在，但是下载数大于0
 						if (mDownloadTask.getAlreadyDownloadSize() > 0) {
 							// 重置下载任务数据
@@ -213,6 +237,10 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 					}
 					// 真正开始下载
 					downloadFile(mDownloadTask.getDownloadUrl(), tempFilePath);
+					if (mDownloadResult.getResult() == DownloadResult.DOWNLOAD_COMPLETE
+							|| mDownloadResult.getResult() == DownloadResult.DOWNLOAD_DELETE) {
+						new SegmentJournal(tempFilePath).delete();
+					}
 					if (mDownloadResult.getResult() == DownloadResult.DOWNLOAD_COMPLETE) {
 						// 下载完成后，去掉3.tmp后缀
 						saveFile.renameTo(new File(mDownloadTask.getSaveFilePath()));
@@ -289,6 +317,10 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 				totalSize = httpConnection.getContentLength();
 			}
 			mDownloadResult.setTotalSize(totalSize);
+			mValidator = httpConnection.getHeaderField("ETag");
+			if (mValidator == null) {
+				mValidator = httpConnection.getHeaderField("Last-Modified");
+			}
 			if (httpConnection != null) {
 				httpConnection.disconnect();
 				httpConnection = null;
@@ -306,12 +338,16 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 				// 支持多线程断点
 				runMultiThread(downloadUrl, filePath, totalSize);
 			}
-			long time = System.currentTimeMillis();
+			long progressTime = System.currentTimeMillis();
+			long checkpointTime = progressTime;
+			long saveTime = progressTime;
 			while (mDownloadTask.getState() != DownloadTask.STATE_STOP
 					&& mDownloadTask.getState() != DownloadTask.STATE_DELETE
-					&& mDownloadResult.getResult() == DownloadResult.DOWNLOAD_RUNNING) {
-				// 每隔time_step的时间就更新一次数据
-				if (System.currentTimeMillis() - time > TIME_STEP) {
+					&& mDownloadResult.waitForResult(WAIT_STEP) == DownloadResult.DOWNLOAD_RUNNING) {
+				long now = System.currentTimeMillis();
+				// 进度按固定的间隔通知，不随下载线程的读写频率变化
+				if (now - progressTime >= PROGRESS_STEP) {
+					progressTime = now;
 					if (mDownloadTask.getState() != DownloadTask.STATE_STOP
 							&& mDownloadTask.getState() != DownloadTask.STATE_DELETE) {
 						mDownloadTask.setState(DownloadTask.STATE_DOWNLOADING);
@@ -321,7 +357,17 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 							.getAlreadyDownloadPercent());
 					mDownloadTask
 							.notifyListener(IDownloadListenerConstance.METHOD_ON_PROGRESS_UPDATE_ID);
-					time = System.currentTimeMillis();
+				}
+				if (now - checkpointTime >= CHECKPOINT_STEP) {
+					checkpointTime = now;
+					saveCheckpoint(downloadUrl);
+				}
+				// 保存未下载完成，下载完成和下载完成且安装的下载任务到SD卡
+				if (now - saveTime >= SAVE_STEP) {
+					saveTime = now;
+					mDownloadManager.saveNotCompleteTask();
+					mDownloadManager.getDownloadCompleteManager().saveDownlaodCompleteTask();
+					mDownloadManager.getDownloadCompleteManager().saveInstalledTask();
 				}
 			}
 			// 跳出while循环，第一种情况是任务手动暂停或者删除
@@ -340,6 +386,14 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 				} else if (mDownloadTask.getState() == DownloadTask.STATE_DELETE) {
 					mDownloadResult.setResult(DownloadResult.DOWNLOAD_DELETE);
 				}
+			} else if (mDownloadResult.getResult() == DownloadResult.DOWNLOAD_FAIL
+					&& mDownloadResult.isAllSegmentsFinished()) {
+				// 出错的线程放弃的段已经由其它线程下载完成
+				mDownloadResult.setResult(DownloadResult.DOWNLOAD_COMPLETE);
+			}
+			if (mDownloadResult.getResult() != DownloadResult.DOWNLOAD_COMPLETE
+					&& mDownloadResult.getResult() != DownloadResult.DOWNLOAD_DELETE) {
+				saveCheckpoint(downloadUrl);
 			}
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -410,85 +464,116 @@ public class DownloadAsyncTask extends AsyncTask<Object, DownloadTask, Integer>
 	private void runSingleThread(String downloadUrl, String filePath, Long totalSize) {
 		mDownloadTask.setTotalSize(totalSize);
 		mDownloadTask.setThreadNum(1);
+		// 不支持断点，旧的断点记录没有用了
+		new SegmentJournal(filePath).delete();
 		DownloadSingleThread thread = new DownloadSingleThread(mDownloadResult, downloadUrl, filePath);
 		thread.setTag("" + mDownloadTask.getId() + 0);
 		thread.start();
 		// 任务状态改变之后，保存下载任务的信息
 		mDownloadManager.saveNotCompleteTask();
 	}
-	
+
 	private void runMultiThread(String downloadUrl, String filePath, Long totalSize) {
-		// 先判断下载任务属于断点续传，断点续传的线程信息已经存在于downloadTask中
-		int threadNum = mDownloadTask.getThreadNum();
-		if (threadNum > 0 && mDownloadTask.getThreadDataMap().size() == threadNum) {
-			long alreadyDownloadSize = totalSize;
-			Iterator<Entry<String, DownloadTask.ThreadData>> iter = mDownloadTask
-					.getThreadDataMap().entrySet().iterator();
-			// 重新创建线程下载
-			while (iter.hasNext()) {
-				Entry<String, DownloadTask.ThreadData> entry = iter.next();
-				DownloadTask.ThreadData data = entry.getValue();
-				DownloadThread thread = new DownloadThread(mDownloadResult, downloadUrl, filePath,
-						data.mStartPos, data.mEndPos);
-				thread.setTag(data.mTag);
-				// 计算已经下载的字节数
-				alreadyDownloadSize = alreadyDownloadSize - (data.mEndPos - data.mStartPos);
-				mThreadList.add(thread);
-				thread.start();
-			}
-			mDownloadResult.updateAlreadyDownloadSize(alreadyDownloadSize);
-		} else {
-			// 假如task保存的信息不对称，则相当于重新下载
-			// 根据文件总长计算需要使用的线程数
-			threadNum = (int) (totalSize / MIN_BLOCK_SIZE);
-			// 实际每个线程下载的数据块大小
-			long blockSize = 0;
-			// 文件总长分成N块之后，余数的大小
-			long moreSize = 0;
-			if (threadNum >= MAX_THREAD_NUM) {
-				threadNum = MAX_THREAD_NUM;
-				blockSize = totalSize / MAX_THREAD_NUM;
-				moreSize = totalSize % blockSize;
-			} else {
-				blockSize = MIN_BLOCK_SIZE;
-				moreSize = totalSize % MIN_BLOCK_SIZE;
-			}
-			if (moreSize > 0 && threadNum < MAX_THREAD_NUM) {
-				threadNum += 1;
-			}
-			mDownloadTask.setTotalSize(totalSize);
-			mDownloadTask.setThreadNum(threadNum);
-			// 线程分段下载
+		mDownloadTask.setTotalSize(totalSize);
+		mSegmentJournal = new SegmentJournal(filePath);
+		// 先判断下载任务属于断点续传，优先使用断点记录，其次是旧版本保存在downloadTask中的线程信息
+		List<DownloadSegment> segments = mSegmentJournal.load(downloadUrl, totalSize, mValidator);
+		if (segments == null) {
+			segments = loadThreadData(totalSize);
+		}
+		// 根据文件总长计算需要使用的线程数
+		int threadNum = (int) ((totalSize + MIN_BLOCK_SIZE - 1) / MIN_BLOCK_SIZE);
+		threadNum = Math.max(1, Math.min(threadNum, MAX_THREAD_NUM));
+		if (segments == null) {
+			// 相当于重新下载，平均分成threadNum段
+			segments = new ArrayList<DownloadSegment>(threadNum);
+			long blockSize = totalSize / threadNum;
 			for (int i = 0; i < threadNum; i++) {
-				DownloadThread thread = null;
-				long start = 0;
-				long end = 0;
-				if (i == threadNum - 1) {
-					if ((i + 1) * blockSize > totalSize) {
-						thread = new DownloadThread(mDownloadResult, downloadUrl, filePath, i
-								* blockSize, i * blockSize + moreSize);
-						start = i * blockSize;
-						end = i * blockSize + moreSize;
-					} else {
-						thread = new DownloadThread(mDownloadResult, downloadUrl, filePath, i
-								* blockSize, (i + 1) * blockSize + moreSize);
-						start = i * blockSize;
-						end = (i + 1) * blockSize + moreSize;
-					}
-				} else {
-					thread = new DownloadThread(mDownloadResult, downloadUrl, filePath, i
-							* blockSize, (i + 1) * blockSize);
-					start = i * blockSize;
-					end = (i + 1) * blockSize;
-				}
-				thread.setTag("" + mDownloadTask.getId() + i);
-				mThreadList.add(thread);
-				thread.start();
+				long start = i * blockSize;
+				long end = i == threadNum - 1 ? totalSize : start + blockSize;
+				segments.add(new DownloadSegment("" + mDownloadTask.getId() + i, start, end));
 			}
 		}
+		mDownloadResult.setSegments(segments);
+		// 计算已经下载的字节数
+		long alreadyDownloadSize = totalSize;
+		for (DownloadSegment segment : segments) {
+			alreadyDownloadSize -= segment.getEnd() - segment.getPosition();
+		}
+		mDownloadResult.updateAlreadyDownloadSize(alreadyDownloadSize);
+		if (mDownloadResult.isAllSegmentsFinished()) {
+			// 上次已经下载完，只是没来得及改名
+			mDownloadResult.setResult(DownloadResult.DOWNLOAD_COMPLETE);
+			return;
+		}
+		// 线程分段下载，线程比段少时，空闲的线程会接着下载剩下的段
+		for (int i = 0; i < threadNum; i++) {
+			DownloadSegment segment = mDownloadResult.nextSegment();
+			if (segment == null) {
+				break;
+			}
+			DownloadThread thread = new DownloadThread(mDownloadResult, downloadUrl, filePath,
+					segment);
+			thread.setTag("" + mDownloadTask.getId() + i);
+			mThreadList.add(thread);
+			thread.start();
+		}
+		saveCheckpoint(downloadUrl);
 		// 任务状态改变之后，保存下载任务的信息
 		mDownloadManager.saveNotCompleteTask();
 	}
-	
-	
+
+	/**
+	 * <br>功能简述:把旧版本保存在downloadTask中的线程信息转换成分段
+	 * <br>功能详细描述:
+	 * <br>注意:
+	 * @return 信息不完整或者与文件总长不符时返回null
+	 */
+	private List<DownloadSegment> loadThreadData(long totalSize) {
+		int threadNum = mDownloadTask.getThreadNum();
+		if (threadNum <= 0 || mDownloadTask.getThreadDataMap().size() != threadNum) {
+			return null;
+		}
+		ArrayList<DownloadSegment> segments = new ArrayList<DownloadSegment>(threadNum);
+		Iterator<Entry<String, DownloadTask.ThreadData>> iter = mDownloadTask.getThreadDataMap()
+				.entrySet().iterator();
+		while (iter.hasNext()) {
+			DownloadTask.ThreadData data = iter.next().getValue();
+			if (data.mStartPos < 0 || data.mEndPos > totalSize || data.mStartPos > data.mEndPos) {
+				return null;
+			}
+			segments.add(new DownloadSegment(data.mTag, data.mStartPos, data.mEndPos));
+		}
+		return segments;
+	}
+
+	/**
+	 * <br>功能简述:保存分段下载的断点
+	 * <br>功能详细描述:写断点记录文件，同时更新downloadTask中的线程信息，下载任务列表保存时一起保存
+	 * <br>注意:单线程下载时不做任何事
+	 */
+	private void saveCheckpoint(String downloadUrl) {
+		if (mSegmentJournal == null) {
+			return;
+		}
+		List<DownloadSegment> segments = mDownloadResult.snapshotSegments();
+		try {
+			mSegmentJournal.save(downloadUrl, mDownloadResult.getTotalSize(), mValidator, segments);
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		ConcurrentHashMap<String, DownloadTask.ThreadData> map = mDownloadTask.getThreadDataMap();
+		HashSet<String> tags = new HashSet<String>();
+		for (DownloadSegment segment : segments) {
+			DownloadTask.ThreadData data = new DownloadTask.ThreadData();
+			data.mTag = segment.getTag();
+			data.mStartPos = segment.getPosition();
+			data.mEndPos = segment.getEnd();
+			map.put(data.mTag, data);
+			tags.add(data.mTag);
+		}
+		// 去掉上次下载遗留的线程信息
+		map.keySet().retainAll(tags);
+		mDownloadTask.setThreadNum(segments.size());
+	}
 }
\ No newline at end of file
@@ -0,0 +1,128 @@
+package com.jiubang.ggheart.appgame.download;
+
+/**
+ * <br>类描述:所有下载任务共用的连接数和带宽限制
+ * <br>功能详细描述:每个下载线程建立连接前要先取得一个连接名额，下载的数据按令牌桶限速。
+ * 带宽为0表示不限速。
+ */
+public class DownloadLimiter {
+	/**
+	 * 默认最多同时建立的连接数
+	 */
+	public static final int DEFAULT_MAX_CONNECTIONS = 6;
+	/**
+	 * 等待连接名额时，检查线程是否已停止的间隔
+	 */
+	private static final long WAIT_STEP = 500;
+
+	private int mMaxConnections = DEFAULT_MAX_CONNECTIONS;
+	private int mActiveConnections = 0;
+	private final Object mConnectionLock = new Object();
+
+	/**
+	 * 每秒字节数，0表示不限速
+	 */
+	private long mBytesPerSecond = 0;
+	/**
+	 * 当前可用的字节数，可以为负数，表示已经透支，需要等待
+	 */
+	private long mTokens = 0;
+	private long mLastRefillTime = 0;
+	private final Object mBandwidthLock = new Object();
+
+	/**
+	 * 外部用来判断等待中的线程是否已经被停止
+	 */
+	public interface StopFlag {
+		boolean isStopped();
+	}
+
+	public void setMaxConnections(int maxConnections) {
+		synchronized (mConnectionLock) {
+			mMaxConnections = Math.max(1, maxConnections);
+			mConnectionLock.notifyAll();
+		}
+	}
+
+	public int getMaxConnections() {
+		synchronized (mConnectionLock) {
+			return mMaxConnections;
+		}
+	}
+
+	/**
+	 * 取得一个连接名额，名额不够时等待
+	 *
+	 * @return false表示等待期间线程被停止，没有取得名额
+	 */
+	public boolean acquireConnection(StopFlag flag) {
+		synchronized (mConnectionLock) {
+			while (mActiveConnections >= mMaxConnections) {
+				if (flag != null && flag.isStopped()) {
+					return false;
+				}
+				try {
+					mConnectionLock.wait(WAIT_STEP);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			mActiveConnections++;
+			return true;
+		}
+	}
+
+	public void releaseConnection() {
+		synchronized (mConnectionLock) {
+			if (mActiveConnections > 0) {
+				mActiveConnections--;
+			}
+			mConnectionLock.notifyAll();
+		}
+	}
+
+	/**
+	 * 设置所有下载的总带宽
+	 *
+	 * @param bytesPerSecond 每秒字节数，0表示不限速
+	 */
+	public void setBandwidth(long bytesPerSecond) {
+		synchronized (mBandwidthLock) {
+			mBytesPerSecond = Math.max(0, bytesPerSecond);
+			mTokens = 0;
+			mLastRefillTime = System.currentTimeMillis();
+		}
+	}
+
+	public long getBandwidth() {
+		synchronized (mBandwidthLock) {
+			return mBytesPerSecond;
+		}
+	}
+
+	/**
+	 * 下载了length字节之后调用，超过带宽时睡眠到允许的时间
+	 */
+	public void throttle(int length) {
+		long sleepTime;
+		synchronized (mBandwidthLock) {
+			if (mBytesPerSecond <= 0) {
+				return;
+			}
+			long now = System.currentTimeMillis();
+			// 最多积累1秒的令牌，避免空闲之后瞬间突发
+			mTokens = Math.min(mBytesPerSecond, mTokens + (now - mLastRefillTime)
+					* mBytesPerSecond / 1000);
+			mLastRefillTime = now;
+			mTokens -= length;
+			sleepTime = mTokens < 0 ? -mTokens * 1000 / mBytesPerSecond : 0;
+		}
+		if (sleepTime > 0) {
+			try {
+				Thread.sleep(sleepTime);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -91,6 +91,10 @@ public class DownloadManager {
 	 * 下载完成的管理器
 	 */
 	private DownloadCompleteManager mCompleteManager = null;
+	/**
+	 * 所有下载任务共用的连接数和带宽限制
+	 */
+	private DownloadLimiter mDownloadLimiter = new DownloadLimiter();
 	/**
 	 * ASYNCTASK必须在UI线程创建，采用handler的方式进行创建
 	 */
@@ -548,6 +552,27 @@ public class DownloadManager {
 		this.mMaxConcurrentDownloadCount = maxConcurrentDownloadCount;
 	}
 
+	public DownloadLimiter getDownloadLimiter() {
+		return mDownloadLimiter;
+	}
+
+	/**
+	 * 设置所有下载任务同时建立的最大连接数，默认为{@link DownloadLimiter#DEFAULT_MAX_CONNECTIONS}
+	 */
+	public void setMaxConnectionCount(int count) {
+		mDownloadLimiter.setMaxConnections(count);
+	}
+
+	/**
+	 * 设置所有下载任务的总带宽
+	 * 
+	 * @param bytesPerSecond
+	 *            每秒字节数，0表示不限速
+	 */
+	public void setDownloadBandwidth(long bytesPerSecond) {
+		mDownloadLimiter.setBandwidth(bytesPerSecond);
+	}
+
 	/**
 	 * 通过ID获取下载任务的方法
 	 * 
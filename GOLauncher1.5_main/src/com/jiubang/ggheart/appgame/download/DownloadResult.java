@@ -12,8 +12,10 @@ package com.jiubang.ggheart.appgame.download;
 
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <br>类描述:
@@ -34,15 +36,18 @@ public class DownloadResult {
 
 	public final static int DOWNLOAD_DELETE = 3; // 下载删除
 
-	private int mResult = DOWNLOAD_RUNNING;
+	/**
+	 * 空闲线程拆分别的段时，每一段的最小长度
+	 */
+	public final static long MIN_SPLIT_SIZE = 256 * 1024;
 
-	private Object mDownloadSizeLocker = new Object();
-	
-	private long mAlreadyDownloadSize = 0;
+	private volatile int mResult = DOWNLOAD_RUNNING;
+
+	private AtomicLong mAlreadyDownloadSize = new AtomicLong(0);
 
 	private long mTotalSize = 0;
 
-	private int mPercent = 0;
+	private volatile int mPercent = 0;
 
 	private DownloadManager mDownloadManager = null;
 
@@ -50,61 +55,147 @@ public class DownloadResult {
 
 	private ConcurrentHashMap<String, ThreadResultBean> mResultMap = null;
 
-	private long mTime = 0;
-
-	private final static long TIME_STEP = 10000;
+	/**
+	 * 分段下载时所有的段，包括已经下载完成的
+	 */
+	private ArrayList<DownloadSegment> mSegments = new ArrayList<DownloadSegment>();
 
 	public DownloadResult(DownloadManager manager, DownloadTask task) {
 		mDownloadManager = manager;
 		mDownloadTask = task;
 		mResultMap = new ConcurrentHashMap<String, ThreadResultBean>();
-		mTime = 0;
 	}
 
+	/**
+	 * <br>功能简述:下载线程在开始、结束和出错时通知自己的状态
+	 * <br>功能详细描述:下载过程中的位置保存在各个{@link DownloadSegment}中，由DownloadAsyncTask定时保存，
+	 * 这里不再处理
+	 * <br>注意:
+	 */
 	public void notifyDownloadResult(String tag, ThreadResultBean value) {
 		mResultMap.put(tag, value);
-		judgeResult();
-		DownloadTask.ThreadData data = new DownloadTask.ThreadData();
-		data.mEndPos = value.getEndPosition();
-		data.mStartPos = value.getStartPosition();
-		data.mTag = tag;
-		mDownloadTask.getThreadDataMap().put(tag, data);
-		// 保存未下载完成，下载完成和下载完成且安装的下载任务到SD卡
-		// 避免多个线程同时调用此方法造成频繁保存文件,设置一个时间差
-		if (System.currentTimeMillis() - mTime > TIME_STEP) {
-			mTime = System.currentTimeMillis();
-			mDownloadManager.saveNotCompleteTask();
-			mDownloadManager.getDownloadCompleteManager().saveDownlaodCompleteTask();
-			mDownloadManager.getDownloadCompleteManager().saveInstalledTask();
+		synchronized (this) {
+			judgeResult();
+			notifyAll();
 		}
 	}
 
+	/**
+	 * 所有下载任务共用的连接数和带宽限制
+	 */
+	public DownloadLimiter getDownloadLimiter() {
+		return mDownloadManager.getDownloadLimiter();
+	}
+
 	public int getResult() {
 		return mResult;
 	}
 
-	public void setResult(int result) {
+	public synchronized void setResult(int result) {
 		mResult = result;
+		notifyAll();
 	}
 
-	public long getAlreadyDownloadSize() {
-		synchronized (mDownloadSizeLocker) {
-			return mAlreadyDownloadSize;
+	/**
+	 * <br>功能简述:等待下载结果改变
+	 * <br>功能详细描述:
+	 * <br>注意:
+	 * @param timeout 最长等待的毫秒数
+	 * @return 当前的下载结果
+	 */
+	public synchronized int waitForResult(long timeout) {
+		if (mResult == DOWNLOAD_RUNNING) {
+			try {
+				wait(timeout);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
 		}
+		return mResult;
+	}
+
+	public long getAlreadyDownloadSize() {
+		return mAlreadyDownloadSize.get();
 	}
 
 	public void updateAlreadyDownloadSize(long size) {
-		synchronized (mDownloadSizeLocker) {
-			mAlreadyDownloadSize += size;
-		}
+		long downloaded = mAlreadyDownloadSize.addAndGet(size);
 		if (mTotalSize > 0) {
-			mPercent = (int) (((double) mAlreadyDownloadSize / mTotalSize) * 100);
+			mPercent = (int) (((double) downloaded / mTotalSize) * 100);
 		}
-		// 保存未下载完成的任务
-		if (System.currentTimeMillis() - mTime > TIME_STEP) {
-			mTime = System.currentTimeMillis();
-			mDownloadManager.saveNotCompleteTask();
+	}
+
+	/**
+	 * <br>功能简述:设置分段下载的所有段
+	 * <br>功能详细描述:
+	 * <br>注意:必须在启动下载线程之前调用
+	 */
+	public synchronized void setSegments(List<DownloadSegment> segments) {
+		mSegments = new ArrayList<DownloadSegment>(segments);
+	}
+
+	/**
+	 * 取所有段的快照，用于保存断点
+	 * <br>注意:和{@link #nextSegment()}用同一个锁，拆分出来的段和被拆的段要么都是拆之前的样子，
+	 * 要么都是拆之后的，不会漏掉中间的数据。返回的段是拷贝，之后下载线程的改动不会影响它们
+	 */
+	public synchronized List<DownloadSegment> snapshotSegments() {
+		ArrayList<DownloadSegment> snapshot = new ArrayList<DownloadSegment>(mSegments.size());
+		for (DownloadSegment segment : mSegments) {
+			snapshot.add(segment.snapshot());
+		}
+		return snapshot;
+	}
+
+	/**
+	 * <br>功能简述:下载线程空闲时取下一段来下载
+	 * <br>功能详细描述:优先取没有线程在下载的段（比如出错的线程放弃的段），
+	 * 没有的话就把剩余数据最多的段拆一半出来，这样慢的连接不会拖慢整个下载
+	 * <br>注意:
+	 * @return 下一段，全部都在下载或者已经完成时返回null
+	 */
+	public synchronized DownloadSegment nextSegment() {
+		DownloadSegment largest = null;
+		long largestRemaining = 0;
+		for (DownloadSegment segment : mSegments) {
+			if (segment.isFinished()) {
+				continue;
+			}
+			if (!segment.isOwned()) {
+				segment.setOwned(true);
+				return segment;
+			}
+			long remaining = segment.getRemaining();
+			if (remaining > largestRemaining) {
+				largest = segment;
+				largestRemaining = remaining;
+			}
+		}
+		if (largest == null) {
+			return null;
+		}
+		DownloadSegment segment = largest.split(MIN_SPLIT_SIZE,
+				"" + mDownloadTask.getId() + mSegments.size());
+		if (segment != null) {
+			segment.setOwned(true);
+			mSegments.add(segment);
+		}
+		return segment;
+	}
+
+	/**
+	 * 所有段是否都已经下载完成
+	 */
+	public synchronized boolean isAllSegmentsFinished() {
+		if (mSegments.isEmpty()) {
+			return false;
+		}
+		for (DownloadSegment segment : mSegments) {
+			if (!segment.isFinished()) {
+				return false;
+			}
 		}
+		return true;
 	}
 
 	public long getTotalSize() {
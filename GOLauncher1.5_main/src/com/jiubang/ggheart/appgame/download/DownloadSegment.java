@@ -0,0 +1,115 @@
+package com.jiubang.ggheart.appgame.download;
+
+/**
+ * <br>类描述:分段下载中的一段数据[起始位置, 终止位置)
+ * <br>功能详细描述:下载线程每读到一块数据，先通过{@link #reserve(int)}预留要写的长度，写入文件后再
+ * {@link #commit(int)}。其它线程空闲时可以把还没预留的后半段{@link #split(long, String)}出去，
+ * 所以终止位置会变小，下载线程写入前必须以reserve的返回值为准。
+ * 只有commit过的位置才会保存到断点记录中。
+ */
+public class DownloadSegment {
+	private final String mTag;
+	/**
+	 * 已经写入文件的位置
+	 */
+	private long mPosition;
+	/**
+	 * 已经预留给下载线程的位置，不小于mPosition
+	 */
+	private long mReserved;
+	private long mEnd;
+	/**
+	 * 是否有线程在下载这一段
+	 */
+	private boolean mOwned = false;
+
+	public DownloadSegment(String tag, long position, long end) {
+		mTag = tag;
+		mPosition = position;
+		mReserved = position;
+		mEnd = end;
+	}
+
+	public String getTag() {
+		return mTag;
+	}
+
+	public synchronized long getPosition() {
+		return mPosition;
+	}
+
+	public synchronized long getEnd() {
+		return mEnd;
+	}
+
+	public synchronized long getRemaining() {
+		return mEnd - mReserved;
+	}
+
+	public synchronized boolean isFinished() {
+		return mPosition >= mEnd;
+	}
+
+	synchronized boolean isOwned() {
+		return mOwned;
+	}
+
+	synchronized void setOwned(boolean owned) {
+		mOwned = owned;
+		if (!owned) {
+			// 预留了但没写成功的数据要重新下载
+			mReserved = mPosition;
+		}
+	}
+
+	/**
+	 * 预留接下来要写入的长度
+	 *
+	 * @param length 读到的数据长度
+	 * @return 实际可以写入的长度，小于length说明这一段已经被拆分，写完就应该结束
+	 */
+	public synchronized int reserve(int length) {
+		long allowed = Math.min(length, mEnd - mReserved);
+		if (allowed <= 0) {
+			return 0;
+		}
+		mReserved += allowed;
+		return (int) allowed;
+	}
+
+	/**
+	 * 预留的数据已经写入文件
+	 */
+	public synchronized void commit(int length) {
+		mPosition += length;
+	}
+
+	/**
+	 * 把还没预留的数据拆出后一半，交给空闲的线程下载
+	 *
+	 * @param minSize 拆分后每一段的最小长度
+	 * @return 新的一段，剩余数据太少时返回null
+	 */
+	public synchronized DownloadSegment split(long minSize, String tag) {
+		long remaining = mEnd - mReserved;
+		if (remaining < minSize * 2) {
+			return null;
+		}
+		long middle = mReserved + remaining / 2;
+		DownloadSegment segment = new DownloadSegment(tag, middle, mEnd);
+		mEnd = middle;
+		return segment;
+	}
+
+	/**
+	 * 拷贝当前已经写入的位置和终止位置，拷贝不属于任何下载线程
+	 */
+	synchronized DownloadSegment snapshot() {
+		return new DownloadSegment(mTag, mPosition, mEnd);
+	}
+
+	@Override
+	public synchronized String toString() {
+		return mTag + "[" + mPosition + "-" + mEnd + ")";
+	}
+}
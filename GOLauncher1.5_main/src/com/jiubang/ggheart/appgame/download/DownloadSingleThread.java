@@ -34,7 +34,7 @@ import com.jiubang.ggheart.launcher.GOLauncherApp;
  * @author  liuxinyang
  * @date  [2013-1-15]
  */
-public class DownloadSingleThread extends Thread {
+public class DownloadSingleThread extends Thread implements DownloadLimiter.StopFlag {
 
 	private String mTag = "";
 	/**
@@ -56,7 +56,7 @@ public class DownloadSingleThread extends Thread {
 	/**
 	 * 外部指示线程是否需要停止下载
 	 */
-	private boolean mIsStop = false;
+	private volatile boolean mIsStop = false;
 	/**
 	 * 下载的状态,初始为正在运行
 	 */
@@ -86,6 +86,11 @@ public class DownloadSingleThread extends Thread {
 		mIsStop = isStop;
 	}
 
+	@Override
+	public boolean isStopped() {
+		return mIsStop;
+	}
+
 	public void setTag(String tag) {
 		mTag = tag;
 	}
@@ -100,6 +105,8 @@ public class DownloadSingleThread extends Thread {
 		RandomAccessFile randomFile = null;
 		HttpURLConnection httpConnection = null;
 		InputStream inputStream = null;
+		DownloadLimiter limiter = mDownloadResult.getDownloadLimiter();
+		boolean acquired = false;
 		try {
 			File file = new File(mFilePath);
 			// 文件不存在,创建一个新的文件
@@ -109,6 +116,13 @@ public class DownloadSingleThread extends Thread {
 			// 创建随机读写文件,从0开始 
 			randomFile = new RandomAccessFile(file, "rw");
 			randomFile.seek(0);
+			acquired = limiter.acquireConnection(this);
+			if (!acquired) {
+				mState = ThreadResultBean.DOWNLOAD_THREAD_NOT_FINISH;
+				mDownloadResult.notifyDownloadResult(mTag,
+						createThreadResultBean(mState, mStartPosition, mEndPosition, null));
+				return;
+			}
 			httpConnection = openConnection(mDownloadUrl);
 			if (httpConnection == null) {
 				mState = ThreadResultBean.DOWNLOAD_THREAD_NOT_FINISH;
@@ -146,6 +160,7 @@ public class DownloadSingleThread extends Thread {
 				// 累计该线程下载的总大小
 				mStartPosition += hasRead;
 				mDownloadResult.updateAlreadyDownloadSize(hasRead);
+				limiter.throttle(hasRead);
 				if (System.currentTimeMillis() - mTime > TIME_STEP) {
 					mTime = System.currentTimeMillis();
 					mState = ThreadResultBean.DOWNLOAD_THREAD_RUNNING;
@@ -178,6 +193,9 @@ public class DownloadSingleThread extends Thread {
             e.printStackTrace(pw);
 			e.printStackTrace();
 		} finally {
+			if (acquired) {
+				limiter.releaseConnection();
+			}
 			try {
 				if (inputStream != null) {
 					inputStream.close();
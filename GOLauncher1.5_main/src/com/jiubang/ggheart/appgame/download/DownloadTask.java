@@ -753,8 +753,8 @@ public class DownloadTask implements Parcelable {
 			for (int i = 0; i < array.length(); i++) {
 				JSONObject obj = array.getJSONObject(i);
 				ThreadData data = new ThreadData();
-				data.mStartPos = obj.optInt("startPos", 0);
-				data.mEndPos = obj.optInt("endPos", 0);
+				data.mStartPos = obj.optLong("startPos", 0);
+				data.mEndPos = obj.optLong("endPos", 0);
 				data.mTag = obj.optString("tag", "");
 				mThreadDataMap.put(data.mTag, data);
 			}
@@ -13,38 +13,31 @@ package com.jiubang.ggheart.appgame.download;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PrintWriter;
 import java.io.RandomAccessFile;
-import java.io.StringWriter;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.Proxy;
 import java.net.URL;
 
-import android.util.Log;
-
 import com.jiubang.ggheart.apps.gowidget.gostore.net.ThemeHttp;
 import com.jiubang.ggheart.apps.gowidget.gostore.util.GoStorePhoneStateUtil;
 import com.jiubang.ggheart.launcher.GOLauncherApp;
 
 /**
- * <br>类描述:直接负责下载行为的线程类，指定起始与终止位置
- * <br>功能详细描述:
+ * <br>类描述:直接负责下载行为的线程类，下载指定的一段数据
+ * <br>功能详细描述:自己的一段下载完成后，向DownloadResult要下一段（没人下载的段，或者从最慢的段拆出来的一半），
+ * 直到所有数据都在下载或者已经下载完成
  * 
  * @author  liuxinyang
  * @date  [2012-11-22]
  */
-public class DownloadThread extends Thread {
+public class DownloadThread extends Thread implements DownloadLimiter.StopFlag {
 
 	private String mTag = "";
 	/**
-	 * 下载文件的起始位置
-	 */
-	private long mStartPosition = 0;
-	/**
-	 * 下载文件的终止位置
+	 * 当前正在下载的段
 	 */
-	private long mEndPosition = 0;
+	private volatile DownloadSegment mSegment = null;
 	/**
 	 * 需要存在的文件路径
 	 */
@@ -56,7 +49,7 @@ public class DownloadThread extends Thread {
 	/**
 	 * 外部指示线程是否需要停止下载
 	 */
-	private boolean mIsStop = false;
+	private volatile boolean mIsStop = false;
 	/**
 	 * 下载的状态,初始为正在运行
 	 */
@@ -65,16 +58,13 @@ public class DownloadThread extends Thread {
 	 * 下载结果回调
 	 */
 	private DownloadResult mDownloadResult = null;
-	
-	private long mTime = 0;
-	
-	private final static long TIME_STEP = 2000;
+
+	private final static int BUFFER_SIZE = 8 * 1024;
 
 	public DownloadThread(DownloadResult downloadResult, String downloadUrl, String filePath,
-			long startPos, long endPos) {
+			DownloadSegment segment) {
 		mDownloadResult = downloadResult;
-		mStartPosition = startPos;
-		mEndPosition = endPos;
+		mSegment = segment;
 		mFilePath = filePath;
 		mDownloadUrl = downloadUrl;
 	}
@@ -89,6 +79,11 @@ public class DownloadThread extends Thread {
 		mIsStop = isStop;
 	}
 
+	@Override
+	public boolean isStopped() {
+		return mIsStop;
+	}
+
 	public void setTag(String tag) {
 		mTag = tag;
 	}
@@ -102,20 +97,9 @@ public class DownloadThread extends Thread {
 		super.run();
 		mState = ThreadResultBean.DOWNLOAD_THREAD_RUNNING;
 		// 开始下载，需要通知外部
-		mDownloadResult.notifyDownloadResult(mTag,
-				createThreadResultBean(mState, mStartPosition, mEndPosition, null));
-		long startpos = mStartPosition;
+		mDownloadResult.notifyDownloadResult(mTag, createThreadResultBean(mState, null));
 		RandomAccessFile randomFile = null;
-		HttpURLConnection httpConnection = null;
-		InputStream inputStream = null;
 		try {
-			if (mStartPosition >= mEndPosition) {
-				mState = ThreadResultBean.DOWNLOAD_THREAD_FINISH;
-				// 通知结果完成，直接返回
-				mDownloadResult.notifyDownloadResult(mTag,
-						createThreadResultBean(mState, mStartPosition, mEndPosition, null));
-				return;
-			}
 			File file = new File(mFilePath);
 			// 文件不存在,创建一个新的文件
 			if (!file.exists()) {
@@ -123,94 +107,119 @@ public class DownloadThread extends Thread {
 			}
 			// 创建随机读写文件
 			randomFile = new RandomAccessFile(file, "rw");
-			randomFile.seek(mStartPosition);
-			httpConnection = openConnection(mDownloadUrl);
-			if (httpConnection == null) {
+			while (!mIsStop && mSegment != null) {
+				if (!mSegment.isFinished()) {
+					downloadSegment(randomFile, mSegment);
+				}
+				if (mIsStop) {
+					break;
+				}
+				if (!mSegment.isFinished()) {
+					throw new IOException("connection closed before " + mSegment);
+				}
+				// 这一段完成了，接着下载别的段
+				mSegment = mDownloadResult.nextSegment();
+			}
+			if (mIsStop) {
 				mState = ThreadResultBean.DOWNLOAD_THREAD_NOT_FINISH;
-				// connection为空，返回没有完成
-				mDownloadResult.notifyDownloadResult(mTag,
-						createThreadResultBean(mState, mStartPosition, mEndPosition, null));
-				return;
+				// 通知下载未完成
+				mDownloadResult.notifyDownloadResult(mTag, createThreadResultBean(mState, null));
+			} else {
+				mState = ThreadResultBean.DOWNLOAD_THREAD_FINISH;
+				// 通知下载完成
+				mDownloadResult.notifyDownloadResult(mTag, createThreadResultBean(mState, null));
 			}
-			// 如果返回码不是200或者206，则抛出异常
+		} catch (Exception e) {
+			// 放弃当前的段，其它线程可以接着下载
+			DownloadSegment segment = mSegment;
+			if (segment != null) {
+				segment.setOwned(false);
+			}
+			// 向外反馈这个错误
+			mState = ThreadResultBean.DOWNLOAD_THREAD_ERROR;
+			mDownloadResult.notifyDownloadResult(mTag, createThreadResultBean(mState, e));
+			e.printStackTrace();
+		} finally {
+			try {
+				if (randomFile != null) {
+					randomFile.close();
+				}
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * <br>功能简述:建立连接下载一段数据
+	 * <br>功能详细描述:一直下载到段的终止位置，段被拆分后终止位置会变小，以{@link DownloadSegment#reserve(int)}为准
+	 * <br>注意:正常返回时这一段不一定完成，可能是线程被停止或者服务器提前断开
+	 */
+	private void downloadSegment(RandomAccessFile randomFile, DownloadSegment segment)
+			throws Exception {
+		DownloadLimiter limiter = mDownloadResult.getDownloadLimiter();
+		if (!limiter.acquireConnection(this)) {
+			return;
+		}
+		HttpURLConnection httpConnection = null;
+		InputStream inputStream = null;
+		try {
+			long position = segment.getPosition();
+			httpConnection = openConnection(mDownloadUrl, position, segment.getEnd());
 			int responseCode = httpConnection.getResponseCode();
 			AsrFilter asrFilter = new AsrFilter();
+			// 只接受206，服务器忽略Range返回整个文件时写入的位置会错
 			// 判断类似于CMCC类型的需要验证的wifi网络
-			if (!String.valueOf(responseCode).startsWith("2")
+			if (responseCode != HttpURLConnection.HTTP_PARTIAL
 					|| asrFilter.isAsrResponse(httpConnection.getContentType())) {
-				Exception e = new Exception(httpConnection.getURL().getHost());
-				mState = ThreadResultBean.DOWNLOAD_THREAD_ERROR;
-				mDownloadResult.notifyDownloadResult(mTag,
-						createThreadResultBean(mState, mStartPosition, mEndPosition, e));
-				return ;
+				throw new Exception(httpConnection.getURL().getHost());
 			}
 			inputStream = httpConnection.getInputStream();
-			byte[] buffer = new byte[4096];
+			randomFile.seek(position);
+			byte[] buffer = new byte[BUFFER_SIZE];
 			int hasRead = 0;
-			while (!mIsStop && mStartPosition < mEndPosition
-					&& (hasRead = inputStream.read(buffer)) > 0) {
-				// 向文件写入数据
-				randomFile.write(buffer, 0, hasRead);
-				// 累计该线程下载的总大小
-				mStartPosition += hasRead;
-				mDownloadResult.updateAlreadyDownloadSize(hasRead);
-				if (System.currentTimeMillis() - mTime > TIME_STEP) {
-					mTime = System.currentTimeMillis();
-					mState = ThreadResultBean.DOWNLOAD_THREAD_RUNNING;
-					// 开始下载，需要通知外部
-					mDownloadResult.notifyDownloadResult(mTag,
-							createThreadResultBean(mState, mStartPosition, mEndPosition, null));
+			while (!mIsStop && (hasRead = inputStream.read(buffer)) > 0) {
+				int length = segment.reserve(hasRead);
+				if (length > 0) {
+					// 向文件写入数据
+					randomFile.write(buffer, 0, length);
+					segment.commit(length);
+					mDownloadResult.updateAlreadyDownloadSize(length);
+				}
+				limiter.throttle(hasRead);
+				if (length < hasRead) {
+					// 已经到了这一段的终止位置（可能被其它线程拆分过）
+					break;
 				}
 			}
-			if (mStartPosition >= mEndPosition) {
-				mState = ThreadResultBean.DOWNLOAD_THREAD_FINISH;
-				// 通知下载完成
-				mDownloadResult.notifyDownloadResult(mTag,
-						createThreadResultBean(mState, mStartPosition, mEndPosition, null));
-				Log.i("liuxinyang", "download complete");
-				return;
-			} else {
-				mState = ThreadResultBean.DOWNLOAD_THREAD_NOT_FINISH;
-				// 通知下载未完成
-				mDownloadResult.notifyDownloadResult(mTag,
-						createThreadResultBean(mState, mStartPosition, mEndPosition, null));
-				return;
-			}
-		} catch (Exception e) {
-			// 向外反馈这个错误
-			mState = ThreadResultBean.DOWNLOAD_THREAD_ERROR;
-			mDownloadResult.notifyDownloadResult(mTag,
-					createThreadResultBean(mState, mStartPosition, mEndPosition, e));
-			StringWriter sw = new StringWriter();   
-            PrintWriter pw = new PrintWriter(sw, true);   
-            e.printStackTrace(pw);
-			e.printStackTrace();
 		} finally {
+			limiter.releaseConnection();
 			try {
 				if (inputStream != null) {
 					inputStream.close();
 				}
-				if (randomFile != null) {
-					randomFile.close();
-				}
-				if (httpConnection != null) {
-					httpConnection.disconnect();
-				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
+			if (httpConnection != null) {
+				httpConnection.disconnect();
+			}
 		}
 	}
+
 	// TODO:下载wangzhuobin 有两个地方用到相同的方法，是否可以抽到辅助工具类里面
 	/**
 	 * <br>功能简述:建立连接
 	 * <br>功能详细描述:
 	 * <br>注意:
 	 * @param downloadUrl
+	 * @param start 起始位置
+	 * @param end 终止位置（不包括）
 	 * @return
 	 * @throws Exception
 	 */
-	private HttpURLConnection openConnection(String downloadUrl) throws Exception {
+	private HttpURLConnection openConnection(String downloadUrl, long start, long end)
+			throws Exception {
 		HttpURLConnection httpConnection = null;
 		URL url = new URL(downloadUrl);
 		if (GoStorePhoneStateUtil.getNetWorkType(GOLauncherApp.getContext()) != GoStorePhoneStateUtil.NETTYPE_UNICOM
@@ -240,37 +249,30 @@ public class DownloadThread extends Thread {
 		// 断点续传设置 User-Agent
 		httpConnection.setRequestProperty("User-Agent", "NetFox");
 		// 设置获取数据的范围
-		String range = "bytes=" + mStartPosition + "-" + (mEndPosition - 1);
+		String range = "bytes=" + start + "-" + (end - 1);
 		httpConnection.setRequestProperty("Range", range);
 		httpConnection.setDoInput(true);
 		return httpConnection;
 	}
 
 	/**
-	 * <br>功能简述:取当前线程的下载起始位置。起始位置会随着下载数据的变化而增加，最终等于endPosition
-	 * <br>功能详细描述:
-	 * <br>注意:
-	 * @return
-	 */
-	public long getStartPosition() {
-		return mStartPosition;
-	}
-
-	/**
-	 * <br>功能简述:取当前线程的下载终止位置
+	 * <br>功能简述:取当前正在下载的段
 	 * <br>功能详细描述:
 	 * <br>注意:
-	 * @return
+	 * @return 没有可下载的段时返回null
 	 */
-	public long getEndPosition() {
-		return mEndPosition;
+	public DownloadSegment getSegment() {
+		return mSegment;
 	}
 
-	private ThreadResultBean createThreadResultBean(int state, long start, long end, Exception e) {
+	private ThreadResultBean createThreadResultBean(int state, Exception e) {
 		ThreadResultBean bean = new ThreadResultBean();
-		bean.setState(mState);
-		bean.setStartPosition(start);
-		bean.setEndPosition(end);
+		bean.setState(state);
+		DownloadSegment segment = mSegment;
+		if (segment != null) {
+			bean.setStartPosition(segment.getPosition());
+			bean.setEndPosition(segment.getEnd());
+		}
 		bean.setException(e);
 		return bean;
 	}
@@ -0,0 +1,121 @@
+package com.jiubang.ggheart.appgame.download;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <br>类描述:分段下载的断点记录
+ * <br>功能详细描述:和下载的临时文件放在一起（临时文件名加.seg），记录下载地址、文件总长、服务器的文件标识
+ * 以及每一段已经写入的位置。进程被杀掉后重新下载时，只要服务器上的文件没变，就从记录的位置继续。
+ * 保存前先把临时文件的数据同步到磁盘，保证记录里的位置不会超过磁盘上真正的数据；
+ * 记录先写到另一个文件再改名，中途被杀掉也不会留下半个记录。
+ */
+public class SegmentJournal {
+	private static final int MAGIC = 0x47534a31; // "GSJ1"
+	private static final String SUFFIX = ".seg";
+
+	private final File mDataFile;
+	private final File mFile;
+
+	public SegmentJournal(String dataFilePath) {
+		mDataFile = new File(dataFilePath);
+		mFile = new File(dataFilePath + SUFFIX);
+	}
+
+	/**
+	 * 读取断点记录
+	 *
+	 * @param validator 服务器当前的文件标识（ETag或Last-Modified），为空时不校验
+	 * @return 与当前下载对应的各段数据，记录不存在或者不匹配时返回null
+	 */
+	public List<DownloadSegment> load(String url, long totalSize, String validator) {
+		if (!mFile.exists() || !mDataFile.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+			if (in.readInt() != MAGIC || !url.equals(in.readUTF()) || in.readLong() != totalSize) {
+				return null;
+			}
+			String savedValidator = in.readUTF();
+			if (validator != null && validator.length() > 0 && savedValidator.length() > 0
+					&& !validator.equals(savedValidator)) {
+				// 服务器上的文件已经变了
+				return null;
+			}
+			int count = in.readInt();
+			ArrayList<DownloadSegment> segments = new ArrayList<DownloadSegment>(count);
+			for (int i = 0; i < count; i++) {
+				String tag = in.readUTF();
+				long position = in.readLong();
+				long end = in.readLong();
+				if (position < 0 || end > totalSize || position > end) {
+					return null;
+				}
+				segments.add(new DownloadSegment(tag, position, end));
+			}
+			return segments;
+		} catch (IOException e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 保存断点记录
+	 *
+	 * @param segments 所有段的快照（{@link DownloadResult#snapshotSegments()}），包括已经完成的
+	 */
+	public void save(String url, long totalSize, String validator, List<DownloadSegment> segments)
+			throws IOException {
+		// 快照在同步数据之前取的，记录的位置只会比磁盘上的数据少
+		int count = segments.size();
+		RandomAccessFile data = new RandomAccessFile(mDataFile, "rw");
+		try {
+			data.getFD().sync();
+		} finally {
+			data.close();
+		}
+		File temp = new File(mFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeUTF(url);
+			out.writeLong(totalSize);
+			out.writeUTF(validator != null ? validator : "");
+			out.writeInt(count);
+			for (DownloadSegment segment : segments) {
+				out.writeUTF(segment.getTag());
+				out.writeLong(segment.getPosition());
+				out.writeLong(segment.getEnd());
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(mFile)) {
+			temp.delete();
+			throw new IOException("rename " + temp + " failed");
+		}
+	}
+
+	public void delete() {
+		mFile.delete();
+	}
+}
@@ -91,6 +91,7 @@ import com.jiubang.ggheart.apps.desks.diy.frames.screen.IndicatorListner;
 import com.jiubang.ggheart.apps.desks.diy.frames.screen.ScreenIndicator;
 import com.jiubang.ggheart.apps.desks.diy.frames.tipsforgl.GuideForGlFrame;
 import com.jiubang.ggheart.components.DeskToast;
+import com.jiubang.ggheart.data.AppDataEngine;
 import com.jiubang.ggheart.data.DatabaseException;
 import com.jiubang.ggheart.data.GoSettingControler;
 import com.jiubang.ggheart.data.info.AppItemInfo;
@@ -217,6 +218,8 @@ public class XBaseGrid extends XPanel
 	protected int mNewPaddingBottom = 0;
 
 	protected Activity mActivity = null;
+	// 上次优先加载时的第一个可见下标
+	private int mPrioritizedIndex = -1;
 
 	private GestureDetector mDetector = null;
 	/**
@@ -3587,6 +3590,7 @@ public class XBaseGrid extends XPanel
 		mLVisibleIndex = mFVisibleIndex + mSingleScreenCells;
 
 		fixLastIndex();
+		prioritizeVisibleItems();
 	}
 
 	/**
@@ -3616,6 +3620,7 @@ public class XBaseGrid extends XPanel
 
 		mLVisibleIndex = position;
 		fixLastIndex();
+		prioritizeVisibleItems();
 		if (mIndicator != null) {
 			mIndicator.setCurPosition(-mOffsetY);
 		}
@@ -3627,6 +3632,26 @@ public class XBaseGrid extends XPanel
 		}
 	}
 
+	/**
+	 * 可视区域变化时，让还在加载中的可见程序先加载图标和标题
+	 */
+	private void prioritizeVisibleItems() {
+		if (mFVisibleIndex == mPrioritizedIndex || mActivity == null) {
+			return;
+		}
+		mPrioritizedIndex = mFVisibleIndex;
+		ArrayList<AppItemInfo> visibleItems = new ArrayList<AppItemInfo>();
+		int last = Math.min(mLVisibleIndex, getChildCount() - 1);
+		for (int i = Math.max(0, mFVisibleIndex); i <= last; i++) {
+			XComponent c = getChildAt(i);
+			if (c instanceof ApplicationIcon
+					&& ((ApplicationIcon) c).mInfo instanceof FunAppItemInfo) {
+				visibleItems.add(((FunAppItemInfo) ((ApplicationIcon) c).mInfo).getAppItemInfo());
+			}
+		}
+		AppDataEngine.getInstance(mActivity).prioritizeItems(visibleItems);
+	}
+
 	@Override
 	public boolean onDown(MotionEvent e) {
 		return false;
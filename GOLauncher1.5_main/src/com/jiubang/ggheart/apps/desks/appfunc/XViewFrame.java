@@ -452,6 +452,8 @@ public class XViewFrame extends ViewGroup
 		for (XComponent component : mStoreComponents) {
 			component.close();
 		}
+		// 背景已经模糊好了，下次重新合成背景时再申请模糊用的缓冲区
+		ImageFilter.releaseBlurBuffers();
 	}
 
 	public int getBgColor() {
@@ -1107,6 +1109,9 @@ public class XViewFrame extends ViewGroup
 	private void setBlurBackground(boolean blur) {
 		if (mBlurBg != blur) {
 			mBlurBg = blur;
+			if (!blur) {
+				ImageFilter.releaseBlurBuffers();
+			}
 			// 只有当与桌面合成背景时才执行
 			if (mMergeWidthDesktop) {
 				mIsUpdateBgImg = true;
@@ -1286,7 +1291,7 @@ public class XViewFrame extends ViewGroup
 	private void blurBackground(boolean drawColor) {
 		Bitmap bitmap = ImageFilter.convertToARGB8888(mMergeBg);
 		if (bitmap != null) {
-			boolean res = ImageFilter.trickyBlur(bitmap, 2, 4);
+			boolean res = ImageFilter.fastBlur(bitmap, 4, 1, 3);
 			if (res) {
 				Canvas canvas = new Canvas(bitmap);
 				if (bitmap != mMergeBg) {
@@ -0,0 +1,450 @@
+package com.jiubang.ggheart.apps.desks.appfunc.help;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.go.util.file.media.FileInfo;
+import com.jb.util.pySearch.SearchResultItem;
+import com.jiubang.ggheart.apps.desks.appfunc.help.FuncSearchUtils.SearchTarget;
+import com.jiubang.ggheart.data.AppDataEngine;
+import com.jiubang.ggheart.data.info.AppItemInfo;
+
+/**
+ * 功能表本地搜索索引
+ * <p>
+ * 以前每输入一个字符，都要对每个程序和媒体文件重新做大小写转换、逐字查拼音表，再调用拼音匹配。
+ * 现在每个标题的拼音组合只在第一次出现时计算一次，之后：
+ * <ul>
+ * <li>按字符建倒排表，只在包含查询条件中最少见字符的对象里找，其余对象再用字符掩码过滤，真正匹配的对象很少；</li>
+ * <li>查询条件在上一次的基础上继续输入时，只在上一次的结果里匹配；</li>
+ * <li>程序的增删由AppDataEngine在安装、卸载、更新时通知，标题变化在搜索时检查。</li>
+ * </ul>
+ */
+public class FuncSearchIndex {
+
+	public static final int GROUP_APPS = 0;
+	public static final int GROUP_IMAGE = 1;
+	public static final int GROUP_AUDIO = 2;
+	public static final int GROUP_VIDEO = 3;
+	private static final int GROUP_COUNT = 4;
+
+	private static final int MASK_BITS = 64;
+	// 标题对应的转换结果最多缓存的个数
+	private static final int MAX_CACHED_TARGETS = 4096;
+	// 连续输入时不必每个字符都和程序列表对比一次，增删程序有AppDataEngine的通知
+	private static final long SYNC_INTERVAL = 2000;
+
+	private static FuncSearchIndex sInstance;
+
+	private final Context mContext;
+	private final FuncSearchUtils mSearchUtil;
+	private final Group[] mGroups = new Group[GROUP_COUNT];
+	// 标题 -> 转换结果，程序改名或媒体列表刷新后原来的结果还能复用
+	private final LinkedHashMap<String, SearchTarget> mTargets = new LinkedHashMap<String, SearchTarget>(
+			256, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, SearchTarget> eldest) {
+			return size() > MAX_CACHED_TARGETS;
+		}
+	};
+	private boolean mAppsLoaded = false;
+	private long mLastSyncTime = 0;
+
+	/**
+	 * 一条匹配结果
+	 */
+	public static class Hit {
+		/**
+		 * AppItemInfo或FileInfo
+		 */
+		public final Object mItem;
+		public final String mTitle;
+		public final SearchResultItem mResult;
+
+		Hit(Object item, String title, SearchResultItem result) {
+			mItem = item;
+			mTitle = title;
+			mResult = result;
+		}
+	}
+
+	/**
+	 * 匹配位置靠前的排前面，位置相同时匹配字数多的、标题短的排前面
+	 */
+	private static final Comparator<Hit> HIT_COMPARATOR = new Comparator<Hit>() {
+		@Override
+		public int compare(Hit lhs, Hit rhs) {
+			if (lhs.mResult.mMatchPos != rhs.mResult.mMatchPos) {
+				return lhs.mResult.mMatchPos < rhs.mResult.mMatchPos ? -1 : 1;
+			}
+			if (lhs.mResult.mMatchValue != rhs.mResult.mMatchValue) {
+				return lhs.mResult.mMatchValue > rhs.mResult.mMatchValue ? -1 : 1;
+			}
+			return lhs.mTitle.length() - rhs.mTitle.length();
+		}
+	};
+
+	/**
+	 * 索引中的一个对象
+	 */
+	private static class Entry {
+		final Object mItem;
+		String mTitle;
+		SearchTarget mTarget;
+		// 标题首字的转换结果，按首字母搜索时使用，用到时才计算
+		SearchTarget mInitialTarget;
+
+		Entry(Object item) {
+			mItem = item;
+		}
+	}
+
+	/**
+	 * 一类对象的索引：程序或某一种媒体文件
+	 */
+	private static class Group {
+		final LinkedHashMap<Object, Entry> mEntries = new LinkedHashMap<Object, Entry>();
+		// 以下由rebuild生成，mDirty时需要重新生成
+		boolean mDirty = true;
+		Entry[] mSlots = new Entry[0];
+		int[][] mPostings = new int[MASK_BITS][];
+
+		// 上一次查询，用于输入增加时缩小范围
+		String mLastKey;
+		int[] mLastMatches;
+	}
+
+	public static synchronized FuncSearchIndex getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new FuncSearchIndex(context.getApplicationContext());
+		}
+		return sInstance;
+	}
+
+	private FuncSearchIndex(Context context) {
+		mContext = context;
+		mSearchUtil = FuncSearchUtils.getInstance(context);
+		for (int i = 0; i < GROUP_COUNT; i++) {
+			mGroups[i] = new Group();
+		}
+	}
+
+	/**
+	 * 新安装或更新了程序，由AppDataEngine在标题加载完之后调用
+	 */
+	public synchronized void updateApps(List<AppItemInfo> infos) {
+		if (!mAppsLoaded || infos == null) {
+			// 还没有搜索过，第一次搜索时会从AppDataEngine取全部程序
+			return;
+		}
+		// 在安装的线程里先把拼音算好，搜索时就不用再算
+		Group group = mGroups[GROUP_APPS];
+		for (AppItemInfo info : infos) {
+			ComponentName cn = getComponent(info);
+			if (cn == null) {
+				continue;
+			}
+			Entry entry = group.mEntries.get(cn);
+			if (entry == null || entry.mItem != info) {
+				entry = new Entry(info);
+				group.mEntries.put(cn, entry);
+			}
+			refresh(entry, info.mTitle);
+		}
+		invalidate(group);
+	}
+
+	/**
+	 * 卸载了程序，由AppDataEngine调用
+	 */
+	public synchronized void removeApps(List<AppItemInfo> infos) {
+		if (!mAppsLoaded || infos == null) {
+			return;
+		}
+		Group group = mGroups[GROUP_APPS];
+		for (AppItemInfo info : infos) {
+			ComponentName cn = getComponent(info);
+			if (cn != null && group.mEntries.remove(cn) != null) {
+				invalidate(group);
+			}
+		}
+	}
+
+	/**
+	 * 媒体文件列表刷新
+	 */
+	public synchronized void setMedia(int groupId, List<FileInfo> files) {
+		Group group = mGroups[groupId];
+		group.mEntries.clear();
+		if (files != null) {
+			for (FileInfo file : files) {
+				if (file != null && file.fileName != null) {
+					Entry entry = new Entry(file);
+					refresh(entry, file.fileName);
+					group.mEntries.put(file, entry);
+				}
+			}
+		}
+		invalidate(group);
+	}
+
+	public synchronized void clear() {
+		for (Group group : mGroups) {
+			group.mEntries.clear();
+			invalidate(group);
+		}
+		mTargets.clear();
+		mAppsLoaded = false;
+		mLastSyncTime = 0;
+	}
+
+	/**
+	 * 在一类对象中搜索
+	 *
+	 * @param key
+	 *            查询条件
+	 * @param initialOnly
+	 *            是否只匹配标题的第一个字
+	 * @return 按相关性排好序的结果
+	 */
+	public synchronized ArrayList<Hit> search(int groupId, String key, boolean initialOnly) {
+		ArrayList<Hit> hits = new ArrayList<Hit>();
+		if (key == null || "".equals(key)) {
+			return hits;
+		}
+		Group group = mGroups[groupId];
+		if (groupId == GROUP_APPS) {
+			syncApps(group);
+		}
+		if (group.mDirty) {
+			rebuild(group);
+		}
+
+		String lowerKey = key.toLowerCase();
+		String upperKey = key.toUpperCase();
+		long keyMask = queryMask(lowerKey);
+		int[] candidates = initialOnly ? null : narrow(group, key, keyMask);
+		int[] matches = new int[candidates != null ? candidates.length : group.mSlots.length];
+		int matchCount = 0;
+		int count = candidates != null ? candidates.length : group.mSlots.length;
+		for (int i = 0; i < count; i++) {
+			int slot = candidates != null ? candidates[i] : i;
+			Entry entry = group.mSlots[slot];
+			SearchTarget target;
+			if (initialOnly) {
+				if (entry.mInitialTarget == null) {
+					entry.mInitialTarget = obtainTarget(entry.mTitle.substring(0, 1));
+				}
+				target = entry.mInitialTarget;
+			} else {
+				target = entry.mTarget;
+			}
+			if ((target.mMask & keyMask) != keyMask) {
+				continue;
+			}
+			SearchResultItem result = mSearchUtil.match(key, lowerKey, upperKey, target);
+			if (result != null && result.mMatchValue > 0) {
+				matches[matchCount++] = slot;
+				hits.add(new Hit(entry.mItem, entry.mTitle, result));
+			}
+		}
+		if (!initialOnly) {
+			group.mLastKey = key;
+			group.mLastMatches = new int[matchCount];
+			System.arraycopy(matches, 0, group.mLastMatches, 0, matchCount);
+		}
+		Collections.sort(hits, HIT_COMPARATOR);
+		return hits;
+	}
+
+	/**
+	 * 用多个查询条件搜索，合并后的结果整体按相关性重新排序
+	 *
+	 * @return 按相关性排好序的结果
+	 */
+	public synchronized ArrayList<Hit> search(int groupId, String[] keys, boolean initialOnly) {
+		ArrayList<Hit> hits = new ArrayList<Hit>();
+		for (String key : keys) {
+			hits.addAll(search(groupId, key, initialOnly));
+		}
+		Collections.sort(hits, HIT_COMPARATOR);
+		return hits;
+	}
+
+	/**
+	 * 取候选对象：查询条件是上一次条件继续输入得到的，只在上一次的结果里找，否则用倒排表
+	 *
+	 * @return 候选对象的下标，null表示全部
+	 */
+	private int[] narrow(Group group, String key, long keyMask) {
+		if (group.mLastKey != null && group.mLastMatches != null && key.startsWith(group.mLastKey)) {
+			return group.mLastMatches;
+		}
+		int[] best = null;
+		for (int bit = 0; bit < MASK_BITS; bit++) {
+			if ((keyMask & (1L << bit)) == 0) {
+				continue;
+			}
+			int[] posting = group.mPostings[bit];
+			if (posting == null) {
+				return new int[0];
+			}
+			if (best == null || posting.length < best.length) {
+				best = posting;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * 按AppDataEngine当前的程序列表检查索引：增删的程序和变化的标题在这里补上，
+	 * 已经转换过的标题直接复用，所以即使漏了某个增删通知也只是多花一点时间
+	 */
+	private void syncApps(Group group) {
+		long now = SystemClock.uptimeMillis();
+		if (mAppsLoaded && now - mLastSyncTime < SYNC_INTERVAL) {
+			return;
+		}
+		ArrayList<AppItemInfo> infos = AppDataEngine.getInstance(mContext).getAllAppItemInfos();
+		if (infos == null) {
+			return;
+		}
+		mAppsLoaded = true;
+		mLastSyncTime = now;
+		boolean changed = infos.size() != group.mEntries.size();
+		if (!changed) {
+			for (AppItemInfo info : infos) {
+				ComponentName cn = getComponent(info);
+				Entry entry = cn != null ? group.mEntries.get(cn) : null;
+				if (entry == null || entry.mItem != info) {
+					changed = true;
+					break;
+				}
+			}
+		}
+		if (changed) {
+			LinkedHashMap<Object, Entry> entries = new LinkedHashMap<Object, Entry>(
+					group.mEntries);
+			group.mEntries.clear();
+			for (AppItemInfo info : infos) {
+				ComponentName cn = getComponent(info);
+				if (cn == null) {
+					continue;
+				}
+				Entry entry = entries.get(cn);
+				if (entry == null || entry.mItem != info) {
+					entry = new Entry(info);
+				}
+				group.mEntries.put(cn, entry);
+			}
+			invalidate(group);
+		}
+		for (Entry entry : group.mEntries.values()) {
+			String title = ((AppItemInfo) entry.mItem).mTitle;
+			boolean noTitle = title == null || "".equals(title);
+			if (noTitle ? entry.mTitle != null : !title.equals(entry.mTitle)) {
+				refresh(entry, title);
+				invalidate(group);
+			}
+		}
+	}
+
+	private void refresh(Entry entry, String title) {
+		if (title == null || "".equals(title)) {
+			// 标题还没加载，先不参与搜索
+			entry.mTitle = null;
+			entry.mTarget = null;
+			entry.mInitialTarget = null;
+			return;
+		}
+		if (title.equals(entry.mTitle) && entry.mTarget != null) {
+			return;
+		}
+		entry.mTitle = title;
+		entry.mTarget = obtainTarget(title);
+		entry.mInitialTarget = null;
+	}
+
+	private SearchTarget obtainTarget(String title) {
+		SearchTarget target = mTargets.get(title);
+		if (target == null) {
+			target = mSearchUtil.prepare(title);
+			mTargets.put(title, target);
+		}
+		return target;
+	}
+
+	private void invalidate(Group group) {
+		group.mDirty = true;
+		group.mLastKey = null;
+		group.mLastMatches = null;
+	}
+
+	private void rebuild(Group group) {
+		ArrayList<Entry> slots = new ArrayList<Entry>(group.mEntries.size());
+		int[] counts = new int[MASK_BITS];
+		for (Entry entry : group.mEntries.values()) {
+			if (entry.mTarget == null) {
+				continue;
+			}
+			slots.add(entry);
+			long mask = entry.mTarget.mMask;
+			for (int bit = 0; bit < MASK_BITS; bit++) {
+				if ((mask & (1L << bit)) != 0) {
+					counts[bit]++;
+				}
+			}
+		}
+		int[][] postings = new int[MASK_BITS][];
+		for (int bit = 0; bit < MASK_BITS; bit++) {
+			if (counts[bit] > 0) {
+				postings[bit] = new int[counts[bit]];
+				counts[bit] = 0;
+			}
+		}
+		int size = slots.size();
+		for (int slot = 0; slot < size; slot++) {
+			long mask = slots.get(slot).mTarget.mMask;
+			for (int bit = 0; bit < MASK_BITS; bit++) {
+				if ((mask & (1L << bit)) != 0) {
+					postings[bit][counts[bit]++] = slot;
+				}
+			}
+		}
+		group.mSlots = slots.toArray(new Entry[size]);
+		group.mPostings = postings;
+		group.mDirty = false;
+	}
+
+	/**
+	 * 查询条件的掩码只取字母和数字，其它字符拼音匹配时可能被忽略，不能用来排除对象
+	 */
+	private static long queryMask(String lowerKey) {
+		long mask = 0;
+		int length = lowerKey.length();
+		for (int i = 0; i < length; i++) {
+			char c = lowerKey.charAt(i);
+			if (c >= 'a' && c <= 'z' || c >= '0' && c <= '9') {
+				mask |= FuncSearchUtils.charMask(c);
+			}
+		}
+		return mask;
+	}
+
+	private static ComponentName getComponent(AppItemInfo info) {
+		if (info == null || info.mIntent == null) {
+			return null;
+		}
+		return info.mIntent.getComponent();
+	}
+}
@@ -25,9 +25,54 @@ public class FuncSearchUtils {
 		mContex = context;
 	}
 
+	/**
+	 * 预先转换好的被查询对象，包括大小写形式、拼音组合列表和字符掩码，同一个标题只需要转换一次
+	 */
+	public static class SearchTarget {
+		public final String mSrc;
+		final String mLower;
+		final String mUpper;
+		final ArrayList<String[]> mSpells;
+		/**
+		 * 原文和所有拼音中出现过的字符，见{@link FuncSearchUtils#charMask(char)}
+		 */
+		final long mMask;
+
+		SearchTarget(String src, ArrayList<String[]> spells) {
+			mSrc = src;
+			mLower = src.toLowerCase();
+			mUpper = src.toUpperCase();
+			mSpells = spells;
+			long mask = stringMask(mLower) | stringMask(mUpper.toLowerCase());
+			if (spells != null) {
+				for (String[] spell : spells) {
+					if (spell == null) {
+						continue;
+					}
+					for (String s : spell) {
+						if (s != null) {
+							mask |= stringMask(s.toLowerCase());
+						}
+					}
+				}
+			}
+			mMask = mask;
+		}
+	}
+
+	/**
+	 * 转换被查询对象，转换结果可以反复用于{@link #match(String, SearchTarget)}
+	 */
+	public SearchTarget prepare(String target) {
+		if (target == null || "".equals(target)) {
+			return null;
+		}
+		return new SearchTarget(target, changeStringToSpellList(target));
+	}
+
 	/**
 	 * 根据查询条件匹配被查询对象是否包含查询条件关键字
-	 * 
+	 *
 	 * @param key
 	 *            查询条件
 	 * @param target
@@ -39,30 +84,48 @@ public class FuncSearchUtils {
 		if (key == null || "".equals(key) || target == null || "".equals(target)) {
 			return null;
 		}
-		SearchResultItem item = null;
+		return match(key, prepare(target));
+	}
+
+	/**
+	 * 同{@link #match(String, String)}，被查询对象已经预先转换好
+	 */
+	public SearchResultItem match(String key, SearchTarget target) {
+		if (key == null || "".equals(key) || target == null) {
+			return null;
+		}
+		return match(key, key.toLowerCase(), key.toUpperCase(), target);
+	}
+
+	/**
+	 * 查询条件的大小写形式由调用方预先算好，对大量被查询对象用同一个条件匹配时使用
+	 */
+	SearchResultItem match(String key, String lowerKey, String upperKey, SearchTarget target) {
 		// 先进行原文匹配，若能匹配到则不进行拼音匹配了
-		item = matchSrc(key, target);
+		SearchResultItem item = matchSrc(key, target.mSrc);
 		if (item != null && item.mMatchValue > 0) {
 			return item;
 		}
 
 		// 混合写匹配
-		item = matchMixCaseSrc(key, target);
+		item = matchSrc(lowerKey, target.mLower);
+		if (item == null) {
+			item = matchSrc(upperKey, target.mUpper);
+		}
 		if (item != null && item.mMatchValue > 0) {
 			return item;
 		}
 
-		ArrayList<String[]> spells = changeStringToSpellList(target);
-		if (spells != null) {
+		if (target.mSpells != null) {
 			item = new SearchResultItem();
-			NdkPySearch.GetPYMatchValueEx(key, spells, item, false, 0);
+			NdkPySearch.GetPYMatchValueEx(key, target.mSpells, item, false, 0);
 		}
 		return item;
 	}
 
 	/**
 	 * 不做任何转换，直接原文匹配
-	 * 
+	 *
 	 * @param key
 	 * @param target
 	 * @return
@@ -83,36 +146,9 @@ public class FuncSearchUtils {
 		return item;
 	}
 
-	/**
-	 * 进行数据大小写匹配
-	 * 
-	 * @author huyong
-	 * @param key
-	 * @param target
-	 * @return
-	 */
-	private SearchResultItem matchMixCaseSrc(String key, String target) {
-		if (key == null || "".equals(key) || target == null || "".equals(target)) {
-			return null;
-		}
-		// 小写匹配
-		key = key.toLowerCase();
-		target = target.toLowerCase();
-		SearchResultItem item = matchSrc(key, target);
-		if (item != null) {
-			return item;
-		}
-		// 大写匹配
-		key = key.toUpperCase();
-		target = target.toUpperCase();
-		item = matchSrc(key, target);
-		return item;
-
-	}
-
 	/**
 	 * 将一个字符串转换成一个拼音组合列表
-	 * 
+	 *
 	 * @param str
 	 * @return 转换后的列表，英文字母不做变换
 	 */
@@ -122,12 +158,13 @@ public class FuncSearchUtils {
 			return null;
 		}
 
-		ArrayList<String[]> result = new ArrayList<String[]>();
+		Hanzi2Pinyin pInstance = Hanzi2Pinyin.getInstance(mContex, R.raw.unicode2pinyin);
+		ArrayList<String[]> result = new ArrayList<String[]>(str.length());
 		String[] spells = null;
 		char[] chars = str.toCharArray();
 
 		for (int i = 0; i < chars.length; i++) {
-			spells = changeHanziToSpell(chars[i]);
+			spells = changeHanziToSpell(pInstance, chars[i]);
 			if (spells != null) {
 				result.add(spells);
 			}
@@ -138,13 +175,12 @@ public class FuncSearchUtils {
 
 	/**
 	 * 汉字转换成拼音
-	 * 
+	 *
 	 * @param key
 	 * @return
 	 */
-	private String[] changeHanziToSpell(char key) {
+	private String[] changeHanziToSpell(Hanzi2Pinyin pInstance, char key) {
 		String[] results = null;
-		Hanzi2Pinyin pInstance = Hanzi2Pinyin.getInstance(mContex, R.raw.unicode2pinyin);
 		if (pInstance == null) {
 			return results;
 		}
@@ -161,7 +197,7 @@ public class FuncSearchUtils {
 
 	/**
 	 * 是否汉字
-	 * 
+	 *
 	 * @param key
 	 * @return
 	 */
@@ -173,4 +209,34 @@ public class FuncSearchUtils {
 		return isHanzi;
 	}
 
+	/**
+	 * 字符对应的掩码位：a-z占0-25位，0-9占26-35位，其它字符散列到剩下的位上。
+	 * 查询条件里有某一位而被查询对象没有时，一定匹配不上
+	 */
+	static int charBit(char c) {
+		if (c >= 'a' && c <= 'z') {
+			return c - 'a';
+		}
+		if (c >= '0' && c <= '9') {
+			return 26 + c - '0';
+		}
+		return 36 + c % 28;
+	}
+
+	static long charMask(char c) {
+		return 1L << charBit(c);
+	}
+
+	/**
+	 * @param lower
+	 *            已经转成小写的字符串
+	 */
+	static long stringMask(String lower) {
+		long mask = 0;
+		int length = lower.length();
+		for (int i = 0; i < length; i++) {
+			mask |= charMask(lower.charAt(i));
+		}
+		return mask;
+	}
 }
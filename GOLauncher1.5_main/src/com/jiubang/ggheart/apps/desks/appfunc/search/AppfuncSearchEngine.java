@@ -23,6 +23,8 @@ import com.jiubang.ggheart.appgame.base.data.AppsSearchDownload;
 import com.jiubang.ggheart.appgame.base.data.AppsSearchDownload.SearchDataHandler;
 import com.jiubang.ggheart.apps.appfunc.controler.FunControler;
 import com.jiubang.ggheart.apps.desks.appfunc.AppFuncFrame;
+import com.jiubang.ggheart.apps.desks.appfunc.help.FuncSearchIndex;
+import com.jiubang.ggheart.apps.desks.appfunc.help.FuncSearchIndex.Hit;
 import com.jiubang.ggheart.apps.desks.appfunc.help.FuncSearchUtils;
 import com.jiubang.ggheart.apps.desks.appfunc.model.FuncSearchResultItem;
 import com.jiubang.ggheart.apps.desks.diy.IPreferencesIds;
@@ -55,6 +57,7 @@ public class AppfuncSearchEngine {
 	 */
 	private SearchDataHandler mWebResultHandler = null;
 	private FuncSearchUtils mSearchUtil = null;
+	private FuncSearchIndex mSearchIndex = null;
 	private static final String SEARCH_FILE_NAME = "FuncSearchKeys";
 	private static final String SEARCH_KEY_NAME = "GoStoreSearchKeys";
 	private static final String SEARCH_SPLIT = "~!@#"; // 搜索过滤词
@@ -89,6 +92,7 @@ public class AppfuncSearchEngine {
 	private AppfuncSearchEngine(Context context) {
 		mContext = context;
 		mSearchUtil = FuncSearchUtils.getInstance(mContext);
+		mSearchIndex = FuncSearchIndex.getInstance(mContext);
 		mWebSearchEngine = new AppsSearchDownload();
 	}
 
@@ -489,7 +493,14 @@ public class AppfuncSearchEngine {
 	protected void setMediaData(int mediaType, List<FileInfo> mediaList) {
 		mMediaMap.put(mediaType, mediaList);
 		switch (mediaType) {
+			case FileEngine.TYPE_IMAGE :
+				mSearchIndex.setMedia(FuncSearchIndex.GROUP_IMAGE, mediaList);
+				break;
+			case FileEngine.TYPE_AUDIO :
+				mSearchIndex.setMedia(FuncSearchIndex.GROUP_AUDIO, mediaList);
+				break;
 			case FileEngine.TYPE_VIDEO :
+				mSearchIndex.setMedia(FuncSearchIndex.GROUP_VIDEO, mediaList);
 				AppFuncSearchFrame.broadCast(
 						AppfuncSearchController.BC_MSG_SEARCH_ENGINE_MEDIA_DATA_READY,
 						SEARCH_ALL_RESOURCE, null, null);
@@ -569,40 +580,31 @@ public class AppfuncSearchEngine {
 				ResponseHandler.exceptionResponseReceived(mKey, null, searchType);
 				return;
 			}
+			int group;
+			switch (searchType) {
+				case SEARCH_TYPE_IMAGE :
+					group = FuncSearchIndex.GROUP_IMAGE;
+					break;
+				case SEARCH_TYPE_AUDIO :
+					group = FuncSearchIndex.GROUP_AUDIO;
+					break;
+				case SEARCH_TYPE_VIDEO :
+					group = FuncSearchIndex.GROUP_VIDEO;
+					break;
+				default :
+					group = FuncSearchIndex.GROUP_APPS;
+					break;
+			}
 			ArrayList<FuncSearchResultItem> resultItems = new ArrayList<FuncSearchResultItem>();
-			if (searchType == SEARCH_TYPE_LOCAL) {
-				List<AppItemInfo> appData = (List<AppItemInfo>) mediaList;
-				// 过滤掉隐藏程序,其实就是把隐藏程序从列表中删除
-				Iterator<AppItemInfo> it = appData.iterator();
-				while (it.hasNext()) {
-					AppItemInfo item = it.next();
-					if (AppFuncFrame.getAppConfigControler().isHideApp(item.mIntent)) {
-						it.remove();
-					}
-				}
-				if (mKey.equals("#")) {
-					for (String key : SPACIL_SEARCH_KEY) {
-						mIsSearchInitial = true;
-						searchLocalApps(resultItems, key, appData);
-					}
-				} else {
-					searchLocalApps(resultItems, mKey, appData);
-				}
+			if (mKey.equals("#")) {
+				// 各个条件的结果合并后整体排序
+				addResults(resultItems, mSearchIndex.search(group, SPACIL_SEARCH_KEY, true));
 			} else {
-				List<FileInfo> mediaData = (List<FileInfo>) mediaList;
-				if (mKey.equals("#")) {
-					for (String key : SPACIL_SEARCH_KEY) {
-						mIsSearchInitial = true;
-						searchLocalMedia(resultItems, key, mediaData);
-					}
-				} else {
-					searchLocalMedia(resultItems, mKey, mediaData);
-				}
+				addResults(resultItems, mSearchIndex.search(group, mKey, mIsSearchInitial));
 			}
 			if (!resultItems.isEmpty()) {
 				try {
-					// 按搜索结果相关性进行排序
-					SortUtils.sortByInt(resultItems, "getMatchIndex", null, null, "ASC");
+					// 索引返回的结果已经按相关性排好序
 					int resultCount = resultItems.size();
 //					resultItems.get(resultCount - 1).mIsLastItem = true;
 					FuncSearchResultItem searchResultHeader = new FuncSearchResultItem();
@@ -627,65 +629,48 @@ public class AppfuncSearchEngine {
 			}
 		}
 
-		private void searchLocalMedia(ArrayList<FuncSearchResultItem> resultItems, String key,
-				List<FileInfo> mediaData) {
-			if (resultItems == null) {
-				return;
+		private void addResults(ArrayList<FuncSearchResultItem> resultItems, ArrayList<Hit> hits) {
+			if (mItemType == FuncSearchResultItem.ITEM_TYPE_LOCAL_APPS) {
+				addLocalApps(resultItems, hits);
+			} else {
+				addLocalMedia(resultItems, hits);
 			}
+		}
+
+		private void addLocalMedia(ArrayList<FuncSearchResultItem> resultItems, ArrayList<Hit> hits) {
 			FuncSearchResultItem resultItem;
-			for (FileInfo itemInfo : mediaData) {
-				if (itemInfo.fileName != null) {
-					String searchKey = itemInfo.fileName;
-					if (mIsSearchInitial) {
-						if (searchKey == null || searchKey.length() < 1) {
-							continue;
-						}
-						searchKey = searchKey.substring(0, 1);
-					}
-					SearchResultItem item = mSearchUtil.match(key, searchKey);
-					if (item != null && item.mMatchValue > 0) {
-						resultItem = new FuncSearchResultItem();
-						resultItem.mType = mItemType;
-						resultItem.fileInfo = itemInfo;
-						resultItem.setTitle(itemInfo.fileName, item);
-						resultItems.add(resultItem);
-					}
-				}
+			for (Hit hit : hits) {
+				resultItem = new FuncSearchResultItem();
+				resultItem.mType = mItemType;
+				resultItem.fileInfo = (FileInfo) hit.mItem;
+				resultItem.setTitle(hit.mTitle, hit.mResult);
+				resultItems.add(resultItem);
 			}
-//			resultItems.get(resultItems.size() - 1).mIsLastItem = true;
 		}
 
-		private void searchLocalApps(ArrayList<FuncSearchResultItem> resultItems, String key,
-				List<AppItemInfo> appData) {
+		private void addLocalApps(ArrayList<FuncSearchResultItem> resultItems, ArrayList<Hit> hits) {
 			Drawable tmpDrawable = null;
 			BitmapDrawable tmpBitmapDrawable = null;
 			DisplayMetrics displayMetrics = mContext.getResources().getDisplayMetrics();
 			FuncSearchResultItem resultItem;
-			for (AppItemInfo itemInfo : appData) {
-				if (itemInfo.mTitle != null) {
-					String searchKey = itemInfo.mTitle;
-					if (mIsSearchInitial) {
-						if (searchKey == null || searchKey.length() < 1) {
-							continue;
-						}
-						searchKey = searchKey.substring(0, 1);
-					}
-					SearchResultItem item = mSearchUtil.match(key, searchKey);
-					if (item != null && item.mMatchValue > 0) {
-						resultItem = new FuncSearchResultItem();
-						resultItem.mType = FuncSearchResultItem.ITEM_TYPE_LOCAL_APPS;
-						resultItem.mIcon = itemInfo.mIcon;
-						tmpDrawable = resultItem.mIcon;
-						if (tmpDrawable instanceof BitmapDrawable) {
-							// 需要设置icon的tensity
-							tmpBitmapDrawable = (BitmapDrawable) tmpDrawable;
-							tmpBitmapDrawable.setTargetDensity(displayMetrics);
-						}
-						resultItem.mIntent = itemInfo.mIntent;
-						resultItem.setTitle(itemInfo.mTitle, item);
-						resultItems.add(resultItem);
-					}
+			for (Hit hit : hits) {
+				AppItemInfo itemInfo = (AppItemInfo) hit.mItem;
+				// 过滤掉隐藏程序
+				if (AppFuncFrame.getAppConfigControler().isHideApp(itemInfo.mIntent)) {
+					continue;
+				}
+				resultItem = new FuncSearchResultItem();
+				resultItem.mType = FuncSearchResultItem.ITEM_TYPE_LOCAL_APPS;
+				resultItem.mIcon = itemInfo.mIcon;
+				tmpDrawable = resultItem.mIcon;
+				if (tmpDrawable instanceof BitmapDrawable) {
+					// 需要设置icon的tensity
+					tmpBitmapDrawable = (BitmapDrawable) tmpDrawable;
+					tmpBitmapDrawable.setTargetDensity(displayMetrics);
 				}
+				resultItem.mIntent = itemInfo.mIntent;
+				resultItem.setTitle(hit.mTitle, hit.mResult);
+				resultItems.add(resultItem);
 			}
 		};
 	}
@@ -166,6 +166,16 @@ public class GoLauncher extends DeskActivity {
 		HolographicOutlineHelper.resetDensity(DrawUtils.sDensity);
 		mMessageManager = new MessageManager();
 
+		// 跨多个版本升级时数据库升级比较耗时，提前在后台线程打开数据库，和界面的加载同时进行
+		// 主线程第一次用到DataProvider时会等待升级完成
+		final Context appContext = getApplicationContext();
+		GOLauncherApp.postRunable(new Runnable() {
+			@Override
+			public void run() {
+				DataProvider.getInstance(appContext);
+			}
+		});
+
 		// 加载主界面
 		// mFrameLayout = new DiyFrameLayout(this);
 		// setContentView(mFrameLayout, new
@@ -123,6 +123,8 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 	int[] mCellXY = new int[2];
 
 	boolean[][] mOccupied; // 标记每个cell是否被占用
+	// 用于快速查询空位的占用情况，查询前由findOccupiedCells或load同步
+	private final CellOccupancy mOccupancy = new CellOccupancy();
 
 	private RectF mDragRect = new RectF();
 
@@ -851,18 +853,17 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 			final int xCount = portrait ? mShortAxisCells : mLongAxisCells;
 			final int yCount = portrait ? mLongAxisCells : mShortAxisCells;
 
-			final boolean[][] occupied = mOccupied;
-			findOccupiedCells(xCount, yCount, occupied, null);
+			findOccupiedCells(xCount, yCount, mOccupied, null);
 
-			findIntersectingVacantCells(info, info.cellX, info.cellY, xCount, yCount, occupied);
+			findIntersectingVacantCells(info, info.cellX, info.cellY, mOccupancy);
 
 			mDirtyTag = false;
 		}
 		return info;
 	}
 
-	private static void findIntersectingVacantCells(CellInfo cellInfo, int x, int y, int xCount,
-			int yCount, boolean[][] occupied) {
+	private static void findIntersectingVacantCells(CellInfo cellInfo, int x, int y,
+			CellOccupancy occupancy) {
 
 		cellInfo.maxVacantSpanX = Integer.MIN_VALUE;
 		cellInfo.maxVacantSpanXSpanY = Integer.MIN_VALUE;
@@ -870,24 +871,23 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		cellInfo.maxVacantSpanYSpanX = Integer.MIN_VALUE;
 		cellInfo.clearVacantCells();
 
-		try {
-			if (occupied[x][y]) {
-				return;
-			}
-		} catch (IndexOutOfBoundsException e) {
+		if (x < 0 || y < 0 || x >= occupancy.getCountX() || y >= occupancy.getCountY()
+				|| occupancy.isOccupied(x, y)) {
 			return;
 		}
 
 		cellInfo.current.set(x, y, x, y);
-		findVacantCell(cellInfo.current, xCount, yCount, occupied, cellInfo);
+		findVacantCell(cellInfo.current, occupancy, cellInfo);
 	}
 	//寻找空位（单元格）
-	private static void findVacantCell(Rect current, int xCount, int yCount, boolean[][] occupied,
-			CellInfo cellInfo) {
+	private static void findVacantCell(Rect current, CellOccupancy occupancy, CellInfo cellInfo) {
+		final int xCount = occupancy.getCountX();
+		final int yCount = occupancy.getCountY();
 		for (int l = 0; l < xCount; l++) {
 			for (int r = l; r < xCount; r++) {
 				for (int t = 0; t < yCount; t++) {
-					for (int b = t; b < yCount && isRowEmpty(b, l, r, occupied); b++) {
+					// 每一行是否为空只需要一次位运算
+					for (int b = t; b < yCount && occupancy.isRowEmpty(b, l, r); b++) {
 						current.left = l;
 						current.right = r;
 						current.top = t;
@@ -960,15 +960,6 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		return true;
 	}
 
-	private static boolean isRowEmpty(int y, int left, int right, boolean[][] occupied) {
-		for (int x = left; x <= right; x++) {
-			if (occupied[x][y]) {
-				return false;
-			}
-		}
-		return true;
-	}
-
 	CellInfo findAllVacantCells(boolean[] occupiedCells, View ignoreView) {
 		final boolean portrait = sPortrait;
 		final int xCount = portrait ? mShortAxisCells : mLongAxisCells;
@@ -977,16 +968,13 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		boolean[][] occupied = mOccupied;
 
 		if (occupiedCells != null) {
-			for (int y = 0; y < yCount; y++) {
-				for (int x = 0; x < xCount; x++) {
-					occupied[x][y] = occupiedCells[y * xCount + x];
-				}
-			}
+			mOccupancy.load(occupiedCells, xCount, yCount);
+			mOccupancy.copyTo(occupied);
 		} else {
 			findOccupiedCells(xCount, yCount, occupied, ignoreView);
 		}
 
-		return findAllVacantCellsFromOccupied(occupied, xCount, yCount);
+		return findAllVacantCellsFromOccupied(mOccupancy);
 	}
 
 	CellInfo findAllCells(boolean[] occupiedCells, View ignoreView) {
@@ -1013,7 +1001,7 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 	 * Variant of findAllVacantCells that uses LauncerModel as its source rather
 	 * than the views.
 	 */
-	CellInfo findAllVacantCellsFromOccupied(boolean[][] occupied, final int xCount, final int yCount) {
+	CellInfo findAllVacantCellsFromOccupied(CellOccupancy occupancy) {
 		CellInfo cellInfo = new CellInfo();
 
 		cellInfo.cellX = -1;
@@ -1035,7 +1023,7 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		 * occupied[x][y] = true; } } }
 		 */
 
-		findVacantCell(current, xCount, yCount, occupied, cellInfo);
+		findVacantCell(current, occupancy, cellInfo);
 		cellInfo.valid = cellInfo.vacantCells.size() > 0;
 
 		// Assume the caller will perform their own cell searching, otherwise we
@@ -1712,11 +1700,9 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		final boolean portrait = sPortrait;
 		final int xCount = portrait ? mShortAxisCells : mLongAxisCells;
 		final int yCount = portrait ? mLongAxisCells : mShortAxisCells;
-		final boolean[][] occupied = mOccupied;
-
-		findOccupiedCells(xCount, yCount, occupied, null);
+		findOccupiedCells(xCount, yCount, mOccupied, null);
 
-		return findVacantCell(vacant, spanX, spanY, xCount, yCount, occupied);
+		return mOccupancy.findFirstVacant(vacant, spanX, spanY);
 	}
 
 	/**
@@ -1731,6 +1717,9 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		final int yCount = portrait ? mLongAxisCells : mShortAxisCells;
 		final boolean[][] occupied = mOccupied;
 		findOccupiedCells(xCount, yCount, occupied, null);
+		if (vacantList == null) {
+			return mOccupancy.countVacant();
+		}
 		return findSingleVacantCellCount(occupied, xCount, yCount, vacantList);
 	}
 
@@ -1764,31 +1753,6 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		return count;
 	}
 
-	static boolean findVacantCell(int[] vacant, int spanX, int spanY, int xCount, int yCount,
-			boolean[][] occupied) {
-		for (int y = 0; y < yCount; y++) {
-			for (int x = 0; x < xCount; x++) {
-				boolean available = !occupied[x][y];
-				out : for (int i = y; i < y + spanY && i < yCount; i++) {
-					for (int j = x; j < x + spanX && j < xCount; j++) {
-						available = available && !occupied[j][i];
-						if (!available) {
-							break out;
-						}
-					}
-				}
-
-				// 确保不越界
-				if (available && (x + spanX - 1 < xCount) && (y + spanY - 1 < yCount)) {
-					vacant[0] = x;
-					vacant[1] = y;
-					return true;
-				}
-			}
-		}
-		return false;
-	}
-
 	boolean[] getOccupiedCells() {
 		final boolean portrait = sPortrait;
 		final int xCount = portrait ? mShortAxisCells : mLongAxisCells;
@@ -1807,12 +1771,12 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 		return flat;
 	}
 
+	/**
+	 * 根据子view的位置重新计算占用情况，结果同时保存在occupied和mOccupancy中
+	 */
 	private void findOccupiedCells(int xCount, int yCount, boolean[][] occupied, View ignoreView) {
-		for (int x = 0; x < xCount; x++) {
-			for (int y = 0; y < yCount; y++) {
-				occupied[x][y] = false;
-			}
-		}
+		final CellOccupancy occupancy = mOccupancy;
+		occupancy.reset(xCount, yCount);
 
 		int count = getChildCount();
 		for (int i = 0; i < count; i++) {
@@ -1823,12 +1787,12 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 			}
 
 			LayoutParams lp = (LayoutParams) child.getLayoutParams();
-			for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan && x < xCount && x >= 0; x++) {
-				for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan && y < yCount && y >= 0; y++) {
-					occupied[x][y] = true;
-				}
+			// 位置为负数的（还没放好的）不占用格子
+			if (lp.cellX >= 0 && lp.cellY >= 0) {
+				occupancy.mark(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan, true);
 			}
 		}
+		occupancy.copyTo(occupied);
 	}
 
 	/**
@@ -2125,13 +2089,9 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 				return;
 			}
 
-			final boolean[][] unflattened = new boolean[xCount][yCount];
-			for (int y = 0; y < yCount; y++) {
-				for (int x = 0; x < xCount; x++) {
-					unflattened[x][y] = occupied[y * xCount + x];
-				}
-			}
-			CellLayout.findIntersectingVacantCells(this, cellX, cellY, xCount, yCount, unflattened);
+			final CellOccupancy occupancy = new CellOccupancy();
+			occupancy.load(occupied, xCount, yCount);
+			CellLayout.findIntersectingVacantCells(this, cellX, cellY, occupancy);
 		}
 
 		/**
@@ -3756,18 +3716,20 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 			return bestXY;
 		}
 
+		// 每个位置能否放下、能否继续扩大都只需要常数时间判断
+		final CellOccupancy occupancy = mOccupancy;
+		if (ignoreOccupied) {
+			occupancy.load(occupied, countX, countY);
+		}
+
 		for (int y = 0; y < countY - (minSpanY - 1); y++) {
-			inner : for (int x = 0; x < countX - (minSpanX - 1); x++) {
+			for (int x = 0; x < countX - (minSpanX - 1); x++) {
 				int ySize = -1;
 				int xSize = -1;
 				if (ignoreOccupied) {
 					// First, let's see if this thing fits anywhere
-					for (int i = 0; i < minSpanX; i++) {
-						for (int j = 0; j < minSpanY; j++) {
-							if (occupied[x + i][y + j]) {
-								continue inner;
-							}
-						}
+					if (!occupancy.isVacant(x, y, minSpanX, minSpanY)) {
+						continue;
 					}
 					xSize = minSpanX;
 					ySize = minSpanY;
@@ -3782,21 +3744,19 @@ public class CellLayout extends WidgetCellLayout implements DrawSelectedListener
 					boolean hitMaxY = ySize >= spanY;
 					while (!(hitMaxX && hitMaxY)) {
 						if (incX && !hitMaxX) {
-							for (int j = 0; j < ySize; j++) {
-								if (x + xSize > countX - 1 || occupied[x + xSize][y + j]) {
-									// We can't move out horizontally
-									hitMaxX = true;
-								}
+							if (x + xSize > countX - 1
+									|| !occupancy.isVacant(x + xSize, y, 1, ySize)) {
+								// We can't move out horizontally
+								hitMaxX = true;
 							}
 							if (!hitMaxX) {
 								xSize++;
 							}
 						} else if (!hitMaxY) {
-							for (int i = 0; i < xSize; i++) {
-								if (y + ySize > countY - 1 || occupied[x + i][y + ySize]) {
-									// We can't move out vertically
-									hitMaxY = true;
-								}
+							if (y + ySize > countY - 1
+									|| !occupancy.isVacant(x, y + ySize, xSize, 1)) {
+								// We can't move out vertically
+								hitMaxY = true;
 							}
 							if (!hitMaxY) {
 								ySize++;
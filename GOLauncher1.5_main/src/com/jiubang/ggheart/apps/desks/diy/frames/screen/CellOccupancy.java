@@ -0,0 +1,225 @@
+package com.jiubang.ggheart.apps.desks.diy.frames.screen;
+
+/**
+ * <br>类描述:CellLayout单元格占用情况的快速查询
+ * <br>功能详细描述:每一行用一个long的位表示占用情况，判断一行中的一段是否为空只需要一次与运算；
+ * 另外维护一个二维前缀和（summed-area table），判断任意X×Y区域是否为空只需要读4个值。
+ * 前缀和在占用情况改变后第一次查询时才重新计算。
+ * 列数最多64。
+ */
+class CellOccupancy {
+	static final int MAX_COUNT_X = 64;
+
+	private int mCountX;
+	private int mCountY;
+	/**
+	 * 每一行的占用情况，第x位为1表示(x, y)被占用
+	 */
+	private long[] mRows = new long[0];
+	/**
+	 * mSums[y * (mCountX + 1) + x]为[0, x) × [0, y)区域内被占用的格子数
+	 */
+	private int[] mSums = new int[0];
+	private boolean mSumsDirty = true;
+
+	/**
+	 * 设置格子数并清空
+	 */
+	void reset(int countX, int countY) {
+		if (countX < 0 || countX > MAX_COUNT_X || countY < 0) {
+			throw new IllegalArgumentException("unsupported grid " + countX + "x" + countY);
+		}
+		mCountX = countX;
+		mCountY = countY;
+		if (mRows.length < countY) {
+			mRows = new long[countY];
+		} else {
+			for (int y = 0; y < countY; y++) {
+				mRows[y] = 0;
+			}
+		}
+		int sumsSize = (countX + 1) * (countY + 1);
+		if (mSums.length < sumsSize) {
+			mSums = new int[sumsSize];
+		}
+		mSumsDirty = true;
+	}
+
+	/**
+	 * 从occupied[x][y]读取占用情况
+	 */
+	void load(boolean[][] occupied, int countX, int countY) {
+		reset(countX, countY);
+		final long[] rows = mRows;
+		for (int x = 0; x < countX; x++) {
+			final boolean[] column = occupied[x];
+			final long bit = 1L << x;
+			for (int y = 0; y < countY; y++) {
+				if (column[y]) {
+					rows[y] |= bit;
+				}
+			}
+		}
+	}
+
+	/**
+	 * 从按行展开的occupied[y * countX + x]读取占用情况
+	 */
+	void load(boolean[] occupied, int countX, int countY) {
+		reset(countX, countY);
+		final long[] rows = mRows;
+		for (int y = 0; y < countY; y++) {
+			final int offset = y * countX;
+			long row = 0;
+			for (int x = 0; x < countX; x++) {
+				if (occupied[offset + x]) {
+					row |= 1L << x;
+				}
+			}
+			rows[y] = row;
+		}
+	}
+
+	/**
+	 * 把占用情况写到occupied[x][y]
+	 */
+	void copyTo(boolean[][] occupied) {
+		final long[] rows = mRows;
+		for (int x = 0; x < mCountX; x++) {
+			final boolean[] column = occupied[x];
+			final long bit = 1L << x;
+			for (int y = 0; y < mCountY; y++) {
+				column[y] = (rows[y] & bit) != 0;
+			}
+		}
+	}
+
+	int getCountX() {
+		return mCountX;
+	}
+
+	int getCountY() {
+		return mCountY;
+	}
+
+	/**
+	 * 标记一个区域，超出边界的部分忽略
+	 */
+	void mark(int cellX, int cellY, int spanX, int spanY, boolean occupied) {
+		int left = Math.max(cellX, 0);
+		int top = Math.max(cellY, 0);
+		int right = Math.min(cellX + spanX, mCountX);
+		int bottom = Math.min(cellY + spanY, mCountY);
+		if (left >= right || top >= bottom) {
+			return;
+		}
+		final long mask = mask(left, right);
+		for (int y = top; y < bottom; y++) {
+			if (occupied) {
+				mRows[y] |= mask;
+			} else {
+				mRows[y] &= ~mask;
+			}
+		}
+		mSumsDirty = true;
+	}
+
+	boolean isOccupied(int x, int y) {
+		return (mRows[y] & (1L << x)) != 0;
+	}
+
+	/**
+	 * 第y行的[left, right]（包括right）是否都为空
+	 */
+	boolean isRowEmpty(int y, int left, int right) {
+		return (mRows[y] & mask(left, right + 1)) == 0;
+	}
+
+	/**
+	 * 以(cellX, cellY)为左上角的spanX × spanY区域是否都为空，超出边界返回false
+	 */
+	boolean isVacant(int cellX, int cellY, int spanX, int spanY) {
+		if (cellX < 0 || cellY < 0 || spanX <= 0 || spanY <= 0 || cellX + spanX > mCountX
+				|| cellY + spanY > mCountY) {
+			return false;
+		}
+		if (spanY == 1) {
+			return (mRows[cellY] & mask(cellX, cellX + spanX)) == 0;
+		}
+		if (mSumsDirty) {
+			buildSums();
+		}
+		final int stride = mCountX + 1;
+		final int[] sums = mSums;
+		final int top = cellY * stride;
+		final int bottom = (cellY + spanY) * stride;
+		return sums[bottom + cellX + spanX] - sums[top + cellX + spanX] - sums[bottom + cellX]
+				+ sums[top + cellX] == 0;
+	}
+
+	/**
+	 * 按行优先找第一个能放下spanX × spanY的位置
+	 *
+	 * @param vacant
+	 *            找到时保存左上角的x、y
+	 * @return 是否找到
+	 */
+	boolean findFirstVacant(int[] vacant, int spanX, int spanY) {
+		for (int y = 0; y + spanY <= mCountY; y++) {
+			if (mRows[y] == mask(0, mCountX)) {
+				// 整行都被占用
+				continue;
+			}
+			for (int x = 0; x + spanX <= mCountX; x++) {
+				if (isVacant(x, y, spanX, spanY)) {
+					vacant[0] = x;
+					vacant[1] = y;
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * 空格子的个数
+	 */
+	int countVacant() {
+		int occupied = 0;
+		for (int y = 0; y < mCountY; y++) {
+			occupied += Long.bitCount(mRows[y]);
+		}
+		return mCountX * mCountY - occupied;
+	}
+
+	private void buildSums() {
+		final int stride = mCountX + 1;
+		final int[] sums = mSums;
+		for (int x = 0; x < stride; x++) {
+			sums[x] = 0;
+		}
+		for (int y = 0; y < mCountY; y++) {
+			final long row = mRows[y];
+			final int above = y * stride;
+			final int current = above + stride;
+			int rowSum = 0;
+			sums[current] = 0;
+			for (int x = 0; x < mCountX; x++) {
+				rowSum += (int) (row >>> x) & 1;
+				sums[current + x + 1] = sums[above + x + 1] + rowSum;
+			}
+		}
+		mSumsDirty = false;
+	}
+
+	/**
+	 * [from, to)列对应的位
+	 */
+	private static long mask(int from, int to) {
+		if (from >= to) {
+			return 0;
+		}
+		long high = to >= 64 ? -1L : (1L << to) - 1;
+		return high & (-1L << from);
+	}
+}
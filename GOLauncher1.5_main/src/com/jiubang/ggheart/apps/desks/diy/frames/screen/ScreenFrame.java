@@ -68,6 +68,7 @@ import com.go.util.graphics.DrawUtils;
 import com.go.util.graphics.effector.united.CoupleScreenEffector;
 import com.go.util.lib.AppWidgetManagerWrapper;
 import com.go.util.log.LogConstants;
+import com.go.util.log.Trace;
 import com.jiubang.core.framework.AbstractFrame;
 import com.jiubang.core.framework.IFrameManager;
 import com.jiubang.core.framework.IFrameworkMsgId;
@@ -246,6 +247,7 @@ public class ScreenFrame extends AbstractFrame
 
 	private DesktopBinder mBinder;
 	private boolean mIsLoading = false;
+	private long mBindTraceStart;
 
 	private GoWidgetActionReceiver mGoWidgetActionReceiver;
 	private boolean mCheckDelUserFolder;
@@ -7126,6 +7128,7 @@ public class ScreenFrame extends AbstractFrame
 
 	private void startDesktopLoader() {
 		setLoading(true);
+		mBindTraceStart = Trace.begin();
 		mBinder = new DesktopBinder(this, mDesktopItems);
 		mBinder.startBinding();
 	}
@@ -7140,7 +7143,9 @@ public class ScreenFrame extends AbstractFrame
 	}
 
 	void bindShortcut(LinkedList<ItemInfo> shortcuts) {
+		long traceStart = Trace.begin();
 		int count = Math.min(DesktopBinder.ITEMS_COUNT, shortcuts.size());
+		int traceCount = count;
 		while (count-- > 0) {
 			ItemInfo itemInfo = shortcuts.removeFirst();
 			View addView = null;
@@ -7168,7 +7173,13 @@ public class ScreenFrame extends AbstractFrame
 			}
 		}
 
+		if (Trace.ENABLED) {
+			Trace.end(Trace.SCREEN_BIND_BATCH, traceStart);
+			Trace.count(Trace.SCREEN_BIND_ITEMS, traceCount - Math.max(count, 0));
+		}
+
 		if (shortcuts.isEmpty()) {
+			Trace.end(Trace.SCREEN_BIND, mBindTraceStart);
 			if (mBinder != null) {
 				mBinder.notifyLoadFinish();
 			}
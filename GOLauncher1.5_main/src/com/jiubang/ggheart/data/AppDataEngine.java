@@ -42,12 +42,14 @@ import com.go.util.AppUtils;
 import com.go.util.Utilities;
 import com.go.util.device.Machine;
 import com.go.util.log.LogUnit;
+import com.go.util.log.Trace;
 import com.jiubang.core.framework.ICleanable;
 import com.jiubang.core.message.IMsgType;
 import com.jiubang.ggheart.apps.appfunc.business.AllAppBussiness;
 import com.jiubang.ggheart.apps.appfunc.setting.FunAppSetting;
 import com.jiubang.ggheart.apps.config.utils.ConfigUtils;
 import com.jiubang.ggheart.apps.desks.appfunc.AppFuncFrame;
+import com.jiubang.ggheart.apps.desks.appfunc.help.FuncSearchIndex;
 import com.jiubang.ggheart.apps.desks.diy.GoLauncher;
 import com.jiubang.ggheart.apps.desks.diy.IDiyFrameIds;
 import com.jiubang.ggheart.apps.desks.diy.IDiyMsgIds;
@@ -93,7 +95,6 @@ import com.jiubang.ggheart.launcher.ThreadName;
 public class AppDataEngine implements BroadCasterObserver, ICleanable {
 	private static final String LOG_TAG = "AppDataEngine";
 	private static final int EVENT_LOAD_ICON = 103; // load图标
-	private static final int EVENT_LOAD_ICON_AND_TITLES = 6; // title和icon加载完毕
 
 	private Context mContext;
 	private ConcurrentHashMap<ComponentName, AppItemInfo> mAllAppItemsMap; // 手机所有应用程序，map结构，方便快速查找
@@ -104,7 +105,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 	private volatile boolean mIsIconTitleLoadingFinish = false; // 系统图标和名称是否都已经加载完毕
 
 	private Handler mHandler = null;
-	private LoadThread mCurLoadThread; // 加载图片、title等耗时操作时的异步线程
+	private AppItemLoader mItemLoader; // 加载图片、title等耗时操作的工作线程
 
 	private AppDataFilter mAppDataFilter = null; // 应用程序过滤器
 
@@ -163,6 +164,8 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 
 		initHandler();
 
+		initItemLoader();
+
 		initMonitorSver();
 
 		initGoStoreAndGoThemeIcon();
@@ -176,27 +179,43 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 		mMonitorSver.registerObserver(this);
 	}
 
+	private void initItemLoader() {
+		mItemLoader = new AppItemLoader(new AppItemLoader.Source() {
+			@Override
+			public String loadTitle(AppItemInfo info) {
+				return getAppTitle(info);
+			}
+
+			@Override
+			public BitmapDrawable loadIcon(AppItemInfo info) {
+				return getOriginalIcon(info.mIntent);
+			}
+		}, new AppIconCache(mContext), mSysAppIcon);
+	}
+
+	/**
+	 * 当前图标主题对应的缓存键
+	 */
+	private String getIconThemeKey() {
+		return mItemLoader.getCache().getThemeKey(mAppDataFilter.getDataThemeBeanPackage(),
+				mShowBase, Utilities.getIconSize(mContext));
+	}
+
+	/**
+	 * 优先加载这些程序的图标和标题，一般是当前屏幕上看得到的程序
+	 */
+	public void prioritizeItems(List<AppItemInfo> appItemInfos) {
+		if (mItemLoader != null) {
+			mItemLoader.prioritize(appItemInfos);
+		}
+	}
+
 	private void initHandler() {
 		mHandler = new Handler() {
 			@Override
 			public void handleMessage(Message msg) {
 				super.handleMessage(msg);
 				switch (msg.what) {
-					case EVENT_LOAD_ICON_AND_TITLES : {
-						// 同步至主线程加载图片
-						TitleAndIcon titleAndIcon = (TitleAndIcon) msg.obj;
-						if (titleAndIcon != null) {
-							AppItemInfo itemInfo = titleAndIcon.getAppItemInfo();
-							if (itemInfo != null) {
-								itemInfo.setTitle(titleAndIcon.getTitle());
-								itemInfo.setIcon(titleAndIcon.getIcon());
-							}
-							titleAndIcon.clearData();
-						}
-
-					}
-						break;
-
 					case EVENT_LOAD_ICON : {
 						TitleAndIcon titleAndIcon = (TitleAndIcon) msg.obj;
 						if (titleAndIcon != null) {
@@ -237,7 +256,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 			mAppDataFilter.resetData();
 		}
 		ArrayList<AppItemInfo> appItemInfos = getAllAppItemInfos();
-		loadItems(appItemInfos, false);
+		loadItems(appItemInfos);
 	}
 
 	public void onHandleScreenIndicatorStyleChanged() {
@@ -429,7 +448,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 	public void onHandleShowIconBaseChanged(boolean showBase) {
 		mShowBase = showBase;
 		ArrayList<AppItemInfo> appItemInfos = getAllAppItemInfos();
-		loadItems(appItemInfos, false);
+		loadItems(appItemInfos);
 	}
 
 	/**
@@ -528,6 +547,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 			ArrayList<AppItemInfo> appItemInfos = addAllAppItems(matches, updateList);
 			if (appItemInfos != null && appItemInfos.size() > 0) {
 				loadIconsAndTitles(appItemInfos);
+				FuncSearchIndex.getInstance(mContext).updateApps(appItemInfos);
 				// 对外广播，通知批量安装了新程序
 				GoLauncher.sendBroadcastMessage(AppDataEngine.this, IDiyMsgIds.EVENT_INSTALL_APP,
 						0, packageName, appItemInfos);
@@ -546,6 +566,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 
 			// 更新已经存在的图标和标题
 			reloadIconsAndTitles(updateList);
+			FuncSearchIndex.getInstance(mContext).updateApps(updateList);
 			updateList.clear();
 		} else {
 			// 查找不到这个包对应的所有程序入口，则删除mAllAppItemsMap中所有与此包名相关的数据
@@ -566,6 +587,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 			for (ComponentName componentName : removeList) {
 				uninstalList.add(mAllAppItemsMap.remove(componentName));
 			}
+			FuncSearchIndex.getInstance(mContext).removeApps(uninstalList);
 
 			// 对外广播，通知观察者卸载了程序
 			GoLauncher.sendBroadcastMessage(AppDataEngine.this, IDiyMsgIds.EVENT_UNINSTALL_APP, 0,
@@ -606,6 +628,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 			for (ComponentName componentName : removeCnList) {
 				mAllAppItemsMap.remove(componentName);
 			}
+			FuncSearchIndex.getInstance(mContext).removeApps(removeAppItems);
 
 			CommonControler.getInstance(mContext).checkUnInstallAppIsRecommend(packageName, removeAppItems); // 检查卸载的应用是否推荐应用
 			// 对外广播，通知观察者卸载了程序
@@ -651,6 +674,7 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 		ArrayList<AppItemInfo> appItemInfos = addAllAppItems(resolveInfos);
 		if (appItemInfos != null && appItemInfos.size() > 0) {
 			loadIconsAndTitles(appItemInfos);
+			FuncSearchIndex.getInstance(mContext).updateApps(appItemInfos);
 			CommonControler.getInstance(mContext).queryAppsClassify(packageName, appItemInfos);
 			// 对外广播，通知批量安装了新程序
 //			Log.i(LOG_TAG, "installAppItems pkg = " + packageName);
@@ -1351,8 +1375,10 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 	 * @param resolveInfos
 	 */
 	public void scanInitAllAppItems() {
+		long traceStart = Trace.begin();
 		List<ResolveInfo> resolveInfos = AppUtils.getLauncherApps(mContext);
 		addAllAppItems(resolveInfos);
+		Trace.end(Trace.APP_SCAN, traceStart);
 		CommonControler.getInstance(mContext).initAllNewRecommendApps(); // 初始化，从数据库获取所有需要显示New标识的推荐应用
 		// 根据渠道配置信息，检查是否需要移除应用游戏中心相关假图标的方法
 		CommonControler.getInstance(mContext).initAllAppClassify();
@@ -1559,28 +1585,35 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 			@Override
 			public void run() {
 					super.run();
-					// loadIconsAndTitles(appItemInfos);
 					synchronized (AllAppBussiness.getSaveLock()) {
 						if (appItemInfos == null) {
 							return;
 						}
-						int size = appItemInfos.size();
-						for (int i = 0; i < size; ++i) {
-							Thread.yield();
-							AppItemInfo itemInfo = appItemInfos.get(i);
+						long traceStart = Trace.begin();
+						// 已经有图标的只需要加载标题，其余的图标和标题都加载，交给工作线程并行处理
+						ArrayList<AppItemInfo> titleOnly = new ArrayList<AppItemInfo>();
+						ArrayList<AppItemInfo> titleAndIcon = new ArrayList<AppItemInfo>();
+						for (AppItemInfo itemInfo : appItemInfos) {
 							if (itemInfo == null) {
 								continue;
 							}
 							if (itemInfo.mIcon == null || itemInfo.mIcon == mSysAppIcon) {
-								itemInfo.setIcon(getAppIcon(itemInfo));
+								titleAndIcon.add(itemInfo);
+							} else {
+								titleOnly.add(itemInfo);
 							}
-
-							// TODO: 需要与外面协商默认的题目是什么！
-							itemInfo.setTitle(getAppTitle(itemInfo));
-
-							// Log.i("aoriming","title = "+itemInfo.mTitle);
-							// Log.i("aoriming","component = "+itemInfo.mIntent.getComponent());
 						}
+						AppItemLoader.Batch iconBatch = mItemLoader.load(titleAndIcon, true, true,
+								false, false, getIconThemeKey(), null);
+						AppItemLoader.Batch titleBatch = mItemLoader.load(titleOnly, true, false,
+								false, false, null, null);
+						try {
+							mItemLoader.await(iconBatch);
+							mItemLoader.await(titleBatch);
+						} catch (InterruptedException e) {
+							return;
+						}
+						Trace.end(Trace.APP_LOAD_ICONS_TITLES, traceStart);
 
 						LogUnit.i(LOG_TAG, "End AppDataEngine.asynLoadIconsAndTitles before broadcast");
 						GoLauncher.sendBroadcastMessage(AppDataEngine.this,
@@ -1597,103 +1630,27 @@ public class AppDataEngine implements BroadCasterObserver, ICleanable {
 	}
 
 	/**
-	 * *****************************TODO:整理异步加载itmes项的线程处理。
-	 * *********************
-	 * ********TODO:修改LoadThread的run方法，采取类似策略模型，将内部加载实现交给外部控制。
-	 */
-	/**
-	 * 加载items中的未完成项
+	 * 重新加载items的图标，之前还没加载完的一批会被取消
 	 * 
 	 * @author huyong
 	 * @param appItemInfos
 	 *            待加载的items列表
-	 * @param isSynchronized
-	 *            是否为与当前线程同步加载.true for 同步加载，false for 异步加载
 	 */
-	private void loadItems(ArrayList<AppItemInfo> appItemInfos, boolean isSynchronized) {
+	private void loadItems(ArrayList<AppItemInfo> appItemInfos) {
 		if (appItemInfos == null || appItemInfos.size() <= 0) {
 			return;
 		}
-		if (mCurLoadThread != null) {
-			mCurLoadThread.stop();
-			mCurLoadThread = null;
-		}
-		mCurLoadThread = new LoadThread(appItemInfos);
-		mCurLoadThread.setNeedLoadIcon(true);
-		if (isSynchronized) {
-			mCurLoadThread.run();
-		} else {
-			new Thread(mCurLoadThread).start();
-		}
-	}
-
-	private class LoadThread implements Runnable {
-		private boolean mIsStop;
-		private boolean mIsLoadTitle;
-		private boolean mIsloadIcon;
-
-		private ArrayList<AppItemInfo> mToLoadAppItemInfos;
-
-		public LoadThread(ArrayList<AppItemInfo> itemsInfo) {
-			mIsStop = false;
-			mIsLoadTitle = false;
-			mIsloadIcon = false;
-			mToLoadAppItemInfos = itemsInfo;
-		}
-
-		public void stop() {
-			mIsStop = true;
-		}
-
-		@SuppressWarnings("unused")
-		public void setLoadAppList(ArrayList<AppItemInfo> itemInfos) {
-			mToLoadAppItemInfos = itemInfos;
-		}
-
-		@SuppressWarnings("unused")
-		public void setNeedTitle(boolean isLoadTitle) {
-			mIsLoadTitle = isLoadTitle;
-		}
-
-		public void setNeedLoadIcon(boolean isLoadIcon) {
-			mIsloadIcon = isLoadIcon;
-		}
-
-		@Override
-		public void run() {
-			if (mToLoadAppItemInfos == null) {
-				return;
-			}
-			LogUnit.i(LOG_TAG, "Begin AppDataEngien LoadThread() ");
-			int size = mToLoadAppItemInfos.size();
-			TitleAndIcon titleAndIcon = null;
-			for (int i = 0; i < size; ++i) {
-				if (mIsStop) {
-					break;
-				}
-				AppItemInfo itemInfo = mToLoadAppItemInfos.get(i);
-				titleAndIcon = new TitleAndIcon(itemInfo);
-				if (mIsLoadTitle) {
-					titleAndIcon.setTitle(getAppTitle(itemInfo));
-				}
-				if (mIsloadIcon) {
-					titleAndIcon.setIcon(getOriginalIcon(itemInfo.mIntent));
-				}
-
-				if (mHandler != null) {
-					Message message = mHandler.obtainMessage();
-					message.what = EVENT_LOAD_ICON_AND_TITLES;
-					message.obj = titleAndIcon;
-					mHandler.sendMessage(message);
-				}
-			}
-
-			// 主题应用完成，仅发送图标改变的消息
-			LogUnit.i(LOG_TAG, "end AppDataEngien LoadThread() before broadcast");
-			GoLauncher.sendBroadcastMessage(AppDataEngine.this, IDiyMsgIds.EVENT_LOAD_ICONS_FINISH,
-					0, null, null);
-			LogUnit.i(LOG_TAG, "end AppDataEngien LoadThread() ");
-		}
+		LogUnit.i(LOG_TAG, "Begin AppDataEngine.loadItems() ");
+		// 结果在主线程分批设置，全部设置完后仅发送图标改变的消息
+		mItemLoader.load(appItemInfos, false, true, true, true, getIconThemeKey(),
+				new AppItemLoader.Listener() {
+					@Override
+					public void onBatchFinished(AppItemLoader.Batch batch) {
+						LogUnit.i(LOG_TAG, "end AppDataEngine.loadItems() before broadcast");
+						GoLauncher.sendBroadcastMessage(AppDataEngine.this,
+								IDiyMsgIds.EVENT_LOAD_ICONS_FINISH, 0, null, null);
+					}
+				});
 	}
 
 	/**
@@ -0,0 +1,207 @@
+package com.jiubang.ggheart.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
+
+import com.go.util.file.FileLru;
+import com.go.util.log.LogUnit;
+
+/**
+ * 程序图标和标题的磁盘缓存
+ * <p>
+ * 每个程序在每套图标主题下保存一个文件，内容是主题处理之后的最终图标（PNG）和标题。
+ * 文件里记录了安装包的修改时间，程序升级后自动失效；标题另外记录了语言，切换语言后只有图标有效。
+ * 冷启动和切换回用过的主题时，图标直接从这里读，不用再经过PackageManager和主题合成。
+ */
+class AppIconCache {
+	private static final String LOG_TAG = "AppIconCache";
+	private static final String DIR_NAME = "app_icons";
+	private static final int MAGIC = 0x41494331; // "AIC1"
+	private static final int VERSION = 1;
+	// 缓存文件个数上限，超过时删除最久没用过的
+	private static final int MAX_FILES = 1024;
+
+	private final Context mContext;
+	private final File mDir;
+
+	/**
+	 * 缓存命中的结果，标题在语言不同时为null
+	 */
+	static class Entry {
+		final BitmapDrawable mIcon;
+		final String mTitle;
+
+		Entry(BitmapDrawable icon, String title) {
+			mIcon = icon;
+			mTitle = title;
+		}
+	}
+
+	AppIconCache(Context context) {
+		mContext = context;
+		mDir = context.getDir(DIR_NAME, Context.MODE_PRIVATE);
+	}
+
+	/**
+	 * 安装包的修改时间，程序升级时会变化。拿不到时返回0，表示不能缓存
+	 */
+	long getPackageStamp(ComponentName component) {
+		if (component == null) {
+			return 0;
+		}
+		String packageName = component.getPackageName();
+		if (mContext.getPackageName().equals(packageName)) {
+			// 桌面自己的特殊图标从资源里加载，不需要缓存
+			return 0;
+		}
+		return getSourceStamp(packageName);
+	}
+
+	/**
+	 * 图标主题的键，包括主题包和它的版本、是否显示底座以及图标大小，任何一项变化都对应一套新的缓存
+	 *
+	 * @param themePackage
+	 *            图标主题包名，null表示默认主题
+	 */
+	String getThemeKey(String themePackage, boolean showBase, int iconSize) {
+		if (themePackage == null) {
+			themePackage = mContext.getPackageName();
+		}
+		return themePackage + "/" + getSourceStamp(themePackage) + "/" + showBase + "/" + iconSize;
+	}
+
+	private long getSourceStamp(String packageName) {
+		try {
+			ApplicationInfo info = mContext.getPackageManager().getApplicationInfo(packageName, 0);
+			if (info.sourceDir == null) {
+				return 0;
+			}
+			return new File(info.sourceDir).lastModified();
+		} catch (PackageManager.NameNotFoundException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * @return 缓存有效时返回图标和标题，否则返回null
+	 */
+	Entry get(ComponentName component, String themeKey, long stamp) {
+		if (stamp == 0) {
+			return null;
+		}
+		File file = getFile(component, themeKey);
+		if (!file.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 8 * 1024));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+				return null;
+			}
+			if (!component.flattenToString().equals(in.readUTF())
+					|| !themeKey.equals(in.readUTF()) || in.readLong() != stamp) {
+				return null;
+			}
+			String locale = in.readUTF();
+			String title = in.readUTF();
+			if (!Locale.getDefault().toString().equals(locale) || title.length() == 0) {
+				title = null;
+			}
+			Bitmap bitmap = BitmapFactory.decodeStream(in);
+			if (bitmap == null) {
+				return null;
+			}
+			FileLru.touch(file);
+			return new Entry(new BitmapDrawable(mContext.getResources(), bitmap), title);
+		} catch (IOException e) {
+			LogUnit.i(LOG_TAG, "read " + file + " failed " + e);
+			return null;
+		} catch (OutOfMemoryError e) {
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	void put(ComponentName component, String themeKey, long stamp, BitmapDrawable icon,
+			String title) {
+		if (stamp == 0 || icon == null || icon.getBitmap() == null) {
+			return;
+		}
+		File file = getFile(component, themeKey);
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp),
+					8 * 1024));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(component.flattenToString());
+			out.writeUTF(themeKey);
+			out.writeLong(stamp);
+			out.writeUTF(Locale.getDefault().toString());
+			out.writeUTF(title != null ? title : "");
+			if (!icon.getBitmap().compress(Bitmap.CompressFormat.PNG, 100, out)) {
+				throw new IOException("compress failed");
+			}
+			out.close();
+			out = null;
+			if (!temp.renameTo(file)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			LogUnit.i(LOG_TAG, "write " + file + " failed " + e);
+			temp.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+				}
+				temp.delete();
+			}
+		}
+	}
+
+	/**
+	 * 文件太多时删除最久没用过的，在后台线程调用
+	 */
+	void trim() {
+		File[] files = mDir.listFiles();
+		if (files == null || files.length <= MAX_FILES) {
+			return;
+		}
+		FileLru.sortOldestFirst(files);
+		int remove = files.length - MAX_FILES;
+		for (int i = 0; i < remove; i++) {
+			files[i].delete();
+		}
+	}
+
+	private File getFile(ComponentName component, String themeKey) {
+		String name = Integer.toHexString(component.flattenToString().hashCode()) + "_"
+				+ Integer.toHexString(themeKey.hashCode());
+		return new File(mDir, name);
+	}
+}
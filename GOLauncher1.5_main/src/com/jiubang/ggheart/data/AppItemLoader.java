@@ -0,0 +1,369 @@
+package com.jiubang.ggheart.data;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.content.ComponentName;
+import android.graphics.drawable.BitmapDrawable;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.go.util.log.LogUnit;
+import com.jiubang.ggheart.data.info.AppItemInfo;
+import com.jiubang.ggheart.launcher.ThreadName;
+
+/**
+ * 程序图标和标题的加载流水线，代替以前的单个LoadThread
+ * <ul>
+ * <li>固定个数的工作线程从同一个队列取任务，当前屏幕上的程序可以通过{@link #prioritize}插到队列最前面；</li>
+ * <li>每个任务先查磁盘缓存，命中时不用再经过PackageManager和主题合成；</li>
+ * <li>需要在主线程设置结果的批次，结果攒起来每帧最多交给主线程一次，而不是每个程序发一个Message；</li>
+ * <li>切换主题时只需要取消旧批次里还没开始的任务，工作线程不用重建。</li>
+ * </ul>
+ */
+class AppItemLoader {
+	private static final String LOG_TAG = "AppItemLoader";
+	// 主线程两次设置结果之间的最短间隔，大约一帧
+	private static final long UI_BATCH_INTERVAL = 16;
+
+	/**
+	 * 实际加载图标和标题，由AppDataEngine实现
+	 */
+	interface Source {
+		String loadTitle(AppItemInfo info);
+
+		BitmapDrawable loadIcon(AppItemInfo info);
+	}
+
+	/**
+	 * 一个批次全部加载完成时回调。在主线程设置结果的批次在主线程回调，否则在工作线程回调
+	 */
+	interface Listener {
+		void onBatchFinished(Batch batch);
+	}
+
+	/**
+	 * 一次加载请求包含的所有程序
+	 */
+	class Batch {
+		final boolean mLoadTitle;
+		final boolean mLoadIcon;
+		final boolean mApplyOnUiThread;
+		final String mThemeKey;
+		final Listener mListener;
+		private int mRemaining;
+		private boolean mCancelled;
+		private boolean mFinished;
+		private final ArrayList<Task> mReady = new ArrayList<Task>();
+
+		Batch(boolean loadTitle, boolean loadIcon, boolean applyOnUiThread, String themeKey,
+				Listener listener) {
+			mLoadTitle = loadTitle;
+			mLoadIcon = loadIcon;
+			mApplyOnUiThread = applyOnUiThread;
+			mThemeKey = themeKey;
+			mListener = listener;
+		}
+
+		boolean isCancelled() {
+			synchronized (AppItemLoader.this) {
+				return mCancelled;
+			}
+		}
+	}
+
+	private static class Task {
+		final AppItemInfo mInfo;
+		final Batch mBatch;
+		String mTitle;
+		BitmapDrawable mIcon;
+
+		Task(AppItemInfo info, Batch batch) {
+			mInfo = info;
+			mBatch = batch;
+		}
+	}
+
+	private final Source mSource;
+	private final AppIconCache mCache;
+	// 图标加载失败时使用的默认图标
+	private final BitmapDrawable mDefaultIcon;
+	private final Handler mHandler = new Handler(Looper.getMainLooper());
+	private final ExecutorService mExecutor;
+	private final int mWorkerCount;
+	// 以下由this保护
+	private final LinkedList<Task> mQueue = new LinkedList<Task>();
+	private final ArrayList<Batch> mUiPending = new ArrayList<Batch>();
+	// 还没完成的、在主线程设置结果的批次
+	private final ArrayList<Batch> mUiBatches = new ArrayList<Batch>();
+	private int mIdleWorkers;
+	private boolean mFlushScheduled = false;
+
+	private final Runnable mFlushRunnable = new Runnable() {
+		@Override
+		public void run() {
+			flushOnUiThread();
+		}
+	};
+
+	AppItemLoader(Source source, AppIconCache cache, BitmapDrawable defaultIcon) {
+		mSource = source;
+		mCache = cache;
+		mDefaultIcon = defaultIcon;
+		int cpus = Runtime.getRuntime().availableProcessors();
+		mWorkerCount = Math.max(2, Math.min(4, cpus));
+		mIdleWorkers = mWorkerCount;
+		mExecutor = Executors.newFixedThreadPool(mWorkerCount, new ThreadFactory() {
+			private final AtomicInteger mCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, ThreadName.APP_ITEM_LOADER + "#"
+						+ mCount.incrementAndGet());
+				// 低于正常线程的优先级，不影响界面
+				thread.setPriority(Thread.NORM_PRIORITY - 2);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 加入一批程序
+	 *
+	 * @param cancelPrevious
+	 *            是否取消之前还没完成的批次，例如主题又变了
+	 * @param themeKey
+	 *            当前图标主题，用作缓存的键，null表示不使用缓存
+	 */
+	Batch load(List<AppItemInfo> infos, boolean loadTitle, boolean loadIcon,
+			boolean applyOnUiThread, boolean cancelPrevious, String themeKey, Listener listener) {
+		Batch batch = new Batch(loadTitle, loadIcon, applyOnUiThread, themeKey, listener);
+		boolean finished;
+		synchronized (this) {
+			if (cancelPrevious) {
+				cancelQueued();
+			}
+			for (AppItemInfo info : infos) {
+				if (info != null && info.mIntent != null) {
+					mQueue.add(new Task(info, batch));
+					batch.mRemaining++;
+				}
+			}
+			finished = batch.mRemaining == 0;
+			if (!finished && applyOnUiThread) {
+				mUiBatches.add(batch);
+			}
+			int start = Math.min(mIdleWorkers, batch.mRemaining);
+			mIdleWorkers -= start;
+			for (int i = 0; i < start; i++) {
+				mExecutor.execute(new Runnable() {
+					@Override
+					public void run() {
+						work();
+					}
+				});
+			}
+		}
+		if (finished) {
+			finish(batch);
+		}
+		return batch;
+	}
+
+	/**
+	 * 等待批次完成，批次被取消时也会返回
+	 */
+	void await(Batch batch) throws InterruptedException {
+		synchronized (this) {
+			while (batch.mRemaining > 0 && !batch.mCancelled) {
+				wait();
+			}
+		}
+	}
+
+	/**
+	 * 把这些程序的任务移到队列最前面，一般是当前屏幕上看得到的程序
+	 */
+	synchronized void prioritize(Collection<AppItemInfo> infos) {
+		if (mQueue.isEmpty() || infos == null || infos.isEmpty()) {
+			return;
+		}
+		HashSet<AppItemInfo> wanted = new HashSet<AppItemInfo>(infos);
+		LinkedList<Task> front = new LinkedList<Task>();
+		Iterator<Task> it = mQueue.iterator();
+		while (it.hasNext()) {
+			Task task = it.next();
+			if (wanted.contains(task.mInfo)) {
+				it.remove();
+				front.add(task);
+			}
+		}
+		mQueue.addAll(0, front);
+	}
+
+	AppIconCache getCache() {
+		return mCache;
+	}
+
+	synchronized boolean hasPendingWork() {
+		return !mQueue.isEmpty();
+	}
+
+	private void cancelQueued() {
+		// 调用方持有锁
+		if (mUiBatches.isEmpty()) {
+			return;
+		}
+		Iterator<Task> it = mQueue.iterator();
+		while (it.hasNext()) {
+			if (it.next().mBatch.mApplyOnUiThread) {
+				it.remove();
+			}
+		}
+		for (Batch batch : mUiBatches) {
+			batch.mCancelled = true;
+			batch.mReady.clear();
+		}
+		mUiBatches.clear();
+		mUiPending.clear();
+		notifyAll();
+	}
+
+	private void work() {
+		while (true) {
+			Task task;
+			synchronized (this) {
+				task = mQueue.poll();
+				if (task == null) {
+					mIdleWorkers++;
+					return;
+				}
+			}
+			try {
+				load(task);
+			} catch (Throwable e) {
+				// 某个程序加载失败不影响其它程序
+				LogUnit.i(LOG_TAG, "load " + task.mInfo.mIntent + " failed " + e);
+			}
+			complete(task);
+		}
+	}
+
+	private void load(Task task) {
+		Batch batch = task.mBatch;
+		ComponentName component = task.mInfo.mIntent.getComponent();
+		long stamp = 0;
+		if (batch.mThemeKey != null && component != null) {
+			stamp = mCache.getPackageStamp(component);
+			AppIconCache.Entry entry = mCache.get(component, batch.mThemeKey, stamp);
+			if (entry != null && (!batch.mLoadTitle || entry.mTitle != null)) {
+				task.mIcon = batch.mLoadIcon ? entry.mIcon : null;
+				task.mTitle = batch.mLoadTitle ? entry.mTitle : null;
+				return;
+			}
+		}
+		// 写缓存时需要标题和图标都有，只加载图标的批次也顺便取一下标题
+		String title = batch.mLoadTitle || stamp != 0 ? mSource.loadTitle(task.mInfo) : null;
+		BitmapDrawable icon = batch.mLoadIcon || stamp != 0 ? mSource.loadIcon(task.mInfo) : null;
+		if (stamp != 0 && !batch.isCancelled()) {
+			mCache.put(component, batch.mThemeKey, stamp, icon, title);
+		}
+		task.mTitle = batch.mLoadTitle ? title : null;
+		task.mIcon = batch.mLoadIcon ? icon : null;
+	}
+
+	private void complete(Task task) {
+		Batch batch = task.mBatch;
+		if (!batch.mApplyOnUiThread) {
+			apply(task);
+		}
+		boolean finished = false;
+		synchronized (this) {
+			if (batch.mCancelled) {
+				return;
+			}
+			batch.mRemaining--;
+			if (batch.mApplyOnUiThread) {
+				batch.mReady.add(task);
+				if (!mUiPending.contains(batch)) {
+					mUiPending.add(batch);
+				}
+				if (!mFlushScheduled) {
+					mFlushScheduled = true;
+					mHandler.postDelayed(mFlushRunnable, UI_BATCH_INTERVAL);
+				}
+			} else if (batch.mRemaining == 0) {
+				finished = true;
+			}
+			if (batch.mRemaining == 0) {
+				notifyAll();
+			}
+		}
+		if (finished) {
+			finish(batch);
+		}
+	}
+
+	private void flushOnUiThread() {
+		ArrayList<Batch> batches;
+		synchronized (this) {
+			mFlushScheduled = false;
+			batches = new ArrayList<Batch>(mUiPending);
+			mUiPending.clear();
+		}
+		for (Batch batch : batches) {
+			ArrayList<Task> ready;
+			boolean finished;
+			synchronized (this) {
+				if (batch.mCancelled) {
+					continue;
+				}
+				if (batch.mFinished) {
+					continue;
+				}
+				ready = new ArrayList<Task>(batch.mReady);
+				batch.mReady.clear();
+				finished = batch.mRemaining == 0;
+				if (finished) {
+					batch.mFinished = true;
+					mUiBatches.remove(batch);
+				}
+			}
+			for (Task task : ready) {
+				apply(task);
+			}
+			if (finished) {
+				finish(batch);
+			}
+		}
+	}
+
+	private void finish(Batch batch) {
+		if (batch.mListener != null) {
+			batch.mListener.onBatchFinished(batch);
+		}
+		mExecutor.execute(new Runnable() {
+			@Override
+			public void run() {
+				mCache.trim();
+			}
+		});
+	}
+
+	private void apply(Task task) {
+		if (task.mTitle != null) {
+			task.mInfo.setTitle(task.mTitle);
+		}
+		if (task.mBatch.mLoadIcon) {
+			task.mInfo.setIcon(task.mIcon != null ? task.mIcon : mDefaultIcon);
+		}
+	}
+}
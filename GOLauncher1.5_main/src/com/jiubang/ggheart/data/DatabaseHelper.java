@@ -109,6 +109,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 	private final Context mContext;
 
 	private boolean mUpdateResult = true; // 更新数据库结果，默认是成功的。
+	/**
+	 * 升级过程中合并新增字段的处理，不在升级时为null
+	 */
+	private DatabaseUpgradePlan mUpgradePlan = null;
 	/**
 	 * version2.16加入标记位： 标记当前一次启动程序是刚刚升级完数据库，因为有些操作具体执行需要区分是不是第一次升级,默认-1
 	 */
@@ -326,20 +330,26 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		if (!isExistColumnInTable(db, tableName, columnName)) {
 			db.beginTransaction();
 			try {
-				// 增加字段
-				String updateSql = "ALTER TABLE " + tableName + " ADD " + columnName + " "
-						+ columnType;
-				db.execSQL(updateSql);
+				// 升级过程中由mUpgradePlan处理，所有版本升级完之后每个表只重写一次
+				if (mUpgradePlan == null
+						|| !mUpgradePlan.addColumn(db, tableName, columnName, columnType,
+								defaultValue)) {
+					// 增加字段
+					String updateSql = "ALTER TABLE " + tableName + " ADD " + columnName + " "
+							+ columnType;
+					db.execSQL(updateSql);
 
-				// 提供默认值
-				if (defaultValue != null) {
-					if (columnType.equals(TYPE_TEXT)) {
-						// 如果是字符串类型，则需加单引号
-						defaultValue = "'" + defaultValue + "'";
-					}
+					// 提供默认值
+					if (defaultValue != null) {
+						if (columnType.equals(TYPE_TEXT)) {
+							// 如果是字符串类型，则需加单引号
+							defaultValue = "'" + defaultValue + "'";
+						}
 
-					updateSql = "update " + tableName + " set " + columnName + " = " + defaultValue;
-					db.execSQL(updateSql);
+						updateSql = "update " + tableName + " set " + columnName + " = "
+								+ defaultValue;
+						db.execSQL(updateSql);
+					}
 				}
 
 				db.setTransactionSuccessful();
@@ -451,13 +461,26 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		upgradeDBFuncS.add(new SeventyOneToSeventyTwo());
 
 		Log.i("testUpdate", "onupgrade");
-		for (int i = oldVersion - 1; i < newVersion - 1; i++) {
-			mUpdateResult = upgradeDBFuncS.get(i).onUpgradeDB(db);
-			if (!mUpdateResult) {
-				// 中间有任何一次升级失败，则直接返回
-				break;
+		// 整个升级在SQLiteOpenHelper的同一个事务中，各版本中的事务只是嵌套
+		long startTime = System.currentTimeMillis();
+		mUpgradePlan = new DatabaseUpgradePlan();
+		try {
+			for (int i = oldVersion - 1; i < newVersion - 1; i++) {
+				mUpdateResult = upgradeDBFuncS.get(i).onUpgradeDB(db);
+				if (!mUpdateResult) {
+					// 中间有任何一次升级失败，则直接返回
+					break;
+				}
+			}
+			if (mUpdateResult) {
+				mUpgradePlan.commit(db);
 			}
+		} finally {
+			// SQLiteException照旧抛给构造函数，提示用户并删除数据库
+			mUpgradePlan = null;
 		}
+		Log.i("testUpdate", "upgrade " + oldVersion + " to " + newVersion + " result = "
+				+ mUpdateResult + " in " + (System.currentTimeMillis() - startTime) + "ms");
 		upgradeDBFuncS.clear();
 	}
 
@@ -3682,6 +3705,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
 		db.beginTransaction();
 		try {
 			// 加假数据，用于判断dock条是否需要初始化。
+			// 之前版本新增字段的默认值只给已有的行，这一行的其它字段仍然是null
+			if (mUpgradePlan != null) {
+				mUpgradePlan.commit(db, ShortcutTable.TABLENAME);
+			}
 			String insertDefaultValues = "insert into " + ShortcutTable.TABLENAME + "("
 					+ ShortcutTable.ROWSID + ")" + " values (-1)";
 			db.execSQL(insertDefaultValues);
@@ -0,0 +1,153 @@
+package com.jiubang.ggheart.data;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.Log;
+
+/**
+ * <br>类描述:跨多个版本升级数据库时，合并各版本新增字段的处理
+ * <br>功能详细描述:原来每新增一个带默认值的字段都要ALTER TABLE后再UPDATE整个表，跨很多版本升级时
+ * 同一个表会被重写很多次。这里新增字段时直接带上DEFAULT（SQLite只改表结构，不重写数据），
+ * 所有版本升级完之后，每个表只重建一次：按去掉这些DEFAULT的建表语句建新表，一次性拷贝数据，
+ * 得到和逐个版本升级完全一样的表结构和数据。
+ * <br>注意:只在SQLiteOpenHelper.onUpgrade的事务中使用。DEFAULT对之后插入的行也有效，
+ * 升级过程中插入行又不给新增字段赋值时，必须先调用{@link #commit(SQLiteDatabase, String)}，
+ * 否则新行的字段会是默认值，而原来逐个版本升级时是null
+ */
+class DatabaseUpgradePlan {
+	private static final String TAG = "DatabaseUpgradePlan";
+	private static final String TYPE_TEXT = "text";
+	private static final String TEMP_TABLE_SUFFIX = "_upgrade_tmp";
+	private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+	/**
+	 * 每个表通过DEFAULT新增的字段定义，key为表名
+	 */
+	private final LinkedHashMap<String, ArrayList<String[]>> mDefaultColumns =
+			new LinkedHashMap<String, ArrayList<String[]>>();
+
+	/**
+	 * 新增字段
+	 *
+	 * @param defaultValue
+	 *            默认值，为null则不提供默认值
+	 * @return false表示默认值不是常量，不能用DEFAULT，需要调用者自己处理
+	 */
+	boolean addColumn(SQLiteDatabase db, String tableName, String columnName, String columnType,
+			String defaultValue) {
+		String definition = columnName + " " + columnType;
+		if (defaultValue == null) {
+			db.execSQL("ALTER TABLE " + tableName + " ADD " + definition);
+			return true;
+		}
+		String literal;
+		if (columnType.equals(TYPE_TEXT)) {
+			literal = "'" + defaultValue + "'";
+		} else if (NUMBER.matcher(defaultValue).matches()) {
+			literal = defaultValue;
+		} else {
+			return false;
+		}
+		db.execSQL("ALTER TABLE " + tableName + " ADD " + definition + " DEFAULT " + literal);
+		ArrayList<String[]> columns = mDefaultColumns.get(tableName);
+		if (columns == null) {
+			columns = new ArrayList<String[]>();
+			mDefaultColumns.put(tableName, columns);
+		}
+		columns.add(new String[] { definition, " DEFAULT " + literal });
+		return true;
+	}
+
+	/**
+	 * 所有版本升级完成后调用，每个新增过字段的表重建一次，去掉新增字段的DEFAULT
+	 */
+	void commit(SQLiteDatabase db) {
+		for (Map.Entry<String, ArrayList<String[]>> entry : mDefaultColumns.entrySet()) {
+			commitTable(db, entry.getKey(), entry.getValue());
+		}
+		mDefaultColumns.clear();
+	}
+
+	/**
+	 * 升级过程中往表里插入行之前调用，先把这个表新增字段的DEFAULT去掉，已有的行保留默认值
+	 */
+	void commit(SQLiteDatabase db, String tableName) {
+		ArrayList<String[]> columns = mDefaultColumns.remove(tableName);
+		if (columns != null) {
+			commitTable(db, tableName, columns);
+		}
+	}
+
+	private void commitTable(SQLiteDatabase db, String tableName, ArrayList<String[]> columns) {
+		long time = System.currentTimeMillis();
+		if (rebuildTable(db, tableName, columns)) {
+			Log.i(TAG, "rebuild " + tableName + " with " + columns.size() + " columns in "
+					+ (System.currentTimeMillis() - time) + "ms");
+		}
+	}
+
+	private boolean rebuildTable(SQLiteDatabase db, String tableName,
+			ArrayList<String[]> columns) {
+		String sql = null;
+		ArrayList<String> extraSqls = new ArrayList<String>();
+		Cursor cursor = db.rawQuery("SELECT type, sql FROM sqlite_master WHERE tbl_name = ?",
+				new String[] { tableName });
+		try {
+			while (cursor.moveToNext()) {
+				String type = cursor.getString(0);
+				String itemSql = cursor.getString(1);
+				if ("table".equals(type)) {
+					sql = itemSql;
+				} else if (itemSql != null) {
+					// 索引和触发器在删除旧表时一起删掉，需要重新创建
+					extraSqls.add(itemSql);
+				}
+			}
+		} finally {
+			cursor.close();
+		}
+		if (sql == null) {
+			// 后面的版本已经删掉了这个表
+			return false;
+		}
+		boolean changed = false;
+		for (String[] column : columns) {
+			// SQLite原样保存ALTER TABLE中的字段定义
+			String withDefault = column[0] + column[1];
+			int index = sql.indexOf(withDefault);
+			if (index >= 0) {
+				sql = sql.substring(0, index) + column[0]
+						+ sql.substring(index + withDefault.length());
+				changed = true;
+			}
+		}
+		if (!changed) {
+			// 后面的版本已经自己重建过这个表
+			return false;
+		}
+		String tempName = tableName + TEMP_TABLE_SUFFIX;
+		Matcher matcher = Pattern.compile(
+				"^\\s*create\\s+table\\s+[\"'`\\[]?" + Pattern.quote(tableName) + "[\"'`\\]]?",
+				Pattern.CASE_INSENSITIVE).matcher(sql);
+		if (!matcher.find()) {
+			Log.i(TAG, "unknown create sql of " + tableName);
+			return false;
+		}
+		sql = "CREATE TABLE " + tempName + sql.substring(matcher.end());
+		db.execSQL("DROP TABLE IF EXISTS " + tempName);
+		db.execSQL(sql);
+		db.execSQL("INSERT INTO " + tempName + " SELECT * FROM " + tableName);
+		db.execSQL("DROP TABLE " + tableName);
+		db.execSQL("ALTER TABLE " + tempName + " RENAME TO " + tableName);
+		for (String extraSql : extraSqls) {
+			db.execSQL(extraSql);
+		}
+		return true;
+	}
+}
@@ -298,7 +298,8 @@ public class GoStoreAppStatistics implements IAppInstallStatistics, IMonitorAppI
 	public String queryAllData() {
 		// TODO Auto-generated method stub
 		StringBuffer allBuf = new StringBuffer();
-		StringBuffer singleBuf;
+		// 每一行先拼到singleBuf，读取出错时不会留下半行；singleBuf重复使用
+		StringBuffer singleBuf = new StringBuffer();
 		Cursor cursor = null;
 		String title = PROTOCOL_TITLE + GoStorePhoneStateUtil.getUid(mContext) + PROTOCOL_DIVIDER
 				+ StatisticsFuncId.STATICTISC_LEVEL3_FUNID_GOSTORE_CONTENT + PROTOCOL_DIVIDER;
@@ -329,16 +330,16 @@ public class GoStoreAppStatistics implements IAppInstallStatistics, IMonitorAppI
 					int clickCount = 0;
 					int installCount = 0;
 					String pkgName = cursor.getString(pkgNameIndex);
-					singleBuf = new StringBuffer();
+					singleBuf.setLength(0);
 					singleBuf.append(title);
-					singleBuf.append(cursor.getString(appIdIndex) + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getString(appNameIndex) + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getInt(postionIndex) + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getInt(showCountIndex) + PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getString(appIdIndex)).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getString(appNameIndex)).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getInt(postionIndex)).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getInt(showCountIndex)).append(PROTOCOL_DIVIDER);
 					clickCount = cursor.getInt(clickCountIndex);
-					singleBuf.append(clickCount + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getInt(detailShowIndex) + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getInt(updateClickIndex) + PROTOCOL_DIVIDER);
+					singleBuf.append(clickCount).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getInt(detailShowIndex)).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getInt(updateClickIndex)).append(PROTOCOL_DIVIDER);
 					installCount = cursor.getInt(installCountIndex);
 					if (clickCount > 0 && installCount <= 0) {
 						try {
@@ -349,9 +350,9 @@ public class GoStoreAppStatistics implements IAppInstallStatistics, IMonitorAppI
 							// TODO: handle exception
 						}
 					}
-					singleBuf.append(installCount + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getInt(updateCountIndex) + PROTOCOL_DIVIDER);
-					singleBuf.append(cursor.getString(entryIndex) + PROTOCOL_DIVIDER);
+					singleBuf.append(installCount).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getInt(updateCountIndex)).append(PROTOCOL_DIVIDER);
+					singleBuf.append(cursor.getString(entryIndex)).append(PROTOCOL_DIVIDER);
 					String classifyInfos = cursor.getString(classifyIndex);
 					String classify = null;
 					String pkgType = "0";
@@ -364,8 +365,8 @@ public class GoStoreAppStatistics implements IAppInstallStatistics, IMonitorAppI
 							}
 						}
 					}
-					singleBuf.append(classify + PROTOCOL_DIVIDER);
-					singleBuf.append(pkgType + PROTOCOL_DIVIDER);
+					singleBuf.append(classify).append(PROTOCOL_DIVIDER);
+					singleBuf.append(pkgType).append(PROTOCOL_DIVIDER);
 					singleBuf.append(cursor.getString(clickTimeIndex));
 
 					allBuf.append(singleBuf);
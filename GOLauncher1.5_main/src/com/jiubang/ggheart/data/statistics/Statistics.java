@@ -77,6 +77,7 @@ public class Statistics {
 	public static final String STATISTICS_DATA_LINEFEED = "\r\n"; // 统计数据各字段分隔符
 	public static final String STATISTICS_DATA_ENCRYPT_KEY = "lvsiqiaoil611230"; // 统计数据加密密钥
 	public static final String STATISTICS_DATA_CODE = "UTF-8"; // 统计数据使用的编码
+	private static final int STATISTICS_DATA_INIT_SIZE = 16 * 1024; // 统计数据的初始缓冲大小
 
 //	private static final String STATISTICS_GOLOCKER_URI = "content://com.jiubang.goscreenlock/theme"; // 保存网络请求成功使用时间所使用的KEY
 //	private static final String STATISTICS_GOLOCKER_UID = "uid"; // 保存网络请求成功使用时间所使用的KEY
@@ -98,6 +99,10 @@ public class Statistics {
 	private static String sCountryMark = ""; // 公共信息里 国家的字段
 
 	private Context mContext;
+	/**
+	 * 本次上传中包含的事件日志，上传成功后提交
+	 */
+	private StatisticsLog.Batch mPendingLogBatch;
 
 	private static final String THEME_DEFAULT = "com.gau.go.launcherex";
 	private static final String THEME_UI30 = "default_theme_package_3";
@@ -150,209 +155,95 @@ public class Statistics {
 	}
 	/**
 	 * 获取桌面所有统计数据的方法
+	 * <p>
+	 * 各部分统计数据直接追加到同一个StringBuilder，不再逐段判断后复制；
+	 * 事件类数据从{@link StatisticsLog}中读出一批，上传成功后在{@link #clearStatisticsData()}中提交断点，
+	 * 失败时下次重新上传同一批。
 	 * @return
 	 */
 	public synchronized String getStatisticsData() {
-		String statisticsDataString = null;
-		StringBuffer statisticsDataBuffer = new StringBuffer();
-		//		testBuffer = new StringBuffer();
+		StringBuilder statisticsDataBuffer = new StringBuilder(STATISTICS_DATA_INIT_SIZE);
 		// 获取统计公共信息
-		statisticsDataString = getPublicStatisticsData();
-
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-		//		Toast.makeText(mContext, testBuffer, Toast.LENGTH_LONG).show();
+		appendSection(statisticsDataBuffer, getPublicStatisticsData(), true);
 		// 获取GO桌面自身应用部分的统计数据
-		statisticsDataString = getGoLauncherStatisticsData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-
+		appendSection(statisticsDataBuffer, getGoLauncherStatisticsData(), true);
 		// 获取GO Widget应用部分的统计数据(包括GO精品Widget)
-		statisticsDataString = getGoWidgetStatisticsData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		appendSection(statisticsDataBuffer, getGoWidgetStatisticsData(), true);
 		// 获取GO精品应用部分的统计数据(及精品Widget统计)
-		//		statisticsDataString = getGoStoreStatisticsData();
-		//		if (statisticsDataString != null
-		//				&& !"".equals(statisticsDataString.trim())) {
-		//			statisticsDataBuffer.append(statisticsDataString);
-		//			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		//		}
-
-		statisticsDataString = GoStoreAppStatistics.getInstance(mContext).queryAllData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		//		appendSection(statisticsDataBuffer, getGoStoreStatisticsData(), true);
+		appendSection(statisticsDataBuffer,
+				GoStoreAppStatistics.getInstance(mContext).queryAllData(), true);
 
 		// 获取GO锁屏应用的统计数据
-//		statisticsDataString = getGoLockerAllStatisticsData();
-//		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-//			statisticsDataBuffer.append(statisticsDataString);
-			// statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-//		}
+		//		appendSection(statisticsDataBuffer, getGoLockerAllStatisticsData(), false);
 
 		// 获取GO桌面网络错误的统计数据
 		try {
-			statisticsDataString = getHttpExceptionStatisticsDate();
-			if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-				statisticsDataBuffer.append(statisticsDataString);
-				// statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-			}
+			appendSection(statisticsDataBuffer, getHttpExceptionStatisticsDate(), false);
 		} catch (Throwable e) {
 
 		}
 
 		// 获取功能表搜索统计数据
-		statisticsDataString = StatisticsAppFuncSearch.getSearchStatisticsData(mContext);
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-
+		appendSection(statisticsDataBuffer,
+				StatisticsAppFuncSearch.getSearchStatisticsData(mContext), true);
 		//应用推荐统计数据
 		//add by zhaojunjie
-		statisticsDataString = getAppRecommendedStatisticsDate();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-
-//		//游戏中心统计数据
-//		//add by zhouxuewen
-//		statisticsDataString = getGameCenterStatisticsDate();
-//		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-//			statisticsDataBuffer.append(statisticsDataString);
-//			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-//		}
-
+		appendSection(statisticsDataBuffer, getAppRecommendedStatisticsDate(), true);
+		//		//游戏中心统计数据
+		//		//add by zhouxuewen
+		//		appendSection(statisticsDataBuffer, getGameCenterStatisticsDate(), true);
 		//应用管理统计数据
 		//add by zhaojunjie
-		statisticsDataString = getAppManagementStatisticsDate();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		appendSection(statisticsDataBuffer, getAppManagementStatisticsDate(), true);
 		//获取桌面的安装统计
-		statisticsDataString = getDeskAppStatisticsData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			//statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-
+		appendSection(statisticsDataBuffer, getDeskAppStatisticsData(), false);
 		//获取上传失败统计
-		statisticsDataString = getNoUploadStatisticsDate();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			//statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		appendSection(statisticsDataBuffer, getNoUploadStatisticsDate(), false);
 
 		//gui收费数据统计
 		//add by yangbing
-		statisticsDataString = GuiThemeStatistics.getInstance(mContext).queryAllData();
-		//System.out.println("gui收费数据统计"+statisticsDataString);
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		GuiThemeStatistics guiThemeStatistics = GuiThemeStatistics.getInstance(mContext);
+		appendSection(statisticsDataBuffer, guiThemeStatistics.queryAllData(), true);
 		// GUI包名统计 add by yangbing 2012-07-09
-		statisticsDataString = GuiThemeStatistics.getInstance(mContext).queryPackageData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-
+		appendSection(statisticsDataBuffer, guiThemeStatistics.queryPackageData(), true);
 		// GUI包名统计 (For zip)
-		statisticsDataString = GuiThemeStatistics.getInstance(mContext).queryPackageDataForZip();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
-		
+		appendSection(statisticsDataBuffer, guiThemeStatistics.queryPackageDataForZip(), true);
 		// GUI进入次数统计
-		statisticsDataString = StatisticsData.getGuiEntry(mContext);
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		appendSection(statisticsDataBuffer, StatisticsData.getGuiEntry(mContext), true);
 		// GUI　TAB点击统计
-		statisticsDataString = StatisticsData.getGuiTabData(mContext);
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-			statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		}
+		appendSection(statisticsDataBuffer, StatisticsData.getGuiTabData(mContext), true);
 		// 应用管理Tab统计数据
 		// add by zhouxuewen
-		statisticsDataString = getAppManagementTabStatisticsDate();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-		}
-
-//		//游戏中心Tab统计数据
-//		//add by zhouxuewen
-//		statisticsDataString = getGameCenterTabStatisticsDate();
-//		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-//			statisticsDataBuffer.append(statisticsDataString);
-//		}
-
+		appendSection(statisticsDataBuffer, getAppManagementTabStatisticsDate(), false);
+		//		//游戏中心Tab统计数据
+		//		//add by zhouxuewen
+		//		appendSection(statisticsDataBuffer, getGameCenterTabStatisticsDate(), false);
 		// 获取进入次数统计
-		statisticsDataString = getEntryCountStatData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-		}
-
+		appendSection(statisticsDataBuffer, getEntryCountStatData(), false);
 		// 获取搜索热词统计
-		statisticsDataString = getSearchKeywordsStatData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-		}
-
+		appendSection(statisticsDataBuffer, getSearchKeywordsStatData(), false);
 		// 获取用户行为统计之桌面设置统计
-		statisticsDataString = getUserDeskSettingStatData();
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-		}
-
+		appendSection(statisticsDataBuffer, getUserDeskSettingStatData(), false);
 		// 万能统计
-		statisticsDataString = StatisticsData.getStatData(mContext);
-		if (statisticsDataString != null && !"".equals(statisticsDataString.trim())) {
-			statisticsDataBuffer.append(statisticsDataString);
-		}
+		appendSection(statisticsDataBuffer, StatisticsData.getStatData(mContext), false);
 		// add by huyong 2012-05-21 for 增加是否绑定Gmail账号的参数信息
 		// 正式上线屏蔽该统计信息
-		/*
-		 * statisticsDataString = getBindGmailStatisticsData(); if
-		 * (statisticsDataString != null &&
-		 * !"".equals(statisticsDataString.trim())) {
-		 * statisticsDataBuffer.append(statisticsDataString); }
-		 */
-		// add by huyong 2012-05-21 for 增加是否绑定Gmail账号的参数信息 end
-
-		// end
+		//		appendSection(statisticsDataBuffer, getBindGmailStatisticsData(), false);
 		// add by huyong 2011-12-05 for all apps data
 		// 获取GOLauncher应用的统计数据
-		// statisticsDataString = getAllAppsInfo();
-		// if(statisticsDataString != null &&
-		// !"".equals(statisticsDataString.trim())){
-		// statisticsDataBuffer.append(statisticsDataString);
-		// // statisticsDataBuffer.append(STATISTICS_DATA_LINEFEED);
-		// }
-		// add by huyong 2011-12-05 for all apps data end
+		//		appendSection(statisticsDataBuffer, getAllAppsInfo(), false);
+
+		// 事件日志中未上传的记录，每行已经带换行
+		mPendingLogBatch = StatisticsLog.getInstance(mContext).readBatch(
+				StatisticsLog.DEFAULT_BATCH_SIZE);
+		if (mPendingLogBatch != null) {
+			statisticsDataBuffer.append(mPendingLogBatch.getData());
+		}
 
 		// 对所有的统计数据进行UTF-8编码
-		statisticsDataString = statisticsDataBuffer.toString();
-		//		Log.i("aoriming","mStatisticsData = " + statisticsDataString);
-		//		Log.i("aoriming","2hasExtra = " + hasExtra);
-		// 把拿到的统计数据写到SD卡，便于测试
-		 writeToSDCard(statisticsDataString, null);
-		 System.out.print("! = " + statisticsDataString);
-		//		Log.i("getView", "statisticsDataString:" + statisticsDataString);
+		String statisticsDataString = statisticsDataBuffer.toString();
+		statisticsDataBuffer = null;
 		try {
 			statisticsDataString = URLEncoder.encode(statisticsDataString, STATISTICS_DATA_CODE);
 		} catch (UnsupportedEncodingException e1) {
@@ -365,14 +256,25 @@ public class Statistics {
 			statisticsDataString = CryptTool.encrypt(statisticsDataString,
 					STATISTICS_DATA_ENCRYPT_KEY);
 		}
-		//		if (sdCardExist) {
-		//			String sdDir = Environment.getExternalStorageDirectory().toString();// 获取跟目录
-		//			FileUtil.saveByteToSDFile(statisticsDataString.getBytes(), sdDir + "/static2.txt");
-		//		}
-		//		Toast.makeText(mContext, "上传统计数据", Toast.LENGTH_LONG).show();
 		return statisticsDataString;
 	}
-	
+
+	/**
+	 * 追加一部分统计数据，为空时不追加
+	 *
+	 * @param lineFeed
+	 *            是否在后面加换行
+	 */
+	private static void appendSection(StringBuilder builder, String section, boolean lineFeed) {
+		if (section == null || section.trim().length() == 0) {
+			return;
+		}
+		builder.append(section);
+		if (lineFeed) {
+			builder.append(STATISTICS_DATA_LINEFEED);
+		}
+	}
+
 	/**
 	 * <br>
 	 * 功能简述:从SDcard获取随机生成的IMEI的方法 <br>
@@ -2735,6 +2637,13 @@ public class Statistics {
 	 * 清理统计数据的方法
 	 */
 	public void clearStatisticsData() {
+		// 已经上传的事件日志
+		synchronized (this) {
+			if (mPendingLogBatch != null) {
+				StatisticsLog.getInstance(mContext).commit(mPendingLogBatch);
+				mPendingLogBatch = null;
+			}
+		}
 		// 清理GO Launcher数据
 		clearGoLauncherStatisticsData();
 		// 清理GO Widget数据
@@ -831,12 +831,16 @@ public class StatisticsData {
 	// return name;
 	// }
 
+	/**
+	 * 记录一次网络错误，直接追加到{@link StatisticsLog}，不再每次整体重写SharedPreferences
+	 */
 	public static void saveHttpExceptionDate(Context context, THttpRequest request, int reason) {
 		try {
-			PreferencesManager sp = new PreferencesManager(context,
-					"statistic_http_exception_date", Context.MODE_PRIVATE);
-
 			StringBuffer statisticsDataStringBuffer = new StringBuffer();
+			// 记录功能号
+			statisticsDataStringBuffer.append(
+					StatisticsFuncId.STATICTISC_LEVEL1_FUNID_HTTP_EXCEPTOIN).append(
+					STATISTICS_DATA_SEPARATE_STRING);
 
 			// 记录错误码
 			statisticsDataStringBuffer.append(reason).append(STATISTICS_DATA_SEPARATE_STRING);
@@ -854,16 +858,15 @@ public class StatisticsData {
 			// 记录时间
 			statisticsDataStringBuffer.append(date);
 
-			int count = sp.getAll().size();
-			count++;
-
-			sp.putString("" + count, statisticsDataStringBuffer.toString());
-			sp.commit();
+			StatisticsLog.getInstance(context).append(statisticsDataStringBuffer.toString());
 		} catch (Throwable e) {
 			// TODO: handle exception
 		}
 	}
 
+	/**
+	 * 旧版本保存在SharedPreferences中还没上传的网络错误，新的记录在{@link StatisticsLog}中
+	 */
 	public static Map<String, ?> getHttpExceptionDate(Context context) {
 		PreferencesManager sp = new PreferencesManager(context,
 				IPreferencesIds.STATISTIC_HTTP_EXCEPTION_DATE, Context.MODE_PRIVATE);
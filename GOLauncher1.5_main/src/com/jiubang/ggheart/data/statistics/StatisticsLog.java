@@ -0,0 +1,328 @@
+package com.jiubang.ggheart.data.statistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+
+import android.content.Context;
+
+/**
+ * <br>类描述:事件类统计数据的追加日志
+ * <br>功能详细描述:事件发生时直接把一条统计记录追加到文件末尾，不需要像SharedPreferences那样每次读出再整体写回。
+ * 上传时从断点开始按行读出不超过指定大小的一批，上传成功后{@link #commit(Batch)}推进断点，
+ * 失败时断点不变，下次上传重新读出同一批，上传期间新追加的记录也不会被清掉。
+ * 已经上传的部分在文件变大后才整体删除。
+ * <br>文件格式：开头8字节为文件中第一个字节对应的逻辑位置，后面是按行保存的记录。
+ * 断点保存的是逻辑位置，删除已上传部分时只需要改写数据文件（改名替换），断点文件不用同时修改。
+ */
+public class StatisticsLog {
+	private static final String FILE_NAME = "statistics_log";
+	private static final String CHECKPOINT_SUFFIX = ".ckpt";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int HEADER_SIZE = 8;
+	private static final byte[] LINE_END = { '\r', '\n' };
+	/**
+	 * 日志最大长度，长时间没有上传成功时丢弃新的记录，避免无限增长
+	 */
+	private static final long MAX_SIZE = 256 * 1024;
+	/**
+	 * 已上传部分超过这个长度时删除
+	 */
+	private static final long COMPACT_SIZE = 32 * 1024;
+	/**
+	 * 默认每次上传的最大长度
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 64 * 1024;
+
+	private static StatisticsLog sInstance = null;
+
+	private final File mFile;
+	private final File mCheckpointFile;
+	/**
+	 * 文件中第一个字节的逻辑位置
+	 */
+	private long mBase;
+	/**
+	 * 已经上传成功的逻辑位置
+	 */
+	private long mCheckpoint;
+
+	/**
+	 * 读出的一批记录
+	 */
+	public static class Batch {
+		final long mStart;
+		final long mEnd;
+		final String mData;
+
+		Batch(long start, long end, String data) {
+			mStart = start;
+			mEnd = end;
+			mData = data;
+		}
+
+		/**
+		 * @return 按行分隔的记录，每行以\r\n结尾
+		 */
+		public String getData() {
+			return mData;
+		}
+	}
+
+	StatisticsLog(File dir) {
+		mFile = new File(dir, FILE_NAME);
+		mCheckpointFile = new File(dir, FILE_NAME + CHECKPOINT_SUFFIX);
+		mCheckpoint = readCheckpoint();
+		long length = mFile.length();
+		if (length < HEADER_SIZE) {
+			// 没有数据文件，从断点重新开始
+			mBase = mCheckpoint;
+		} else {
+			mBase = readBase();
+			// 断点文件丢失或者损坏时，以数据文件为准
+			mCheckpoint = Math.min(Math.max(mCheckpoint, mBase), mBase + length - HEADER_SIZE);
+		}
+	}
+
+	public synchronized static StatisticsLog getInstance(Context context) {
+		if (sInstance == null) {
+			sInstance = new StatisticsLog(context.getApplicationContext().getFilesDir());
+		}
+		return sInstance;
+	}
+
+	/**
+	 * 追加一条记录
+	 *
+	 * @param record
+	 *            一条完整的统计记录，不含换行
+	 */
+	public synchronized void append(String record) {
+		if (record == null || record.length() == 0) {
+			return;
+		}
+		try {
+			byte[] bytes = record.replace('\r', ' ').replace('\n', ' ')
+					.getBytes(Statistics.STATISTICS_DATA_CODE);
+			long length = mFile.length();
+			if (length + bytes.length + LINE_END.length > MAX_SIZE) {
+				compact();
+				length = mFile.length();
+				if (length + bytes.length + LINE_END.length > MAX_SIZE) {
+					return;
+				}
+			}
+			if (length < HEADER_SIZE) {
+				mBase = mCheckpoint;
+				writeFile(mFile, mBase, null, 0);
+			}
+			OutputStream out = new FileOutputStream(mFile, true);
+			try {
+				// 一次写入，避免记录和换行被分开
+				byte[] line = new byte[bytes.length + LINE_END.length];
+				System.arraycopy(bytes, 0, line, 0, bytes.length);
+				System.arraycopy(LINE_END, 0, line, bytes.length, LINE_END.length);
+				out.write(line);
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 从断点开始读出一批完整的记录
+	 *
+	 * @param maxSize
+	 *            最大字节数，第一条记录超过时也会读出
+	 * @return 没有未上传的记录时返回null
+	 */
+	public synchronized Batch readBatch(int maxSize) {
+		long length = mFile.length();
+		long start = mCheckpoint - mBase + HEADER_SIZE;
+		if (length <= start) {
+			return null;
+		}
+		InputStream in = null;
+		try {
+			in = new BufferedInputStream(new FileInputStream(mFile));
+			skipFully(in, start);
+			ByteArrayOutputStream data = new ByteArrayOutputStream((int) Math.min(maxSize,
+					length - start));
+			ByteArrayOutputStream line = new ByteArrayOutputStream();
+			int c;
+			while ((c = in.read()) != -1) {
+				line.write(c);
+				if (c == '\n') {
+					if (data.size() > 0 && data.size() + line.size() > maxSize) {
+						break;
+					}
+					line.writeTo(data);
+					line.reset();
+				}
+			}
+			// 最后没有换行的是写了一半的记录，不上传
+			if (data.size() == 0) {
+				return null;
+			}
+			return new Batch(mCheckpoint, mCheckpoint + data.size(),
+					data.toString(Statistics.STATISTICS_DATA_CODE));
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	/**
+	 * 一批记录上传成功，推进断点
+	 */
+	public synchronized void commit(Batch batch) {
+		if (batch == null || batch.mStart != mCheckpoint) {
+			// 已经提交过
+			return;
+		}
+		mCheckpoint = batch.mEnd;
+		writeCheckpoint();
+		if (mCheckpoint - mBase >= COMPACT_SIZE
+				|| mCheckpoint - mBase + HEADER_SIZE >= mFile.length()) {
+			compact();
+		}
+	}
+
+	/**
+	 * 删除已经上传的部分
+	 */
+	private void compact() {
+		long consumed = mCheckpoint - mBase;
+		if (consumed <= 0) {
+			return;
+		}
+		try {
+			long length = mFile.length();
+			if (HEADER_SIZE + consumed >= length) {
+				writeFile(mFile, mCheckpoint, null, 0);
+			} else {
+				File temp = new File(mFile.getPath() + TEMP_SUFFIX);
+				writeFile(temp, mCheckpoint, mFile, HEADER_SIZE + consumed);
+				if (!temp.renameTo(mFile)) {
+					temp.delete();
+					return;
+				}
+			}
+			mBase = mCheckpoint;
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 写一个新的数据文件
+	 *
+	 * @param source
+	 *            从这个文件的offset开始复制剩余的内容，为null时只写文件头
+	 */
+	private static void writeFile(File file, long base, File source, long offset)
+			throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeLong(base);
+			if (source != null) {
+				InputStream in = new FileInputStream(source);
+				try {
+					skipFully(in, offset);
+					byte[] buffer = new byte[4096];
+					int count;
+					while ((count = in.read(buffer)) != -1) {
+						out.write(buffer, 0, count);
+					}
+				} finally {
+					in.close();
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void skipFully(InputStream in, long count) throws IOException {
+		while (count > 0) {
+			long skipped = in.skip(count);
+			if (skipped <= 0) {
+				throw new IOException("unexpected end of file");
+			}
+			count -= skipped;
+		}
+	}
+
+	private long readBase() {
+		RandomAccessFile file = null;
+		try {
+			file = new RandomAccessFile(mFile, "r");
+			return file.readLong();
+		} catch (IOException e) {
+			return 0;
+		} finally {
+			if (file != null) {
+				try {
+					file.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private long readCheckpoint() {
+		if (!mCheckpointFile.exists()) {
+			return 0;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new FileInputStream(mCheckpointFile));
+			return in.readLong();
+		} catch (IOException e) {
+			return 0;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+				}
+			}
+		}
+	}
+
+	private void writeCheckpoint() {
+		File temp = new File(mCheckpointFile.getPath() + TEMP_SUFFIX);
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(temp));
+			try {
+				out.writeLong(mCheckpoint);
+			} finally {
+				out.close();
+			}
+			if (!temp.renameTo(mCheckpointFile)) {
+				temp.delete();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+}
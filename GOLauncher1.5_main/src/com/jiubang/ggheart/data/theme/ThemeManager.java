@@ -54,6 +54,7 @@ import com.go.util.AppUtils;
 import com.go.util.SortUtils;
 import com.go.util.device.Machine;
 import com.go.util.file.FileUtil;
+import com.go.util.log.Trace;
 import com.go.util.window.WindowControl;
 import com.jiubang.core.framework.ICleanable;
 import com.jiubang.ggheart.apps.desks.Preferences.dialogs.DialogConfirm;
@@ -86,6 +87,7 @@ import com.jiubang.ggheart.data.theme.bean.ThemeBean;
 import com.jiubang.ggheart.data.theme.bean.ThemeInfoBean;
 import com.jiubang.ggheart.data.theme.bean.ThemeNotifyBean;
 import com.jiubang.ggheart.data.theme.broadcastReceiver.MyThemeReceiver;
+import com.jiubang.ggheart.data.theme.cache.ThemeInfoCache;
 import com.jiubang.ggheart.data.theme.parser.AppThemeParser;
 import com.jiubang.ggheart.data.theme.parser.DeskFolderThemeParser;
 import com.jiubang.ggheart.data.theme.parser.DeskThemeParser;
@@ -156,6 +158,8 @@ public class ThemeManager implements ICleanable {
 	private static ThemeManager sThemeManagerSelf = null;
 
 	private Context mContext = null;
+	// 已经解析过的主题信息缓存
+	private ThemeInfoCache mThemeInfoCache = null;
 
 	private ArrayList<ThemeNotifyBean> mNotifyBeans;
 	private ArrayList<MessageFilterBean> mFilterBeans;
@@ -174,6 +178,7 @@ public class ThemeManager implements ICleanable {
 
 	private ThemeManager(Context context) {
 		mContext = context;
+		mThemeInfoCache = new ThemeInfoCache(context);
 		mFilterBeans = new ArrayList<MessageFilterBean>();
 		initTheme();
 		parseNotifyAllData();
@@ -299,6 +304,7 @@ public class ThemeManager implements ICleanable {
 	}
 
 	private void handleAppInstallOrUpdate(String pkgName) {
+		mThemeInfoCache.invalidate(pkgName);
 		if (pkgName != null && mCurThemeInfo != null) {
 			String curTheme = mCurThemeInfo.getPackageName();
 			if (DEFAULT_THEME_PACKAGE_3_NEWER.equals(pkgName)
@@ -326,6 +332,7 @@ public class ThemeManager implements ICleanable {
 			// 收到卸载消息，若包名是空，则说明消息处理错误。
 			return;
 		}
+		mThemeInfoCache.invalidate(packageName);
 
 		// 首先移除内存中的主题列表信息
 		mAllInstalledThemeInfosMap.remove(packageName);
@@ -1168,10 +1175,12 @@ public class ThemeManager implements ICleanable {
 		new Thread(ThreadName.ASYNC_PARSE_THEME) {
 			@Override
 			public void run() {
+				long traceStart = Trace.begin();
 				boolean result = applyThemeOnlyInMemorry(themePackage);
 				if (result) {
 					// 应用成功，则首先保存到DB中。
 					savePackageNameToDB(themePackage);
+					Trace.end(Trace.THEME_APPLY, traceStart);
 					if (!isSetWallPaper) {
 						// 根据需要，判断是否需要重新设置墙纸。
 						// 当前规则为：除开用户手动应用某一主题时需要设置墙纸外，其他情况（如2分钟、SD卡到来引起主题还原时）
@@ -1360,6 +1369,15 @@ public class ThemeManager implements ICleanable {
 	 * @param themePackage
 	 */
 	private ThemeInfoBean parserThemeInfo(String themePackage, ThemeInfoBean themeInfoBean) {
+		ThemeInfoBean themeBean = themeInfoBean;
+		if (themeBean == null) {
+			themeBean = new ThemeInfoBean();
+		}
+		// 之前解析过且主题包没有变化，直接读取缓存
+		final String cacheKey = themePackage;
+		if (mThemeInfoCache.load(cacheKey, themeBean)) {
+			return themeBean;
+		}
 		boolean isUsedDefault3 = false;
 		String newThemeFileName;
 		String fileName;
@@ -1374,10 +1392,6 @@ public class ThemeManager implements ICleanable {
 		InputStream inputStream = XmlParserFactory.createInputStream(mContext, themePackage,
 				newThemeFileName);
 		XmlPullParser xmlPullParser = null;
-		ThemeInfoBean themeBean = themeInfoBean;
-		if (themeBean == null) {
-			themeBean = new ThemeInfoBean();
-		}
 
 		if (inputStream != null) {
 			xmlPullParser = XmlParserFactory.createXmlParser(inputStream);
@@ -1440,6 +1454,8 @@ public class ThemeManager implements ICleanable {
 			resId = resources.getIdentifier(themeInfoResId, "string", themePackage);
 			String themeInfo = resources.getString(resId);
 			themeBean.setThemeInfo(themeInfo);
+			// 名称和描述都取到了才缓存，否则下次仍然重新解析
+			mThemeInfoCache.save(cacheKey, themeBean);
 		} catch (NameNotFoundException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -0,0 +1,326 @@
+package com.jiubang.ggheart.data.theme.cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+
+import com.jiubang.ggheart.data.theme.ThemeManager;
+import com.jiubang.ggheart.data.theme.bean.ThemeInfoBean;
+import com.jiubang.ggheart.data.theme.bean.ThemeInfoBean.MiddleViewBean;
+
+/**
+ * <br>类描述:主题信息的二进制缓存
+ * <br>功能详细描述:扫描主题时每个主题都要创建主题包的Context，解析两个配置xml，再从资源中读取名称和描述。
+ * 第一次解析成功后把结果写成一个小的二进制文件，之后直接读文件，不再打开主题包。
+ * <br>缓存文件以包名命名，文件头记录主题包的版本号、apk修改时间、桌面版本号和语言，
+ * 任意一个不同都视为失效，主题更新或者卸载时也会主动删除。
+ * zip主题查找对应文件的代价比解析还高，不做缓存。
+ */
+public class ThemeInfoCache {
+	private static final int MAGIC = 0x47544943; // "GTIC"
+	/**
+	 * 文件格式版本，增加或者修改字段时加1
+	 */
+	private static final int FORMAT_VERSION = 1;
+	private static final String DIR_NAME = "theme_info";
+	private static final String TEMP_SUFFIX = ".tmp";
+	private static final int MAX_LIST_SIZE = 1024;
+
+	private final Context mContext;
+	private final File mDir;
+	private int mLauncherVersionCode = -1;
+
+	/**
+	 * 缓存失效的判断依据
+	 */
+	private static class Key {
+		int mVersionCode;
+		long mApkModified;
+		int mLauncherVersionCode;
+		String mLocale;
+
+		void write(DataOutputStream out) throws IOException {
+			out.writeInt(mVersionCode);
+			out.writeLong(mApkModified);
+			out.writeInt(mLauncherVersionCode);
+			out.writeUTF(mLocale);
+		}
+
+		boolean matches(DataInputStream in) throws IOException {
+			return in.readInt() == mVersionCode && in.readLong() == mApkModified
+					&& in.readInt() == mLauncherVersionCode && in.readUTF().equals(mLocale);
+		}
+	}
+
+	public ThemeInfoCache(Context context) {
+		mContext = context;
+		mDir = new File(context.getCacheDir(), DIR_NAME);
+	}
+
+	/**
+	 * 读取缓存的主题信息
+	 *
+	 * @param bean
+	 *            扫描时新建的bean，读取成功时写入解析得到的所有字段
+	 * @return 缓存不存在或者已经失效时返回false，bean不会被修改
+	 */
+	public boolean load(String packageName, ThemeInfoBean bean) {
+		Key key = getKey(packageName);
+		if (key == null || bean == null) {
+			return false;
+		}
+		File file = getFile(packageName);
+		if (!file.exists()) {
+			return false;
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(readFile(file)));
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || !key.matches(in)) {
+				file.delete();
+				return false;
+			}
+			// 先全部读出，文件损坏时不会只修改了一部分
+			int verId = in.readInt();
+			boolean isNewTheme = in.readBoolean();
+			boolean existGolauncher = in.readBoolean();
+			boolean existGolock = in.readBoolean();
+			ArrayList<String> goWidgetPkgNames = readList(in);
+			ArrayList<String> newThemePkgs = readList(in);
+			String themeType = readString(in);
+			ArrayList<String> previewNames = readList(in);
+			int minGOLauncherVersion = in.readInt();
+			boolean isEncrypt = in.readBoolean();
+			boolean maskView = in.readBoolean();
+			boolean hasMiddleViewBean = in.readBoolean();
+			boolean hasMiddleView = in.readBoolean();
+			boolean isSurfaceView = in.readBoolean();
+			boolean needActivationCode = in.readBoolean();
+			String activationCodeUrl = readString(in);
+			String maskViewPath = readString(in);
+			String middleViewPath = readString(in);
+			ArrayList<String> classDexNames = readList(in);
+			int userType = in.readInt();
+			String themeName = readString(in);
+			String themeInfo = readString(in);
+
+			bean.setPackageName(packageName);
+			bean.setVerId(verId);
+			bean.setIsNewTheme(isNewTheme);
+			bean.setExistGolauncher(existGolauncher);
+			bean.setExistGolock(existGolock);
+			bean.setGoWidgetPkgName(goWidgetPkgNames);
+			ArrayList<String> names = bean.getNewThemeInfo().getNewThemePkg();
+			names.clear();
+			if (newThemePkgs != null) {
+				names.addAll(newThemePkgs);
+			}
+			bean.setThemeType(themeType);
+			bean.clearPreviewName();
+			if (previewNames != null) {
+				for (String name : previewNames) {
+					bean.addDrawableName(name);
+				}
+			}
+			bean.setMinGOLauncherVersion(minGOLauncherVersion);
+			bean.setIsEncrypt(isEncrypt);
+			bean.setMaskView(maskView);
+			if (hasMiddleViewBean) {
+				bean.setMiddleViewBean(hasMiddleView, isSurfaceView);
+			}
+			bean.setNeedActivationCode(needActivationCode);
+			bean.setActivationCodeUrl(activationCodeUrl);
+			bean.setMaskViewPath(maskViewPath);
+			bean.setMiddleViewPath(middleViewPath);
+			bean.setClassDexNames(classDexNames != null ? classDexNames
+					.toArray(new String[classDexNames.size()]) : null);
+			bean.setUserType(userType);
+			bean.setThemeName(themeName);
+			bean.setThemeInfo(themeInfo);
+			return true;
+		} catch (Exception e) {
+			file.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * 保存解析成功的主题信息
+	 */
+	public void save(String packageName, ThemeInfoBean bean) {
+		Key key = getKey(packageName);
+		if (key == null || bean == null) {
+			return;
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(512);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			key.write(out);
+			out.writeInt(bean.getVerId());
+			out.writeBoolean(bean.isNewTheme());
+			out.writeBoolean(bean.ismExistGolauncher());
+			out.writeBoolean(bean.ismExistGolock());
+			writeList(out, bean.getGoWidgetPkgName());
+			writeList(out, bean.getNewThemeInfo().getNewThemePkg());
+			writeString(out, bean.getThemeType());
+			writeList(out, bean.getPreViewDrawableNames());
+			out.writeInt(bean.getMinGOLauncherVersion());
+			out.writeBoolean(bean.isEncrypt());
+			out.writeBoolean(bean.isMaskView());
+			MiddleViewBean middleViewBean = bean.getMiddleViewBean();
+			out.writeBoolean(middleViewBean != null);
+			out.writeBoolean(middleViewBean != null && middleViewBean.mHasMiddleView);
+			out.writeBoolean(middleViewBean != null && middleViewBean.mIsSurfaceView);
+			out.writeBoolean(bean.getNeedActivationCode());
+			writeString(out, bean.getActivationCodeUrl());
+			writeString(out, bean.getMaskViewPath());
+			writeString(out, bean.getMiddleViewPath());
+			String[] classDexNames = bean.getClassDexNames();
+			ArrayList<String> classDexNameList = null;
+			if (classDexNames != null) {
+				classDexNameList = new ArrayList<String>(classDexNames.length);
+				for (String name : classDexNames) {
+					classDexNameList.add(name);
+				}
+			}
+			writeList(out, classDexNameList);
+			out.writeInt(bean.getUserType());
+			writeString(out, bean.getThemeName());
+			writeString(out, bean.getThemeInfo());
+			out.flush();
+			writeFile(getFile(packageName), bytes.toByteArray());
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * 主题包更新或者卸载时删除对应的缓存
+	 */
+	public void invalidate(String packageName) {
+		if (packageName != null) {
+			getFile(packageName).delete();
+		}
+	}
+
+	private File getFile(String packageName) {
+		return new File(mDir, packageName);
+	}
+
+	private Key getKey(String packageName) {
+		if (packageName == null) {
+			return null;
+		}
+		PackageManager pm = mContext.getPackageManager();
+		String launcherPackage = mContext.getPackageName();
+		if (ThemeManager.DEFAULT_THEME_PACKAGE.equals(packageName)
+				|| ThemeManager.DEFAULT_THEME_PACKAGE_3.equals(packageName)) {
+			// 默认主题在桌面自身的包中
+			packageName = launcherPackage;
+		}
+		try {
+			if (mLauncherVersionCode < 0) {
+				mLauncherVersionCode = pm.getPackageInfo(launcherPackage, 0).versionCode;
+			}
+			PackageInfo info = pm.getPackageInfo(packageName, 0);
+			Key key = new Key();
+			key.mVersionCode = info.versionCode;
+			key.mApkModified = new File(info.applicationInfo.sourceDir).lastModified();
+			key.mLauncherVersionCode = mLauncherVersionCode;
+			key.mLocale = Locale.getDefault().toString();
+			return key;
+		} catch (NameNotFoundException e) {
+			// zip主题
+			return null;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	private static byte[] readFile(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] data = new byte[(int) file.length()];
+			int offset = 0;
+			while (offset < data.length) {
+				int count = in.read(data, offset, data.length - offset);
+				if (count < 0) {
+					throw new IOException("unexpected end of file");
+				}
+				offset += count;
+			}
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private void writeFile(File file, byte[] data) throws IOException {
+		if (!mDir.exists()) {
+			mDir.mkdirs();
+		}
+		// 扫描线程和应用主题的线程可能同时写同一个主题
+		File temp = new File(mDir, file.getName() + TEMP_SUFFIX + Thread.currentThread().getId());
+		FileOutputStream out = new FileOutputStream(temp);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			temp.delete();
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeList(DataOutputStream out, ArrayList<String> list)
+			throws IOException {
+		if (list == null) {
+			out.writeInt(-1);
+			return;
+		}
+		out.writeInt(list.size());
+		for (String value : list) {
+			writeString(out, value);
+		}
+	}
+
+	private static ArrayList<String> readList(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size < 0) {
+			return null;
+		}
+		if (size > MAX_LIST_SIZE) {
+			throw new IOException("bad list size " + size);
+		}
+		ArrayList<String> list = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			list.add(readString(in));
+		}
+		return list;
+	}
+}
@@ -14,8 +14,10 @@ import android.os.HandlerThread;
 import android.util.DisplayMetrics;
 
 import com.go.launcher.taskmanager.TaskMgrControler;
+import com.go.util.AppUtils;
 import com.go.util.graphics.DrawUtils;
 import com.go.util.graphics.HolographicOutlineHelper;
+import com.go.util.log.Trace;
 import com.jiubang.ggheart.appgame.download.IDownloadService;
 import com.jiubang.ggheart.apps.appfunc.controler.RecentAppControler;
 import com.jiubang.ggheart.apps.config.ChannelConfig;
@@ -77,6 +79,13 @@ public class GOLauncherApp extends Application {
 
 		// 创建图标轮廓阴影的工具类
 		sOutlineHelper = new HolographicOutlineHelper();
+
+		if (Trace.ENABLED) {
+			// 每分钟把性能统计追加到sd卡的日志目录，带上版本号方便对比
+			Trace.startPeriodicDump(LauncherEnv.Path.SDCARD + LauncherEnv.Path.LOG_DIR
+					+ "trace.txt", AppUtils.getVersionNameByPkgName(this, getPackageName()),
+					60 * 1000);
+		}
 	}
 
 	private static void initStaticApp(GOLauncherApp launcherApp) {
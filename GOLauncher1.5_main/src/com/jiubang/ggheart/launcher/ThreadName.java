@@ -87,6 +87,11 @@ public final class ThreadName {
 	 */
 	public final static String ASYNC_LOAD_ICONS_AND_TITLES = "async_load_icons_and_titles";
 
+	/**
+	 * 加载程序图标和标题的工作线程 {@link AppDataEngine#prioritizeItems}
+	 */
+	public final static String APP_ITEM_LOADER = "app_item_loader";
+
 	/**
 	 * 初始化隐藏程序列表 {@link HideAppActivity#initList}
 	 */
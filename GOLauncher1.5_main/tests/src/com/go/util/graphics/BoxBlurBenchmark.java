@@ -0,0 +1,52 @@
+package com.go.util.graphics;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * BoxBlur的耗时，结果输出到logcat（tag: BoxBlurBenchmark）
+ *
+ * <pre>
+ * 270x480是功能表背景缩小后的大小，1080x1920是全屏。
+ * 逐像素求和的做法耗时与半径成正比，只在小图上对比。
+ * </pre>
+ */
+public class BoxBlurBenchmark extends TestCase {
+	private static final String TAG = "BoxBlurBenchmark";
+	private static final int PASSES = 3;
+	private static final int RUNS = 5;
+	private static final int[] RADII = { 4, 16, 64 };
+
+	public void testDrawerSize() {
+		run(270, 480, true);
+	}
+
+	public void testFullScreen() {
+		run(1080, 1920, false);
+	}
+
+	private void run(int width, int height, boolean withNaive) {
+		int[] source = BoxBlurTest.randomPixels(new Random(1), width * height);
+		BoxBlur blur = new BoxBlur();
+		for (int radius : RADII) {
+			long best = Long.MAX_VALUE;
+			for (int i = 0; i < RUNS; ++i) {
+				int[] pixels = source.clone();
+				long start = System.nanoTime();
+				blur.blur(pixels, width, height, radius, PASSES);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			String line = width + "x" + height + " r" + radius + ": box " + best / 1000000 + "ms";
+			if (withNaive) {
+				long start = System.nanoTime();
+				BoxBlurTest.naiveBlur(source, width, height, radius, PASSES);
+				line += ", naive " + (System.nanoTime() - start) / 1000000 + "ms";
+			}
+			Log.i(TAG, line);
+		}
+		blur.release();
+	}
+}
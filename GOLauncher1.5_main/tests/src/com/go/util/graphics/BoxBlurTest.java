@@ -0,0 +1,178 @@
+package com.go.util.graphics;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * BoxBlur的正确性测试，与逐像素求和的模糊结果对比
+ */
+public class BoxBlurTest extends TestCase {
+
+	public void testMatchesNaiveBlur() {
+		Random random = new Random(1);
+		int[][] sizes = { { 1, 1 }, { 1, 17 }, { 17, 1 }, { 37, 23 }, { 64, 64 } };
+		int[] radii = { 1, 2, 5, 16, 40 };
+		for (int[] size : sizes) {
+			for (int radius : radii) {
+				for (int passes = 1; passes <= 3; ++passes) {
+					int[] pixels = randomPixels(random, size[0] * size[1]);
+					int[] expected = naiveBlur(pixels, size[0], size[1], radius, passes);
+					new BoxBlur().blur(pixels, size[0], size[1], radius, passes);
+					assertTrue(size[0] + "x" + size[1] + " r" + radius + " p" + passes,
+							Arrays.equals(expected, pixels));
+				}
+			}
+		}
+	}
+
+	public void testCloseToExactAverage() {
+		Random random = new Random(2);
+		int width = 31;
+		int height = 19;
+		for (int radius = 1; radius <= BoxBlur.MAX_RADIUS; radius += 7) {
+			int[] pixels = randomPixels(random, width * height);
+			int[] source = pixels.clone();
+			new BoxBlur().blur(pixels, width, height, radius, 1);
+			// 定点数的误差每个通道不超过1
+			int[] horizontal = exactBoxRows(source, width, height, radius);
+			int[] exact = exactBoxRows(transpose(horizontal, width, height), height, width, radius);
+			exact = transpose(exact, height, width);
+			for (int i = 0; i < pixels.length; ++i) {
+				for (int shift = 0; shift < 32; shift += 8) {
+					int actual = (pixels[i] >>> shift) & 0xff;
+					int want = (exact[i] >>> shift) & 0xff;
+					// 两个方向各有一次舍入
+					assertTrue("r" + radius + " at " + i, Math.abs(actual - want) <= 2);
+				}
+			}
+		}
+	}
+
+	public void testSolidColorStaysSolid() {
+		int color = 0x80ff4000;
+		int[] pixels = new int[40 * 30];
+		Arrays.fill(pixels, color);
+		new BoxBlur().blur(pixels, 40, 30, 6, 3);
+		for (int pixel : pixels) {
+			assertEquals(color, pixel);
+		}
+	}
+
+	public void testNoOpArguments() {
+		int[] pixels = randomPixels(new Random(3), 100);
+		int[] source = pixels.clone();
+		BoxBlur blur = new BoxBlur();
+		blur.blur(pixels, 10, 10, 0, 3);
+		blur.blur(pixels, 10, 10, 3, 0);
+		blur.blur(pixels, 0, 10, 3, 3);
+		assertTrue(Arrays.equals(source, pixels));
+	}
+
+	public void testRadiusIsCapped() {
+		Random random = new Random(4);
+		int[] pixels = randomPixels(random, 300 * 2);
+		int[] capped = pixels.clone();
+		new BoxBlur().blur(pixels, 300, 2, BoxBlur.MAX_RADIUS + 50, 1);
+		new BoxBlur().blur(capped, 300, 2, BoxBlur.MAX_RADIUS, 1);
+		assertTrue(Arrays.equals(capped, pixels));
+	}
+
+	public void testBandedMatchesNaive() {
+		// 超过并行阈值，多核时按行分段处理
+		int width = 480;
+		int height = 320;
+		int[] pixels = randomPixels(new Random(5), width * height);
+		int[] expected = naiveBlur(pixels, width, height, 4, 2);
+		new BoxBlur().blur(pixels, width, height, 4, 2);
+		assertTrue(Arrays.equals(expected, pixels));
+	}
+
+	public void testBuffersAreReused() {
+		BoxBlur blur = new BoxBlur();
+		int[] pixels = blur.obtainPixels(1000);
+		assertSame(pixels, blur.obtainPixels(500));
+		assertSame(pixels, blur.obtainPixels(1000));
+		int[] larger = blur.obtainPixels(2000);
+		assertNotSame(pixels, larger);
+		assertSame(larger, blur.obtainPixels(1500));
+		// 太大的不保留
+		int[] huge = blur.obtainPixels(BoxBlur.MAX_CACHED_PIXELS + 1);
+		assertNotSame(huge, blur.obtainPixels(BoxBlur.MAX_CACHED_PIXELS + 1));
+		assertSame(larger, blur.obtainPixels(2000));
+		blur.release();
+		assertNotSame(larger, blur.obtainPixels(2000));
+	}
+
+	static int[] randomPixels(Random random, int size) {
+		int[] pixels = new int[size];
+		for (int i = 0; i < size; ++i) {
+			pixels[i] = random.nextInt();
+		}
+		return pixels;
+	}
+
+	/**
+	 * 每个像素直接对窗口求和，边界外取边缘像素，舍入方式与BoxBlur相同
+	 */
+	static int[] naiveBlur(int[] source, int width, int height, int radius, int passes) {
+		int[] pixels = source.clone();
+		for (int i = 0; i < passes; ++i) {
+			pixels = naiveBoxRows(pixels, width, height, radius);
+			pixels = transpose(naiveBoxRows(transpose(pixels, width, height), height, width,
+					radius), height, width);
+		}
+		return pixels;
+	}
+
+	private static int[] naiveBoxRows(int[] src, int width, int height, int radius) {
+		int scale = 65536 / (radius * 2 + 1);
+		int[] dst = new int[src.length];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int color = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = 0;
+					for (int i = x - radius; i <= x + radius; ++i) {
+						int clamped = Math.max(0, Math.min(width - 1, i));
+						sum += (src[y * width + clamped] >>> shift) & 0xff;
+					}
+					color |= ((sum * scale + 32768) >>> 16) << shift;
+				}
+				dst[y * width + x] = color;
+			}
+		}
+		return dst;
+	}
+
+	private static int[] exactBoxRows(int[] src, int width, int height, int radius) {
+		int window = radius * 2 + 1;
+		int[] dst = new int[src.length];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				int color = 0;
+				for (int shift = 0; shift < 32; shift += 8) {
+					int sum = 0;
+					for (int i = x - radius; i <= x + radius; ++i) {
+						int clamped = Math.max(0, Math.min(width - 1, i));
+						sum += (src[y * width + clamped] >>> shift) & 0xff;
+					}
+					color |= Math.round((float) sum / window) << shift;
+				}
+				dst[y * width + x] = color;
+			}
+		}
+		return dst;
+	}
+
+	static int[] transpose(int[] src, int width, int height) {
+		int[] dst = new int[src.length];
+		for (int y = 0; y < height; ++y) {
+			for (int x = 0; x < width; ++x) {
+				dst[x * height + y] = src[y * width + x];
+			}
+		}
+		return dst;
+	}
+}
@@ -0,0 +1,122 @@
+package com.jiubang.ggheart.appgame.download;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * 分段下载的耗时，结果输出到logcat（tag: DownloadSegmentBenchmark）
+ *
+ * <pre>
+ * 1. 按连接速度模拟下载（不走网络），对比原来固定分段与空闲线程拆分的完成时间。
+ * 2. 每读一块数据多出的reserve/commit开销，包括另一个线程同时在拆分。
+ * </pre>
+ */
+public class DownloadSegmentBenchmark extends TestCase {
+	private static final String TAG = "DownloadSegmentBenchmark";
+	private static final long SIZE = 32L * 1024 * 1024;
+	private static final int CHUNK = 8 * 1024;
+
+	private volatile boolean mStopSplitting;
+
+	public void testSimulatedCompletion() {
+		// 每个连接每个时间片下载的块数，最后一个是慢连接
+		int[][] speeds = { { 8, 8, 8 }, { 8, 8, 2 }, { 8, 4, 1 }, { 16, 8, 8, 1 } };
+		for (int[] speed : speeds) {
+			long fixed = simulateFixed(speed);
+			long stealing = simulateStealing(speed);
+			StringBuilder line = new StringBuilder();
+			for (int s : speed) {
+				line.append(s).append(' ');
+			}
+			Log.i(TAG, "speeds " + line + "chunks/tick: fixed " + fixed + " ticks, stealing "
+					+ stealing + " ticks");
+			assertTrue(stealing <= fixed);
+		}
+	}
+
+	public void testReserveCommitCost() throws Exception {
+		final int chunks = 2000000;
+		// 没有竞争
+		DownloadSegment segment = new DownloadSegment("a", 0, (long) chunks * CHUNK);
+		long start = System.nanoTime();
+		consume(segment);
+		long alone = System.nanoTime() - start;
+
+		// 另一个线程不停地尝试拆分同一段，最小长度很大所以不会真的拆开，只争同一个锁
+		final DownloadSegment contended = new DownloadSegment("a", 0, (long) chunks * CHUNK);
+		mStopSplitting = false;
+		Thread splitter = new Thread() {
+			@Override
+			public void run() {
+				while (!mStopSplitting) {
+					contended.split(Long.MAX_VALUE / 4, "b");
+				}
+			}
+		};
+		splitter.start();
+		start = System.nanoTime();
+		consume(contended);
+		long shared = System.nanoTime() - start;
+		mStopSplitting = true;
+		splitter.join();
+		Log.i(TAG, "reserve+commit per " + CHUNK + "B chunk: " + alone / chunks + "ns alone, "
+				+ shared / chunks + "ns with a splitting thread");
+	}
+
+	private static void consume(DownloadSegment segment) {
+		int length;
+		while ((length = segment.reserve(CHUNK)) > 0) {
+			segment.commit(length);
+		}
+		assertTrue(segment.isFinished());
+	}
+
+	/**
+	 * 原来的做法：每个线程固定下载总长度的1/n，最慢的线程决定完成时间
+	 */
+	private static long simulateFixed(int[] speed) {
+		long ticks = 0;
+		for (int i = 0; i < speed.length; i++) {
+			long bytes = SIZE * (i + 1) / speed.length - SIZE * i / speed.length;
+			long chunks = (bytes + CHUNK - 1) / CHUNK;
+			ticks = Math.max(ticks, (chunks + speed[i] - 1) / speed[i]);
+		}
+		return ticks;
+	}
+
+	private static long simulateStealing(int[] speed) {
+		DownloadSegmentTest.Scheduler scheduler = new DownloadSegmentTest.Scheduler(SIZE,
+				speed.length, DownloadResult.MIN_SPLIT_SIZE);
+		DownloadSegment[] current = new DownloadSegment[speed.length];
+		for (int i = 0; i < speed.length; i++) {
+			current[i] = scheduler.next();
+		}
+		long ticks = 0;
+		boolean running = true;
+		while (running) {
+			running = false;
+			ticks++;
+			for (int i = 0; i < speed.length; i++) {
+				for (int c = 0; c < speed[i] && current[i] != null; c++) {
+					int length = current[i].reserve(CHUNK);
+					if (length == 0) {
+						// 这一段下完了（或者被拆走了），取下一段
+						current[i] = scheduler.next();
+						c--;
+						continue;
+					}
+					current[i].commit(length);
+				}
+				if (current[i] != null) {
+					running = true;
+				}
+			}
+		}
+		for (DownloadSegment segment : scheduler.segments()) {
+			assertTrue(segment.isFinished());
+		}
+		// 最后一个时间片只是发现都下完了
+		return ticks - 1;
+	}
+}
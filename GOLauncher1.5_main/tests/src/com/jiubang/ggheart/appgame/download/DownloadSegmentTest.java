@@ -0,0 +1,196 @@
+package com.jiubang.ggheart.appgame.download;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import junit.framework.TestCase;
+
+/**
+ * DownloadSegment的预留、提交、拆分测试
+ */
+public class DownloadSegmentTest extends TestCase {
+
+	public void testReserveAndCommit() {
+		DownloadSegment segment = new DownloadSegment("a", 100, 1100);
+		assertEquals(1000, segment.getRemaining());
+		assertEquals(400, segment.reserve(400));
+		assertEquals(600, segment.getRemaining());
+		// 还没写入，位置不变
+		assertEquals(100, segment.getPosition());
+		segment.commit(400);
+		assertEquals(500, segment.getPosition());
+		assertEquals(600, segment.reserve(4096));
+		assertEquals(0, segment.reserve(1));
+		assertFalse(segment.isFinished());
+		segment.commit(600);
+		assertTrue(segment.isFinished());
+		assertEquals(1100, segment.getPosition());
+	}
+
+	public void testSplitTakesUnreservedHalf() {
+		DownloadSegment segment = new DownloadSegment("a", 0, 1000);
+		segment.reserve(100);
+		DownloadSegment tail = segment.split(10, "b");
+		assertNotNull(tail);
+		assertEquals("b", tail.getTag());
+		assertEquals(550, tail.getPosition());
+		assertEquals(1000, tail.getEnd());
+		assertEquals(550, segment.getEnd());
+		// 拆分后只能写到新的终止位置
+		assertEquals(450, segment.reserve(1000));
+		segment.commit(100);
+		segment.commit(450);
+		assertTrue(segment.isFinished());
+		assertFalse(tail.isFinished());
+	}
+
+	public void testSplitNeedsTwiceMinSize() {
+		DownloadSegment segment = new DownloadSegment("a", 0, 1000);
+		segment.reserve(600);
+		assertNull(segment.split(201, "b"));
+		assertEquals(1000, segment.getEnd());
+		assertNotNull(segment.split(200, "b"));
+		assertEquals(800, segment.getEnd());
+	}
+
+	public void testReleaseDropsUncommittedReservation() {
+		DownloadSegment segment = new DownloadSegment("a", 0, 1000);
+		segment.setOwned(true);
+		assertTrue(segment.isOwned());
+		segment.reserve(300);
+		segment.commit(100);
+		// 下载线程出错放弃这一段，预留了没写的要重新下载
+		segment.setOwned(false);
+		assertFalse(segment.isOwned());
+		assertEquals(900, segment.getRemaining());
+		assertEquals(100, segment.getPosition());
+	}
+
+	public void testSnapshotIsDetached() {
+		DownloadSegment segment = new DownloadSegment("a", 0, 1000);
+		segment.setOwned(true);
+		segment.reserve(300);
+		segment.commit(200);
+		DownloadSegment snapshot = segment.snapshot();
+		assertEquals("a", snapshot.getTag());
+		assertEquals(200, snapshot.getPosition());
+		assertEquals(1000, snapshot.getEnd());
+		assertFalse(snapshot.isOwned());
+		segment.commit(100);
+		segment.split(10, "b");
+		assertEquals(200, snapshot.getPosition());
+		assertEquals(1000, snapshot.getEnd());
+	}
+
+	/**
+	 * 多个线程边下载边互相拆分，每个字节都只写一次，最后各段正好拼成整个文件
+	 */
+	public void testConcurrentStealingWritesEveryByteOnce() throws Exception {
+		final int size = 4 * 1024 * 1024;
+		final byte[] written = new byte[size];
+		final Scheduler scheduler = new Scheduler(size, 3, 16 * 1024);
+		final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		Thread[] threads = new Thread[6];
+		for (int i = 0; i < threads.length; i++) {
+			final Random random = new Random(i);
+			threads[i] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						DownloadSegment segment;
+						while ((segment = scheduler.next()) != null) {
+							long offset = segment.getPosition();
+							while (true) {
+								int length = segment.reserve(1 + random.nextInt(8192));
+								if (length == 0) {
+									break;
+								}
+								for (int j = 0; j < length; j++) {
+									written[(int) offset + j]++;
+								}
+								offset += length;
+								segment.commit(length);
+							}
+						}
+					} catch (Throwable e) {
+						error.set(e);
+					}
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		if (error.get() != null) {
+			throw new AssertionError(error.get());
+		}
+		for (int i = 0; i < size; i++) {
+			assertEquals("byte " + i, 1, written[i]);
+		}
+		List<DownloadSegment> segments = scheduler.segments();
+		assertTrue(segments.size() > 3);
+		Collections.sort(segments, new Comparator<DownloadSegment>() {
+			@Override
+			public int compare(DownloadSegment lhs, DownloadSegment rhs) {
+				return lhs.getEnd() < rhs.getEnd() ? -1 : 1;
+			}
+		});
+		long end = 0;
+		for (DownloadSegment segment : segments) {
+			assertTrue(segment.isFinished());
+			assertTrue(segment.getEnd() > end);
+			end = segment.getEnd();
+		}
+		assertEquals(size, end);
+	}
+
+	/**
+	 * 与DownloadResult.nextSegment相同的分配方式：先取没人下载的段，没有就拆剩余最多的段
+	 */
+	static class Scheduler {
+		private final ArrayList<DownloadSegment> mSegments = new ArrayList<DownloadSegment>();
+		private final long mMinSplitSize;
+
+		Scheduler(long size, int count, long minSplitSize) {
+			for (int i = 0; i < count; i++) {
+				mSegments.add(new DownloadSegment("" + i, size * i / count, size * (i + 1)
+						/ count));
+			}
+			mMinSplitSize = minSplitSize;
+		}
+
+		synchronized DownloadSegment next() {
+			DownloadSegment largest = null;
+			for (DownloadSegment segment : mSegments) {
+				if (segment.isFinished()) {
+					continue;
+				}
+				if (!segment.isOwned()) {
+					segment.setOwned(true);
+					return segment;
+				}
+				if (largest == null || segment.getRemaining() > largest.getRemaining()) {
+					largest = segment;
+				}
+			}
+			if (largest == null) {
+				return null;
+			}
+			DownloadSegment segment = largest.split(mMinSplitSize, "" + mSegments.size());
+			if (segment != null) {
+				segment.setOwned(true);
+				mSegments.add(segment);
+			}
+			return segment;
+		}
+
+		synchronized List<DownloadSegment> segments() {
+			return new ArrayList<DownloadSegment>(mSegments);
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package com.jiubang.ggheart.appgame.download;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * 断点记录的保存、读取和校验
+ */
+public class SegmentJournalTest extends TestCase {
+	private static final String URL = "http://example.com/app.apk";
+	private static final long SIZE = 3000;
+
+	private File mDataFile;
+	private SegmentJournal mJournal;
+
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		mDataFile = File.createTempFile("download", ".tmp");
+		RandomAccessFile data = new RandomAccessFile(mDataFile, "rw");
+		data.setLength(SIZE);
+		data.close();
+		mJournal = new SegmentJournal(mDataFile.getPath());
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		mJournal.delete();
+		mDataFile.delete();
+		super.tearDown();
+	}
+
+	public void testRoundTrip() throws IOException {
+		mJournal.save(URL, SIZE, "\"etag\"", segments());
+		List<DownloadSegment> loaded = mJournal.load(URL, SIZE, "\"etag\"");
+		assertNotNull(loaded);
+		assertEquals(3, loaded.size());
+		assertEquals("0", loaded.get(0).getTag());
+		assertEquals(1000, loaded.get(0).getPosition());
+		assertEquals(1000, loaded.get(0).getEnd());
+		assertTrue(loaded.get(0).isFinished());
+		assertEquals(1500, loaded.get(1).getPosition());
+		assertEquals(2000, loaded.get(1).getEnd());
+		assertEquals(2000, loaded.get(2).getPosition());
+		assertEquals(3000, loaded.get(2).getEnd());
+		// 读出来的段还没有线程在下载，预留从已写入的位置开始
+		assertFalse(loaded.get(1).isOwned());
+		assertEquals(500, loaded.get(1).getRemaining());
+	}
+
+	public void testOverwriteKeepsLatest() throws IOException {
+		mJournal.save(URL, SIZE, "", segments());
+		List<DownloadSegment> segments = new ArrayList<DownloadSegment>();
+		segments.add(new DownloadSegment("0", 3000, 3000));
+		mJournal.save(URL, SIZE, "", segments);
+		List<DownloadSegment> loaded = mJournal.load(URL, SIZE, "");
+		assertEquals(1, loaded.size());
+		assertTrue(loaded.get(0).isFinished());
+		assertFalse(new File(mDataFile.getPath() + ".seg.tmp").exists());
+	}
+
+	public void testMismatchIsIgnored() throws IOException {
+		mJournal.save(URL, SIZE, "v1", segments());
+		assertNull(mJournal.load(URL + "?2", SIZE, "v1"));
+		assertNull(mJournal.load(URL, SIZE + 1, "v1"));
+		// 服务器上的文件变了
+		assertNull(mJournal.load(URL, SIZE, "v2"));
+		// 服务器没有返回文件标识时不校验
+		assertNotNull(mJournal.load(URL, SIZE, null));
+		assertNotNull(mJournal.load(URL, SIZE, ""));
+	}
+
+	public void testMissingFilesAreIgnored() throws IOException {
+		assertNull(mJournal.load(URL, SIZE, ""));
+		mJournal.save(URL, SIZE, "", segments());
+		mDataFile.delete();
+		assertNull(mJournal.load(URL, SIZE, ""));
+	}
+
+	public void testDeleteRemovesRecord() throws IOException {
+		mJournal.save(URL, SIZE, "", segments());
+		mJournal.delete();
+		assertNull(mJournal.load(URL, SIZE, ""));
+	}
+
+	public void testCorruptRecordIsIgnored() throws IOException {
+		mJournal.save(URL, SIZE, "", segments());
+		File file = new File(mDataFile.getPath() + ".seg");
+		// 截断
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		raf.setLength(raf.length() - 5);
+		raf.close();
+		assertNull(mJournal.load(URL, SIZE, ""));
+		// 不是记录文件
+		FileOutputStream out = new FileOutputStream(file);
+		out.write(new byte[] { 1, 2, 3, 4, 5, 6, 7, 8 });
+		out.close();
+		assertNull(mJournal.load(URL, SIZE, ""));
+	}
+
+	public void testOutOfRangeSegmentIsIgnored() throws IOException {
+		List<DownloadSegment> segments = new ArrayList<DownloadSegment>();
+		segments.add(new DownloadSegment("0", 0, SIZE + 1));
+		mJournal.save(URL, SIZE, "", segments);
+		assertNull(mJournal.load(URL, SIZE, ""));
+	}
+
+	/**
+	 * 第一段已完成，第二段写了一半，第三段还没开始
+	 */
+	private static List<DownloadSegment> segments() {
+		List<DownloadSegment> segments = new ArrayList<DownloadSegment>();
+		segments.add(new DownloadSegment("0", 1000, 1000));
+		segments.add(new DownloadSegment("1", 1500, 2000));
+		segments.add(new DownloadSegment("2", 2000, 3000));
+		return segments;
+	}
+}
@@ -0,0 +1,102 @@
+package com.jiubang.ggheart.apps.desks.diy.frames.screen;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import android.util.Log;
+
+/**
+ * 拖动时每一步的空位查询耗时，结果输出到logcat（tag: CellOccupancyBenchmark）
+ *
+ * <pre>
+ * 每轮对所有位置查询1x1到4x4的区域，并且找一次第一个2x2空位，
+ * CellOccupancy的耗时包括每轮从boolean[][]载入，单独载入的耗时另外列出。
+ * 桌面一般比较空，按20%和50%的占用率分别测。
+ * </pre>
+ */
+public class CellOccupancyBenchmark extends TestCase {
+	private static final String TAG = "CellOccupancyBenchmark";
+	private static final int ROUNDS = 20000;
+	private static final int MAX_SPAN = 4;
+
+	public void testVacantQueries() {
+		int[][] grids = { { 4, 4 }, { 5, 5 }, { 6, 6 }, { 8, 8 }, { 12, 12 } };
+		for (float density : new float[] { 0.2f, 0.5f }) {
+			for (int[] grid : grids) {
+				run(grid[0], grid[1], density);
+			}
+		}
+	}
+
+	private void run(int countX, int countY, float density) {
+		boolean[][] occupied = CellOccupancyTest.randomGrid(new Random(1), countX, countY,
+				density);
+		CellOccupancy occupancy = new CellOccupancy();
+		int[] vacant = new int[2];
+		// 预热，等JIT编译完
+		int naiveHits = naiveRounds(occupied, countX, countY, ROUNDS);
+		int hits = rounds(occupancy, occupied, countX, countY, vacant, ROUNDS);
+		assertEquals(naiveHits, hits);
+
+		long start = System.nanoTime();
+		naiveRounds(occupied, countX, countY, ROUNDS);
+		long naive = System.nanoTime() - start;
+		start = System.nanoTime();
+		rounds(occupancy, occupied, countX, countY, vacant, ROUNDS);
+		long bitset = System.nanoTime() - start;
+		start = System.nanoTime();
+		for (int i = 0; i < ROUNDS; i++) {
+			occupancy.load(occupied, countX, countY);
+		}
+		long load = System.nanoTime() - start;
+		Log.i(TAG, countX + "x" + countY + " " + (int) (density * 100) + "%: naive "
+				+ naive / ROUNDS / 1000f + "us, bitset " + bitset / ROUNDS / 1000f + "us (load "
+				+ load / ROUNDS / 1000f + "us) per round");
+	}
+
+	private static int naiveRounds(boolean[][] occupied, int countX, int countY, int rounds) {
+		int hits = 0;
+		for (int i = 0; i < rounds; i++) {
+			for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+				for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+					for (int x = 0; x < countX; x++) {
+						for (int y = 0; y < countY; y++) {
+							if (CellOccupancyTest.naiveIsVacant(occupied, countX, countY, x, y,
+									spanX, spanY)) {
+								hits++;
+							}
+						}
+					}
+				}
+			}
+			if (CellOccupancyTest.naiveFindFirstVacant(occupied, countX, countY, 2, 2) != null) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+
+	private static int rounds(CellOccupancy occupancy, boolean[][] occupied, int countX,
+			int countY, int[] vacant, int rounds) {
+		int hits = 0;
+		for (int i = 0; i < rounds; i++) {
+			occupancy.load(occupied, countX, countY);
+			for (int spanX = 1; spanX <= MAX_SPAN; spanX++) {
+				for (int spanY = 1; spanY <= MAX_SPAN; spanY++) {
+					for (int x = 0; x < countX; x++) {
+						for (int y = 0; y < countY; y++) {
+							if (occupancy.isVacant(x, y, spanX, spanY)) {
+								hits++;
+							}
+						}
+					}
+				}
+			}
+			if (occupancy.findFirstVacant(vacant, 2, 2)) {
+				hits++;
+			}
+		}
+		return hits;
+	}
+}
@@ -0,0 +1,211 @@
+package com.jiubang.ggheart.apps.desks.diy.frames.screen;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * CellOccupancy与直接扫描boolean[][]的结果对比
+ */
+public class CellOccupancyTest extends TestCase {
+
+	public void testQueriesMatchNaiveScan() {
+		Random random = new Random(1);
+		CellOccupancy occupancy = new CellOccupancy();
+		for (int round = 0; round < 200; round++) {
+			int countX = 1 + random.nextInt(12);
+			int countY = 1 + random.nextInt(12);
+			boolean[][] occupied = randomGrid(random, countX, countY, random.nextFloat());
+			occupancy.load(occupied, countX, countY);
+			assertMatches(occupied, countX, countY, occupancy);
+		}
+	}
+
+	public void testLoadFromRowMajor() {
+		Random random = new Random(2);
+		int countX = 7;
+		int countY = 5;
+		boolean[][] occupied = randomGrid(random, countX, countY, 0.4f);
+		boolean[] rowMajor = new boolean[countX * countY];
+		for (int y = 0; y < countY; y++) {
+			for (int x = 0; x < countX; x++) {
+				rowMajor[y * countX + x] = occupied[x][y];
+			}
+		}
+		CellOccupancy occupancy = new CellOccupancy();
+		occupancy.load(rowMajor, countX, countY);
+		assertMatches(occupied, countX, countY, occupancy);
+	}
+
+	public void testMarkAfterQueries() {
+		Random random = new Random(3);
+		int countX = 6;
+		int countY = 8;
+		boolean[][] occupied = new boolean[countX][countY];
+		CellOccupancy occupancy = new CellOccupancy();
+		occupancy.reset(countX, countY);
+		for (int i = 0; i < 300; i++) {
+			// 包括部分超出边界的区域
+			int cellX = random.nextInt(countX + 2) - 1;
+			int cellY = random.nextInt(countY + 2) - 1;
+			int spanX = random.nextInt(4);
+			int spanY = random.nextInt(4);
+			boolean value = random.nextInt(3) > 0;
+			occupancy.mark(cellX, cellY, spanX, spanY, value);
+			for (int x = Math.max(cellX, 0); x < Math.min(cellX + spanX, countX); x++) {
+				for (int y = Math.max(cellY, 0); y < Math.min(cellY + spanY, countY); y++) {
+					occupied[x][y] = value;
+				}
+			}
+			// 每次修改后查询，检查前缀和有没有及时重建
+			assertMatches(occupied, countX, countY, occupancy);
+		}
+	}
+
+	public void testCopyTo() {
+		Random random = new Random(4);
+		boolean[][] occupied = randomGrid(random, 5, 6, 0.5f);
+		CellOccupancy occupancy = new CellOccupancy();
+		occupancy.load(occupied, 5, 6);
+		boolean[][] copy = new boolean[5][6];
+		occupancy.copyTo(copy);
+		for (int x = 0; x < 5; x++) {
+			for (int y = 0; y < 6; y++) {
+				assertEquals(occupied[x][y], copy[x][y]);
+			}
+		}
+	}
+
+	public void testResetShrinksAndClears() {
+		CellOccupancy occupancy = new CellOccupancy();
+		occupancy.reset(8, 8);
+		occupancy.mark(0, 0, 8, 8, true);
+		assertEquals(0, occupancy.countVacant());
+		occupancy.reset(4, 3);
+		assertEquals(4, occupancy.getCountX());
+		assertEquals(3, occupancy.getCountY());
+		assertEquals(12, occupancy.countVacant());
+		assertTrue(occupancy.isVacant(0, 0, 4, 3));
+		assertFalse(occupancy.isVacant(0, 0, 5, 3));
+		assertFalse(occupancy.isVacant(0, 0, 4, 4));
+	}
+
+	public void testWidestGrid() {
+		int countX = CellOccupancy.MAX_COUNT_X;
+		CellOccupancy occupancy = new CellOccupancy();
+		occupancy.reset(countX, 2);
+		assertTrue(occupancy.isRowEmpty(0, 0, countX - 1));
+		occupancy.mark(countX - 1, 1, 1, 1, true);
+		assertTrue(occupancy.isOccupied(countX - 1, 1));
+		assertFalse(occupancy.isRowEmpty(1, 0, countX - 1));
+		assertTrue(occupancy.isRowEmpty(1, 0, countX - 2));
+		assertFalse(occupancy.isVacant(0, 0, countX, 2));
+		assertTrue(occupancy.isVacant(0, 0, countX - 1, 2));
+		int[] vacant = new int[2];
+		assertTrue(occupancy.findFirstVacant(vacant, countX, 1));
+		assertEquals(0, vacant[1]);
+		assertFalse(occupancy.findFirstVacant(vacant, countX, 2));
+		assertEquals(countX * 2 - 1, occupancy.countVacant());
+	}
+
+	public void testUnsupportedGrid() {
+		CellOccupancy occupancy = new CellOccupancy();
+		try {
+			occupancy.reset(CellOccupancy.MAX_COUNT_X + 1, 4);
+			fail("more than 64 columns");
+		} catch (IllegalArgumentException e) {
+			// 预期
+		}
+		try {
+			occupancy.reset(4, -1);
+			fail("negative rows");
+		} catch (IllegalArgumentException e) {
+			// 预期
+		}
+	}
+
+	private static void assertMatches(boolean[][] occupied, int countX, int countY,
+			CellOccupancy occupancy) {
+		String grid = countX + "x" + countY;
+		int vacantCount = 0;
+		for (int x = 0; x < countX; x++) {
+			for (int y = 0; y < countY; y++) {
+				assertEquals(grid, occupied[x][y], occupancy.isOccupied(x, y));
+				if (!occupied[x][y]) {
+					vacantCount++;
+				}
+			}
+		}
+		assertEquals(grid, vacantCount, occupancy.countVacant());
+		for (int y = 0; y < countY; y++) {
+			for (int left = 0; left < countX; left++) {
+				for (int right = left; right < countX; right++) {
+					assertEquals(grid, naiveIsVacant(occupied, countX, countY, left, y,
+							right - left + 1, 1), occupancy.isRowEmpty(y, left, right));
+				}
+			}
+		}
+		int[] vacant = new int[2];
+		for (int spanX = 0; spanX <= countX + 1; spanX++) {
+			for (int spanY = 0; spanY <= countY + 1; spanY++) {
+				for (int x = -1; x <= countX; x++) {
+					for (int y = -1; y <= countY; y++) {
+						assertEquals(grid + " " + x + "," + y + " " + spanX + "x" + spanY,
+								naiveIsVacant(occupied, countX, countY, x, y, spanX, spanY),
+								occupancy.isVacant(x, y, spanX, spanY));
+					}
+				}
+				if (spanX > 0 && spanY > 0) {
+					int[] expected = naiveFindFirstVacant(occupied, countX, countY, spanX, spanY);
+					boolean found = occupancy.findFirstVacant(vacant, spanX, spanY);
+					assertEquals(grid, expected != null, found);
+					if (found) {
+						assertEquals(expected[0], vacant[0]);
+						assertEquals(expected[1], vacant[1]);
+					}
+				}
+			}
+		}
+	}
+
+	static boolean[][] randomGrid(Random random, int countX, int countY, float density) {
+		boolean[][] occupied = new boolean[countX][countY];
+		for (int x = 0; x < countX; x++) {
+			for (int y = 0; y < countY; y++) {
+				occupied[x][y] = random.nextFloat() < density;
+			}
+		}
+		return occupied;
+	}
+
+	/**
+	 * 原来CellLayout逐个格子检查的做法
+	 */
+	static boolean naiveIsVacant(boolean[][] occupied, int countX, int countY, int cellX,
+			int cellY, int spanX, int spanY) {
+		if (cellX < 0 || cellY < 0 || spanX <= 0 || spanY <= 0 || cellX + spanX > countX
+				|| cellY + spanY > countY) {
+			return false;
+		}
+		for (int x = cellX; x < cellX + spanX; x++) {
+			for (int y = cellY; y < cellY + spanY; y++) {
+				if (occupied[x][y]) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	static int[] naiveFindFirstVacant(boolean[][] occupied, int countX, int countY, int spanX,
+			int spanY) {
+		for (int y = 0; y + spanY <= countY; y++) {
+			for (int x = 0; x + spanX <= countX; x++) {
+				if (naiveIsVacant(occupied, countX, countY, x, y, spanX, spanY)) {
+					return new int[] { x, y };
+				}
+			}
+		}
+		return null;
+	}
+}
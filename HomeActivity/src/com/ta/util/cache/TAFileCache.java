@@ -49,7 +49,7 @@ public class TAFileCache
 	private static final boolean DEFAULT_INIT_DISK_CACHE_ON_CREATE = false; // 默认的初始化的磁盘高速缓存开始
 	private TACacheParams mCacheParams;
 	private boolean mDiskCacheStarting = true;
-	private LruCache<String, byte[]> mMemoryCache;
+	private SegmentedLruCache<String, byte[]> mMemoryCache;
 	private DiskLruCache mDiskLruCache;
 	private final Object mDiskCacheLock = new Object();
 
@@ -83,7 +83,7 @@ public class TAFileCache
 		mCacheParams = cacheParams;
 		if (mCacheParams.memoryCacheEnabled)
 		{
-			mMemoryCache = new LruCache<String, byte[]>(
+			mMemoryCache = new SegmentedLruCache<String, byte[]>(
 					mCacheParams.memCacheSize)
 			{
 				@Override
@@ -333,8 +333,10 @@ public class TAFileCache
 	 */
 	public static byte[] readStream(InputStream inStream) throws Exception
 	{
-		ByteArrayOutputStream outStream = new ByteArrayOutputStream();
-		byte[] buffer = new byte[1024];
+		// 按可读字节数预分配，避免 toByteArray 前的多次扩容
+		ByteArrayOutputStream outStream = new ByteArrayOutputStream(Math.max(
+				inStream.available(), 1024));
+		byte[] buffer = new byte[1024 * 8];
 		int len = 0;
 		while ((len = inStream.read(buffer)) != -1)
 		{
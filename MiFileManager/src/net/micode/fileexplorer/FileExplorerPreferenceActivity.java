@@ -40,6 +40,7 @@ public class FileExplorerPreferenceActivity extends PreferenceActivity implement
     private static final String PRIMARY_FOLDER = "pref_key_primary_folder";
     private static final String READ_ROOT = "pref_key_read_root";
     private static final String SHOW_REAL_PATH = "pref_key_show_real_path";
+    private static final String PASTE_CONFLICT = "pref_key_paste_conflict";
     private static final String SYSTEM_SEPARATOR = File.separator;
 
     private EditTextPreference mEditTextPreference;
@@ -116,4 +117,14 @@ public class FileExplorerPreferenceActivity extends PreferenceActivity implement
     	return settings.getBoolean(SHOW_REAL_PATH, false);
     }
 
+    public static FileTransfer.ConflictPolicy getConflictPolicy(Context context) {
+        SharedPreferences settings = PreferenceManager.getDefaultSharedPreferences(context);
+        String policy = settings.getString(PASTE_CONFLICT, FileTransfer.ConflictPolicy.rename.name());
+        try {
+            return FileTransfer.ConflictPolicy.valueOf(policy);
+        } catch (IllegalArgumentException e) {
+            return FileTransfer.ConflictPolicy.rename;
+        }
+    }
+
 }
@@ -55,7 +55,8 @@ public class FileListItem {
         }
 
         Util.setText(view, R.id.file_name, fileInfo.fileName);
-        Util.setText(view, R.id.file_count, fileInfo.IsDir ? "(" + fileInfo.Count + ")" : "");
+        // a negative count is still being computed
+        Util.setText(view, R.id.file_count, fileInfo.IsDir && fileInfo.Count >= 0 ? "(" + fileInfo.Count + ")" : "");
         Util.setText(view, R.id.modified_time, Util.formatDateString(context, fileInfo.ModifiedDate));
         Util.setText(view, R.id.file_size, (fileInfo.IsDir ? "" : Util.convertStorage(fileInfo.fileSize)));
 
@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * This file is part of FileExplorer.
+ *
+ * FileExplorer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FileExplorer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SwiFTP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.micode.fileexplorer;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.os.Handler;
+import android.os.Handler.Callback;
+import android.os.Message;
+
+/**
+ * Lists a directory off the UI thread.
+ *
+ * Entries are stat-ed and handed to the listener in pages, so the first screen shows up before
+ * a large folder is read completely. Counting the children of each sub folder costs a listing
+ * per folder; those counts are computed afterwards by a small pool and cached by the folder's
+ * modification time, so going back to a folder does not list its sub folders again.
+ */
+public class FileListLoader implements Callback {
+
+    private static final int PAGE_SIZE = 64;
+
+    private static final int COUNT_THREADS = 2;
+
+    private static final int MAX_CACHED_COUNTS = 2048;
+
+    /**
+     * FAT keeps modification times in 2 second steps, a count taken within that window of the
+     * last change might miss another change with the same time, so it is not cached.
+     */
+    private static final long MTIME_GRANULARITY = 2000;
+
+    private static final int MESSAGE_PAGE_LOADED = 1;
+
+    private static final int MESSAGE_COUNTS_LOADED = 2;
+
+    public interface Listener {
+        /**
+         * Called on the UI thread, page is not sorted.
+         */
+        void onPageLoaded(ArrayList<FileInfo> page, boolean finished);
+
+        /**
+         * Called on the UI thread after {@link FileInfo#Count} of some folders was filled in.
+         *
+         * @param unreadable folders that turned out to be unreadable
+         */
+        void onChildCountsLoaded(ArrayList<FileInfo> unreadable);
+    }
+
+    private static class CachedCount {
+        long modifiedDate;
+        boolean showHidden;
+        FilenameFilter filter;
+        int count;
+    }
+
+    private static class Page {
+        int generation;
+        ArrayList<FileInfo> files;
+        boolean finished;
+    }
+
+    private static class CountResult {
+        int generation;
+        FileInfo fileInfo;
+        int count;
+    }
+
+    private static final LinkedHashMap<String, CachedCount> sCountCache = new LinkedHashMap<String, CachedCount>(
+            16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCount> eldest) {
+            return size() > MAX_CACHED_COUNTS;
+        }
+    };
+
+    private final Handler mMainThreadHandler = new Handler(this);
+
+    private final ExecutorService mListExecutor = Executors.newSingleThreadExecutor();
+
+    private final ExecutorService mCountExecutor = Executors.newFixedThreadPool(COUNT_THREADS);
+
+    /**
+     * Increased by every load, results of older loads are dropped.
+     */
+    private final AtomicInteger mGeneration = new AtomicInteger();
+
+    private final ConcurrentLinkedQueue<CountResult> mCountResults = new ConcurrentLinkedQueue<CountResult>();
+
+    /**
+     * Only one MESSAGE_COUNTS_LOADED is queued at a time, it takes all results available.
+     */
+    private final AtomicBoolean mCountsPosted = new AtomicBoolean();
+
+    /**
+     * Unreadable folders of the current load, a count may come back before the folder's page.
+     * Only used on the UI thread.
+     */
+    private final HashSet<FileInfo> mUnreadable = new HashSet<FileInfo>();
+
+    private final Listener mListener;
+
+    /**
+     * Must be created on the UI thread.
+     */
+    public FileListLoader(Listener listener) {
+        mListener = listener;
+    }
+
+    /**
+     * Starts listing path, a previous load still running is abandoned.
+     */
+    public void load(final String path, final FilenameFilter filter, final boolean showHidden) {
+        final int generation = mGeneration.incrementAndGet();
+        mCountResults.clear();
+        mUnreadable.clear();
+        mListExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                listFiles(generation, new File(path), filter, showHidden);
+            }
+        });
+    }
+
+    public void cancel() {
+        mGeneration.incrementAndGet();
+    }
+
+    public void shutdown() {
+        cancel();
+        mListExecutor.shutdownNow();
+        mCountExecutor.shutdownNow();
+    }
+
+    private void listFiles(int generation, File dir, FilenameFilter filter, boolean showHidden) {
+        File[] files = dir.listFiles(filter);
+        ArrayList<FileInfo> page = new ArrayList<FileInfo>();
+        if (files != null) {
+            for (File child : files) {
+                if (generation != mGeneration.get()) {
+                    return;
+                }
+                String absolutePath = child.getAbsolutePath();
+                if (!Util.isNormalFile(absolutePath) || !Util.shouldShowFile(child)) {
+                    continue;
+                }
+                page.add(getFileInfo(generation, child, filter, showHidden));
+                if (page.size() >= PAGE_SIZE) {
+                    postPage(generation, page, false);
+                    page = new ArrayList<FileInfo>();
+                }
+            }
+        }
+        postPage(generation, page, true);
+    }
+
+    private void postPage(int generation, ArrayList<FileInfo> files, boolean finished) {
+        Page page = new Page();
+        page.generation = generation;
+        page.files = files;
+        page.finished = finished;
+        mMainThreadHandler.obtainMessage(MESSAGE_PAGE_LOADED, page).sendToTarget();
+    }
+
+    /**
+     * Same fields as {@link Util#GetFileInfo(File, FilenameFilter, boolean)}, but the count of a
+     * folder not in the cache is left at -1 and computed later.
+     */
+    private FileInfo getFileInfo(int generation, File file, FilenameFilter filter, boolean showHidden) {
+        FileInfo lFileInfo = new FileInfo();
+        lFileInfo.canRead = file.canRead();
+        lFileInfo.canWrite = file.canWrite();
+        lFileInfo.isHidden = file.isHidden();
+        lFileInfo.fileName = file.getName();
+        lFileInfo.ModifiedDate = file.lastModified();
+        lFileInfo.IsDir = file.isDirectory();
+        lFileInfo.filePath = file.getPath();
+        if (lFileInfo.IsDir) {
+            lFileInfo.Count = getCachedCount(lFileInfo, filter, showHidden);
+            if (lFileInfo.Count < 0) {
+                countLater(generation, lFileInfo, filter, showHidden);
+            }
+        } else {
+            lFileInfo.fileSize = file.length();
+        }
+        return lFileInfo;
+    }
+
+    private static int getCachedCount(FileInfo dir, FilenameFilter filter, boolean showHidden) {
+        synchronized (sCountCache) {
+            CachedCount cached = sCountCache.get(dir.filePath);
+            if (cached != null && cached.modifiedDate == dir.ModifiedDate && cached.showHidden == showHidden
+                    && cached.filter == filter) {
+                return cached.count;
+            }
+        }
+        return -1;
+    }
+
+    private void countLater(final int generation, final FileInfo dir, final FilenameFilter filter,
+            final boolean showHidden) {
+        mCountExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if (generation != mGeneration.get()) {
+                    return;
+                }
+                int count = Util.getChildCount(new File(dir.filePath), filter, showHidden);
+                if (count >= 0 && System.currentTimeMillis() - dir.ModifiedDate > MTIME_GRANULARITY) {
+                    CachedCount cached = new CachedCount();
+                    cached.modifiedDate = dir.ModifiedDate;
+                    cached.showHidden = showHidden;
+                    cached.filter = filter;
+                    cached.count = count;
+                    synchronized (sCountCache) {
+                        sCountCache.put(dir.filePath, cached);
+                    }
+                }
+                CountResult result = new CountResult();
+                result.generation = generation;
+                result.fileInfo = dir;
+                result.count = count;
+                mCountResults.add(result);
+                if (mCountsPosted.compareAndSet(false, true)) {
+                    mMainThreadHandler.sendEmptyMessage(MESSAGE_COUNTS_LOADED);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean handleMessage(Message msg) {
+        switch (msg.what) {
+            case MESSAGE_PAGE_LOADED: {
+                Page page = (Page) msg.obj;
+                if (page.generation == mGeneration.get()) {
+                    if (!mUnreadable.isEmpty()) {
+                        Iterator<FileInfo> iterator = page.files.iterator();
+                        while (iterator.hasNext()) {
+                            if (mUnreadable.contains(iterator.next())) {
+                                iterator.remove();
+                            }
+                        }
+                    }
+                    mListener.onPageLoaded(page.files, page.finished);
+                }
+                return true;
+            }
+
+            case MESSAGE_COUNTS_LOADED: {
+                mCountsPosted.set(false);
+                int generation = mGeneration.get();
+                ArrayList<FileInfo> unreadable = new ArrayList<FileInfo>();
+                boolean changed = false;
+                CountResult result;
+                while ((result = mCountResults.poll()) != null) {
+                    if (result.generation != generation) {
+                        continue;
+                    }
+                    if (result.count < 0) {
+                        // hidden like before, when the listing skipped folders it could not read
+                        unreadable.add(result.fileInfo);
+                        mUnreadable.add(result.fileInfo);
+                    } else {
+                        result.fileInfo.Count = result.count;
+                    }
+                    changed = true;
+                }
+                if (changed) {
+                    mListener.onChildCountsLoaded(unreadable);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+}
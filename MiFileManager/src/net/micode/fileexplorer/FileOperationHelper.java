@@ -39,10 +39,22 @@ public class FileOperationHelper {
 
     private FilenameFilter mFilter;
 
+    private FileTransfer.ConflictPolicy mConflictPolicy = FileTransfer.ConflictPolicy.rename;
+
+    private volatile FileTransfer mTransfer;
+
+    // pause may be pressed before the background task has created the transfer
+    private volatile boolean mTransferPaused;
+
     public interface IOperationProgressListener {
         void onFinish();
 
         void onFileChanged(String path);
+
+        /**
+         * Called from the worker threads while pasting or moving.
+         */
+        void onProgress(long doneBytes, long totalBytes);
     }
 
     public FileOperationHelper(IOperationProgressListener l) {
@@ -53,6 +65,33 @@ public class FileOperationHelper {
         mFilter = f;
     }
 
+    public void setConflictPolicy(FileTransfer.ConflictPolicy policy) {
+        mConflictPolicy = policy;
+    }
+
+    public void pauseTransfer() {
+        mTransferPaused = true;
+        FileTransfer transfer = mTransfer;
+        if (transfer != null) {
+            transfer.pause();
+        }
+    }
+
+    public void resumeTransfer() {
+        mTransferPaused = false;
+        FileTransfer transfer = mTransfer;
+        if (transfer != null) {
+            transfer.resume();
+        }
+    }
+
+    public void cancelTransfer() {
+        FileTransfer transfer = mTransfer;
+        if (transfer != null) {
+            transfer.cancel();
+        }
+    }
+
     public boolean CreateFolder(String path, String name) {
         Log.v(LOG_TAG, "CreateFolder >>> " + path + "," + name);
 
@@ -72,12 +111,13 @@ public class FileOperationHelper {
             return false;
 
         final String _path = path;
+        mTransferPaused = false;
         asnycExecute(new Runnable() {
             @Override
             public void run() {
-                for (FileInfo f : mCurFileNameList) {
-                    CopyFile(f, _path);
-                }
+                FileTransfer transfer = newTransfer();
+                transfer.copy(mCurFileNameList, _path);
+                mTransfer = null;
 
                 mOperationListener.onFileChanged(Environment
                         .getExternalStorageDirectory()
@@ -133,12 +173,13 @@ public class FileOperationHelper {
             return false;
 
         final String _path = path;
+        mTransferPaused = false;
         asnycExecute(new Runnable() {
             @Override
             public void run() {
-                    for (FileInfo f : mCurFileNameList) {
-                        MoveFile(f, _path);
-                    }
+                    FileTransfer transfer = newTransfer();
+                    transfer.move(mCurFileNameList, _path);
+                    mTransfer = null;
 
                     mOperationListener.onFileChanged(Environment
                             .getExternalStorageDirectory()
@@ -155,6 +196,19 @@ public class FileOperationHelper {
         return mCurFileNameList;
     }
 
+    private FileTransfer newTransfer() {
+        mTransfer = new FileTransfer(mFilter, mConflictPolicy, new FileTransfer.ProgressListener() {
+            @Override
+            public void onProgress(long doneBytes, long totalBytes, int doneFiles, int totalFiles) {
+                mOperationListener.onProgress(doneBytes, totalBytes);
+            }
+        });
+        if (mTransferPaused) {
+            mTransfer.pause();
+        }
+        return mTransfer;
+    }
+
     private void asnycExecute(Runnable r) {
         final Runnable _r = r;
         new AsyncTask() {
@@ -246,53 +300,6 @@ public class FileOperationHelper {
         Log.v(LOG_TAG, "DeleteFile >>> " + f.filePath);
     }
 
-    private void CopyFile(FileInfo f, String dest) {
-        if (f == null || dest == null) {
-            Log.e(LOG_TAG, "CopyFile: null parameter");
-            return;
-        }
-
-        File file = new File(f.filePath);
-        if (file.isDirectory()) {
-
-            // directory exists in destination, rename it
-            String destPath = Util.makePath(dest, f.fileName);
-            File destFile = new File(destPath);
-            int i = 1;
-            while (destFile.exists()) {
-                destPath = Util.makePath(dest, f.fileName + " " + i++);
-                destFile = new File(destPath);
-            }
-
-            for (File child : file.listFiles(mFilter)) {
-                if (!child.isHidden() && Util.isNormalFile(child.getAbsolutePath())) {
-                    CopyFile(Util.GetFileInfo(child, mFilter, Settings.instance().getShowDotAndHiddenFiles()), destPath);
-                }
-            }
-        } else {
-            String destFile = Util.copyFile(f.filePath, dest);
-        }
-        Log.v(LOG_TAG, "CopyFile >>> " + f.filePath + "," + dest);
-    }
-
-    private boolean MoveFile(FileInfo f, String dest) {
-        Log.v(LOG_TAG, "MoveFile >>> " + f.filePath + "," + dest);
-
-        if (f == null || dest == null) {
-            Log.e(LOG_TAG, "CopyFile: null parameter");
-            return false;
-        }
-
-        File file = new File(f.filePath);
-        String newPath = Util.makePath(dest, f.fileName);
-        try {
-            return file.renameTo(new File(newPath));
-        } catch (SecurityException e) {
-            Log.e(LOG_TAG, "Fail to move file," + e.toString());
-        }
-        return false;
-    }
-
     private void copyFileList(ArrayList<FileInfo> files) {
         synchronized(mCurFileNameList) {
             mCurFileNameList.clear();
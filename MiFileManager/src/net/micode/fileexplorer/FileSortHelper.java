@@ -19,6 +19,8 @@
 
 package net.micode.fileexplorer;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 
@@ -58,6 +60,36 @@ public class FileSortHelper {
         return mComparatorList.get(mSort);
     }
 
+    /**
+     * Sorts a page of newly listed files and merges it into an already sorted list, in place
+     * so adapters holding the list see the result.
+     */
+    @SuppressWarnings("unchecked")
+    public void mergeInto(ArrayList<FileInfo> sorted, ArrayList<FileInfo> page) {
+        if (page.isEmpty()) {
+            return;
+        }
+        Comparator<FileInfo> comparator = getComparator();
+        Collections.sort(page, comparator);
+        if (sorted.isEmpty() || comparator.compare(sorted.get(sorted.size() - 1), page.get(0)) <= 0) {
+            sorted.addAll(page);
+            return;
+        }
+        ArrayList<FileInfo> merged = new ArrayList<FileInfo>(sorted.size() + page.size());
+        int i = 0, j = 0;
+        while (i < sorted.size() && j < page.size()) {
+            if (comparator.compare(sorted.get(i), page.get(j)) <= 0) {
+                merged.add(sorted.get(i++));
+            } else {
+                merged.add(page.get(j++));
+            }
+        }
+        merged.addAll(sorted.subList(i, sorted.size()));
+        merged.addAll(page.subList(j, page.size()));
+        sorted.clear();
+        sorted.addAll(merged);
+    }
+
     private abstract class FileComparator implements Comparator<FileInfo> {
 
         @Override
@@ -0,0 +1,484 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * This file is part of FileExplorer.
+ *
+ * FileExplorer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FileExplorer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SwiFTP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.micode.fileexplorer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * Copies and moves files for paste and move.
+ *
+ * The source trees are walked first to create the folders, resolve name conflicts and sum up
+ * the bytes. Small files are then copied by a few workers in parallel, since per file overhead
+ * dominates for them, while large files go one at a time through FileChannel.transferTo in
+ * chunks, so progress, pause and cancel are checked between chunks. A move tries rename first
+ * and only copies and deletes the sources that could not be renamed, e.g. across storages.
+ * Such a move copies hidden and filtered files too, and deletes only the source files that
+ * were copied, then the source folders that are left empty.
+ */
+public class FileTransfer {
+    private static final String LOG_TAG = "FileTransfer";
+
+    private static final int WORKER_COUNT = 3;
+
+    private static final long LARGE_FILE_SIZE = 4 * 1024 * 1024;
+
+    private static final long CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final long PROGRESS_INTERVAL = 200;
+
+    public enum ConflictPolicy {
+        // keep both, the new one gets a numbered name
+        rename, overwrite, skip
+    }
+
+    public interface ProgressListener {
+        /**
+         * Called from worker threads, at most every 200ms and once at the end.
+         */
+        void onProgress(long doneBytes, long totalBytes, int doneFiles, int totalFiles);
+    }
+
+    private static class Job {
+        final File src;
+
+        final File dest;
+
+        final int root;
+
+        Job(File src, File dest, int root) {
+            this.src = src;
+            this.dest = dest;
+            this.root = root;
+        }
+    }
+
+    private final FilenameFilter mFilter;
+
+    private final ConflictPolicy mConflictPolicy;
+
+    private final ProgressListener mListener;
+
+    private final Object mPauseLock = new Object();
+
+    private boolean mPaused;
+
+    private volatile boolean mCancelled;
+
+    private final AtomicLong mDoneBytes = new AtomicLong();
+
+    private final AtomicInteger mDoneFiles = new AtomicInteger();
+
+    private final AtomicLong mLastReport = new AtomicLong();
+
+    private long mTotalBytes;
+
+    private int mTotalFiles;
+
+    /**
+     * Indexes of the sources that had a failure or, in a move, a skipped file.
+     */
+    private final HashSet<Integer> mFailedRoots = new HashSet<Integer>();
+
+    private boolean mMoving;
+
+    /**
+     * Source files copied completely during a move, the only files deleted afterwards.
+     */
+    private final ArrayList<File> mCopied = new ArrayList<File>();
+
+    /**
+     * Destination files planned so far, they do not exist yet when names are picked.
+     */
+    private final HashSet<String> mPlanned = new HashSet<String>();
+
+    public FileTransfer(FilenameFilter filter, ConflictPolicy conflictPolicy, ProgressListener listener) {
+        mFilter = filter;
+        mConflictPolicy = conflictPolicy;
+        mListener = listener;
+    }
+
+    /**
+     * @return true if every file was copied or skipped on purpose
+     */
+    public boolean copy(List<FileInfo> files, String dest) {
+        ArrayList<File> sources = new ArrayList<File>();
+        for (FileInfo f : files) {
+            sources.add(new File(f.filePath));
+        }
+        return transfer(sources, dest);
+    }
+
+    /**
+     * @return true if every file ended up in dest
+     */
+    public boolean move(List<FileInfo> files, String dest) {
+        ArrayList<File> leftovers = new ArrayList<File>();
+        for (FileInfo f : files) {
+            File file = new File(f.filePath);
+            File target = new File(Util.makePath(dest, f.fileName));
+            if (target.getAbsoluteFile().equals(file.getAbsoluteFile())) {
+                // already in dest, copying would only make a renamed duplicate
+                continue;
+            }
+            try {
+                if (!target.exists() && file.renameTo(target)) {
+                    continue;
+                }
+            } catch (SecurityException e) {
+                Log.e(LOG_TAG, "Fail to move file," + e.toString());
+            }
+            leftovers.add(file);
+        }
+        if (leftovers.isEmpty()) {
+            return true;
+        }
+
+        // rename does not work across storages, copy and delete instead
+        mMoving = true;
+        boolean ok = transfer(leftovers, dest);
+        if (mCancelled) {
+            return false;
+        }
+        synchronized (mCopied) {
+            for (File file : mCopied) {
+                if (!file.delete()) {
+                    Log.e(LOG_TAG, "move: cannot delete " + file.getPath());
+                }
+            }
+        }
+        // skipped or failed files keep their folders
+        for (File file : leftovers) {
+            deleteEmptyDirs(file);
+        }
+        return ok;
+    }
+
+    public void pause() {
+        synchronized (mPauseLock) {
+            mPaused = true;
+        }
+    }
+
+    public void resume() {
+        synchronized (mPauseLock) {
+            mPaused = false;
+            mPauseLock.notifyAll();
+        }
+    }
+
+    /**
+     * The file being copied is removed, files already copied are kept.
+     */
+    public void cancel() {
+        mCancelled = true;
+        resume();
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    private boolean transfer(ArrayList<File> sources, String dest) {
+        File destDir = new File(dest);
+        if (!destDir.exists() && !destDir.mkdirs()) {
+            Log.e(LOG_TAG, "transfer: cannot create " + dest);
+            return false;
+        }
+
+        ArrayList<Job> small = new ArrayList<Job>();
+        ArrayList<Job> large = new ArrayList<Job>();
+        for (int i = 0; i < sources.size() && !mCancelled; i++) {
+            plan(sources.get(i), destDir, i, small, large);
+        }
+        mTotalFiles = small.size() + large.size();
+        for (Job job : small) {
+            mTotalBytes += job.src.length();
+        }
+        for (Job job : large) {
+            mTotalBytes += job.src.length();
+        }
+        reportProgress(true);
+
+        ExecutorService workers = Executors.newFixedThreadPool(WORKER_COUNT);
+        for (final Job job : small) {
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    byte[] buffer = sBuffers.get();
+                    runJob(job, buffer);
+                }
+            });
+        }
+        workers.shutdown();
+        // large files are read sequentially next to the small ones
+        for (Job job : large) {
+            runJob(job, null);
+        }
+        try {
+            while (!workers.awaitTermination(1, TimeUnit.SECONDS)) {
+                if (mCancelled) {
+                    workers.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            mCancelled = true;
+        }
+        reportProgress(true);
+
+        synchronized (mFailedRoots) {
+            return !mCancelled && mFailedRoots.isEmpty();
+        }
+    }
+
+    private static final ThreadLocal<byte[]> sBuffers = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Creates the destination folders and collects the files to copy.
+     */
+    private void plan(File src, File destDir, int root, ArrayList<Job> small, ArrayList<Job> large) {
+        if (src.isDirectory()) {
+            // directory exists in destination, rename it
+            File target = new File(destDir, src.getName());
+            int i = 1;
+            while (target.exists() || mPlanned.contains(target.getPath())) {
+                target = new File(destDir, src.getName() + " " + i++);
+            }
+            mPlanned.add(target.getPath());
+            if (!target.mkdirs()) {
+                Log.e(LOG_TAG, "plan: cannot create " + target.getPath());
+                markFailed(root);
+                return;
+            }
+            // a move deletes the source, so nothing may be left out
+            File[] children = mMoving ? src.listFiles() : src.listFiles(mFilter);
+            if (children == null) {
+                markFailed(root);
+                return;
+            }
+            for (File child : children) {
+                if (mPlanned.contains(child.getPath())) {
+                    // pasting a folder into itself must not copy the copy
+                    if (mMoving) {
+                        markFailed(root);
+                    }
+                } else if (mMoving || !child.isHidden() && Util.isNormalFile(child.getAbsolutePath())) {
+                    plan(child, target, root, small, large);
+                }
+            }
+            return;
+        }
+
+        if (!src.exists()) {
+            Log.v(LOG_TAG, "plan: file not exist, " + src.getPath());
+            markFailed(root);
+            return;
+        }
+        File target = new File(destDir, src.getName());
+        if (mPlanned.contains(target.getPath())) {
+            // two sources with the same name, never write one file twice
+            target = getFreeName(destDir, src.getName());
+        } else if (target.exists()) {
+            if (mConflictPolicy == ConflictPolicy.skip) {
+                if (mMoving) {
+                    // the source stays where it is
+                    markFailed(root);
+                }
+                return;
+            } else if (mConflictPolicy == ConflictPolicy.rename || target.equals(src)) {
+                target = getFreeName(destDir, src.getName());
+            }
+        }
+        mPlanned.add(target.getPath());
+        Job job = new Job(src, target, root);
+        if (src.length() >= LARGE_FILE_SIZE) {
+            large.add(job);
+        } else {
+            small.add(job);
+        }
+    }
+
+    private File getFreeName(File destDir, String name) {
+        File target;
+        int i = 1;
+        do {
+            String destName = Util.getNameFromFilename(name) + " " + i++ + "."
+                    + Util.getExtFromFilename(name);
+            target = new File(destDir, destName);
+        } while (target.exists() || mPlanned.contains(target.getPath()));
+        return target;
+    }
+
+    private void runJob(Job job, byte[] buffer) {
+        if (!waitIfPaused()) {
+            return;
+        }
+        boolean done = false;
+        try {
+            if (buffer != null) {
+                copyStream(job.src, job.dest, buffer);
+            } else {
+                copyChannel(job.src, job.dest);
+            }
+            done = !mCancelled;
+        } catch (IOException e) {
+            Log.e(LOG_TAG, "copy " + job.src.getPath() + ": " + e.toString());
+        } finally {
+            if (!done) {
+                job.dest.delete();
+                if (!mCancelled) {
+                    markFailed(job.root);
+                }
+            }
+        }
+        if (done) {
+            if (mMoving) {
+                synchronized (mCopied) {
+                    mCopied.add(job.src);
+                }
+            }
+            mDoneFiles.incrementAndGet();
+            reportProgress(false);
+        }
+        Log.v(LOG_TAG, "CopyFile >>> " + job.src.getPath() + "," + job.dest.getPath());
+    }
+
+    private void copyStream(File src, File dest, byte[] buffer) throws IOException {
+        FileInputStream in = new FileInputStream(src);
+        try {
+            FileOutputStream out = new FileOutputStream(dest);
+            try {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    mDoneBytes.addAndGet(read);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void copyChannel(File src, File dest) throws IOException {
+        FileInputStream in = new FileInputStream(src);
+        try {
+            FileOutputStream out = new FileOutputStream(dest);
+            try {
+                FileChannel inChannel = in.getChannel();
+                FileChannel outChannel = out.getChannel();
+                long size = inChannel.size();
+                long position = 0;
+                while (position < size) {
+                    if (!waitIfPaused()) {
+                        return;
+                    }
+                    long count = inChannel.transferTo(position, Math.min(CHUNK_SIZE, size - position), outChannel);
+                    if (count <= 0) {
+                        // the file shrank while copying
+                        break;
+                    }
+                    position += count;
+                    mDoneBytes.addAndGet(count);
+                    reportProgress(false);
+                }
+            } finally {
+                out.close();
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return false if cancelled
+     */
+    private boolean waitIfPaused() {
+        synchronized (mPauseLock) {
+            while (mPaused && !mCancelled) {
+                try {
+                    mPauseLock.wait();
+                } catch (InterruptedException e) {
+                    mCancelled = true;
+                }
+            }
+        }
+        return !mCancelled;
+    }
+
+    private void reportProgress(boolean force) {
+        if (mListener == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long last = mLastReport.get();
+        if (!force && (now - last < PROGRESS_INTERVAL || !mLastReport.compareAndSet(last, now))) {
+            return;
+        }
+        mLastReport.set(now);
+        mListener.onProgress(mDoneBytes.get(), mTotalBytes, mDoneFiles.get(), mTotalFiles);
+    }
+
+    private void markFailed(int root) {
+        synchronized (mFailedRoots) {
+            mFailedRoots.add(root);
+        }
+    }
+
+    private void deleteEmptyDirs(File dir) {
+        File[] children = dir.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            // a folder moved into itself contains the copy, leave it alone
+            if (child.isDirectory() && !mPlanned.contains(child.getPath())) {
+                deleteEmptyDirs(child);
+            }
+        }
+        children = dir.listFiles();
+        if (children != null && children.length == 0 && !dir.delete()) {
+            Log.e(LOG_TAG, "deleteEmptyDirs: cannot delete " + dir.getPath());
+        }
+    }
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 
 import net.micode.fileexplorer.FileExplorerTabActivity.IBackPressedListener;
 import net.micode.fileexplorer.FileViewInteractionHub.Mode;
@@ -48,7 +49,7 @@ import android.widget.ListView;
 import com.smartapp.fileexplorer.R;
 
 public class FileViewActivity extends Fragment implements
-        IFileInteractionListener, IBackPressedListener {
+        IFileInteractionListener, IBackPressedListener, FileListLoader.Listener {
 
     public static final String EXT_FILTER_KEY = "ext_filter";
 
@@ -73,6 +74,13 @@ public class FileViewActivity extends Fragment implements
 
     private ArrayList<FileInfo> mFileNameList = new ArrayList<FileInfo>();
 
+    private FileListLoader mFileListLoader;
+
+    // sort and scroll position of the listing in progress
+    private FileSortHelper mLoadingSort;
+
+    private int mLoadingScrollPosition;
+
     private Activity mActivity;
 
     private View mRootView;
@@ -149,6 +157,7 @@ public class FileViewActivity extends Fragment implements
         }
 
         mFileListView = (ListView) mRootView.findViewById(R.id.file_path_list);
+        mFileListLoader = new FileListLoader(this);
         mFileIconHelper = new FileIconHelper(mActivity);
         mAdapter = new FileListAdapter(mActivity, R.layout.file_browser_item, mFileNameList, mFileViewInteractionHub,
                 mFileIconHelper);
@@ -200,6 +209,7 @@ public class FileViewActivity extends Fragment implements
     public void onDestroyView() {
         super.onDestroyView();
         mActivity.unregisterReceiver(mReceiver);
+        mFileListLoader.shutdown();
     }
 
     @Override
@@ -276,38 +286,49 @@ public class FileViewActivity extends Fragment implements
         if (!file.exists() || !file.isDirectory()) {
             return false;
         }
-        final int pos = computeScrollPosition(path);
-        ArrayList<FileInfo> fileList = mFileNameList;
-        fileList.clear();
-
-        File[] listFiles = file.listFiles(mFileCagetoryHelper.getFilter());
-        if (listFiles == null)
-            return true;
-
-        for (File child : listFiles) {
-            // do not show selected file if in move state
-            if (mFileViewInteractionHub.isMoveState() && mFileViewInteractionHub.isFileSelected(child.getPath()))
-                continue;
-
-            String absolutePath = child.getAbsolutePath();
-            if (Util.isNormalFile(absolutePath) && Util.shouldShowFile(absolutePath)) {
-                FileInfo lFileInfo = Util.GetFileInfo(child,
-                        mFileCagetoryHelper.getFilter(), Settings.instance().getShowDotAndHiddenFiles());
-                if (lFileInfo != null) {
-                    fileList.add(lFileInfo);
+        mLoadingScrollPosition = computeScrollPosition(path);
+        mLoadingSort = sort;
+        mFileNameList.clear();
+        mAdapter.notifyDataSetChanged();
+        showEmptyView(false);
+
+        // entries arrive in pages through onPageLoaded
+        mFileListLoader.load(path, mFileCagetoryHelper.getFilter(), Settings.instance().getShowDotAndHiddenFiles());
+        return true;
+    }
+
+    @Override
+    public void onPageLoaded(ArrayList<FileInfo> page, boolean finished) {
+        // do not show selected file if in move state
+        if (mFileViewInteractionHub.isMoveState()) {
+            Iterator<FileInfo> iterator = page.iterator();
+            while (iterator.hasNext()) {
+                if (mFileViewInteractionHub.isFileSelected(iterator.next().filePath)) {
+                    iterator.remove();
                 }
             }
         }
 
-        sortCurrentList(sort);
-        showEmptyView(fileList.size() == 0);
-        mFileListView.post(new Runnable() {
-            @Override
-            public void run() {
-                mFileListView.setSelection(pos);
-            }
-        });
-        return true;
+        mLoadingSort.mergeInto(mFileNameList, page);
+        mAdapter.notifyDataSetChanged();
+        if (finished) {
+            showEmptyView(mFileNameList.size() == 0);
+            final int pos = mLoadingScrollPosition;
+            mFileListView.post(new Runnable() {
+                @Override
+                public void run() {
+                    mFileListView.setSelection(pos);
+                }
+            });
+        }
+    }
+
+    @Override
+    public void onChildCountsLoaded(ArrayList<FileInfo> unreadable) {
+        if (!unreadable.isEmpty()) {
+            mFileNameList.removeAll(unreadable);
+        }
+        mAdapter.notifyDataSetChanged();
     }
 
     private void updateUI() {
@@ -78,6 +78,8 @@ public class FileViewInteractionHub implements IOperationProgressListener {
 
     private ProgressDialog progressDialog;
 
+    private String mProgressMessage;
+
     private View mNavigationBar;
 
     private TextView mNavigationBarText;
@@ -102,12 +104,50 @@ public class FileViewInteractionHub implements IOperationProgressListener {
     }
 
     private void showProgress(String msg) {
+        showProgress(msg, false);
+    }
+
+    private void showProgress(String msg, boolean cancelTransfer) {
         progressDialog = new ProgressDialog(mContext);
         // dialog.setIcon(R.drawable.icon);
+        mProgressMessage = msg;
         progressDialog.setMessage(msg);
         progressDialog.setIndeterminate(true);
         progressDialog.setCancelable(false);
+        if (cancelTransfer) {
+            progressDialog.setButton(DialogInterface.BUTTON_NEGATIVE,
+                    mContext.getString(R.string.operation_cancel),
+                    new DialogInterface.OnClickListener() {
+                        @Override
+                        public void onClick(DialogInterface dialog, int which) {
+                            // stops after the current chunk, onFinish refreshes the list
+                            mFileOperationHelper.cancelTransfer();
+                        }
+                    });
+            progressDialog.setButton(DialogInterface.BUTTON_NEUTRAL,
+                    mContext.getString(R.string.operation_pause),
+                    (DialogInterface.OnClickListener) null);
+        }
         progressDialog.show();
+        if (cancelTransfer) {
+            // a listener on the button itself keeps the dialog open
+            final Button pauseButton = progressDialog.getButton(DialogInterface.BUTTON_NEUTRAL);
+            pauseButton.setOnClickListener(new OnClickListener() {
+                private boolean mPaused;
+
+                @Override
+                public void onClick(View v) {
+                    mPaused = !mPaused;
+                    if (mPaused) {
+                        mFileOperationHelper.pauseTransfer();
+                    } else {
+                        mFileOperationHelper.resumeTransfer();
+                    }
+                    pauseButton.setText(mPaused ? R.string.operation_resume
+                            : R.string.operation_pause);
+                }
+            });
+        }
     }
 
     public void sortCurrentList() {
@@ -460,8 +500,10 @@ public class FileViewInteractionHub implements IOperationProgressListener {
     }
 
     private void onOperationPaste() {
+        mFileOperationHelper.setConflictPolicy(
+                FileExplorerPreferenceActivity.getConflictPolicy(mContext));
         if (mFileOperationHelper.Paste(mCurrentPath)) {
-            showProgress(mContext.getString(R.string.operation_pasting));
+            showProgress(mContext.getString(R.string.operation_pasting), true);
         }
     }
 
@@ -646,8 +688,10 @@ public class FileViewInteractionHub implements IOperationProgressListener {
             mSelectFilesCallback = null;
             clearSelection();
         } else if (mFileOperationHelper.isMoveState()) {
+            mFileOperationHelper.setConflictPolicy(
+                FileExplorerPreferenceActivity.getConflictPolicy(mContext));
             if (mFileOperationHelper.EndMove(mCurrentPath)) {
-                showProgress(mContext.getString(R.string.operation_moving));
+                showProgress(mContext.getString(R.string.operation_moving), true);
             }
         } else {
             onOperationPaste();
@@ -1091,6 +1135,20 @@ public class FileViewInteractionHub implements IOperationProgressListener {
         notifyFileSystemChanged(path);
     }
 
+    @Override
+    public void onProgress(final long doneBytes, final long totalBytes) {
+        mFileViewListener.runOnUiThread(new Runnable() {
+            @Override
+            public void run() {
+                if (progressDialog != null && totalBytes > 0) {
+                    progressDialog.setMessage(mProgressMessage + "\n"
+                            + Util.convertStorage(doneBytes) + " / "
+                            + Util.convertStorage(totalBytes));
+                }
+            }
+        });
+    }
+
     public void startSelectFiles(SelectFilesCallback callback) {
         mSelectFilesCallback = callback;
         showConfirmOperationBar(true);
@@ -115,20 +115,12 @@ public class Util {
         lFileInfo.IsDir = lFile.isDirectory();
         lFileInfo.filePath = filePath;
         if (lFileInfo.IsDir) {
-            int lCount = 0;
-            File[] files = lFile.listFiles(filter);
+            int lCount = getChildCount(lFile, filter, showHidden);
 
-            // null means we cannot access this dir
-            if (files == null) {
+            // we cannot access this dir
+            if (lCount < 0) {
                 return null;
             }
-
-            for (File child : files) {
-                if ((!child.isHidden() || showHidden)
-                        && Util.isNormalFile(child.getAbsolutePath())) {
-                    lCount++;
-                }
-            }
             lFileInfo.Count = lCount;
 
         } else {
@@ -139,6 +131,29 @@ public class Util {
         return lFileInfo;
     }
 
+    /**
+     * Counts the entries shown for a directory.
+     *
+     * @return -1 if the directory cannot be listed
+     */
+    public static int getChildCount(File dir, FilenameFilter filter, boolean showHidden) {
+        File[] files = dir.listFiles(filter);
+
+        // null means we cannot access this dir
+        if (files == null) {
+            return -1;
+        }
+
+        int lCount = 0;
+        for (File child : files) {
+            if ((!child.isHidden() || showHidden)
+                    && Util.isNormalFile(child.getAbsolutePath())) {
+                lCount++;
+            }
+        }
+        return lCount;
+    }
+
     /*
      * 采用了新的办法获取APK图标，之前的失败是因为android中存在的一个BUG,通过
      * appInfo.publicSourceDir = apkPath;来修正这个问题，详情参见:
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * This file is part of FileExplorer.
+ *
+ * FileExplorer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FileExplorer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SwiFTP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.micode.fileexplorer;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import android.os.Environment;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+/**
+ * Compares FileTransfer with the old one-file-at-a-time byte[] loop (Util.copyFile) on 10k small
+ * files and on one 2GB file. The timings go to logcat under the FileTransferBenchmark tag; the
+ * large file case is skipped when the storage has less than 5GB free.
+ */
+public class FileTransferBenchmark extends AndroidTestCase {
+    private static final String LOG_TAG = "FileTransferBenchmark";
+
+    private static final int SMALL_FILE_COUNT = 10000;
+
+    private static final long LARGE_FILE_SIZE = 2L * 1024 * 1024 * 1024;
+
+    private static final FilenameFilter ALL = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return true;
+        }
+    };
+
+    private File mRoot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        File base = Environment.getExternalStorageDirectory();
+        if (base == null || !base.canWrite()) {
+            base = getContext().getCacheDir();
+        }
+        mRoot = new File(base, "transfer_benchmark");
+        FileTransferTest.deleteAll(mRoot);
+        assertTrue(mRoot.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileTransferTest.deleteAll(mRoot);
+        super.tearDown();
+    }
+
+    public void testManySmallFiles() throws IOException {
+        File src = new File(mRoot, "small");
+        Random random = new Random(1);
+        for (int i = 0; i < SMALL_FILE_COUNT; i++) {
+            // 100 folders of 100 files, 1KB to 4KB each
+            FileTransferTest.write(new File(src, "d" + i / 100 + "/f" + i), 1024 + random.nextInt(3072));
+        }
+        compare(src);
+    }
+
+    public void testLargeFile() throws IOException {
+        if (mRoot.getUsableSpace() < LARGE_FILE_SIZE * 5 / 2) {
+            Log.i(LOG_TAG, "not enough space for the large file, skipped");
+            return;
+        }
+        File src = new File(mRoot, "large.bin");
+        FileTransferTest.write(src, LARGE_FILE_SIZE);
+        compare(src);
+    }
+
+    private void compare(File src) {
+        File oldDest = new File(mRoot, "old");
+        long start = System.nanoTime();
+        oldCopy(src, oldDest);
+        long oldTime = System.nanoTime() - start;
+        FileTransferTest.deleteAll(oldDest);
+
+        File newDest = new File(mRoot, "new");
+        start = System.nanoTime();
+        ArrayList<FileInfo> infos = FileTransferTest.infos(src);
+        assertTrue(new FileTransfer(ALL, FileTransfer.ConflictPolicy.rename, null).copy(infos,
+                newDest.getPath()));
+        long newTime = System.nanoTime() - start;
+        FileTransferTest.deleteAll(newDest);
+
+        Log.i(LOG_TAG, src.getName() + ": old " + oldTime / 1000000 + "ms, new " + newTime
+                / 1000000 + "ms");
+    }
+
+    /**
+     * The copy FileOperationHelper did before FileTransfer.
+     */
+    private static void oldCopy(File src, File destDir) {
+        if (src.isDirectory()) {
+            File dest = new File(destDir, src.getName());
+            dest.mkdirs();
+            for (File child : src.listFiles()) {
+                oldCopy(child, dest);
+            }
+        } else {
+            assertNotNull(Util.copyFile(src.getPath(), destDir.getPath()));
+        }
+    }
+}
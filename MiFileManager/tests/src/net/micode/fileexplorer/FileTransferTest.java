@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2010-2011, The MiCode Open Source Community (www.micode.net)
+ *
+ * This file is part of FileExplorer.
+ *
+ * FileExplorer is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * FileExplorer is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with SwiFTP.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package net.micode.fileexplorer;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+
+import android.test.AndroidTestCase;
+
+public class FileTransferTest extends AndroidTestCase {
+    private static final FilenameFilter NO_TMP = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return !name.endsWith(".tmp");
+        }
+    };
+
+    private File mRoot;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRoot = new File(getContext().getCacheDir(), "transfer_test");
+        deleteAll(mRoot);
+        assertTrue(mRoot.mkdirs());
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll(mRoot);
+        super.tearDown();
+    }
+
+    public void testCopyTreeSkipsHiddenAndFiltered() throws IOException {
+        File src = new File(mRoot, "src");
+        write(new File(src, "a.txt"), 10);
+        write(new File(src, "sub/b.bin"), 5 * 1024 * 1024);
+        write(new File(src, ".hidden"), 10);
+        write(new File(src, "c.tmp"), 10);
+        new File(src, "empty").mkdirs();
+        File dest = new File(mRoot, "dest");
+
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.rename).copy(infos(src), dest.getPath()));
+        assertEquals(10, new File(dest, "src/a.txt").length());
+        assertEquals(5 * 1024 * 1024, new File(dest, "src/sub/b.bin").length());
+        assertTrue(new File(dest, "src/empty").isDirectory());
+        assertFalse(new File(dest, "src/.hidden").exists());
+        assertFalse(new File(dest, "src/c.tmp").exists());
+        assertTrue(new File(src, "a.txt").exists());
+    }
+
+    public void testCopyConflictPolicies() throws IOException {
+        File src = new File(mRoot, "a.txt");
+        write(src, 3);
+        File dest = new File(mRoot, "dest");
+        write(new File(dest, "a.txt"), 7);
+
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.skip).copy(infos(src), dest.getPath()));
+        assertEquals(7, new File(dest, "a.txt").length());
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.rename).copy(infos(src), dest.getPath()));
+        assertEquals(3, new File(dest, "a 1.txt").length());
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.overwrite).copy(infos(src), dest.getPath()));
+        assertEquals(3, new File(dest, "a.txt").length());
+    }
+
+    public void testMoveIntoSameFolderKeepsFiles() throws IOException {
+        File file = new File(mRoot, "a.txt");
+        write(file, 3);
+        File dir = new File(mRoot, "dir");
+        write(new File(dir, "b.txt"), 3);
+
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.rename).move(infos(file, dir),
+                mRoot.getPath()));
+        assertTrue(file.exists());
+        assertTrue(new File(dir, "b.txt").exists());
+        assertFalse(new File(mRoot, "a 1.txt").exists());
+        assertFalse(new File(mRoot, "dir 1").exists());
+    }
+
+    public void testMoveByCopyTakesHiddenAndFiltered() throws IOException {
+        File src = new File(mRoot, "src/d");
+        write(new File(src, ".hidden"), 10);
+        write(new File(src, "c.tmp"), 10);
+        write(new File(src, "sub/b.bin"), 10);
+        File dest = new File(mRoot, "dest");
+        // an existing target makes rename fail, so the copy path is taken
+        new File(dest, "d").mkdirs();
+
+        assertTrue(newTransfer(FileTransfer.ConflictPolicy.rename).move(infos(src), dest.getPath()));
+        assertFalse(src.exists());
+        assertTrue(new File(dest, "d 1/.hidden").exists());
+        assertTrue(new File(dest, "d 1/c.tmp").exists());
+        assertTrue(new File(dest, "d 1/sub/b.bin").exists());
+    }
+
+    public void testMoveKeepsSkippedSource() throws IOException {
+        File src = new File(mRoot, "src/a.txt");
+        write(src, 3);
+        File dest = new File(mRoot, "dest");
+        write(new File(dest, "a.txt"), 7);
+
+        assertFalse(newTransfer(FileTransfer.ConflictPolicy.skip).move(infos(src), dest.getPath()));
+        assertTrue(src.exists());
+        assertEquals(7, new File(dest, "a.txt").length());
+    }
+
+    public void testCancelledTransferWritesNothing() throws IOException {
+        File src = new File(mRoot, "big.bin");
+        write(src, 16 * 1024 * 1024);
+        File dest = new File(mRoot, "dest");
+        FileTransfer transfer = newTransfer(FileTransfer.ConflictPolicy.rename);
+        transfer.cancel();
+
+        assertFalse(transfer.copy(infos(src), dest.getPath()));
+        assertFalse(new File(dest, "big.bin").exists());
+        assertTrue(src.exists());
+    }
+
+    private FileTransfer newTransfer(FileTransfer.ConflictPolicy policy) {
+        return new FileTransfer(NO_TMP, policy, null);
+    }
+
+    static ArrayList<FileInfo> infos(File... files) {
+        ArrayList<FileInfo> infos = new ArrayList<FileInfo>();
+        for (File file : files) {
+            FileInfo info = new FileInfo();
+            info.fileName = file.getName();
+            info.filePath = file.getPath();
+            info.IsDir = file.isDirectory();
+            infos.add(info);
+        }
+        return infos;
+    }
+
+    static void write(File file, long size) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            for (int i = 0; i < buffer.length; i++) {
+                buffer[i] = (byte) i;
+            }
+            while (size > 0) {
+                int count = (int) Math.min(size, buffer.length);
+                out.write(buffer, 0, count);
+                size -= count;
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    static void deleteAll(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteAll(child);
+            }
+        }
+        file.delete();
+    }
+}
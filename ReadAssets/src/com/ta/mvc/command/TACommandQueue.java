@@ -15,54 +15,242 @@
  */
 package com.ta.mvc.command;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
+import com.ta.mvc.common.TARequest;
 import com.ta.util.TALogger;
 
 /**
  * @Title TACommandQueue
  * @package com.ta.core.mvc.command
- * @Description TACommandQueue维护一个Command
+ * @Description TACommandQueue维护一个按优先级排序的Command队列，同一优先级内先进先出。
+ *              已在队列中且请求相同的 TAIdentityCommand 会被合并，被取消的命令出列时直接跳过
  * @author 白猫
  * @date 2013-1-16 下午 16:51
  * @version V1.0
  */
 public class TACommandQueue
 {
-	private LinkedBlockingQueue<TAICommand> theQueue = new LinkedBlockingQueue<TAICommand>();
+	/** 界面相关、用户正在等待结果的命令 */
+	public static final int PRIORITY_UI_CRITICAL = 0;
+	/** 默认优先级 */
+	public static final int PRIORITY_NORMAL = 1;
+	/** 批量、后台命令，例如缓存扫描 */
+	public static final int PRIORITY_BULK = 2;
+	static final int PRIORITY_COUNT = 3;
+
+	private final PriorityBlockingQueue<Entry> theQueue = new PriorityBlockingQueue<Entry>();
+	private final ConcurrentHashMap<CoalesceKey, Entry> pendingIdentityCommands = new ConcurrentHashMap<CoalesceKey, Entry>();
+	private final AtomicLong sequence = new AtomicLong();
+	private final TACommandMetrics metrics = new TACommandMetrics();
 
 	public TACommandQueue()
 	{
 		TALogger.i(TACommandQueue.this, "初始化Command队列");
 	}
 
-	public void enqueue(TAICommand cmd)
+	/**
+	 * 按命令自身的优先级入列
+	 * 
+	 * @param cmd
+	 *            命令
+	 * @return 取消令牌
+	 */
+	public TACommandToken enqueue(TAICommand cmd)
 	{
-		TALogger.i(TACommandQueue.this, "添加Command到队列");
-		theQueue.add(cmd);
+		return enqueue(cmd, priorityOf(cmd));
 	}
 
-	public synchronized TAICommand getNextCommand()
+	/**
+	 * 按指定的优先级入列
+	 * 
+	 * @param cmd
+	 *            命令
+	 * @param priority
+	 *            优先级
+	 * @return 取消令牌，命令被合并时返回已在队列中的那个命令的令牌
+	 */
+	public TACommandToken enqueue(TAICommand cmd, int priority)
 	{
-		TALogger.i(TACommandQueue.this, "获取Command");
-		TAICommand cmd = null;
-		try
+		if (priority < PRIORITY_UI_CRITICAL || priority >= PRIORITY_COUNT)
+		{
+			throw new IllegalArgumentException("priority: " + priority);
+		}
+		Entry entry = new Entry(cmd, priority, sequence.getAndIncrement());
+		if (cmd instanceof TAIdentityCommand)
 		{
-			TALogger.i(TACommandQueue.this, "CommandQueue::to-take");
-			cmd = theQueue.take();
-			TALogger.i(TACommandQueue.this, "CommandQueue::taken");
-		} catch (InterruptedException e)
+			entry.coalesceKey = new CoalesceKey(cmd);
+			Entry existing = pendingIdentityCommands.putIfAbsent(
+					entry.coalesceKey, entry);
+			if (existing != null && !existing.token.isCancelled())
+			{
+				metrics.recordCoalesced(priority);
+				return existing.token;
+			} else if (existing != null)
+			{
+				pendingIdentityCommands.put(entry.coalesceKey, entry);
+			}
+		}
+		metrics.recordEnqueued(priority);
+		theQueue.add(entry);
+		return entry.token;
+	}
+
+	public TAICommand getNextCommand()
+	{
+		Entry entry = takeEntry();
+		return entry == null ? null : entry.command;
+	}
+
+	/**
+	 * 取出下一个没有被取消的命令，没有命令时阻塞
+	 * 
+	 * @return 队列项，线程被中断时返回 null
+	 */
+	Entry takeEntry()
+	{
+		while (true)
 		{
-			TALogger.i(TACommandQueue.this, "没有获取到Command");
-			e.printStackTrace();
+			Entry entry;
+			try
+			{
+				entry = theQueue.take();
+			} catch (InterruptedException e)
+			{
+				TALogger.i(TACommandQueue.this, "没有获取到Command");
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			if (entry.coalesceKey != null)
+			{
+				pendingIdentityCommands.remove(entry.coalesceKey, entry);
+			}
+			if (entry.token.isCancelled())
+			{
+				metrics.recordCancelled(entry.priority);
+				continue;
+			}
+			return entry;
 		}
-		TALogger.i(TACommandQueue.this, "返回Command" + cmd);
-		return cmd;
 	}
 
-	public synchronized void clear()
+	public void clear()
 	{
 		TALogger.i(TACommandQueue.this, "清空所有Command");
 		theQueue.clear();
+		pendingIdentityCommands.clear();
+	}
+
+	/**
+	 * @return 当前排队的命令数（包括已取消但还未出列的）
+	 */
+	public int size()
+	{
+		return theQueue.size();
+	}
+
+	public TACommandMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	private static int priorityOf(TAICommand cmd)
+	{
+		if (cmd instanceof TAIPrioritizedCommand)
+		{
+			return ((TAIPrioritizedCommand) cmd).getPriority();
+		}
+		return PRIORITY_NORMAL;
+	}
+
+	/**
+	 * 队列项，先比较优先级，再比较入列顺序
+	 */
+	static final class Entry implements Comparable<Entry>
+	{
+		final TAICommand command;
+		final int priority;
+		final long sequence;
+		final long enqueueTime = System.nanoTime();
+		final TACommandToken token;
+		CoalesceKey coalesceKey;
+
+		Entry(TAICommand command, int priority, long sequence)
+		{
+			this.command = command;
+			this.priority = priority;
+			this.sequence = sequence;
+			this.token = new TACommandToken(command);
+		}
+
+		@Override
+		public int compareTo(Entry another)
+		{
+			if (priority != another.priority)
+			{
+				return priority < another.priority ? -1 : 1;
+			}
+			return sequence < another.sequence ? -1
+					: (sequence == another.sequence ? 0 : 1);
+		}
+	}
+
+	/**
+	 * TAIdentityCommand 的合并键：命令类型、监听器和请求内容都相同时视为同一个命令
+	 */
+	private static final class CoalesceKey
+	{
+		private final Class<?> commandClass;
+		private final Object listener;
+		private final Object tag;
+		private final Object data;
+		private final String activityKey;
+		private final int activityKeyResID;
+
+		CoalesceKey(TAICommand cmd)
+		{
+			TARequest request = cmd.getRequest();
+			commandClass = cmd.getClass();
+			listener = cmd.getResponseListener();
+			tag = request == null ? null : request.getTag();
+			data = request == null ? null : request.getData();
+			activityKey = request == null ? null : request.getActivityKey();
+			activityKeyResID = request == null ? 0 : request
+					.getActivityKeyResID();
+		}
+
+		@Override
+		public boolean equals(Object o)
+		{
+			if (!(o instanceof CoalesceKey))
+			{
+				return false;
+			}
+			CoalesceKey other = (CoalesceKey) o;
+			return commandClass == other.commandClass
+					&& listener == other.listener
+					&& activityKeyResID == other.activityKeyResID
+					&& equal(tag, other.tag) && equal(data, other.data)
+					&& equal(activityKey, other.activityKey);
+		}
+
+		@Override
+		public int hashCode()
+		{
+			int result = commandClass.hashCode();
+			result = 31 * result + System.identityHashCode(listener);
+			result = 31 * result + (tag == null ? 0 : tag.hashCode());
+			result = 31 * result + (data == null ? 0 : data.hashCode());
+			result = 31 * result
+					+ (activityKey == null ? 0 : activityKey.hashCode());
+			return 31 * result + activityKeyResID;
+		}
+
+		private static boolean equal(Object a, Object b)
+		{
+			return a == null ? b == null : a.equals(b);
+		}
 	}
 }
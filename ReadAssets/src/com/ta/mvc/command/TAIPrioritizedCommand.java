@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2013  WhiteCat 白猫 (www.thinkandroid.cn)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.ta.mvc.command;
+
+/**
+ * @Title TAIPrioritizedCommand
+ * @package com.ta.mvc.command
+ * @Description 需要指定优先级的命令实现此接口，没有实现的命令按 {@link TACommandQueue#PRIORITY_NORMAL} 执行
+ * @author 白猫
+ * @date 2013-1-16 下午 16:51
+ * @version V1.0
+ */
+public interface TAIPrioritizedCommand extends TAICommand
+{
+	/**
+	 * @return {@link TACommandQueue#PRIORITY_UI_CRITICAL}、
+	 *         {@link TACommandQueue#PRIORITY_NORMAL} 或
+	 *         {@link TACommandQueue#PRIORITY_BULK}
+	 */
+	int getPriority();
+}
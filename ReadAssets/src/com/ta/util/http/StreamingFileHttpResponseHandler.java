@@ -0,0 +1,76 @@
+package com.ta.util.http;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.http.Header;
+
+/**
+ * Streams the response body straight into a file. The body is written to
+ * {@code <file>.download} and renamed over the target once it is complete,
+ * so a cancelled or failed request never leaves a truncated target file.
+ * <p>
+ * Unlike {@link FileHttpResponseHandler} this handler does not resume
+ * partial downloads and needs no timer thread for progress.
+ */
+public class StreamingFileHttpResponseHandler extends
+		StreamingHttpResponseHandler<File>
+{
+	private static final String TEMP_SUFFIX = ".download";
+	private final File file;
+
+	public StreamingFileHttpResponseHandler(File file)
+	{
+		super();
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	@Override
+	protected File onReceiveStream(int statusCode, Header[] headers,
+			InputStream content, long contentLength) throws IOException
+	{
+		File parent = file.getParentFile();
+		if (parent != null && !parent.exists())
+		{
+			parent.mkdirs();
+		}
+		File tempFile = new File(file.getPath() + TEMP_SUFFIX);
+		FileOutputStream out = new FileOutputStream(tempFile);
+		boolean complete = false;
+		try
+		{
+			long count = copy(content, out);
+			if (contentLength != -1 && count != contentLength)
+			{
+				throw new IOException("Download incomplete: " + count
+						+ " != " + contentLength);
+			}
+			complete = true;
+		} finally
+		{
+			out.close();
+			if (!complete)
+			{
+				tempFile.delete();
+			}
+		}
+		if (!tempFile.renameTo(file))
+		{
+			file.delete();
+			if (!tempFile.renameTo(file))
+			{
+				tempFile.delete();
+				throw new IOException("Cannot rename " + tempFile + " to "
+						+ file);
+			}
+		}
+		return file;
+	}
+}
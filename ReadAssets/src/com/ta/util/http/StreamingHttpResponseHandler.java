@@ -0,0 +1,268 @@
+package com.ta.util.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpResponseException;
+
+import android.os.Message;
+
+/**
+ * Base class for response handlers that consume the entity as a stream
+ * instead of buffering it into a {@code String} or {@code byte[]} first.
+ * <p>
+ * {@link #onReceiveStream} runs on the request thread and reads the body
+ * directly from the connection; its return value is delivered to
+ * {@link #onStreamSuccess} on the calling thread. Progress is reported through
+ * the usual {@link #onProgress(long, long, long, long)} callback, throttled to one
+ * message every {@link #PROGRESS_INTERVAL_MS} so large bodies do not flood
+ * the UI thread.
+ * <p>
+ * Copy buffers come from a small shared pool, see {@link #obtainBuffer()}.
+ */
+public abstract class StreamingHttpResponseHandler<T> extends
+		AsyncHttpResponseHandler
+{
+	protected static final int STREAM_SUCCESS_MESSAGE = 200;
+	protected static final long PROGRESS_INTERVAL_MS = 200;
+	protected static final int BUFFER_SIZE = 1024 * 8;
+	private static final int MAX_POOLED_BUFFERS = 8;
+
+	private static final ConcurrentLinkedQueue<byte[]> sBufferPool = new ConcurrentLinkedQueue<byte[]>();
+	private static final AtomicInteger sPooledCount = new AtomicInteger();
+
+	/**
+	 * Reads the response body. Runs on the request thread, so blocking I/O
+	 * is fine here; the stream reports progress as it is read.
+	 *
+	 * @param statusCode
+	 *            the HTTP status code, always below 300
+	 * @param headers
+	 *            the response headers
+	 * @param content
+	 *            the entity content, or an empty stream if the response had no
+	 *            entity
+	 * @param contentLength
+	 *            the declared length, or -1 if unknown
+	 * @return the value handed to {@link #onStreamSuccess}
+	 */
+	protected abstract T onReceiveStream(int statusCode, Header[] headers,
+			InputStream content, long contentLength) throws IOException;
+
+	/**
+	 * Fired on the calling thread once {@link #onReceiveStream} has returned.
+	 */
+	public void onStreamSuccess(int statusCode, Header[] headers, T result)
+	{
+		onSuccess(statusCode, headers, (String) null);
+	}
+
+	/**
+	 * Takes a {@link #BUFFER_SIZE} buffer from the shared pool, allocating one
+	 * if the pool is empty. Return it with {@link #recycleBuffer(byte[])}.
+	 */
+	protected static byte[] obtainBuffer()
+	{
+		byte[] buffer = sBufferPool.poll();
+		if (buffer == null)
+		{
+			return new byte[BUFFER_SIZE];
+		}
+		sPooledCount.decrementAndGet();
+		return buffer;
+	}
+
+	protected static void recycleBuffer(byte[] buffer)
+	{
+		if (buffer != null && buffer.length == BUFFER_SIZE
+				&& sPooledCount.incrementAndGet() <= MAX_POOLED_BUFFERS)
+		{
+			sBufferPool.offer(buffer);
+		} else if (buffer != null && buffer.length == BUFFER_SIZE)
+		{
+			sPooledCount.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Copies {@code in} to {@code out} through a pooled buffer, stopping with
+	 * an {@link InterruptedIOException} if the request is cancelled.
+	 *
+	 * @return the number of bytes copied
+	 */
+	protected static long copy(InputStream in, OutputStream out)
+			throws IOException
+	{
+		byte[] buffer = obtainBuffer();
+		try
+		{
+			long count = 0;
+			int n;
+			while ((n = in.read(buffer)) != -1)
+			{
+				if (Thread.currentThread().isInterrupted())
+				{
+					throw new InterruptedIOException("request cancelled");
+				}
+				out.write(buffer, 0, n);
+				count += n;
+			}
+			return count;
+		} finally
+		{
+			recycleBuffer(buffer);
+		}
+	}
+
+	protected void sendStreamSuccessMessage(int statusCode, Header[] headers,
+			T result)
+	{
+		sendMessage(obtainMessage(STREAM_SUCCESS_MESSAGE, new Object[]
+		{ Integer.valueOf(statusCode), headers, result }));
+	}
+
+	protected void sendProgressMessage(long totalSize, long currentSize,
+			long speed, long time)
+	{
+		sendMessage(obtainMessage(PROGRESS_MESSAGE, new Object[]
+		{ totalSize, currentSize, speed, time }));
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	protected void handleMessage(Message msg)
+	{
+		if (msg.what == STREAM_SUCCESS_MESSAGE)
+		{
+			Object[] response = (Object[]) msg.obj;
+			onStreamSuccess(((Integer) response[0]).intValue(),
+					(Header[]) response[1], (T) response[2]);
+		} else
+		{
+			super.handleMessage(msg);
+		}
+	}
+
+	@Override
+	protected void sendResponseMessage(HttpResponse response)
+	{
+		StatusLine status = response.getStatusLine();
+		HttpEntity entity = response.getEntity();
+		if (status.getStatusCode() >= 300)
+		{
+			consumeQuietly(entity);
+			sendFailureMessage(new HttpResponseException(
+					status.getStatusCode(), status.getReasonPhrase()),
+					(String) null);
+			return;
+		}
+
+		InputStream content = null;
+		try
+		{
+			long contentLength = entity == null ? -1 : entity
+					.getContentLength();
+			InputStream raw = entity == null ? null : entity.getContent();
+			content = new ProgressInputStream(raw, contentLength);
+			T result = onReceiveStream(status.getStatusCode(),
+					response.getAllHeaders(), content, contentLength);
+			((ProgressInputStream) content).reportProgress(true);
+			sendStreamSuccessMessage(status.getStatusCode(),
+					response.getAllHeaders(), result);
+		} catch (IOException e)
+		{
+			sendFailureMessage(e, (String) null);
+		} finally
+		{
+			if (content != null)
+			{
+				try
+				{
+					content.close();
+				} catch (IOException e)
+				{
+				}
+			}
+		}
+	}
+
+	private static void consumeQuietly(HttpEntity entity)
+	{
+		if (entity != null)
+		{
+			try
+			{
+				entity.consumeContent();
+			} catch (IOException e)
+			{
+			}
+		}
+	}
+
+	/**
+	 * Counts bytes as the handler reads them and posts throttled progress.
+	 */
+	private class ProgressInputStream extends FilterInputStream
+	{
+		private final long totalSize;
+		private long currentSize;
+		private long lastReportTime = System.currentTimeMillis();
+		private long lastReportSize;
+
+		ProgressInputStream(InputStream in, long totalSize)
+		{
+			super(in != null ? in : new java.io.ByteArrayInputStream(
+					new byte[0]));
+			this.totalSize = totalSize;
+		}
+
+		@Override
+		public int read() throws IOException
+		{
+			int b = super.read();
+			if (b != -1)
+			{
+				currentSize++;
+				reportProgress(false);
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int count)
+				throws IOException
+		{
+			int n = super.read(buffer, offset, count);
+			if (n > 0)
+			{
+				currentSize += n;
+				reportProgress(false);
+			}
+			return n;
+		}
+
+		void reportProgress(boolean force)
+		{
+			long now = System.currentTimeMillis();
+			if (force || now - lastReportTime >= PROGRESS_INTERVAL_MS)
+			{
+				long interval = now - lastReportTime;
+				// KB/s, same unit as FileHttpResponseHandler
+				long speed = interval > 0 ? (long) (((currentSize - lastReportSize) * 1.0 / interval) / 1.024 + 0.5)
+						: 0;
+				lastReportTime = now;
+				lastReportSize = currentSize;
+				sendProgressMessage(totalSize, currentSize, speed, now);
+			}
+		}
+	}
+}
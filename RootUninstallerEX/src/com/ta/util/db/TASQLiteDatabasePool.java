@@ -15,9 +15,14 @@
  */
 package com.ta.util.db;
 
-import java.util.Enumeration;
 import java.util.HashMap;
-import java.util.Vector;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import com.ta.util.TALogger;
 import com.ta.util.db.TASQLiteDatabase.TADBParams;
@@ -39,7 +44,10 @@ public class TASQLiteDatabasePool
 	private int initialSQLiteDatabase = 2; // 连接池的初始大小
 	private int incrementalSQLiteDatabase = 2;// 连接池自动增加的大小
 	private int maxSQLiteDatabase = 10; // 连接池最大的大小
-	private Vector<PooledSQLiteDatabase> pSQLiteDatabases = null; // 存放连接池中数据库连接的向量
+	private volatile Lane readLane = null; // 共享（读）通道，连接池未创建时为 null
+	private volatile Lane writeLane = null; // 写通道，只有一个连接，保证同一时刻只有一个写者
+	private final Map<TASQLiteDatabase, Lane> busySQLiteDatabases = new ConcurrentHashMap<TASQLiteDatabase, Lane>(); // 正在使用的连接及其所属通道
+	private final TAPoolMetrics metrics = new TAPoolMetrics();
 	private Context context;
 	private TADBParams params;
 	private TADBUpdateListener mDBUpdateListener; // 升级时监听器
@@ -184,7 +192,8 @@ public class TASQLiteDatabasePool
 	}
 
 	/**
-	 * 设置连接池中最大可用的连接数量
+	 * 设置连接池中最大可用的连接数量。其中一个连接留给写通道，共享通道最多使用 maxSQLiteDatabase - 1 个连接（至少 1 个），
+	 * 所以 getSQLiteDatabase() 能同时借出的连接比以前少一个。
 	 * 
 	 * @param 设置连接池中最大可用的连接数量值
 	 */
@@ -218,167 +227,109 @@ public class TASQLiteDatabasePool
 
 	/**
 	 * 
-	 * 创建一个数据库连接池，连接池中的可用连接的数量采用类成员 initialSQLiteDatabase 中设置的值
+	 * 创建一个数据库连接池，连接池中的可用连接的数量采用类成员 initialSQLiteDatabase 中设置的值。
+	 * 连接池分为两个通道：共享通道最多 maxSQLiteDatabase - 1 个连接；写通道只有一个以读写方式打开的连接，
+	 * 所有写操作在这个连接上排队，避免多个连接同时写库时互相锁住。
+	 * 共享通道仍按 isWrite 打开连接，而不是只读：以前通过 getSQLiteDatabase() 写库的调用者不受影响。
 	 */
 	public synchronized void createPool()
 	{
 		// 确保连接池没有创建
-		// 如果连接池己经创建了，保存连接的向量 sqLiteDatabases 不会为空
-		if (pSQLiteDatabases != null)
+		if (readLane != null)
 		{
 			return; // 如果己经创建，则返回
 		}
-		// 创建保存连接的向量 , 初始时有 0 个元素
-		pSQLiteDatabases = new Vector<PooledSQLiteDatabase>();
-		// 根据 initialConnections 中设置的值，创建连接。
-		createSQLiteDatabase(this.initialSQLiteDatabase);
+		int readCapacity = Math.max(1, maxSQLiteDatabase - 1);
+		Lane lane = new Lane(readCapacity, isWrite);
+		// 根据 initialSQLiteDatabase 中设置的值，预先创建连接。
+		lane.prepare(Math.min(initialSQLiteDatabase, readCapacity));
+		writeLane = new Lane(1, true);
+		readLane = lane;
 		TALogger.i(TASQLiteDatabasePool.this, " 数据库连接池创建成功！ ");
 	}
 
-	/**
-	 * 创建由 numSQLiteDatabase 指定数目的数据库连接 , 并把这些连接 放入 numSQLiteDatabase 向量中
-	 * 
-	 * @param numSQLiteDatabase
-	 *            要创建的数据库连接的数目
-	 */
-
-	private void createSQLiteDatabase(int numSQLiteDatabase)
-	{
-
-		// 循环创建指定数目的数据库连接
-		for (int x = 0; x < numSQLiteDatabase; x++)
-		{
-			// 是否连接池中的数据库连接的数量己经达到最大？最大值由类成员 maxSQLiteDatabase
-			// 指出，如果 maxSQLiteDatabase 为 0 或负数，表示连接数量没有限制。
-			// 如果连接数己经达到最大，即退出。
-			if (this.maxSQLiteDatabase > 0
-					&& this.pSQLiteDatabases.size() >= this.maxSQLiteDatabase)
-			{
-				break;
-			}
-			try
-			{
-				// 增加一个TASQLiteDatabase到连接池中
-				pSQLiteDatabases.addElement(new PooledSQLiteDatabase(
-						newSQLiteDatabase()));
-			} catch (Exception e)
-			{
-				TALogger.i(TASQLiteDatabasePool.this,
-						" 创建数据库连接失败！ " + e.getMessage());
-			}
-			TALogger.i(TASQLiteDatabasePool.this, "数据库连接己创建 ......");
-		}
-	}
-
 	/**
 	 * 创建一个新的数据库连接并返回它
 	 * 
+	 * @param writable
+	 *            是否以读写方式打开
 	 * @return 返回一个新创建的数据库连接
 	 */
-
-	private TASQLiteDatabase newSQLiteDatabase()
+	private TASQLiteDatabase newSQLiteDatabase(boolean writable)
 	{
-
 		// 创建一个数据库连接
 		TASQLiteDatabase sqliteDatabase = new TASQLiteDatabase(context, params);
-		sqliteDatabase.openDatabase(mDBUpdateListener, isWrite);
+		sqliteDatabase.openDatabase(mDBUpdateListener, writable);
+		metrics.creationCount.incrementAndGet();
+		TALogger.i(TASQLiteDatabasePool.this, "数据库连接己创建 ......");
 		return sqliteDatabase; // 返回创建的新的数据库连接
 	}
 
 	/**
-	 * 通过调用 getFreeSQLiteDatabase() 函数返回一个可用的数据库连接 ,
-	 * 如果当前没有可用的数据库连接，并且更多的数据库连接不能创 建（如连接池大小的限制），此函数等待一会再尝试获取。
+	 * 从共享通道返回一个可用的数据库连接，如果当前没有可用的连接且连接数己达上限，则按先来先得的顺序阻塞等待，
+	 * 直到其它线程释放连接。
 	 * 
-	 * @return 返回一个可用的数据库连接对象
+	 * @return 返回一个可用的数据库连接对象，连接池还没创建时返回 null
 	 */
-
-	public synchronized TASQLiteDatabase getSQLiteDatabase()
+	public TASQLiteDatabase getSQLiteDatabase()
 	{
-		// 确保连接池己被创建
-		if (pSQLiteDatabases == null)
+		Lane lane = readLane;
+		if (lane == null)
 		{
 			return null; // 连接池还没创建，则返回 null
 		}
-
-		TASQLiteDatabase sqliteDatabase = getFreeSQLiteDatabase(); // 获得一个可用的数据库连接
-
-		// 如果目前没有可以使用的连接，即所有的连接都在使用中
-		while (sqliteDatabase == null)
-		{
-			// 等一会再试
-			wait(250);
-			sqliteDatabase = getFreeSQLiteDatabase(); // 重新再试，直到获得可用的连接，如果
-			// getFreeConnection() 返回的为 null
-			// 则表明创建一批连接后也不可获得可用连接
-		}
-		return sqliteDatabase;// 返回获得的可用的连接
+		return lane.acquire(-1);
 	}
 
 	/**
-	 * 本函数从连接池向量 pSQLiteDatabases 中返回一个可用的的数据库连接，如果 当前没有可用的数据库连接，本函数则根据
-	 * incrementalSQLiteDatabase 设置 的值创建几个数据库连接，并放入连接池中。 如果创建后，所有的连接仍都在使用中，则返回
-	 * null
+	 * 从共享通道返回一个可用的数据库连接，最多等待给定的时间。
 	 * 
-	 * @return 返回一个可用的数据库连接
+	 * @param timeout
+	 *            最长等待时间
+	 * @param unit
+	 *            时间单位
+	 * @return 返回一个可用的数据库连接对象，超时或连接池还没创建时返回 null
 	 */
-
-	private TASQLiteDatabase getFreeSQLiteDatabase()
+	public TASQLiteDatabase getSQLiteDatabase(long timeout, TimeUnit unit)
 	{
-		// 从连接池中获得一个可用的数据库连接
-		TASQLiteDatabase sqLiteDatabase = findFreeSQLiteDatabase();
-		if (sqLiteDatabase == null)
+		Lane lane = readLane;
+		if (lane == null)
 		{
-			// 如果目前连接池中没有可用的连接
-			// 创建一些连接
-			createSQLiteDatabase(incrementalSQLiteDatabase);
-			// 重新从池中查找是否有可用连接
-			sqLiteDatabase = findFreeSQLiteDatabase();
-			if (sqLiteDatabase == null)
-			{
-				// 如果创建连接后仍获得不到可用的连接，则返回 null
-				return null;
-			}
+			return null;
 		}
-		return sqLiteDatabase;
+		return lane.acquire(unit.toNanos(timeout));
 	}
 
 	/**
-	 * 查找连接池中所有的连接，查找一个可用的数据库连接， 如果没有可用的连接，返回 null
+	 * 返回写通道上唯一的读写连接，如果它正被其它线程使用，则按先来先得的顺序一直等待。 用完后同样通过
+	 * {@link #releaseSQLiteDatabase(TASQLiteDatabase)} 归还。
 	 * 
-	 * @return 返回一个可用的数据库连接
+	 * @return 返回写连接，连接池还没创建时返回 null
 	 */
-
-	private TASQLiteDatabase findFreeSQLiteDatabase()
+	public TASQLiteDatabase getWritableSQLiteDatabase()
 	{
-		TASQLiteDatabase sqliteDatabase = null;
-		PooledSQLiteDatabase pSQLiteDatabase = null;
-
-		// 获得连接池向量中所有的对象
-		Enumeration<PooledSQLiteDatabase> enumerate = pSQLiteDatabases
-				.elements();
+		return getWritableSQLiteDatabase(-1, TimeUnit.MILLISECONDS);
+	}
 
-		// 遍历所有的对象，看是否有可用的连接
-		while (enumerate.hasMoreElements())
+	/**
+	 * 返回写通道上唯一的读写连接，如果它正被其它线程使用，则最多等待给定的时间。 用完后同样通过
+	 * {@link #releaseSQLiteDatabase(TASQLiteDatabase)} 归还。
+	 * 
+	 * @param timeout
+	 *            最长等待时间，小于 0 表示一直等待
+	 * @param unit
+	 *            时间单位
+	 * @return 返回写连接，超时或连接池还没创建时返回 null
+	 */
+	public TASQLiteDatabase getWritableSQLiteDatabase(long timeout,
+			TimeUnit unit)
+	{
+		Lane lane = writeLane;
+		if (lane == null)
 		{
-			pSQLiteDatabase = (PooledSQLiteDatabase) enumerate.nextElement();
-			if (!pSQLiteDatabase.isBusy())
-			{
-
-				// 如果此对象不忙，则获得它的数据库连接并把它设为忙
-				sqliteDatabase = pSQLiteDatabase.getSqliteDatabase();
-				pSQLiteDatabase.setBusy(true);
-				// 测试此连接是否可用
-				if (!testSQLiteDatabase(sqliteDatabase))
-				{
-					// 如果此连接不可再用了，则创建一个新的连接， // 并替换此不可用的连接对象，如果创建失败，返回 null
-					sqliteDatabase = newSQLiteDatabase();
-					pSQLiteDatabase.setSqliteDatabase(sqliteDatabase);
-				}
-				break;
-				// 己经找到一个可用的连接，退出
-			}
+			return null;
 		}
-		return sqliteDatabase;// 返回找到到的可用连接
+		return lane.acquire(timeout < 0 ? -1 : unit.toNanos(timeout));
 	}
 
 	/**
@@ -407,31 +358,17 @@ public class TASQLiteDatabasePool
 
 	public void releaseSQLiteDatabase(TASQLiteDatabase sqLiteDatabase)
 	{
-		// 确保连接池存在，如果连接没有创建（不存在），直接返回
-		if (pSQLiteDatabases == null)
+		if (sqLiteDatabase == null)
 		{
-			TALogger.d(TASQLiteDatabasePool.this, " 连接池不存在，无法返回此连接到连接池中 !");
 			return;
 		}
-		PooledSQLiteDatabase pSqLiteDatabase = null;
-
-		Enumeration<PooledSQLiteDatabase> enumerate = pSQLiteDatabases
-				.elements();
-
-		// 遍历连接池中的所有连接，找到这个要返回的连接对象
-		while (enumerate.hasMoreElements())
+		Lane lane = busySQLiteDatabases.remove(sqLiteDatabase);
+		if (lane == null)
 		{
-			pSqLiteDatabase = (PooledSQLiteDatabase) enumerate.nextElement();
-
-			// 先找到连接池中的要返回的连接对象
-			if (sqLiteDatabase == pSqLiteDatabase.getSqliteDatabase())
-			{
-
-				// 找到了 , 设置此连接为空闲状态
-				pSqLiteDatabase.setBusy(false);
-				break;
-			}
+			TALogger.d(TASQLiteDatabasePool.this, " 此连接不属于连接池，无法返回此连接到连接池中 !");
+			return;
 		}
+		lane.release(sqLiteDatabase);
 	}
 
 	/**
@@ -441,34 +378,14 @@ public class TASQLiteDatabasePool
 
 	public synchronized void refreshSQLiteDatabase()
 	{
-
 		// 确保连接池己创新存在
-		if (pSQLiteDatabases == null)
+		if (readLane == null)
 		{
 			TALogger.d(TASQLiteDatabasePool.this, " 连接池不存在，无法刷新 !");
 			return;
 		}
-
-		PooledSQLiteDatabase pSqLiteDatabase = null;
-		Enumeration<PooledSQLiteDatabase> enumerate = pSQLiteDatabases
-				.elements();
-		while (enumerate.hasMoreElements())
-		{
-
-			// 获得一个连接对象
-			pSqLiteDatabase = (PooledSQLiteDatabase) enumerate.nextElement();
-
-			// 如果对象忙则等 5 秒 ,5 秒后直接刷新
-			if (pSqLiteDatabase.isBusy())
-			{
-				wait(5000); // 等 5 秒
-			}
-
-			// 关闭此连接，用一个新的连接代替它。
-			closeSQLiteDatabase(pSqLiteDatabase.getSqliteDatabase());
-			pSqLiteDatabase.setSqliteDatabase(newSQLiteDatabase());
-			pSqLiteDatabase.setBusy(false);
-		}
+		readLane.refresh();
+		writeLane.refresh();
 	}
 
 	/**
@@ -477,33 +394,19 @@ public class TASQLiteDatabasePool
 
 	public synchronized void closeSQLiteDatabase()
 	{
-
 		// 确保连接池存在，如果不存在，返回
-		if (pSQLiteDatabases == null)
+		if (readLane == null)
 		{
 			TALogger.d(TASQLiteDatabasePool.this, "连接池不存在，无法关闭 !");
 			return;
 		}
-		PooledSQLiteDatabase pSqLiteDatabase = null;
-		Enumeration<PooledSQLiteDatabase> enumerate = pSQLiteDatabases
-				.elements();
-		while (enumerate.hasMoreElements())
-		{
-			// 获得一个连接对象
-			pSqLiteDatabase = (PooledSQLiteDatabase) enumerate.nextElement();
-
-			// 如果忙，等 5 秒
-			if (pSqLiteDatabase.isBusy())
-			{
-				wait(5000); // 等 5 秒
-			}
-			// 5 秒后直接关闭它
-			closeSQLiteDatabase(pSqLiteDatabase.getSqliteDatabase());
-			// 从连接池向量中删除它
-			pSQLiteDatabases.removeElement(pSqLiteDatabase);
-		}
-		// 置连接池为空
-		pSQLiteDatabases = null;
+		Lane lane = readLane;
+		Lane writer = writeLane;
+		// 置连接池为空，之后的获取请求直接返回 null
+		readLane = null;
+		writeLane = null;
+		lane.close();
+		writer.close();
 	}
 
 	/**
@@ -518,58 +421,283 @@ public class TASQLiteDatabasePool
 	}
 
 	/**
-	 * 使程序等待给定的毫秒数
+	 * 获取连接池的运行统计
 	 * 
-	 * @param 给定的毫秒数
+	 * @return 连接池统计信息
 	 */
+	public TAPoolMetrics getMetrics()
+	{
+		return metrics;
+	}
 
-	private void wait(int mSeconds)
+	/**
+	 * 一个连接通道：用公平信号量限制同时借出的连接数，空闲连接放在队列里复用。
+	 * 许可数等于通道容量，连接总是先放回空闲队列再释放许可；所有新建连接都先通过 reserve() 占用容量，
+	 * 所以连接总数不会超过容量。
+	 */
+	private class Lane
 	{
-		try
+		private final int capacity;
+		private final boolean writable;
+		private final Semaphore permits;
+		private final ConcurrentLinkedQueue<TASQLiteDatabase> idle = new ConcurrentLinkedQueue<TASQLiteDatabase>();
+		private final AtomicInteger total = new AtomicInteger();
+
+		Lane(int capacity, boolean writable)
 		{
-			Thread.sleep(mSeconds);
-		} catch (InterruptedException e)
+			this.capacity = capacity;
+			this.writable = writable;
+			this.permits = new Semaphore(capacity, true);
+		}
+
+		/**
+		 * 预先创建连接放入空闲队列
+		 */
+		void prepare(int count)
 		{
+			for (int x = 0; x < count; x++)
+			{
+				if (!reserve())
+				{
+					break;
+				}
+				try
+				{
+					idle.offer(newSQLiteDatabase(writable));
+				} catch (Exception e)
+				{
+					total.decrementAndGet();
+					TALogger.i(TASQLiteDatabasePool.this,
+							" 创建数据库连接失败！ " + e.getMessage());
+				}
+			}
+		}
+
+		/**
+		 * @param timeoutNanos
+		 *            小于 0 表示一直等待
+		 */
+		TASQLiteDatabase acquire(long timeoutNanos)
+		{
+			long start = System.nanoTime();
+			boolean acquired;
+			if (timeoutNanos < 0)
+			{
+				permits.acquireUninterruptibly();
+				acquired = true;
+			} else
+			{
+				try
+				{
+					acquired = permits.tryAcquire(timeoutNanos,
+							TimeUnit.NANOSECONDS);
+				} catch (InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					acquired = false;
+				}
+			}
+			metrics.recordWait(System.nanoTime() - start);
+			if (!acquired)
+			{
+				metrics.timeoutCount.incrementAndGet();
+				return null;
+			}
+
+			TASQLiteDatabase sqliteDatabase;
+			try
+			{
+				sqliteDatabase = idle.poll();
+				if (sqliteDatabase != null
+						&& !testSQLiteDatabase(sqliteDatabase))
+				{
+					// 如果此连接不可再用了，则创建一个新的连接替换它
+					sqliteDatabase = newSQLiteDatabase(writable);
+				} else if (sqliteDatabase == null)
+				{
+					sqliteDatabase = create();
+				}
+			} catch (RuntimeException e)
+			{
+				permits.release();
+				throw e;
+			}
+			busySQLiteDatabases.put(sqliteDatabase, this);
+			metrics.inUseCount.incrementAndGet();
+			return sqliteDatabase;
+		}
+
+		/**
+		 * 持有许可而空闲队列为空时新建一个连接。容量被其它线程正在预热的连接占满时，等它们放入空闲队列后直接使用。
+		 */
+		private TASQLiteDatabase create()
+		{
+			while (!reserve())
+			{
+				TASQLiteDatabase sqliteDatabase = idle.poll();
+				if (sqliteDatabase != null)
+				{
+					return sqliteDatabase;
+				}
+				Thread.yield();
+			}
+			TASQLiteDatabase sqliteDatabase;
+			try
+			{
+				sqliteDatabase = newSQLiteDatabase(writable);
+			} catch (RuntimeException e)
+			{
+				total.decrementAndGet();
+				throw e;
+			}
+			// 按 incrementalSQLiteDatabase 预热几个空闲连接，供后续请求直接使用
+			prepare(incrementalSQLiteDatabase - 1);
+			return sqliteDatabase;
+		}
+
+		void release(TASQLiteDatabase sqliteDatabase)
+		{
+			metrics.inUseCount.decrementAndGet();
+			idle.offer(sqliteDatabase);
+			permits.release();
+		}
+
+		private boolean reserve()
+		{
+			while (true)
+			{
+				int current = total.get();
+				if (current >= capacity)
+				{
+					return false;
+				}
+				if (total.compareAndSet(current, current + 1))
+				{
+					return true;
+				}
+			}
+		}
+
+		/**
+		 * 等待借出的连接归还（最多 5 秒），然后关闭全部空闲连接。
+		 * 
+		 * @return 是否拿到了全部许可
+		 */
+		private boolean drain()
+		{
+			boolean all = false;
+			try
+			{
+				all = permits.tryAcquire(capacity, 5000, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+			}
+			TASQLiteDatabase sqliteDatabase;
+			while ((sqliteDatabase = idle.poll()) != null)
+			{
+				closeSQLiteDatabase(sqliteDatabase);
+				total.decrementAndGet();
+			}
+			return all;
+		}
+
+		void refresh()
+		{
+			boolean all = drain();
+			prepare(Math.min(initialSQLiteDatabase, capacity));
+			if (all)
+			{
+				permits.release(capacity);
+			}
+		}
+
+		void close()
+		{
+			drain();
+			// 5 秒后仍未归还的连接直接关闭
+			for (Map.Entry<TASQLiteDatabase, Lane> entry : busySQLiteDatabases
+					.entrySet())
+			{
+				if (entry.getValue() == this)
+				{
+					busySQLiteDatabases.remove(entry.getKey());
+					closeSQLiteDatabase(entry.getKey());
+				}
+			}
 		}
 	}
 
 	/**
-	 * 内部使用的用于保存连接池中连接对象的类 此类中有两个成员，一个是数据库的连接，另一个是指示此连接是否 正在使用的标志。
+	 * 连接池统计信息：等待时间分布、正在使用的连接数、新建连接数和超时次数。
 	 */
-
-	class PooledSQLiteDatabase
+	public static class TAPoolMetrics
 	{
-		TASQLiteDatabase sqliteDatabase = null;// 数据库连接
-		boolean busy = false; // 此连接是否正在使用的标志，默认没有正在使用
+		/** 等待时间直方图各个桶的上界（毫秒），最后一个桶收集其余所有等待 */
+		public static final long[] WAIT_BUCKET_BOUNDS_MS = { 1, 5, 20, 100,
+				500 };
+		private final AtomicLongArray waitBuckets = new AtomicLongArray(
+				WAIT_BUCKET_BOUNDS_MS.length + 1);
+		private final AtomicInteger inUseCount = new AtomicInteger();
+		private final AtomicInteger creationCount = new AtomicInteger();
+		private final AtomicInteger timeoutCount = new AtomicInteger();
+
+		void recordWait(long nanos)
+		{
+			long millis = TimeUnit.NANOSECONDS.toMillis(nanos);
+			int bucket = 0;
+			while (bucket < WAIT_BUCKET_BOUNDS_MS.length
+					&& millis >= WAIT_BUCKET_BOUNDS_MS[bucket])
+			{
+				bucket++;
+			}
+			waitBuckets.incrementAndGet(bucket);
+		}
 
-		// 构造函数，根据一个 TASQLiteDatabase 构告一个 PooledSQLiteDatabase 对象
-		public PooledSQLiteDatabase(TASQLiteDatabase sqliteDatabase)
+		/**
+		 * 返回等待时间直方图的副本，第 i 个元素是等待时间小于 WAIT_BUCKET_BOUNDS_MS[i] 的获取次数
+		 */
+		public long[] getWaitHistogram()
 		{
-			this.sqliteDatabase = sqliteDatabase;
+			long[] copy = new long[waitBuckets.length()];
+			for (int i = 0; i < copy.length; i++)
+			{
+				copy[i] = waitBuckets.get(i);
+			}
+			return copy;
 		}
 
-		// 返回此对象中的连接
-		public TASQLiteDatabase getSqliteDatabase()
+		public int getInUseCount()
 		{
-			return sqliteDatabase;
+			return inUseCount.get();
 		}
 
-		// 设置此对象的，连接
-		public void setSqliteDatabase(TASQLiteDatabase sqliteDatabase)
+		public int getCreationCount()
 		{
-			this.sqliteDatabase = sqliteDatabase;
+			return creationCount.get();
 		}
 
-		// 获得对象连接是否忙
-		public boolean isBusy()
+		public int getTimeoutCount()
 		{
-			return busy;
+			return timeoutCount.get();
 		}
 
-		// 设置对象的连接正在忙
-		public void setBusy(boolean busy)
+		@Override
+		public String toString()
 		{
-			this.busy = busy;
+			StringBuilder builder = new StringBuilder("TAPoolMetrics[inUse=")
+					.append(inUseCount.get()).append(",created=")
+					.append(creationCount.get()).append(",timeouts=")
+					.append(timeoutCount.get()).append(",wait=");
+			long[] histogram = getWaitHistogram();
+			for (int i = 0; i < histogram.length; i++)
+			{
+				builder.append(i < WAIT_BUCKET_BOUNDS_MS.length ? "<"
+						+ WAIT_BUCKET_BOUNDS_MS[i] + "ms:" : ">=500ms:");
+				builder.append(histogram[i]);
+				builder.append(i < histogram.length - 1 ? "," : "]");
+			}
+			return builder.toString();
 		}
 	}
 }
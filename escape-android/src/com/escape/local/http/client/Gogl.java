@@ -2,9 +2,6 @@ package com.escape.local.http.client;
 
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
-import java.net.Socket;
-
-import javax.net.ssl.SSLSocketFactory;
 
 import org.apache.http.ConnectionReuseStrategy;
 import org.apache.http.Header;
@@ -20,9 +17,9 @@ import org.apache.http.HttpVersion;
 import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
-import org.apache.http.impl.DefaultHttpClientConnection;
 import org.apache.http.message.BasicHttpEntityEnclosingRequest;
 import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.HttpConnectionParams;
 import org.apache.http.params.HttpParams;
 import org.apache.http.params.HttpProtocolParams;
 import org.apache.http.protocol.BasicHttpContext;
@@ -41,6 +38,7 @@ import org.apache.http.util.EntityUtils;
 
 import android.util.Log;
 
+import com.escape.local.http.client.GoglConnectionPool.RelayConnection;
 import com.escape.message.PackageRequest;
 import com.escape.message.PackageResponse;
 import com.smartapp.escapeandroid.nativeutil.NativeUtil;
@@ -51,17 +49,23 @@ public class Gogl {
     // private HttpParams mDirectParams;
     private HttpProcessor mHttpproc;
     private HttpRequestExecutor mHttpexecutor;
-    private HttpContext mClientContext;// 这个是作为client的context，要跟作为服务器的context区分开
     // private HttpContext mDirectClientContext;
     private HttpHost mHost;
-    // 每一个Gogl对象都维护一个GAEConn长连接,GAEConn维护着一个连接到GAE的socket连接
-    private DefaultHttpClientConnection mGAEConn;
+    // 到GAE的长连接由所有Gogl对象共用的连接池维护，每个请求从池里借一个连接，用完归还
+    private final GoglConnectionPool mPool;
     private ConnectionReuseStrategy mConnStrategy;
-    private SSLSocketFactory mFactory;
+
+    // 从连接池取连接的最长等待时间
+    private static final long ACQUIRE_TIMEOUT = 30 * 1000;
 
 	private String mAppId = NativeUtil.getRandomAppId();
 
     public Gogl() {
+	this(GoglConnectionPool.getInstance());
+    }
+
+    public Gogl(GoglConnectionPool pool) {
+	mPool = pool;
 	init();
     }
 
@@ -71,6 +75,9 @@ public class Gogl {
 	HttpProtocolParams.setVersion(mParams, HttpVersion.HTTP_1_1);
 	HttpProtocolParams.setContentCharset(mParams, "UTF-8");
 	HttpProtocolParams.setUserAgent(mParams, "HttpComponents/1.1");
+	// bind时会用这里的超时覆盖socket上的设置，池里的连接要有读超时
+	HttpConnectionParams.setSoTimeout(mParams, GoglHelper.SO_TIMEOUT);
+	HttpConnectionParams.setTcpNoDelay(mParams, true);
 	// HttpProtocolParams.setUseExpectContinue(mParams, true);
 
 	mHttpproc = new ImmutableHttpProcessor(new HttpRequestInterceptor[] {
@@ -80,20 +87,27 @@ public class Gogl {
 		new RequestConnControl(), new RequestUserAgent(), new RequestExpectContinue() });
 
 	mHttpexecutor = new HttpRequestExecutor();
-	mClientContext = new BasicHttpContext(null);
 	// mDirectClientContext = new BasicHttpContext(null);
 //	 mHost = new HttpHost("sx20100708.appspot.com");
 	mHost = new HttpHost(mAppId + ".appspot.com");
 	// mHost = new HttpHost("localhost", 8888);
-	mGAEConn = new DefaultHttpClientConnection();
 	mConnStrategy = new DefaultConnectionReuseStrategy();
-	mFactory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+    }
 
-	mClientContext.setAttribute(ExecutionContext.HTTP_CONNECTION, mGAEConn);
-	mClientContext.setAttribute(ExecutionContext.HTTP_TARGET_HOST, mHost);
+    // 这个是作为client的context，要跟作为服务器的context区分开
+    private HttpContext createClientContext(RelayConnection conn) {
+	HttpContext context = new BasicHttpContext(null);
+	context.setAttribute(ExecutionContext.HTTP_CONNECTION, conn);
+	context.setAttribute(ExecutionContext.HTTP_TARGET_HOST, mHost);
+	return context;
+    }
 
-	// mDirectClientContext.setAttribute(ExecutionContext.HTTP_CONNECTION,
-	// mGAEConn);
+    private BasicHttpEntityEnclosingRequest createFetchRequest(byte[] packet) {
+	BasicHttpEntityEnclosingRequest gRequest = new BasicHttpEntityEnclosingRequest("POST", "/fetch");
+	gRequest.setEntity(new ByteArrayEntity(packet));
+	gRequest.setParams(mParams);
+	// 不再设置Connection: close，连接用完放回连接池
+	return gRequest;
     }
 
     private void setError(HttpResponse response, String message) {
@@ -201,143 +215,65 @@ public class Gogl {
 	    System.err.println("rangefetch end 5");
 	    return true;
 	}
-	int failed = 0;
-	while (start < end) {
-			Log.e("Test", "rangefetch loop url = " + packReq.getUri());
-	    System.err.println("start = " + start + "  end = " + end);
-	    if (failed > 8) {
-		System.err.println("rangefetch end 6");
-		return true;
-	    }
-	    long tail = start + partSize - 1;
-	    if (tail > end - 1) {
-		tail = end - 1;
-	    }
-	    packReq.setHeader(HttpHeaders.RANGE, "bytes=" + start + "-" + tail);
-	    System.err.println(HttpHeaders.RANGE + ":" + packReq.getFirstHeader(HttpHeaders.RANGE).getValue());
-	    PackageResponse packResp_ = fetch(packReq);
-	    if (packResp_ == null || packResp_.getResponseCode() >= 400 || packResp_.isError()) {
-		failed++;
-		if (packResp_ == null) {
-		    System.out.println("packResp_ == null");
-		} else if (packResp_.getResponseCode() >= 400) {
-		    System.out.println("packResp_.getResponseCode() = " + packResp_.getResponseCode());
-		} else if (packResp_.isError()) {
-		    System.out.println("packResp_.isError()");
-		}
-//		try {
-//		    Thread.sleep(1000);
-//		} catch (InterruptedException e) {
-//		    e.printStackTrace();
-//		}
-		continue;
-	    }
-	    if (packResp_.getResponseCode() == 302 && packResp_.containsHeader(HttpHeaders.LOCATION)) {
-		System.err.println("getResponseCode() == 302  location = " + packResp_.getFirstHeader(HttpHeaders.LOCATION).getValue());
-		packReq.setUri(packResp_.getFirstHeader(HttpHeaders.LOCATION).getValue());
-		continue;
-	    }
-	    int[] tm = packResp_.parseContentRange();
-	    if (tm == null || tm[0] != start) {
-		System.err.println("tm == null || tm[0] != start");
-		failed++;
-		continue;
-	    }
-	    System.err.println(HttpHeaders.CONTENT_RANGE + ":" + packResp_.getFirstHeader(HttpHeaders.CONTENT_RANGE).getValue());
-	    start = tm[1] + 1;
-	    failed = 0;
-	    try {
-		byte[] content = packResp_.getEnity();
-		if (content != null) {
-		    response.setEntity(new ByteArrayEntity(content));
-		    conn.sendResponseEntity(response);
-		    conn.flush();
-		}
-	    } catch (HttpException e) {
-		// TODO 这里有exception怎么办？其他地方的exception处理恰当吗？
-		e.printStackTrace();
-		System.err.println("rangefetch end 9");
-		return true;
-	    } catch (IOException e) {
-		// TODO 这里有exception怎么办？其他地方的exception处理恰当吗？
-		e.printStackTrace();
-		System.err.println("rangefetch end 10");
-		return true;
-	    }
+	// 剩下的部分分段并发取回，按顺序写给浏览器
+	// 最多用一半的池连接，大文件下载时其它请求仍然有连接可用
+	int concurrency = Math.min(GoglRangeFetcher.MAX_CONCURRENCY, mPool.getMaxConnections() / 2);
+	GoglRangeFetcher fetcher = new GoglRangeFetcher(this, packReq, start, end, partSize, concurrency);
+	if (!fetcher.transfer(conn, response)) {
+	    System.err.println("rangefetch end 6");
+	    return true;
 	}
 	System.err.println("rangefetch end normally");
 	return true;
     }
 
     private PackageResponse _fetch(PackageRequest packReq, String fetchhost, String fetchserver) {
-	if (!mGAEConn.isOpen()) {
-	    Socket socket;
-	    try {
-		socket = GoglHelper.getAnSSLSocket(mFactory);
-//		 socket = GoglHelper.getASocket();
-		mGAEConn.bind(socket, mParams);
-	    } catch (IOException e) {
-		e.printStackTrace();
-		return null;
-	    }
-	}
 	byte[] packet = packReq.packaged();
 	if (packet == null) {
 	    return null;
 	}
-	BasicHttpEntityEnclosingRequest gRequest = new BasicHttpEntityEnclosingRequest("POST", "/fetch");
-	gRequest.setEntity(new ByteArrayEntity(packet));
-	gRequest.setParams(mParams);
-	gRequest.setHeader(HttpHeaders.CONNECTION, HTTP.CONN_CLOSE);
-
-	HttpResponse gResponse = null;
+	GoglMetrics.Timing timing = new GoglMetrics.Timing();
+	RelayConnection conn = null;
+	boolean reusable = false;
+	PackageResponse ret = null;
 	try {
-	    mHttpexecutor.preProcess(gRequest, mHttpproc, mClientContext);
-	     System.err.println("$$$Gogl request$$$ " + gRequest.toString()
-	     + "\n");
-	    long t1 = System.currentTimeMillis();
-	    gResponse = mHttpexecutor.execute(gRequest, mGAEConn, mClientContext);
-	    long t2 = System.currentTimeMillis();
-	    System.err.println("从服务器拿数据的时间:<<" + ">>"
-	    + (t2 - t1) + "ms");
+	    conn = mPool.acquire(mParams, ACQUIRE_TIMEOUT);
+	    timing.mark(GoglMetrics.Timing.ACQUIRE);
+	    HttpContext context = createClientContext(conn);
+	    BasicHttpEntityEnclosingRequest gRequest = createFetchRequest(packet);
+	    mHttpexecutor.preProcess(gRequest, mHttpproc, context);
+	    HttpResponse gResponse = mHttpexecutor.execute(gRequest, conn, context);
+	    conn.onRequestSent();
 	    gResponse.setParams(mParams);
-	    long x1 = System.currentTimeMillis();
-	    mHttpexecutor.postProcess(gResponse, mHttpproc, mClientContext);
-	    long x2 = System.currentTimeMillis();
-	    System.out.println("postProcess 耗时" + (x2 - x1) + "ms");
+	    mHttpexecutor.postProcess(gResponse, mHttpproc, context);
+	    timing.mark(GoglMetrics.Timing.EXECUTE);
 
 	    HttpEntity entity = gResponse.getEntity();
-	    byte[] result = EntityUtils.toByteArray(entity);
-	    long t3 = System.currentTimeMillis();
-	    System.out.println("gResponse.getEntity耗时" + (t3 - t2) + "ms");
-	    
-	    if (!mConnStrategy.keepAlive(gResponse, mClientContext) || !mGAEConn.isOpen() || !mGAEConn.isStale()) {
-		try {
-		    mGAEConn.close();
-		} catch (IOException e) {
-		    e.printStackTrace();
-		}
-	    }
+	    byte[] result = entity == null ? null : EntityUtils.toByteArray(entity);
+	    timing.setBytes(result == null ? 0 : result.length);
+	    timing.mark(GoglMetrics.Timing.READ);
+	    // 响应体已经读完，服务器允许keep-alive的话连接可以放回池里
+	    reusable = mConnStrategy.keepAlive(gResponse, context);
+
 	    // byte[] content = MessageHelper.decompress(result);
-	    byte[] content = result;
-	    PackageResponse ret = PackageResponse.getInstance(content);
-	    if (ret != null) {
-		// System.err.println(ret.getMsg());
+	    if (result != null) {
+		ret = PackageResponse.getInstance(result);
 	    }
-	    long t4 = System.currentTimeMillis();
-	    System.out.println("PackageResponse.getInstance耗时" + (t4 - t3) + "ms");
-	    return ret;
+	    timing.mark(GoglMetrics.Timing.PARSE);
 	} catch (HttpException e) {
 	    e.printStackTrace();
 	} catch (IOException e) {
 	    e.printStackTrace();
 	} catch (Throwable e) {
 	    e.printStackTrace();
+	} finally {
+	    mPool.release(conn, reusable);
+	    mPool.getMetrics().record(packReq.getUri(), timing, ret != null);
 	}
-	return null;
+	return ret;
     }
 
-    private PackageResponse fetch(PackageRequest packReq) {
+    PackageResponse fetch(PackageRequest packReq) {
 	String fetchhost = mAppId + ".appspot.com";
 	String fetchserver = "http://" + fetchhost + "/fetch";
 	return _fetch(packReq, fetchhost, fetchserver);
@@ -385,13 +321,7 @@ public class Gogl {
     }
 
     public void close() {
-	// TODO 这里为什么没有被调用
-	if (mGAEConn != null && mGAEConn.isOpen()) {
-	    try {
-		mGAEConn.close();
-	    } catch (IOException e) {
-		e.printStackTrace();
-	    }
-	}
+	// 连接由GoglConnectionPool管理，空闲太久的连接在下次取用时关闭，这里只清理过期连接
+	mPool.closeExpired();
     }
 }
@@ -0,0 +1,231 @@
+package com.escape.local.http.client;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.apache.http.impl.DefaultHttpClientConnection;
+import org.apache.http.params.HttpParams;
+
+import com.smartapp.escapeandroid.nativeutil.NativeUtil;
+
+/**
+ * 到GAE中转服务器的长连接池。
+ * <p>
+ * 以前每个Gogl对象各自维护一个连接，而Gogl又是每个请求new一个，所以每个请求都要重新做一次TCP+TLS握手。
+ * 这里所有Gogl共用一组keep-alive连接：空闲连接按后进先出复用，超过空闲时间或已经stale的连接在取用时丢弃；
+ * 所有socket都从同一个SSLContext创建，握手时可以复用TLS session。
+ */
+public class GoglConnectionPool {
+    public static final int DEFAULT_MAX_CONNECTIONS = 4;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000;
+    private static final int SSL_SESSION_TIMEOUT = 10 * 60;
+
+    private static GoglConnectionPool sInstance;
+
+    private final Semaphore mPermits;
+    private final LinkedList<RelayConnection> mIdle = new LinkedList<RelayConnection>();
+    private final int mMaxConnections;
+    private final long mIdleTimeout;
+    private final SSLSocketFactory mFactory;
+    private final GoglMetrics mMetrics = new GoglMetrics();
+    private volatile boolean mShutdown = false;
+
+    public GoglConnectionPool(int maxConnections, long idleTimeout) {
+	if (maxConnections < 1) {
+	    throw new IllegalArgumentException("maxConnections < 1");
+	}
+	mMaxConnections = maxConnections;
+	mIdleTimeout = idleTimeout;
+	mPermits = new Semaphore(maxConnections, true);
+	mFactory = createSocketFactory();
+    }
+
+    public static synchronized GoglConnectionPool getInstance() {
+	if (sInstance == null) {
+	    sInstance = new GoglConnectionPool(DEFAULT_MAX_CONNECTIONS, DEFAULT_IDLE_TIMEOUT);
+	}
+	return sInstance;
+    }
+
+    private static SSLSocketFactory createSocketFactory() {
+	try {
+	    SSLContext context = SSLContext.getInstance("TLS");
+	    context.init(null, null, null);
+	    // 同一个SSLContext创建的socket共用客户端session缓存，重连时走简短握手
+	    context.getClientSessionContext().setSessionTimeout(SSL_SESSION_TIMEOUT);
+	    return context.getSocketFactory();
+	} catch (Exception e) {
+	    e.printStackTrace();
+	    return (SSLSocketFactory) SSLSocketFactory.getDefault();
+	}
+    }
+
+    public int getMaxConnections() {
+	return mMaxConnections;
+    }
+
+    public long getIdleTimeout() {
+	return mIdleTimeout;
+    }
+
+    public GoglMetrics getMetrics() {
+	return mMetrics;
+    }
+
+    /**
+     * 取一个连接，没有可复用的空闲连接时新建一个
+     *
+     * @param params
+     *            新建连接时bind用的参数
+     * @param timeout
+     *            等待连接的最长时间，单位毫秒
+     */
+    public RelayConnection acquire(HttpParams params, long timeout) throws IOException {
+	if (mShutdown) {
+	    throw new IOException("GoglConnectionPool is shut down");
+	}
+	try {
+	    if (!mPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+		mMetrics.onAcquireTimeout();
+		throw new IOException("Timeout waiting for relay connection");
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new IOException("Interrupted waiting for relay connection");
+	}
+	boolean success = false;
+	try {
+	    RelayConnection conn = pollIdle();
+	    if (conn == null) {
+		conn = open(params);
+	    } else {
+		mMetrics.onConnectionReused();
+	    }
+	    success = true;
+	    return conn;
+	} finally {
+	    if (!success) {
+		mPermits.release();
+	    }
+	}
+    }
+
+    /**
+     * 归还连接
+     *
+     * @param reusable
+     *            响应是否允许keep-alive并且已经被完整读取，否则直接关闭
+     */
+    public void release(RelayConnection conn, boolean reusable) {
+	if (conn == null) {
+	    return;
+	}
+	try {
+	    if (reusable && !mShutdown && conn.isOpen()) {
+		conn.mLastUsed = System.currentTimeMillis();
+		synchronized (mIdle) {
+		    mIdle.addFirst(conn);
+		}
+	    } else {
+		closeQuietly(conn);
+	    }
+	} finally {
+	    mPermits.release();
+	}
+    }
+
+    /**
+     * 关闭空闲时间超过idleTimeout的连接
+     */
+    public void closeExpired() {
+	long now = System.currentTimeMillis();
+	LinkedList<RelayConnection> expired = new LinkedList<RelayConnection>();
+	synchronized (mIdle) {
+	    Iterator<RelayConnection> it = mIdle.iterator();
+	    while (it.hasNext()) {
+		RelayConnection conn = it.next();
+		if (now - conn.mLastUsed > mIdleTimeout) {
+		    it.remove();
+		    expired.add(conn);
+		}
+	    }
+	}
+	for (RelayConnection conn : expired) {
+	    closeQuietly(conn);
+	}
+    }
+
+    public void shutdown() {
+	mShutdown = true;
+	LinkedList<RelayConnection> idle;
+	synchronized (mIdle) {
+	    idle = new LinkedList<RelayConnection>(mIdle);
+	    mIdle.clear();
+	}
+	for (RelayConnection conn : idle) {
+	    closeQuietly(conn);
+	}
+    }
+
+    private RelayConnection pollIdle() {
+	closeExpired();
+	while (true) {
+	    RelayConnection conn;
+	    synchronized (mIdle) {
+		conn = mIdle.poll();
+	    }
+	    if (conn == null) {
+		return null;
+	    }
+	    if (conn.isOpen() && !conn.isStale()) {
+		return conn;
+	    }
+	    closeQuietly(conn);
+	}
+    }
+
+    private RelayConnection open(HttpParams params) throws IOException {
+	long start = System.currentTimeMillis();
+	RelayConnection conn = new RelayConnection();
+	conn.bind(GoglHelper.getAnSSLSocket(mFactory, NativeUtil.getEngineIp(), 443), params);
+	mMetrics.onConnectionOpened(System.currentTimeMillis() - start);
+	return conn;
+    }
+
+    private void closeQuietly(RelayConnection conn) {
+	try {
+	    conn.close();
+	} catch (IOException e) {
+	    try {
+		conn.shutdown();
+	    } catch (IOException ignore) {
+	    }
+	}
+	mMetrics.onConnectionClosed();
+    }
+
+    /**
+     * 池中的连接，记录最后一次归还的时间
+     */
+    public static class RelayConnection extends DefaultHttpClientConnection {
+	private long mLastUsed;
+	private int mRequestCount;
+
+	/**
+	 * 这个连接已经发送过的请求数
+	 */
+	public int getRequestCount() {
+	    return mRequestCount;
+	}
+
+	void onRequestSent() {
+	    mRequestCount++;
+	}
+    }
+}
@@ -24,6 +24,8 @@ import com.smartapp.escapeandroid.nativeutil.NativeUtil;
 
 public class GoglHelper {
     public static final int RANGE_SIZE = 1024 * 1024;
+    public static final int CONNECT_TIMEOUT = 15000;
+    public static final int SO_TIMEOUT = 60000;
 
     public static final String RESPONSE_USED_UP = "response.useup";
     public static final String HTTP_SSL_HOST = "http.ssl.host";
@@ -138,6 +140,30 @@ public class GoglHelper {
 	}
     };
 
+    /**
+     * 先建立TCP连接再在上面套SSL，这样可以把对方的host和port交给SSLSocketFactory，
+     * 同一个factory对同一个host:port重连时能复用之前的TLS session，省掉完整握手
+     */
+    protected static SSLSocket getAnSSLSocket(SSLSocketFactory factory, String host, int port) throws IOException {
+	Socket plain = new Socket();
+	boolean success = false;
+	try {
+	    plain.setTcpNoDelay(true);
+	    plain.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+	    SSLSocket socket = (SSLSocket) factory.createSocket(plain, host, port, true);
+	    String[] sup = socket.getSupportedCipherSuites();
+	    socket.setEnabledCipherSuites(sup);
+	    socket.setSoTimeout(SO_TIMEOUT);
+	    socket.startHandshake();
+	    success = true;
+	    return socket;
+	} finally {
+	    if (!success) {
+		plain.close();
+	    }
+	}
+    }
+
     protected static SSLSocket getAnSSLSocket(SSLSocketFactory factory) throws IOException {
 	// TODO set timeout,look at the http server's timeout
 	SSLSocket socket = (SSLSocket) factory.createSocket();
@@ -160,7 +186,7 @@ public class GoglHelper {
 	// socket.addHandshakeCompletedListener(mHandshakeCompletedListener);
 	String[] sup = socket.getSupportedCipherSuites();
 	socket.setEnabledCipherSuites(sup);
-	socket.setSoTimeout(60000);
+	socket.setSoTimeout(SO_TIMEOUT);
 	return socket;
     }
 
@@ -0,0 +1,130 @@
+package com.escape.local.http.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.util.Log;
+
+/**
+ * 中转请求的计时统计，代替以前散落在_fetch里的System.err打印。
+ * <p>
+ * 每个请求分成四段计时：取连接、发送请求并等待响应头、读取响应体、解析PackageResponse。
+ * 单个请求的计时在DEBUG级别输出，累计值可以通过toString()查看。
+ */
+public class GoglMetrics {
+    private static final String TAG = "Gogl";
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mFailures = new AtomicLong();
+    private final AtomicLong mBytesReceived = new AtomicLong();
+    private final AtomicLong mAcquireTime = new AtomicLong();
+    private final AtomicLong mExecuteTime = new AtomicLong();
+    private final AtomicLong mReadTime = new AtomicLong();
+    private final AtomicLong mParseTime = new AtomicLong();
+
+    private final AtomicLong mConnectionsOpened = new AtomicLong();
+    private final AtomicLong mConnectionsReused = new AtomicLong();
+    private final AtomicLong mConnectionsClosed = new AtomicLong();
+    private final AtomicLong mConnectTime = new AtomicLong();
+    private final AtomicLong mAcquireTimeouts = new AtomicLong();
+
+    /**
+     * 一个请求的计时，各个阶段结束时调用mark
+     */
+    public static class Timing {
+	public static final int ACQUIRE = 0;
+	public static final int EXECUTE = 1;
+	public static final int READ = 2;
+	public static final int PARSE = 3;
+
+	private final long[] mElapsed = new long[4];
+	private long mLast = System.currentTimeMillis();
+	private long mBytes;
+
+	public void mark(int phase) {
+	    long now = System.currentTimeMillis();
+	    mElapsed[phase] += now - mLast;
+	    mLast = now;
+	}
+
+	public void setBytes(long bytes) {
+	    mBytes = bytes;
+	}
+
+	public long get(int phase) {
+	    return mElapsed[phase];
+	}
+
+	@Override
+	public String toString() {
+	    return "acquire=" + mElapsed[ACQUIRE] + "ms execute=" + mElapsed[EXECUTE] + "ms read=" + mElapsed[READ] + "ms parse="
+		    + mElapsed[PARSE] + "ms bytes=" + mBytes;
+	}
+    }
+
+    public void record(String uri, Timing timing, boolean success) {
+	mRequests.incrementAndGet();
+	if (!success) {
+	    mFailures.incrementAndGet();
+	}
+	mBytesReceived.addAndGet(timing.mBytes);
+	mAcquireTime.addAndGet(timing.mElapsed[Timing.ACQUIRE]);
+	mExecuteTime.addAndGet(timing.mElapsed[Timing.EXECUTE]);
+	mReadTime.addAndGet(timing.mElapsed[Timing.READ]);
+	mParseTime.addAndGet(timing.mElapsed[Timing.PARSE]);
+	if (Log.isLoggable(TAG, Log.DEBUG)) {
+	    Log.d(TAG, (success ? "fetch " : "fetch failed ") + uri + " " + timing);
+	}
+    }
+
+    void onConnectionOpened(long connectTime) {
+	mConnectionsOpened.incrementAndGet();
+	mConnectTime.addAndGet(connectTime);
+    }
+
+    void onConnectionReused() {
+	mConnectionsReused.incrementAndGet();
+    }
+
+    void onConnectionClosed() {
+	mConnectionsClosed.incrementAndGet();
+    }
+
+    void onAcquireTimeout() {
+	mAcquireTimeouts.incrementAndGet();
+    }
+
+    public long getRequestCount() {
+	return mRequests.get();
+    }
+
+    public long getFailureCount() {
+	return mFailures.get();
+    }
+
+    public long getConnectionsOpened() {
+	return mConnectionsOpened.get();
+    }
+
+    public long getConnectionsReused() {
+	return mConnectionsReused.get();
+    }
+
+    public long getBytesReceived() {
+	return mBytesReceived.get();
+    }
+
+    private static long average(AtomicLong total, long count) {
+	return count == 0 ? 0 : total.get() / count;
+    }
+
+    @Override
+    public String toString() {
+	long requests = mRequests.get();
+	long opened = mConnectionsOpened.get();
+	return "requests=" + requests + " failures=" + mFailures.get() + " bytes=" + mBytesReceived.get()
+		+ " avgAcquire=" + average(mAcquireTime, requests) + "ms avgExecute=" + average(mExecuteTime, requests) + "ms avgRead="
+		+ average(mReadTime, requests) + "ms avgParse=" + average(mParseTime, requests) + "ms connOpened=" + opened + " connReused="
+		+ mConnectionsReused.get() + " connClosed=" + mConnectionsClosed.get() + " avgConnect=" + average(mConnectTime, opened)
+		+ "ms acquireTimeouts=" + mAcquireTimeouts.get();
+    }
+}
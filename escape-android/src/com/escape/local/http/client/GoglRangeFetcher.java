@@ -0,0 +1,297 @@
+package com.escape.local.http.client;
+
+import java.io.IOException;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpServerConnection;
+import org.apache.http.entity.ByteArrayEntity;
+
+import android.util.Log;
+
+import com.escape.message.PackageRequest;
+import com.escape.message.PackageResponse;
+
+/**
+ * 大文件的分段并发下载。
+ * <p>
+ * 以前rangefetch一次只取一段，每段都要等一次完整的中转往返，大文件的速度被单个请求卡住。这里同时发出多个Range请求，
+ * 取回的分段按偏移排队，再按顺序写给浏览器：
+ * <ul>
+ * <li>分段大小根据实测的吞吐量调整，慢的时候分小一点，重试和排队的代价都小；</li>
+ * <li>已取回但还没写出去的数据不超过MAX_BUFFERED_BYTES，超过时工作线程等写出之后再取下一段，内存有上限；</li>
+ * <li>某一段只取回一部分时，剩下的部分重新排队；连续失败超过MAX_RETRIES次就放弃整个下载。</li>
+ * </ul>
+ */
+class GoglRangeFetcher {
+    private static final String TAG = "Gogl";
+
+    private static final long MIN_SEGMENT_SIZE = 128 * 1024;
+    private static final long MAX_SEGMENT_SIZE = GoglHelper.RANGE_SIZE;
+    private static final long SEGMENT_ALIGN = 64 * 1024;
+    // 希望每一段大约花多长时间取回，单位毫秒
+    private static final long TARGET_SEGMENT_TIME = 2000;
+    private static final long MAX_BUFFERED_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_RETRIES = 8;
+    // 一个下载最多同时占用的中转连接数，其余连接留给别的请求
+    static final int MAX_CONCURRENCY = 3;
+
+    private static final ExecutorService sExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+	private final AtomicInteger mCount = new AtomicInteger();
+
+	@Override
+	public Thread newThread(Runnable r) {
+	    Thread thread = new Thread(r, "GoglRangeFetcher #" + mCount.incrementAndGet());
+	    thread.setDaemon(true);
+	    return thread;
+	}
+    });
+
+    private final Gogl mGogl;
+    private final PackageRequest mTemplate;
+    private final long mEnd;
+    private final int mConcurrency;
+
+    private final Object mLock = new Object();
+    // 下一段新分段的起点
+    private long mNextOffset;
+    // 已经写给浏览器的位置
+    private long mWriteOffset;
+    private long mSegmentSize;
+    // 每毫秒字节数，指数平均
+    private double mThroughput = 0;
+    private int mActiveWorkers = 0;
+    private boolean mAborted = false;
+    private final HashMap<Long, byte[]> mCompleted = new HashMap<Long, byte[]>();
+    private final PriorityQueue<Segment> mPending = new PriorityQueue<Segment>(8, new Comparator<Segment>() {
+	@Override
+	public int compare(Segment lhs, Segment rhs) {
+	    return lhs.start < rhs.start ? -1 : (lhs.start == rhs.start ? 0 : 1);
+	}
+    });
+
+    private static class Segment {
+	final long start;
+	// 包含
+	final long tail;
+
+	Segment(long start, long tail) {
+	    this.start = start;
+	    this.tail = tail;
+	}
+    }
+
+    /**
+     * @param template
+     *            原始请求，每一段会复制一份再设置Range头
+     * @param start
+     *            第一个还没有取回的字节
+     * @param end
+     *            文件长度，即不包含的结束位置
+     * @param initialSegmentSize
+     *            第一批分段的大小，一般是第一次响应的长度
+     */
+    GoglRangeFetcher(Gogl gogl, PackageRequest template, long start, long end, long initialSegmentSize, int concurrency) {
+	mGogl = gogl;
+	mTemplate = template;
+	mEnd = end;
+	mNextOffset = start;
+	mWriteOffset = start;
+	mSegmentSize = clampSegmentSize(initialSegmentSize);
+	mConcurrency = concurrency < 1 ? 1 : concurrency;
+    }
+
+    /**
+     * 取回剩下的所有数据并按顺序写给浏览器，阻塞到完成或失败
+     *
+     * @return 是否完整写出
+     */
+    boolean transfer(HttpServerConnection conn, HttpResponse response) {
+	long remaining = mEnd - mWriteOffset;
+	if (remaining <= 0) {
+	    return true;
+	}
+	int workers = (int) Math.min(mConcurrency, (remaining + MIN_SEGMENT_SIZE - 1) / MIN_SEGMENT_SIZE);
+	synchronized (mLock) {
+	    mActiveWorkers = workers;
+	}
+	for (int i = 0; i < workers; i++) {
+	    sExecutor.execute(new Runnable() {
+		@Override
+		public void run() {
+		    work();
+		}
+	    });
+	}
+	try {
+	    while (true) {
+		byte[] data;
+		synchronized (mLock) {
+		    if (mWriteOffset >= mEnd) {
+			return true;
+		    }
+		    while ((data = mCompleted.remove(mWriteOffset)) == null) {
+			if (mAborted || mActiveWorkers == 0) {
+			    mAborted = true;
+			    mLock.notifyAll();
+			    return false;
+			}
+			mLock.wait();
+		    }
+		}
+		response.setEntity(new ByteArrayEntity(data));
+		conn.sendResponseEntity(response);
+		conn.flush();
+		synchronized (mLock) {
+		    mWriteOffset += data.length;
+		    mLock.notifyAll();
+		}
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	} catch (HttpException e) {
+	    e.printStackTrace();
+	} catch (IOException e) {
+	    // 浏览器关闭了连接
+	    e.printStackTrace();
+	}
+	abort();
+	return false;
+    }
+
+    private void abort() {
+	synchronized (mLock) {
+	    mAborted = true;
+	    mCompleted.clear();
+	    mPending.clear();
+	    mLock.notifyAll();
+	}
+    }
+
+    private void work() {
+	try {
+	    Segment segment;
+	    while ((segment = claim()) != null) {
+		if (!fetchSegment(segment)) {
+		    Log.e(TAG, "rangefetch give up at " + segment.start + " url = " + mTemplate.getUri());
+		    abort();
+		    return;
+		}
+	    }
+	} catch (InterruptedException e) {
+	    abort();
+	} finally {
+	    synchronized (mLock) {
+		mActiveWorkers--;
+		mLock.notifyAll();
+	    }
+	}
+    }
+
+    /**
+     * 取下一段要下载的区间，优先补回没取完的部分；缓冲的数据太多时等待，没有可取的区间时返回null
+     */
+    private Segment claim() throws InterruptedException {
+	synchronized (mLock) {
+	    while (!mAborted) {
+		Segment pending = mPending.poll();
+		if (pending != null) {
+		    return pending;
+		}
+		if (mNextOffset >= mEnd) {
+		    return null;
+		}
+		if (mNextOffset - mWriteOffset < MAX_BUFFERED_BYTES) {
+		    long tail = Math.min(mNextOffset + mSegmentSize, mEnd) - 1;
+		    Segment segment = new Segment(mNextOffset, tail);
+		    mNextOffset = tail + 1;
+		    return segment;
+		}
+		mLock.wait();
+	    }
+	    return null;
+	}
+    }
+
+    private boolean fetchSegment(Segment segment) {
+	int failed = 0;
+	while (failed <= MAX_RETRIES) {
+	    synchronized (mLock) {
+		if (mAborted) {
+		    return true;
+		}
+	    }
+	    PackageRequest packReq;
+	    synchronized (mTemplate) {
+		packReq = mTemplate.copy();
+	    }
+	    packReq.setHeader(HttpHeaders.RANGE, "bytes=" + segment.start + "-" + segment.tail);
+	    long begin = System.currentTimeMillis();
+	    PackageResponse packResp = mGogl.fetch(packReq);
+	    long elapsed = System.currentTimeMillis() - begin;
+	    if (packResp == null || packResp.getResponseCode() >= 400 || packResp.isError()) {
+		failed++;
+		continue;
+	    }
+	    if (packResp.getResponseCode() == 302 && packResp.containsHeader(HttpHeaders.LOCATION)) {
+		// 重定向也算一次失败，避免无限跳转
+		synchronized (mTemplate) {
+		    mTemplate.setUri(packResp.getFirstHeader(HttpHeaders.LOCATION).getValue());
+		}
+		failed++;
+		continue;
+	    }
+	    int[] tm = packResp.parseContentRange();
+	    byte[] content = packResp.getEnity();
+	    if (tm == null || tm[0] != segment.start || tm[1] > segment.tail || content == null || content.length != tm[1] - tm[0] + 1) {
+		failed++;
+		continue;
+	    }
+	    deliver(segment, tm[1], content, elapsed);
+	    return true;
+	}
+	return false;
+    }
+
+    private void deliver(Segment segment, long last, byte[] content, long elapsed) {
+	synchronized (mLock) {
+	    if (mAborted) {
+		return;
+	    }
+	    if (last < segment.tail) {
+		mPending.add(new Segment(last + 1, segment.tail));
+	    }
+	    mCompleted.put(segment.start, content);
+	    updateSegmentSize(content.length, elapsed);
+	    mLock.notifyAll();
+	}
+    }
+
+    /**
+     * 按单个连接的吞吐量调整之后新分段的大小，使每段大约花TARGET_SEGMENT_TIME毫秒
+     */
+    private void updateSegmentSize(long bytes, long elapsed) {
+	double sample = (double) bytes / Math.max(elapsed, 1);
+	mThroughput = mThroughput == 0 ? sample : mThroughput * 0.7 + sample * 0.3;
+	mSegmentSize = clampSegmentSize((long) (mThroughput * TARGET_SEGMENT_TIME));
+    }
+
+    private static long clampSegmentSize(long size) {
+	size = size / SEGMENT_ALIGN * SEGMENT_ALIGN;
+	if (size < MIN_SEGMENT_SIZE) {
+	    return MIN_SEGMENT_SIZE;
+	}
+	if (size > MAX_SEGMENT_SIZE) {
+	    return MAX_SEGMENT_SIZE;
+	}
+	return size;
+    }
+}
@@ -28,16 +28,27 @@
 package com.escape.local.http.server;
 
 import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.http.ConnectionClosedException;
 import org.apache.http.HttpException;
 import org.apache.http.HttpResponseInterceptor;
-import org.apache.http.HttpServerConnection;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
 import org.apache.http.impl.DefaultHttpResponseFactory;
 import org.apache.http.params.CoreConnectionPNames;
@@ -49,21 +60,56 @@ import org.apache.http.protocol.HttpProcessor;
 import org.apache.http.protocol.HttpRequestHandlerRegistry;
 import org.apache.http.protocol.ImmutableHttpProcessor;
 
+import com.escape.local.ssl.CertCache;
+
 /**
  * Basic, yet fully functional and spec compliant, HTTP/1.1 file server.
  * <p>
  * Please note the purpose of this application is demonstrate the usage of
  * HttpCore APIs. It is NOT intended to demonstrate the most efficient way of
  * building an HTTP file server.
+ * <p>
+ * 连接由一个selector线程管理：空闲的keep-alive连接只挂在selector上等待可读，不占用线程；
+ * 有请求到来时才交给有上限的工作线程池，按原来的阻塞方式处理一个请求，处理完再放回selector。
+ * 工作线程和等待队列都满时新请求被拒绝（返回503），空闲超过IDLE_TIMEOUT的连接被关闭。
  * 
  * 
  */
 public class IHttpServer {
 
+	public static final int DEFAULT_MAX_WORKERS = 32;
+	public static final int DEFAULT_QUEUE_SIZE = 64;
+	public static final long DEFAULT_IDLE_TIMEOUT = 30 * 1000;
+
 	private RequestListenerThread mListenerThread;
+	private final IHttpServerMetrics mMetrics = new IHttpServerMetrics();
+	private final int mMaxWorkers;
+	private final int mQueueSize;
+	private final long mIdleTimeout;
+
+	public IHttpServer() {
+		this(DEFAULT_MAX_WORKERS, DEFAULT_QUEUE_SIZE, DEFAULT_IDLE_TIMEOUT);
+	}
+
+	/**
+	 * @param maxWorkers
+	 *            同时处理请求的最大线程数
+	 * @param queueSize
+	 *            工作线程都忙时最多排队的连接数
+	 * @param idleTimeout
+	 *            keep-alive连接最长的空闲时间，单位毫秒
+	 */
+	public IHttpServer(int maxWorkers, int queueSize, long idleTimeout) {
+		mMaxWorkers = maxWorkers;
+		mQueueSize = queueSize;
+		mIdleTimeout = idleTimeout;
+	}
 
 	public void start(int port) throws IOException {
-		mListenerThread = new RequestListenerThread(port);
+		// 后台预先生成最近访问过的https站点证书
+		CertCache.pregenerateRecentHosts();
+		mListenerThread = new RequestListenerThread(port, mMaxWorkers,
+				mQueueSize, mIdleTimeout, mMetrics);
 		mListenerThread.setDaemon(false);
 		mListenerThread.start();
 	}
@@ -74,27 +120,57 @@ public class IHttpServer {
 		}
 	}
 
+	public IHttpServerMetrics getMetrics() {
+		return mMetrics;
+	}
+
 	static class RequestListenerThread extends Thread {
 
-		ExecutorService fixedThreadPool = Executors.newCachedThreadPool();
+		// selector每次最多阻塞的时间，也是检查空闲连接的间隔
+		private static final long SELECT_TIMEOUT = 1000;
 
-		private final ServerSocket serversocket;
+		private final Selector selector;
+		private final ServerSocketChannel serverChannel;
+		private final ThreadPoolExecutor workers;
 		private final HttpParams params;
 		private final IHttpService httpService;
+		private final long idleTimeout;
+		private final IHttpServerMetrics metrics;
+		// 工作线程处理完、要放回selector的连接
+		private final ConcurrentLinkedQueue<Connection> returned = new ConcurrentLinkedQueue<Connection>();
+		private volatile boolean running = true;
 
 		public void shutdown() {
-			if (serversocket != null) {
-				try {
-					serversocket.close();
-				} catch (IOException e) {
-					e.printStackTrace();
-				}
-			}
+			running = false;
+			selector.wakeup();
 			this.interrupt();
 		}
 
-		public RequestListenerThread(int port) throws IOException {
-			this.serversocket = new ServerSocket(port);
+		public RequestListenerThread(int port, int maxWorkers, int queueSize,
+				long idleTimeout, IHttpServerMetrics metrics)
+				throws IOException {
+			this.idleTimeout = idleTimeout;
+			this.metrics = metrics;
+			this.selector = Selector.open();
+			this.serverChannel = ServerSocketChannel.open();
+			this.serverChannel.socket().setReuseAddress(true);
+			this.serverChannel.socket().bind(new InetSocketAddress(port));
+			this.serverChannel.configureBlocking(false);
+			this.serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+			this.workers = new ThreadPoolExecutor(maxWorkers, maxWorkers, 60,
+					TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(
+							queueSize), new ThreadFactory() {
+						private final AtomicInteger count = new AtomicInteger();
+
+						@Override
+						public Thread newThread(Runnable r) {
+							return new Thread(r, "IHttpServer worker #"
+									+ count.incrementAndGet());
+						}
+					});
+			this.workers.allowCoreThreadTimeOut(true);
+
 			this.params = new BasicHttpParams();
 			this.params
 					.setIntParameter(CoreConnectionPNames.SO_TIMEOUT, 5000)
@@ -132,27 +208,208 @@ public class IHttpServer {
 
 		public void run() {
 			System.out.println("Listening on port "
-					+ this.serversocket.getLocalPort());
-			while (!Thread.interrupted()) {
+					+ this.serverChannel.socket().getLocalPort());
+			long lastIdleCheck = System.currentTimeMillis();
+			List<Connection> ready = new ArrayList<Connection>();
+			try {
+				while (running && !Thread.interrupted()) {
+					selector.select(SELECT_TIMEOUT);
+					registerReturned();
+
+					Iterator<SelectionKey> it = selector.selectedKeys()
+							.iterator();
+					while (it.hasNext()) {
+						SelectionKey key = it.next();
+						it.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						if (key.isAcceptable()) {
+							accept();
+						} else if (key.isReadable()) {
+							// 从selector上取下来，交给工作线程用阻塞方式读
+							key.cancel();
+							ready.add((Connection) key.attachment());
+						}
+					}
+					if (!ready.isEmpty()) {
+						// 让取消的key真正注销，之后channel才能切换回阻塞模式
+						selector.selectNow();
+						for (Connection conn : ready) {
+							dispatch(conn);
+						}
+						ready.clear();
+					}
+
+					long now = System.currentTimeMillis();
+					if (now - lastIdleCheck >= SELECT_TIMEOUT) {
+						closeIdle(now);
+						lastIdleCheck = now;
+					}
+				}
+			} catch (ClosedSelectorException ex) {
+				// shutdown
+			} catch (IOException e) {
+				System.err.println("I/O error in selector loop: "
+						+ e.getMessage());
+				e.printStackTrace();
+			} finally {
+				close();
+			}
+		}
+
+		private void accept() throws IOException {
+			SocketChannel channel;
+			while ((channel = serverChannel.accept()) != null) {
+				metrics.accepted.incrementAndGet();
+				metrics.openConnections.incrementAndGet();
+				Connection conn = new Connection(channel);
+				try {
+					channel.configureBlocking(false);
+					channel.register(selector, SelectionKey.OP_READ, conn);
+					metrics.idleConnections.incrementAndGet();
+				} catch (IOException e) {
+					conn.close();
+				}
+			}
+		}
+
+		private void registerReturned() {
+			Connection conn;
+			while ((conn = returned.poll()) != null) {
 				try {
-					// Set up HTTP connection
-					Socket socket = this.serversocket.accept();
-					IHttpServerConnection conn = new IHttpServerConnection();
-//					System.out.println("Incoming connection from "
-//							+ socket.getInetAddress());
-					conn.bind(socket, this.params);
-
-					// Start worker thread
-					WorkerRunnable run = new WorkerRunnable(httpService, conn);
-					fixedThreadPool.execute(run);
-				} catch (InterruptedIOException ex) {
-					break;
+					conn.channel.configureBlocking(false);
+					conn.channel.register(selector, SelectionKey.OP_READ,
+							conn);
+					conn.lastActive = System.currentTimeMillis();
+					metrics.idleConnections.incrementAndGet();
 				} catch (IOException e) {
-					System.err
-							.println("I/O error initialising connection thread: "
-									+ e.getMessage());
-					e.printStackTrace();
-					break;
+					conn.close();
+				}
+			}
+		}
+
+		private void dispatch(final Connection conn) {
+			metrics.idleConnections.decrementAndGet();
+			try {
+				conn.channel.configureBlocking(true);
+			} catch (IOException e) {
+				conn.close();
+				return;
+			}
+			metrics.busyConnections.incrementAndGet();
+			try {
+				workers.execute(new WorkerRunnable(this, conn));
+				metrics.dispatched.incrementAndGet();
+			} catch (RejectedExecutionException e) {
+				metrics.busyConnections.decrementAndGet();
+				metrics.rejected.incrementAndGet();
+				conn.reject();
+			}
+		}
+
+		/**
+		 * 工作线程处理完一个请求后调用，连接放回selector等待下一个请求
+		 */
+		void release(Connection conn) {
+			metrics.busyConnections.decrementAndGet();
+			if (!running) {
+				conn.close();
+				return;
+			}
+			returned.add(conn);
+			selector.wakeup();
+		}
+
+		private void closeIdle(long now) {
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (attachment instanceof Connection) {
+					Connection conn = (Connection) attachment;
+					if (now - conn.lastActive > idleTimeout) {
+						key.cancel();
+						metrics.idleConnections.decrementAndGet();
+						metrics.idleTimeouts.incrementAndGet();
+						conn.close();
+					}
+				}
+			}
+		}
+
+		private void close() {
+			workers.shutdownNow();
+			for (SelectionKey key : selector.keys()) {
+				Object attachment = key.attachment();
+				if (attachment instanceof Connection) {
+					((Connection) attachment).close();
+				}
+			}
+			Connection conn;
+			while ((conn = returned.poll()) != null) {
+				conn.close();
+			}
+			try {
+				serverChannel.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+
+		/**
+		 * 一个客户端连接，HTTP连接对象在第一次处理请求时才创建，之后一直复用
+		 */
+		class Connection {
+			final SocketChannel channel;
+			final HttpContext context = new BasicHttpContext(null);
+			IHttpServerConnection httpConn;
+			long lastActive = System.currentTimeMillis();
+			private boolean closed = false;
+
+			Connection(SocketChannel channel) {
+				this.channel = channel;
+			}
+
+			IHttpServerConnection bind() throws IOException {
+				if (httpConn == null) {
+					httpConn = new IHttpServerConnection();
+					httpConn.bind(channel.socket(), params);
+				}
+				return httpConn;
+			}
+
+			/**
+			 * 工作线程都忙时直接回复503并关闭
+			 */
+			void reject() {
+				try {
+					OutputStream os = channel.socket().getOutputStream();
+					os.write("HTTP/1.1 503 Service Unavailable\r\nConnection: close\r\nContent-Length: 0\r\n\r\n"
+							.getBytes());
+					os.flush();
+				} catch (Exception e) {
+					// 客户端可能已经断开
+				}
+				close();
+			}
+
+			synchronized void close() {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				metrics.openConnections.decrementAndGet();
+				try {
+					if (httpConn != null) {
+						httpConn.shutdown();
+					}
+					channel.close();
+				} catch (IOException ignore) {
+					ignore.printStackTrace();
 				}
 			}
 		}
@@ -160,35 +417,50 @@ public class IHttpServer {
 
 	static class WorkerRunnable implements Runnable {
 
-		private final IHttpService httpservice;
-		private final HttpServerConnection conn;
+		private final RequestListenerThread listener;
+		private final RequestListenerThread.Connection connection;
 
-		public WorkerRunnable(final IHttpService httpservice,
-				final HttpServerConnection conn) {
-			this.httpservice = httpservice;
-			this.conn = conn;
+		public WorkerRunnable(final RequestListenerThread listener,
+				final RequestListenerThread.Connection connection) {
+			this.listener = listener;
+			this.connection = connection;
 		}
 
 		@Override
 		public void run() {
 //			System.out.println("New connection thread");
-			HttpContext context = new BasicHttpContext(null);
+			boolean keepAlive = false;
 			try {
-				while (!Thread.interrupted() && this.conn.isOpen()) {
-					this.httpservice.handleRequest(this.conn, context);
-				}
+				IHttpServerConnection conn = this.connection.bind();
+				do {
+					this.listener.httpService.handleRequest(conn,
+							this.connection.context);
+					this.listener.metrics.requests.incrementAndGet();
+					if (this.connection.context
+							.getAttribute(IHttpService.TUNNEL_ESTABLISHED) != null) {
+						// CONNECT之后socket已经被SSL层接管
+						break;
+					}
+					keepAlive = conn.isOpen();
+					// 客户端pipelining发来的请求已经在缓冲区里，selector不会再报告可读，直接接着处理
+				} while (keepAlive && conn.hasBufferedInput()
+						&& !Thread.interrupted());
 			} catch (ConnectionClosedException ex) {
 				System.err.println("Client closed connection");
+				keepAlive = false;
 			} catch (IOException ex) {
 				System.err.println("I/O error: " + ex.getMessage());
+				keepAlive = false;
 			} catch (HttpException ex) {
 				System.err.println("Unrecoverable HTTP protocol violation: "
 						+ ex.getMessage());
+				keepAlive = false;
 			} finally {
-				try {
-					this.conn.shutdown();
-				} catch (IOException ignore) {
-					ignore.printStackTrace();
+				if (keepAlive) {
+					this.listener.release(this.connection);
+				} else {
+					this.listener.metrics.busyConnections.decrementAndGet();
+					this.connection.close();
 				}
 			}
 		}
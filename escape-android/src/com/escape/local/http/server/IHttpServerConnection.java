@@ -4,11 +4,14 @@ import java.io.IOException;
 import java.net.Socket;
 
 import org.apache.http.impl.DefaultHttpServerConnection;
+import org.apache.http.impl.io.SocketInputBuffer;
+import org.apache.http.io.SessionInputBuffer;
 import org.apache.http.params.HttpParams;
 
 public class IHttpServerConnection extends DefaultHttpServerConnection {
 
 	private HttpParams mParams;
+	private InspectableInputBuffer mInputBuffer;
 
 	@Override
 	public Socket getSocket() {
@@ -25,4 +28,31 @@ public class IHttpServerConnection extends DefaultHttpServerConnection {
 		return mParams;
 	}
 
+	@Override
+	protected SessionInputBuffer createSessionInputBuffer(Socket socket,
+			int buffersize, HttpParams params) throws IOException {
+		mInputBuffer = new InspectableInputBuffer(socket, buffersize, params);
+		return mInputBuffer;
+	}
+
+	/**
+	 * 输入缓冲区里是否还有没处理的数据，例如客户端pipelining发来的下一个请求。
+	 * 这种数据已经从socket读出来了，selector不会再报告可读
+	 */
+	public boolean hasBufferedInput() {
+		return mInputBuffer != null && mInputBuffer.hasBufferedInput();
+	}
+
+	private static class InspectableInputBuffer extends SocketInputBuffer {
+
+		InspectableInputBuffer(Socket socket, int buffersize, HttpParams params)
+				throws IOException {
+			super(socket, buffersize, params);
+		}
+
+		boolean hasBufferedInput() {
+			return hasBufferedData();
+		}
+	}
+
 }
@@ -0,0 +1,74 @@
+package com.escape.local.http.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 本地代理服务器的连接和工作线程统计
+ */
+public class IHttpServerMetrics {
+
+	final AtomicLong accepted = new AtomicLong();
+	final AtomicLong requests = new AtomicLong();
+	final AtomicLong dispatched = new AtomicLong();
+	final AtomicLong rejected = new AtomicLong();
+	final AtomicLong idleTimeouts = new AtomicLong();
+	final AtomicInteger openConnections = new AtomicInteger();
+	final AtomicInteger idleConnections = new AtomicInteger();
+	final AtomicInteger busyConnections = new AtomicInteger();
+
+	/**
+	 * 接受过的连接总数
+	 */
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * 处理过的请求总数
+	 */
+	public long getRequests() {
+		return requests.get();
+	}
+
+	/**
+	 * 因为工作线程和等待队列都满了而被拒绝的连接数
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * 因为空闲太久而被关闭的连接数
+	 */
+	public long getIdleTimeouts() {
+		return idleTimeouts.get();
+	}
+
+	public int getOpenConnections() {
+		return openConnections.get();
+	}
+
+	/**
+	 * 在selector上等待下一个请求的连接数，这些连接不占用线程
+	 */
+	public int getIdleConnections() {
+		return idleConnections.get();
+	}
+
+	/**
+	 * 正在工作线程里处理或排队等待处理的连接数
+	 */
+	public int getBusyConnections() {
+		return busyConnections.get();
+	}
+
+	@Override
+	public String toString() {
+		return "accepted=" + accepted.get() + " requests=" + requests.get()
+				+ " dispatched=" + dispatched.get() + " rejected="
+				+ rejected.get() + " idleTimeouts=" + idleTimeouts.get()
+				+ " open=" + openConnections.get() + " idle="
+				+ idleConnections.get() + " busy=" + busyConnections.get();
+	}
+}
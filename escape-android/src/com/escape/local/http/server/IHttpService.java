@@ -87,6 +87,11 @@ import com.escape.local.ssl.CertUtil;
  */
 public class IHttpService {
 
+    /**
+     * 处理过CONNECT之后设置在连接的context上，原来的socket已经交给SSL层，不能再当普通HTTP连接用
+     */
+    public static final String TUNNEL_ESTABLISHED = "escape.tunnel.established";
+
     /**
      * TODO: make all variables final in the next major version
      */
@@ -257,6 +262,7 @@ public class IHttpService {
 	    }
 	    return;
 	}
+	context.setAttribute(TUNNEL_ESTABLISHED, Boolean.TRUE);
 	SSLSocketFactory sslSocketFactory = CertUtil.createSSLSocketFactory(host);
 	IHttpServerConnection _conn = null;
 	try {
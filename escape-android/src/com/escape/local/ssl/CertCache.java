@@ -0,0 +1,219 @@
+package com.escape.local.ssl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+import javax.net.ssl.SSLSocketFactory;
+
+import android.util.Log;
+
+/**
+ * 每个host的SSLSocketFactory缓存。
+ * <p>
+ * 以前每个CONNECT请求都在连接线程里新建SSLContext，第一次访问某个host时还要生成RSA密钥对并签发证书，
+ * 这些时间全部算在浏览器的首字节延迟里。现在：
+ * <ul>
+ * <li>内存里按LRU保留最近用过的host的SSLSocketFactory，同一个host同时只会生成一次；</li>
+ * <li>所有host证书共用一个叶子密钥对（见CertUtil.getLeafKeyPair），只需要签名，不再生成密钥；</li>
+ * <li>最近访问过的host记录在磁盘上，启动后在后台线程里预先生成。</li>
+ * </ul>
+ */
+public class CertCache {
+
+	private static final int MAX_CACHED_FACTORIES = 64;
+	private static final int MAX_RECENT_HOSTS = 64;
+	private static final String RECENT_HOSTS_FILE = "CA/recent_hosts";
+
+	private static final LinkedHashMap<String, FutureTask<SSLSocketFactory>> sFactories = new LinkedHashMap<String, FutureTask<SSLSocketFactory>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<String, FutureTask<SSLSocketFactory>> eldest) {
+			return size() > MAX_CACHED_FACTORIES;
+		}
+	};
+
+	private static final ExecutorService sPregenerator = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "CertCache");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.MIN_PRIORITY);
+					return thread;
+				}
+			});
+
+	private static boolean sRecentHostsDirty = false;
+
+	/**
+	 * 取得host的SSLSocketFactory，缓存里没有时在当前线程生成
+	 */
+	public static SSLSocketFactory get(String host) {
+		FutureTask<SSLSocketFactory> task = obtainTask(host);
+		// 没有别的线程在生成时，由当前线程生成
+		task.run();
+		try {
+			SSLSocketFactory factory = task.get();
+			if (factory == null) {
+				remove(host, task);
+			}
+			return factory;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+			remove(host, task);
+			return null;
+		}
+	}
+
+	/**
+	 * 在后台线程预先生成host的SSLSocketFactory
+	 */
+	public static void pregenerate(final String host) {
+		final FutureTask<SSLSocketFactory> task = obtainTask(host);
+		if (task.isDone()) {
+			return;
+		}
+		sPregenerator.execute(task);
+	}
+
+	/**
+	 * 读取磁盘上记录的最近访问过的host并在后台预先生成，程序启动时调用一次
+	 */
+	public static void pregenerateRecentHosts() {
+		sPregenerator.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (String host : loadRecentHosts()) {
+					pregenerate(host);
+				}
+			}
+		});
+	}
+
+	private static FutureTask<SSLSocketFactory> obtainTask(final String host) {
+		synchronized (sFactories) {
+			FutureTask<SSLSocketFactory> task = sFactories.get(host);
+			if (task == null) {
+				task = new FutureTask<SSLSocketFactory>(
+						new Callable<SSLSocketFactory>() {
+							@Override
+							public SSLSocketFactory call() throws Exception {
+								return CertUtil.newSSLSocketFactory(host);
+							}
+						});
+				sFactories.put(host, task);
+				scheduleSaveRecentHosts();
+			}
+			return task;
+		}
+	}
+
+	private static void remove(String host, FutureTask<SSLSocketFactory> task) {
+		synchronized (sFactories) {
+			if (sFactories.get(host) == task) {
+				sFactories.remove(host);
+			}
+		}
+	}
+
+	private static void scheduleSaveRecentHosts() {
+		// 调用方已经持有sFactories的锁
+		if (sRecentHostsDirty) {
+			return;
+		}
+		sRecentHostsDirty = true;
+		sPregenerator.execute(new Runnable() {
+			@Override
+			public void run() {
+				List<String> hosts;
+				synchronized (sFactories) {
+					sRecentHostsDirty = false;
+					hosts = new ArrayList<String>(sFactories.keySet());
+				}
+				saveRecentHosts(hosts);
+			}
+		});
+	}
+
+	private static List<String> loadRecentHosts() {
+		List<String> hosts = new ArrayList<String>();
+		File file = new File(CertUtil.mCertPath + RECENT_HOSTS_FILE);
+		if (!file.exists()) {
+			return hosts;
+		}
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), "UTF-8"));
+			String line;
+			while ((line = reader.readLine()) != null
+					&& hosts.size() < MAX_RECENT_HOSTS) {
+				line = line.trim();
+				if (line.length() > 0) {
+					hosts.add(line);
+				}
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			if (reader != null) {
+				try {
+					reader.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+		return hosts;
+	}
+
+	private static void saveRecentHosts(List<String> hosts) {
+		// LinkedHashMap按访问顺序排列，最近访问的在后面，保存时倒过来
+		File file = new File(CertUtil.mCertPath + RECENT_HOSTS_FILE);
+		File temp = new File(file.getPath() + ".tmp");
+		Writer writer = null;
+		try {
+			writer = new OutputStreamWriter(new FileOutputStream(temp), "UTF-8");
+			int count = 0;
+			for (int i = hosts.size() - 1; i >= 0 && count < MAX_RECENT_HOSTS; i--, count++) {
+				writer.write(hosts.get(i));
+				writer.write('\n');
+			}
+			writer.close();
+			writer = null;
+			if (!temp.renameTo(file)) {
+				file.delete();
+				temp.renameTo(file);
+			}
+		} catch (Exception e) {
+			Log.e("Test", "save recent hosts failed " + e);
+		} finally {
+			if (writer != null) {
+				try {
+					writer.close();
+				} catch (Exception e) {
+				}
+			}
+		}
+	}
+}
@@ -16,6 +16,8 @@ import java.security.SecureRandom;
 import java.security.cert.CertificateFactory;
 import java.security.cert.X509Certificate;
 import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Hashtable;
 import java.util.Vector;
@@ -41,8 +43,13 @@ public class CertUtil {
 	public static final String mCertPath = ProxyApplication.sCacheDir + "/";
 	public static final String mCACertFileName = "CA/ECA.crt";
 	public static final String mCAKeyFileName = "CA/ECA.key";
+	// 所有host证书共用的叶子密钥对
+	public static final String mLeafKeyFileName = "CA/leaf.key";
+	public static final String mLeafPubKeyFileName = "CA/leaf.pub";
 	public static X509Certificate mCACert = null;
 	public static PrivateKey mCAPriKey = null;
+	private static KeyPair mLeafKeyPair = null;
+	private static final SecureRandom sRandom = new SecureRandom();
 
 	static {
 		addBCProvider();
@@ -125,6 +132,67 @@ public class CertUtil {
 		}
 	}
 
+	private static boolean savePublicKey(String file, PublicKey key) {
+		try {
+			FileOutputStream fos = new FileOutputStream(file);
+			fos.write(new X509EncodedKeySpec(key.getEncoded()).getEncoded());
+			fos.flush();
+			fos.close();
+			return true;
+		} catch (Exception e) {
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	private static PublicKey loadPublicKey(String file) {
+		try {
+			File filePublicKey = new File(file);
+			FileInputStream fis = new FileInputStream(filePublicKey);
+			byte[] encodedPublicKey = new byte[(int) filePublicKey.length()];
+			fis.read(encodedPublicKey);
+			fis.close();
+
+			KeyFactory keyFactory = KeyFactory.getInstance("RSA", "BC");
+			return keyFactory.generatePublic(new X509EncodedKeySpec(
+					encodedPublicKey));
+		} catch (Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	/**
+	 * 取得所有host证书共用的叶子密钥对，第一次使用时从磁盘读取或生成。
+	 * 生成RSA密钥对是签发证书里最慢的一步，共用之后每个新host只需要签名
+	 */
+	private static synchronized KeyPair getLeafKeyPair() {
+		if (mLeafKeyPair != null) {
+			return mLeafKeyPair;
+		}
+		String keyFileName = mCertPath + mLeafKeyFileName;
+		String pubKeyFileName = mCertPath + mLeafPubKeyFileName;
+		if (new File(keyFileName).exists() && new File(pubKeyFileName).exists()) {
+			PrivateKey key = loadPrivateKey(keyFileName);
+			PublicKey pubKey = loadPublicKey(pubKeyFileName);
+			if (key != null && pubKey != null) {
+				mLeafKeyPair = new KeyPair(pubKey, key);
+				return mLeafKeyPair;
+			}
+		}
+		KeyPair keyPair = generateKeyPair();
+		if (keyPair == null) {
+			return null;
+		}
+		// 要确保成功保存公钥和私钥，否则下次启动生成新的密钥对，之前的host证书都要重签
+		if (!savePrivateKey(keyFileName, keyPair.getPrivate())
+				|| !savePublicKey(pubKeyFileName, keyPair.getPublic())) {
+			return null;
+		}
+		mLeafKeyPair = keyPair;
+		return mLeafKeyPair;
+	}
+
 	private static KeyPair generateKeyPair() {
 		try {
 			KeyPairGenerator caKeyPairGen = KeyPairGenerator.getInstance("RSA",
@@ -189,8 +257,8 @@ public class CertUtil {
 			order.addElement(X509Principal.OU);
 			order.addElement(X509Principal.CN);
 			v3CertGen.reset();
-			v3CertGen.setSerialNumber(BigInteger.valueOf(System
-					.currentTimeMillis() * 103));
+			// 预生成时同一毫秒可能签发多张证书，序列号用随机数，避免浏览器报issuer和序列号重复
+			v3CertGen.setSerialNumber(new BigInteger(63, sRandom));
 			v3CertGen.setIssuerDN(new X509Principal(issuer));
 			v3CertGen.setNotBefore(new Date(System.currentTimeMillis() - 24l
 					* 60 * 60 * 1000));
@@ -219,9 +287,19 @@ public class CertUtil {
 		String keyFileName = mCertPath + host + ".key";
 		File keyFile = new File(keyFileName);
 
-		if (certFile.exists() && keyFile.exists()) {
+		KeyPair leafKeyPair = getLeafKeyPair();
+		if (certFile.exists()) {
 			X509Certificate cert = loadCertificate(certFileName);
-			PrivateKey key = loadPrivateKey(keyFileName);
+			PrivateKey key = null;
+			if (keyFile.exists()) {
+				// 以前每个host单独生成的密钥
+				key = loadPrivateKey(keyFileName);
+			} else if (cert != null
+					&& leafKeyPair != null
+					&& Arrays.equals(cert.getPublicKey().getEncoded(),
+							leafKeyPair.getPublic().getEncoded())) {
+				key = leafKeyPair.getPrivate();
+			}
 			if (cert != null && key != null) {
 				CertAndKey ck = new CertAndKey();
 				ck.mCert = cert;
@@ -230,28 +308,21 @@ public class CertUtil {
 				return ck;
 			}
 		}
-		KeyPair keyPair = generateKeyPair();
-		if (keyPair == null) {
+		if (leafKeyPair == null) {
 			return null;
 		}
-		X509Certificate cert = createClientCert(keyPair.getPublic(), mCAPriKey,
-				mCACert.getPublicKey(), host);
+		X509Certificate cert = createClientCert(leafKeyPair.getPublic(),
+				mCAPriKey, mCACert.getPublicKey(), host);
 		if (cert == null) {
 			return null;
 		}
 
-		// 要确保成功保存证书和私钥
-		boolean ret = savePrivateKey(keyFileName, keyPair.getPrivate());
-		if (!ret) {
-			return null;
-		}
-		ret = saveCertificate(certFileName, cert);
-		if (!ret) {
-			return null;
-		}
+		// 私钥是共用的，只需要保存证书；删掉旧格式的私钥，下次按共用密钥加载
+		keyFile.delete();
+		saveCertificate(certFileName, cert);
 		CertAndKey ck = new CertAndKey();
 		ck.mCert = cert;
-		ck.mKey = keyPair.getPrivate();
+		ck.mKey = leafKeyPair.getPrivate();
 		// System.out.println("create client cert and key success");
 		return ck;
 	}
@@ -302,7 +373,14 @@ public class CertUtil {
 		return true;
 	}
 
+	/**
+	 * 取得host的SSLSocketFactory，结果由CertCache缓存
+	 */
 	public static SSLSocketFactory createSSLSocketFactory(String host) {
+		return CertCache.get(host);
+	}
+
+	static SSLSocketFactory newSSLSocketFactory(String host) {
 		try {
 			SSLContext sslcontext = SSLContext.getInstance("SSL");
 			X509KeyManager[] iKeyManager = new X509KeyManager[] { new IX509KeyManager(
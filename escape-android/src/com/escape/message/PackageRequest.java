@@ -34,6 +34,20 @@ public class PackageRequest {
 		headergroup = new HeaderGroup();
 	}
 
+	/**
+	 * 复制一个请求，头部是独立的，body共用同一个数组
+	 */
+	public PackageRequest copy() {
+		PackageRequest copy = new PackageRequest();
+		copy.mProtocol = mProtocol;
+		copy.mMethod = mMethod;
+		copy.mUri = mUri;
+		copy.headergroup.setHeaders(headergroup.getAllHeaders());
+		copy.mBody = mBody;
+		copy.mAddedRangeHeader = mAddedRangeHeader;
+		return copy;
+	}
+
 	public boolean isAddedRangeHeader() {
 		return mAddedRangeHeader;
 	}